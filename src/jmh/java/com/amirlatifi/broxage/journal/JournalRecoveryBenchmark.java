@@ -0,0 +1,76 @@
+package com.amirlatifi.broxage.journal;
+
+import com.amirlatifi.broxage.asset.AssetRegistry;
+import com.amirlatifi.broxage.ledger.BalanceLedger;
+import com.amirlatifi.broxage.repository.AssetRepository;
+import com.amirlatifi.broxage.repository.InMemoryRepositories;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold-start recovery time: replays a journal of {@code events} balance changes, spread over
+ * {@code customers} customers and three assets, into an empty ledger.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class JournalRecoveryBenchmark {
+
+	private static final String[] ASSETS = {"TRY", "BTC", "ETH"};
+
+	@Param("10000000")
+	private int events;
+
+	@Param("100000")
+	private int customers;
+
+	private Path directory;
+	private AssetRepository emptyTable;
+
+	@Setup(Level.Trial)
+	public void writeJournal() throws IOException {
+		directory = Files.createTempDirectory("journal-recovery");
+		EventJournal journal = new EventJournal(directory.toString(), EventJournal.EVENT_SOURCED, false,
+				256 * 1024 * 1024);
+		for (int i = 0; i < events; i++) {
+			journal.appendBalance(i % customers, ASSETS[i % ASSETS.length], 125, 125, 4);
+		}
+		journal.destroy();
+		emptyTable = InMemoryRepositories.emptyAssets();
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteJournal() throws IOException {
+		FileSystemUtils.deleteRecursively(directory);
+	}
+
+	@Benchmark
+	public BalanceLedger recover() throws IOException {
+		EventJournal journal = new EventJournal(directory.toString(), EventJournal.EVENT_SOURCED, false,
+				256 * 1024 * 1024);
+		BalanceLedger ledger = new BalanceLedger(emptyTable, journal, new AssetRegistry(new MockEnvironment().withProperty("asset.symbols", "BTC,ETH")));
+		new JournalRecovery(journal, new SnapshotStore(journal), ledger, new OrderEventLog(journal, null)).recover();
+		return ledger;
+	}
+}
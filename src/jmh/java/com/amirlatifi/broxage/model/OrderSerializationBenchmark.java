@@ -0,0 +1,116 @@
+package com.amirlatifi.broxage.model;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON serialization of orders and balances with an {@link ObjectMapper} configured the way Spring Boot
+ * configures the one used for HTTP responses: the entities, as the API used to return them, against the
+ * {@link OrderView} and {@link AssetView} it returns now. Run with {@code -prof gc} to compare allocation per
+ * response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderSerializationBenchmark {
+
+	private ObjectMapper objectMapper;
+	private Order order;
+	private List<Order> history;
+	private OrderView orderView;
+	private List<OrderView> historyView;
+	private List<Asset> assets;
+	private List<AssetView> assetViews;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		objectMapper = Jackson2ObjectMapperBuilder.json().build();
+		order = order(1L);
+		orderView = OrderView.of(order);
+		history = new ArrayList<>();
+		historyView = new ArrayList<>();
+		for (long id = 1; id <= 100; id++) {
+			history.add(order(id));
+			historyView.add(OrderView.of(order(id)));
+		}
+		assets = new ArrayList<>();
+		assetViews = new ArrayList<>();
+		for (String symbol : new String[]{"TRY", "BTC", "ETH", "USDT"}) {
+			Asset asset = new Asset();
+			asset.setId((long) assets.size() + 1);
+			asset.setCustomerId(42L);
+			asset.setAssetName(symbol);
+			asset.setSize(new BigDecimal("1500.25"));
+			asset.setUsableSize(new BigDecimal("1200.00"));
+			asset.setLedgerSeq(7L);
+			assets.add(asset);
+			assetViews.add(new AssetView(asset.getId(), asset.getCustomerId(), symbol, asset.getSize(),
+					asset.getUsableSize()));
+		}
+	}
+
+	@Benchmark
+	public byte[] serializeOrder() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(order);
+	}
+
+	@Benchmark
+	public byte[] serializeOrderView() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(orderView);
+	}
+
+	@Benchmark
+	public byte[] serializeHundredOrders() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(history);
+	}
+
+	@Benchmark
+	public byte[] serializeHundredOrderViews() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(historyView);
+	}
+
+	@Benchmark
+	public byte[] serializeAssets() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(assets);
+	}
+
+	@Benchmark
+	public byte[] serializeAssetViews() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(assetViews);
+	}
+
+	private static Order order(Long id) {
+		Order order = new Order();
+		order.setId(id);
+		order.setCustomerId(42L);
+		order.setAssetName("BTC");
+		order.setOrderSide(OrderSide.BUY);
+		order.setSize(new BigDecimal("0.25"));
+		order.setPrice(new BigDecimal("1234567.89"));
+		order.setFilledSize(new BigDecimal("0.10"));
+		order.setStatus(OrderStatus.PENDING);
+		order.setCreateDate(LocalDateTime.of(2024, 1, 2, 3, 4, 5));
+		return order;
+	}
+}
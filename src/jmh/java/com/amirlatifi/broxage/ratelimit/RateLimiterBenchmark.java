@@ -0,0 +1,51 @@
+package com.amirlatifi.broxage.ratelimit;
+
+import com.amirlatifi.broxage.model.Role;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of taking a token for a request, with a rate high enough that every request is allowed, from one
+ * customer on four threads so the compare-and-set on the shared bucket is contended.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RateLimiterBenchmark {
+
+	private RateLimiter rateLimiter;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		rateLimiter = new RateLimiter(new MockEnvironment()
+				.withProperty("rate-limit.customer.order-create.per-second", "1000000000")
+				.withProperty("rate-limit.customer.order-create.burst", "1000000"));
+	}
+
+	@Benchmark
+	public long tryAcquire() {
+		return rateLimiter.tryAcquire(1L, Role.CUSTOMER, Budget.ORDER_CREATE);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public long tryAcquireContended() {
+		return rateLimiter.tryAcquire(1L, Role.CUSTOMER, Budget.ORDER_CREATE);
+	}
+}
@@ -0,0 +1,130 @@
+package com.amirlatifi.broxage.repository;
+
+import com.amirlatifi.broxage.model.Customer;
+import com.amirlatifi.broxage.model.Order;
+import com.amirlatifi.broxage.model.OrderView;
+import org.springframework.data.domain.Pageable;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Map-backed stand-ins for the Spring Data repositories, used to benchmark the services without a database.
+ * Only the methods the services call are implemented.
+ */
+public final class InMemoryRepositories {
+
+	private InMemoryRepositories() {
+	}
+
+	/**
+	 * An asset table with no rows; balances live in the {@code BalanceLedger} anyway.
+	 */
+	public static AssetRepository emptyAssets() {
+		return proxy(AssetRepository.class, (proxy, method, args) -> {
+			if (method.getName().equals("findAll")) {
+				return Collections.emptyList();
+			}
+			throw new UnsupportedOperationException(method.getName());
+		});
+	}
+
+	/**
+	 * A customer table holding the given customers, looked up by username.
+	 */
+	public static CustomerRepository customers(Customer... customers) {
+		Map<String, Customer> byUsername = new ConcurrentHashMap<>();
+		for (Customer customer : customers) {
+			byUsername.put(customer.getUsername(), customer);
+		}
+		return proxy(CustomerRepository.class, (proxy, method, args) -> {
+			if (method.getName().equals("findByUsername")) {
+				return Optional.ofNullable(byUsername.get((String) args[0]));
+			}
+			throw new UnsupportedOperationException(method.getName());
+		});
+	}
+
+	public static OrderRepository orders() {
+		AtomicLong ids = new AtomicLong();
+		Map<Long, Order> byId = new ConcurrentHashMap<>();
+		Map<Long, Collection<Order>> byCustomer = new ConcurrentHashMap<>();
+		return proxy(OrderRepository.class, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "save":
+					Order order = (Order) args[0];
+					if (order.getId() == null) {
+						order.setId(ids.incrementAndGet());
+						byCustomer.computeIfAbsent(order.getCustomerId(), id -> new ConcurrentLinkedQueue<>())
+								.add(order);
+					}
+					byId.put(order.getId(), order);
+					return order;
+				case "findById":
+					return Optional.ofNullable(byId.get((Long) args[0]));
+				case "findHistoryPage":
+				LocalDateTime afterDate = (LocalDateTime) args[6];
+				long afterId = (Long) args[7];
+				return history(byCustomer, args)
+						.filter(o -> o.getCreateDate().isAfter(afterDate)
+								|| o.getCreateDate().equals(afterDate) && o.getId() > afterId)
+						.limit(((Pageable) args[8]).getPageSize())
+						.map(OrderView::of)
+						.collect(Collectors.toList());
+			case "streamHistory":
+				return history(byCustomer, args).map(OrderView::of);
+			case "findByStatusOrderByIdAsc":
+					List<Order> matching = new ArrayList<>();
+					byId.values().stream().filter(o -> o.getStatus() == args[0]).forEach(matching::add);
+					matching.sort((a, b) -> Long.compare(a.getId(), b.getId()));
+					return matching;
+				default:
+					throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+	/**
+	 * Orders matching the common {@code OrderRepository.HISTORY} arguments, in {@code (createDate, id)} order.
+	 */
+	private static Stream<Order> history(Map<Long, Collection<Order>> byCustomer, Object[] args) {
+		LocalDateTime start = (LocalDateTime) args[1];
+		LocalDateTime end = (LocalDateTime) args[2];
+		return byCustomer.getOrDefault((Long) args[0], Collections.emptyList()).stream()
+				.filter(o -> !o.getCreateDate().isBefore(start) && !o.getCreateDate().isAfter(end))
+				.filter(o -> args[3] == null || o.getStatus() == args[3])
+				.filter(o -> args[4] == null || o.getOrderSide() == args[4])
+				.filter(o -> args[5] == null || o.getAssetName().equals(args[5]))
+				.sorted(Comparator.comparing(Order::getCreateDate).thenComparing(Order::getId));
+	}
+
+	private static <T> T proxy(Class<T> repository, InvocationHandler handler) {
+		return repository.cast(Proxy.newProxyInstance(repository.getClassLoader(), new Class<?>[]{repository},
+				(proxy, method, args) -> {
+					if (method.getDeclaringClass() == Object.class) {
+						switch (method.getName()) {
+							case "equals":
+								return proxy == args[0];
+							case "hashCode":
+								return System.identityHashCode(proxy);
+							default:
+								return "InMemory" + repository.getSimpleName();
+						}
+					}
+					return handler.invoke(proxy, method, args);
+				}));
+	}
+}
@@ -0,0 +1,114 @@
+package com.amirlatifi.broxage.repository;
+
+import com.amirlatifi.broxage.BroxageFirmApplication;
+import com.amirlatifi.broxage.model.Asset;
+import com.amirlatifi.broxage.model.Order;
+import com.amirlatifi.broxage.model.OrderStatus;
+import com.amirlatifi.broxage.model.OrderView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the per-customer order and asset lookups on a table of {@code rows} orders (1000 per customer,
+ * three assets each), with the indexes declared on {@link Order} and {@link Asset} ({@code indexed=true}) and
+ * with them dropped ({@code indexed=false}). Run with {@code -p rows=10000000} for the 10M row figures.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g"})
+public class OrderIndexBenchmark {
+
+	private static final int ORDERS_PER_CUSTOMER = 1000;
+	private static final LocalDateTime EPOCH = LocalDateTime.of(2020, 1, 1, 0, 0);
+
+	@Param("1000000")
+	private int rows;
+
+	@Param({"true", "false"})
+	private boolean indexed;
+
+	private ConfigurableApplicationContext context;
+	private OrderRepository orderRepository;
+	private AssetRepository assetRepository;
+	private int customers;
+	private long next;
+
+	@Setup(Level.Trial)
+	public void populate() {
+		context = new SpringApplicationBuilder(BroxageFirmApplication.class)
+				.run("--server.port=0", "--journal.path=", "--spring.jpa.show-sql=false", "--logging.level.root=WARN");
+		orderRepository = context.getBean(OrderRepository.class);
+		assetRepository = context.getBean(AssetRepository.class);
+		JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+		customers = Math.max(1, rows / ORDERS_PER_CUSTOMER);
+		// Explicit ids: drawing a million values from the id generator one row at a time is far slower in H2
+		jdbcTemplate.update("INSERT INTO orders (id, customer_id, asset_name, order_side, size, price, filled_size, status, create_date) "
+				+ "SELECT X, MOD(X, ?), CASEWHEN(MOD(X, 2) = 0, 'BTC', 'ETH'), CASEWHEN(MOD(X, 3) = 0, 'SELL', 'BUY'), 1, 100, 0, "
+				+ "CASEWHEN(MOD(X, 10) = 0, 'PENDING', 'MATCHED'), DATEADD('SECOND', X, ?) FROM SYSTEM_RANGE(1, ?)",
+				customers, EPOCH, rows);
+		jdbcTemplate.update("INSERT INTO asset (id, customer_id, asset_name, size, usable_size, ledger_seq) "
+				+ "SELECT C.X * 3 + A.ID, C.X, A.NAME, 1000, 1000, 0 FROM SYSTEM_RANGE(0, ? - 1) C, "
+				+ "(VALUES (1, 'TRY'), (2, 'BTC'), (3, 'ETH')) A(ID, NAME)", customers);
+		if (!indexed) {
+			jdbcTemplate.execute("DROP INDEX idx_orders_customer_create_date");
+			jdbcTemplate.execute("DROP INDEX idx_orders_customer_status");
+			jdbcTemplate.execute("ALTER TABLE asset DROP CONSTRAINT uk_asset_customer_asset");
+		}
+		jdbcTemplate.execute("ANALYZE");
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		context.close();
+	}
+
+	/**
+	 * First page of a customer's history over the whole range, as served by {@code GET /api/orders}.
+	 */
+	@Benchmark
+	public List<OrderView> historyPage() {
+		return orderRepository.findHistoryPage(nextCustomer(), EPOCH, EPOCH.plusYears(10), null, null, null,
+				EPOCH, 0L, PageRequest.of(0, 100));
+	}
+
+	/**
+	 * Assets a customer has pending orders on, as looked up to cancel all of their orders.
+	 */
+	@Benchmark
+	public List<String> openOrders() {
+		return orderRepository.findAssetNamesByCustomerIdAndStatus(nextCustomer(), OrderStatus.PENDING);
+	}
+
+	@Benchmark
+	public Asset assetLookup() {
+		return assetRepository.findByCustomerIdAndAssetName(nextCustomer(), "BTC");
+	}
+
+	private long nextCustomer() {
+		// A large prime stride visits every customer without favouring recently touched pages
+		next = (next + 7919) % customers;
+		return next;
+	}
+}
@@ -0,0 +1,97 @@
+package com.amirlatifi.broxage.repository;
+
+import com.amirlatifi.broxage.BroxageFirmApplication;
+import com.amirlatifi.broxage.model.Order;
+import com.amirlatifi.broxage.model.OrderSide;
+import com.amirlatifi.broxage.model.OrderStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk insert throughput: {@value #BATCH} new orders saved in one transaction, with ids drawn from the pooled
+ * {@code order_seq} ({@code ids=sequence}) or from an identity column ({@code ids=identity}, mapped by
+ * {@code identity-orm.xml}), which makes Hibernate insert each row on its own to read back the id.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 3, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class OrderInsertBenchmark {
+
+	private static final int BATCH = 1000;
+
+	@Param({"sequence", "identity"})
+	private String ids;
+
+	private ConfigurableApplicationContext context;
+	private OrderRepository orderRepository;
+	private TransactionTemplate transactionTemplate;
+
+	@Setup(Level.Trial)
+	public void start() {
+		List<String> args = new ArrayList<>(List.of("--server.port=0", "--journal.path=", "--spring.jpa.show-sql=false",
+				"--logging.level.root=WARN"));
+		if (ids.equals("identity")) {
+			args.add("--spring.jpa.mapping-resources=identity-orm.xml");
+		}
+		context = new SpringApplicationBuilder(BroxageFirmApplication.class).run(args.toArray(new String[0]));
+		orderRepository = context.getBean(OrderRepository.class);
+		transactionTemplate = context.getBean(TransactionTemplate.class);
+	}
+
+	@Setup(Level.Iteration)
+	public void truncate() {
+		orderRepository.deleteAllInBatch();
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		context.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public List<Order> saveAll() {
+		List<Order> orders = new ArrayList<>(BATCH);
+		for (int i = 0; i < BATCH; i++) {
+			orders.add(order(i));
+		}
+		return transactionTemplate.execute(status -> orderRepository.saveAll(orders));
+	}
+
+	private static Order order(int i) {
+		Order order = new Order();
+		order.setCustomerId((long) i % 100);
+		order.setAssetName("BTC");
+		order.setOrderSide(OrderSide.BUY);
+		order.setSize(BigDecimal.ONE);
+		order.setPrice(new BigDecimal("100.00"));
+		order.setFilledSize(BigDecimal.ZERO);
+		order.setStatus(OrderStatus.PENDING);
+		order.setCreateDate(LocalDateTime.now());
+		return order;
+	}
+}
@@ -0,0 +1,82 @@
+package com.amirlatifi.broxage.security;
+
+import com.amirlatifi.broxage.metrics.BrokerMetrics;
+import com.amirlatifi.broxage.repository.TokenRevocationRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Cost of authorizing one request that carries a valid bearer token, with the token cache enabled (a repeat
+ * request) and disabled (signature verification and claims parsing every time).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtAuthorizationBenchmark {
+
+	private final FilterChain chain = (request, response) -> {
+	};
+
+	@Param({"true", "false"})
+	private boolean cached;
+
+	private JwtAuthorizationFilter filter;
+	private MockHttpServletRequest request;
+	private MockHttpServletResponse response;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		JwtKeys keys = new JwtKeys("1", "SecretKeyToGenJWTs", Collections.emptyMap());
+		filter = new JwtAuthorizationFilter(authentication -> authentication, new JwtTokenCache(cached ? 1000 : 0),
+				keys, new TokenRevocations(mock(TokenRevocationRepository.class)),
+				new BrokerMetrics(new SimpleMeterRegistry()), new ObjectMapper());
+		String token = Jwts.builder()
+				.setHeaderParam(JwsHeader.KEY_ID, "1")
+				.setSubject("trader")
+				.claim(JwtAuthorizationFilter.CUSTOMER_ID_CLAIM, 1L)
+				.claim(JwtAuthorizationFilter.ROLE_CLAIM, "CUSTOMER")
+				.setExpiration(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1)))
+				.signWith(SignatureAlgorithm.HS512, "SecretKeyToGenJWTs".getBytes())
+				.compact();
+		request = new MockHttpServletRequest("GET", "/api/orders");
+		request.addHeader("Authorization", "Bearer " + token);
+		response = new MockHttpServletResponse();
+	}
+
+	@Benchmark
+	public Authentication authorize() throws ServletException, IOException {
+		filter.doFilter(request, response, chain);
+		return SecurityContextHolder.getContext().getAuthentication();
+	}
+}
@@ -0,0 +1,27 @@
+package com.amirlatifi.broxage.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AssetServiceBenchmark {
+
+	private static final BigDecimal AMOUNT = new BigDecimal("10.50");
+
+	@Benchmark
+	public void updateAssetUsableSize(ServiceState state) {
+		state.assetService.updateAssetUsableSize(1L, "TRY", AMOUNT);
+	}
+}
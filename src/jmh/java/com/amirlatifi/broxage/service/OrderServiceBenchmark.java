@@ -0,0 +1,70 @@
+package com.amirlatifi.broxage.service;
+
+import com.amirlatifi.broxage.model.Order;
+import com.amirlatifi.broxage.model.OrderSide;
+import com.amirlatifi.broxage.model.OrderView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded cost of the order commands, called on {@link OrderService} directly rather than through the
+ * sequencer. Orders are bids far below any ask, so they rest on the book without matching.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderServiceBenchmark {
+
+	private static final Long TRADER = 1L;
+	private static final Long HISTORY_OWNER = 2L;
+	private static final int HISTORY_SIZE = 100;
+
+	private static final BigDecimal SIZE = BigDecimal.ONE;
+	private static final BigDecimal PRICE = new BigDecimal("100.00");
+
+	private final LocalDateTime from = LocalDateTime.now().minusDays(1);
+	private final LocalDateTime to = LocalDateTime.now().plusDays(1);
+
+	@Setup(Level.Trial)
+	public void fund(ServiceState state) {
+		state.assetService.updateAssetUsableSize(TRADER, "TRY", new BigDecimal("90000000000"));
+		state.assetService.updateAssetUsableSize(HISTORY_OWNER, "TRY", new BigDecimal("1000000"));
+		for (int i = 0; i < HISTORY_SIZE; i++) {
+			state.orderService.createOrder(HISTORY_OWNER, "ETH", OrderSide.BUY, SIZE, PRICE);
+		}
+	}
+
+	@Benchmark
+	public Order createOrder(ServiceState state) {
+		return state.orderService.createOrder(TRADER, "BTC", OrderSide.BUY, SIZE, PRICE);
+	}
+
+	@Benchmark
+	public Order createAndCancelOrder(ServiceState state) {
+		Order order = state.orderService.createOrder(TRADER, "BTC", OrderSide.BUY, SIZE, PRICE);
+		state.orderService.cancelOrder(TRADER, order.getId());
+		return order;
+	}
+
+	@Benchmark
+	public List<OrderView> listOrders(ServiceState state) {
+		return state.orderService.listOrders(new OrderQuery(HISTORY_OWNER, from, to, null, null, null), null, HISTORY_SIZE);
+	}
+}
@@ -0,0 +1,74 @@
+package com.amirlatifi.broxage.service;
+
+import com.amirlatifi.broxage.asset.AssetRegistry;
+import com.amirlatifi.broxage.events.CustomerEventBus;
+import com.amirlatifi.broxage.BroxageFirmApplication;
+import com.amirlatifi.broxage.journal.EventJournal;
+import com.amirlatifi.broxage.journal.OrderEventLog;
+import com.amirlatifi.broxage.ledger.BalanceLedger;
+import com.amirlatifi.broxage.matching.DepthListener;
+import com.amirlatifi.broxage.matching.MatchingEngine;
+import com.amirlatifi.broxage.metrics.BrokerMetrics;
+import com.amirlatifi.broxage.repository.InMemoryRepositories;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+
+/**
+ * The services under benchmark, either from the real application context on embedded H2 ({@code h2}) or
+ * wired by hand on top of map-backed repositories ({@code in-memory}), which isolates the cost of the service
+ * logic itself. The journal is disabled in both modes so that results do not depend on the disk.
+ */
+@State(Scope.Benchmark)
+public class ServiceState {
+
+	@Param({"h2", "in-memory"})
+	public String mode;
+
+	public OrderService orderService;
+	public AssetService assetService;
+
+	private ConfigurableApplicationContext context;
+
+	@Setup(Level.Trial)
+	public void start() throws IOException {
+		if (mode.equals("h2")) {
+			context = new SpringApplicationBuilder(BroxageFirmApplication.class)
+					.run("--server.port=0", "--journal.path=", "--spring.jpa.show-sql=false", "--logging.level.root=WARN");
+			orderService = context.getBean(OrderService.class);
+			assetService = context.getBean(AssetService.class);
+			return;
+		}
+		EventJournal journal = new EventJournal("", EventJournal.JPA, false, 1024 * 1024);
+		AssetRegistry scales = new AssetRegistry(new MockEnvironment().withProperty("asset.symbols", "BTC,ETH"));
+		CustomerEventBus eventBus = new CustomerEventBus(256, 0, 1, 5000);
+		BrokerMetrics metrics = new BrokerMetrics(new SimpleMeterRegistry());
+		assetService = new AssetService(new BalanceLedger(InMemoryRepositories.emptyAssets(), journal, scales), scales,
+				eventBus, metrics);
+		orderService = new OrderService();
+		ReflectionTestUtils.setField(orderService, "orderRepository", InMemoryRepositories.orders());
+		ReflectionTestUtils.setField(orderService, "assetService", assetService);
+		ReflectionTestUtils.setField(orderService, "matchingEngine", new MatchingEngine(scales, DepthListener.NONE));
+		ReflectionTestUtils.setField(orderService, "assetRegistry", scales);
+		ReflectionTestUtils.setField(orderService, "eventBus", eventBus);
+		ReflectionTestUtils.setField(orderService, "metrics", metrics);
+		ReflectionTestUtils.setField(orderService, "orderEventLog", new OrderEventLog(journal, null));
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		if (context != null) {
+			context.close();
+		}
+	}
+}
@@ -1,19 +1,38 @@
 package com.amirlatifi.broxage;
 
+import com.amirlatifi.broxage.security.PooledPasswordEncoder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
+import java.util.Collections;
+
 @SpringBootApplication
+@EnableScheduling
 public class BroxageFirmApplication {
 
 	public static void main(String[] args) {
 		SpringApplication.run(BroxageFirmApplication.class, args);
 	}
 
+	/**
+	 * BCrypt at {@code security.bcrypt.strength}; hashes of a lower strength are upgraded when their owner
+	 * next logs in.
+	 */
 	@Bean
-	public BCryptPasswordEncoder bCryptPasswordEncoder() {
-		return new BCryptPasswordEncoder();
+	public PooledPasswordEncoder passwordEncoder(@Value("${security.bcrypt.strength:10}") int strength,
+												 @Value("${security.password-hashing.threads:2}") int threads,
+												 @Value("${security.password-hashing.queue-capacity:64}") int queueCapacity,
+												 MeterRegistry meterRegistry) {
+		PooledPasswordEncoder encoder = new PooledPasswordEncoder(new BCryptPasswordEncoder(strength), threads,
+				queueCapacity);
+		new ExecutorServiceMetrics(encoder.getExecutor(), "password-hashing", Collections.emptyList())
+				.bindTo(meterRegistry);
+		return encoder;
 	}
 }
@@ -0,0 +1,89 @@
+package com.amirlatifi.broxage.amount;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Arithmetic on amounts held as a {@code long} count of the smallest unit of their asset, e.g. 1.5 at scale 8 is
+ * 150000000. Nothing is ever rounded: a value with more decimal places than its scale is rejected on the way
+ * in, and an operation that would overflow throws instead of wrapping around.
+ */
+public final class FixedPoint {
+
+	/**
+	 * The most decimal places an amount may have; the amount columns are declared with this scale.
+	 */
+	public static final int MAX_SCALE = 8;
+
+	private static final long[] POWERS_OF_TEN = new long[19];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	private FixedPoint() {
+	}
+
+	/**
+	 * The unscaled value is read as a whole number at scale 0 rather than through {@link BigDecimal#unscaledValue},
+	 * which would allocate a {@link java.math.BigInteger} on every call.
+	 *
+	 * @throws IllegalStateException if {@code value} has more than {@code scale} decimal places or is too large
+	 */
+	public static long toUnits(BigDecimal value, int scale) {
+		BigDecimal scaled;
+		try {
+			scaled = value.setScale(scale, RoundingMode.UNNECESSARY);
+		} catch (ArithmeticException e) {
+			throw new IllegalStateException(value.toPlainString() + " has more than " + scale + " decimal places");
+		}
+		try {
+			return scaled.scaleByPowerOfTen(scale).longValueExact();
+		} catch (ArithmeticException e) {
+			throw outOfRange();
+		}
+	}
+
+	/**
+	 * Zero comes back unscaled, as it would otherwise be written out as e.g. {@code 0E-8}.
+	 */
+	public static BigDecimal toDecimal(long units, int scale) {
+		return units == 0 ? BigDecimal.ZERO : BigDecimal.valueOf(units, scale);
+	}
+
+	public static long add(long a, long b) {
+		long sum = a + b;
+		// Overflow iff both operands have the sign opposite to the result's
+		if (((a ^ sum) & (b ^ sum)) < 0) {
+			throw outOfRange();
+		}
+		return sum;
+	}
+
+	public static long subtract(long a, long b) {
+		long difference = a - b;
+		if (((a ^ b) & (a ^ difference)) < 0) {
+			throw outOfRange();
+		}
+		return difference;
+	}
+
+	/**
+	 * The value of {@code size} at {@code price}. The product of a size at scale s and a price at scale p is at
+	 * scale s + p; it is widened by {@code shift} more decimal places to the scale of the result.
+	 */
+	public static long multiply(long size, long price, int shift) {
+		try {
+			return Math.multiplyExact(Math.multiplyExact(size, price), POWERS_OF_TEN[shift]);
+		} catch (ArithmeticException e) {
+			throw outOfRange();
+		}
+	}
+
+	private static IllegalStateException outOfRange() {
+		return new IllegalStateException("Amount out of range");
+	}
+}
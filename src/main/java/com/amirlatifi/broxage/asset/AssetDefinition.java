@@ -0,0 +1,57 @@
+package com.amirlatifi.broxage.asset;
+
+/**
+ * One entry of the {@link AssetRegistry}. The tick size is in price units and the lot size in units of the asset;
+ * both are zero for the quote currency, which is not traded itself.
+ */
+public class AssetDefinition {
+	private final int id;
+	private final String symbol;
+	private final int scale;
+	private final long tickSize;
+	private final long lotSize;
+	private final String quoteCurrency;
+
+	AssetDefinition(int id, String symbol, int scale, long tickSize, long lotSize, String quoteCurrency) {
+		this.id = id;
+		this.symbol = symbol;
+		this.scale = scale;
+		this.tickSize = tickSize;
+		this.lotSize = lotSize;
+		this.quoteCurrency = quoteCurrency;
+	}
+
+	/**
+	 * Small, dense and stable for the life of the process, so it can index arrays.
+	 */
+	public int getId() {
+		return id;
+	}
+
+	public String getSymbol() {
+		return symbol;
+	}
+
+	public int getScale() {
+		return scale;
+	}
+
+	public long getTickSize() {
+		return tickSize;
+	}
+
+	public long getLotSize() {
+		return lotSize;
+	}
+
+	/**
+	 * The asset orders for this one are priced and paid in; for the quote currency itself, its own symbol.
+	 */
+	public String getQuoteCurrency() {
+		return quoteCurrency;
+	}
+
+	public boolean isQuote() {
+		return symbol.equals(quoteCurrency);
+	}
+}
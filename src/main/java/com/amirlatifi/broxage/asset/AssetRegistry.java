@@ -0,0 +1,177 @@
+package com.amirlatifi.broxage.asset;
+
+import com.amirlatifi.broxage.amount.FixedPoint;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The assets the firm holds and trades, read from configuration once at startup and never changed afterwards:
+ * the quote currency ({@code asset.quote}) every other asset is priced and paid in, and the tradable assets
+ * ({@code asset.symbols}). Each gets a small integer id, in that order starting with the quote currency, so
+ * per-asset state can be kept in arrays instead of maps keyed by name.
+ * <p>
+ * Amounts of an asset are held to {@code asset.<symbol>.scale} decimal places and prices to
+ * {@code asset.price-scale}. The quote currency must be able to hold the exact value of any order, so its scale
+ * has to be at least the scale of every tradable asset plus the price scale. Order prices must be a multiple of
+ * the asset's {@code tick-size} and sizes of its {@code lot-size}; both default to the smallest unit.
+ */
+@Component
+public class AssetRegistry {
+
+	private final int priceScale;
+	private final AssetDefinition quote;
+	private final AssetDefinition[] byId;
+	private final Map<String, AssetDefinition> bySymbol = new HashMap<>();
+
+	public AssetRegistry(Environment environment) {
+		this.priceScale = environment.getProperty("asset.price-scale", Integer.class, 2);
+		checkScale("Price", priceScale);
+		String quoteSymbol = environment.getProperty("asset.quote", "TRY");
+		int quoteScale = environment.getProperty("asset." + quoteSymbol + ".scale", Integer.class,
+				FixedPoint.MAX_SCALE);
+		checkScale(quoteSymbol, quoteScale);
+
+		List<AssetDefinition> definitions = new ArrayList<>();
+		this.quote = new AssetDefinition(0, quoteSymbol, quoteScale, 0, 0, quoteSymbol);
+		definitions.add(quote);
+		for (String symbol : environment.getProperty("asset.symbols", String[].class, new String[0])) {
+			if (symbol.isEmpty() || symbol.equals(quoteSymbol)) {
+				continue;
+			}
+			int scale = environment.getProperty("asset." + symbol + ".scale", Integer.class, 6);
+			checkScale(symbol, scale);
+			if (scale + priceScale > quoteScale) {
+				throw new IllegalStateException("Scale of " + symbol + " plus the price scale exceeds the "
+						+ quoteSymbol + " scale of " + quoteScale);
+			}
+			long tickSize = step(environment, symbol, "tick-size", priceScale);
+			long lotSize = step(environment, symbol, "lot-size", scale);
+			definitions.add(new AssetDefinition(definitions.size(), symbol, scale, tickSize, lotSize, quoteSymbol));
+		}
+		this.byId = definitions.toArray(new AssetDefinition[0]);
+		for (AssetDefinition definition : byId) {
+			if (bySymbol.put(definition.getSymbol(), definition) != null) {
+				throw new IllegalStateException("Asset " + definition.getSymbol() + " is listed more than once");
+			}
+		}
+	}
+
+	/**
+	 * @throws IllegalStateException if the asset is not registered
+	 */
+	public AssetDefinition get(String symbol) {
+		AssetDefinition definition = bySymbol.get(symbol);
+		if (definition == null) {
+			throw new IllegalStateException("Unknown asset: " + symbol);
+		}
+		return definition;
+	}
+
+	/**
+	 * @return the asset, or null if it is not registered
+	 */
+	public AssetDefinition find(String symbol) {
+		return bySymbol.get(symbol);
+	}
+
+	public AssetDefinition get(int id) {
+		return byId[id];
+	}
+
+	/**
+	 * The number of registered assets; ids run from 0 to one less than this.
+	 */
+	public int size() {
+		return byId.length;
+	}
+
+	public AssetDefinition quote() {
+		return quote;
+	}
+
+	/**
+	 * @throws IllegalStateException if the asset is not registered or is the quote currency
+	 */
+	public AssetDefinition tradable(String symbol) {
+		AssetDefinition definition = get(symbol);
+		if (definition.isQuote()) {
+			throw new IllegalStateException(symbol + " is the quote currency and cannot be traded");
+		}
+		return definition;
+	}
+
+	public int priceScale() {
+		return priceScale;
+	}
+
+	public long toUnits(String symbol, BigDecimal amount) {
+		return FixedPoint.toUnits(amount, get(symbol).getScale());
+	}
+
+	public BigDecimal toDecimal(String symbol, long units) {
+		return FixedPoint.toDecimal(units, get(symbol).getScale());
+	}
+
+	public long priceToUnits(BigDecimal price) {
+		return FixedPoint.toUnits(price, priceScale);
+	}
+
+	/**
+	 * @throws IllegalStateException if {@code size} is not a whole number of lots
+	 */
+	public long sizeToUnits(AssetDefinition asset, BigDecimal size) {
+		long units = FixedPoint.toUnits(size, asset.getScale());
+		if (units % asset.getLotSize() != 0) {
+			throw new IllegalStateException("Size must be a multiple of the lot size "
+					+ plain(asset.getLotSize(), asset.getScale()));
+		}
+		return units;
+	}
+
+	/**
+	 * @throws IllegalStateException if {@code price} is not on a tick of the asset
+	 */
+	public long priceToUnits(AssetDefinition asset, BigDecimal price) {
+		long units = FixedPoint.toUnits(price, priceScale);
+		if (units % asset.getTickSize() != 0) {
+			throw new IllegalStateException("Price must be a multiple of the tick size "
+					+ plain(asset.getTickSize(), priceScale));
+		}
+		return units;
+	}
+
+	/**
+	 * The value, in units of the quote currency, of {@code size} units of the asset at {@code price} price units.
+	 */
+	public long notional(AssetDefinition asset, long size, long price) {
+		return FixedPoint.multiply(size, price, quote.getScale() - asset.getScale() - priceScale);
+	}
+
+	private static long step(Environment environment, String symbol, String name, int scale) {
+		BigDecimal step = environment.getProperty("asset." + symbol + "." + name, BigDecimal.class);
+		if (step == null) {
+			return 1;
+		}
+		long units = FixedPoint.toUnits(step, scale);
+		if (units <= 0) {
+			throw new IllegalStateException("The " + name + " of " + symbol + " must be positive");
+		}
+		return units;
+	}
+
+	private static String plain(long units, int scale) {
+		return FixedPoint.toDecimal(units, scale).stripTrailingZeros().toPlainString();
+	}
+
+	private static void checkScale(String name, int scale) {
+		if (scale < 0 || scale > FixedPoint.MAX_SCALE) {
+			throw new IllegalStateException("Scale of " + name + " must be between 0 and " + FixedPoint.MAX_SCALE);
+		}
+	}
+}
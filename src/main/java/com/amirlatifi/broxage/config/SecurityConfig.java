@@ -1,9 +1,16 @@
 package com.amirlatifi.broxage.config;
 
+import com.amirlatifi.broxage.metrics.BrokerMetrics;
+import com.amirlatifi.broxage.ratelimit.RateLimitFilter;
+import com.amirlatifi.broxage.ratelimit.RateLimiter;
 import com.amirlatifi.broxage.security.JwtAuthenticationFilter;
 import com.amirlatifi.broxage.security.JwtAuthorizationFilter;
+import com.amirlatifi.broxage.security.JwtKeys;
+import com.amirlatifi.broxage.security.JwtTokenCache;
+import com.amirlatifi.broxage.security.JwtTokenService;
+import com.amirlatifi.broxage.security.TokenRevocations;
 import com.amirlatifi.broxage.service.CustomerService;
-import org.springframework.context.annotation.Bean;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
@@ -11,33 +18,57 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
 
 @Configuration
 @EnableWebSecurity
 public class SecurityConfig extends WebSecurityConfigurerAdapter {
 
 	private final CustomerService customerService;
-	private final BCryptPasswordEncoder bCryptPasswordEncoder;
+	private final PasswordEncoder passwordEncoder;
+	private final JwtTokenCache tokenCache;
+	private final JwtTokenService tokenService;
+	private final JwtKeys keys;
+	private final TokenRevocations revocations;
+	private final BrokerMetrics metrics;
+	private final RateLimiter rateLimiter;
+	private final ObjectMapper objectMapper;
 
-	public SecurityConfig(CustomerService customerService, BCryptPasswordEncoder bCryptPasswordEncoder) {
+	public SecurityConfig(CustomerService customerService, PasswordEncoder passwordEncoder,
+						  JwtTokenCache tokenCache, JwtTokenService tokenService, JwtKeys keys,
+						  TokenRevocations revocations, BrokerMetrics metrics, RateLimiter rateLimiter,
+						  ObjectMapper objectMapper) {
 		this.customerService = customerService;
-		this.bCryptPasswordEncoder = bCryptPasswordEncoder;
+		this.passwordEncoder = passwordEncoder;
+		this.tokenCache = tokenCache;
+		this.tokenService = tokenService;
+		this.keys = keys;
+		this.revocations = revocations;
+		this.metrics = metrics;
+		this.rateLimiter = rateLimiter;
+		this.objectMapper = objectMapper;
 	}
 
 	@Override
 	protected void configure(HttpSecurity http) throws Exception {
 		http.cors().and().csrf().disable().authorizeRequests()
-				.antMatchers(HttpMethod.POST, "/api/customers/register").permitAll()
+				.antMatchers(HttpMethod.POST, "/api/customers/register", "/api/customers/token/refresh").permitAll()
+				.antMatchers(HttpMethod.GET, "/actuator/health").permitAll()
+				// Metrics reveal order flow and customer activity, so scrapers authenticate with an admin token
+				.antMatchers(HttpMethod.GET, "/actuator/prometheus").hasRole("ADMIN")
 				.anyRequest().authenticated()
 				.and()
-				.addFilter(new JwtAuthenticationFilter(authenticationManager()))
-				.addFilter(new JwtAuthorizationFilter(authenticationManager()))
+				.addFilter(new JwtAuthenticationFilter(authenticationManager(), customerService, tokenService, objectMapper, metrics))
+				.addFilter(new JwtAuthorizationFilter(authenticationManager(), tokenCache, keys, revocations, metrics,
+						objectMapper))
+				// Runs once the token has been verified, to know whose budget a request draws from
+				.addFilterAfter(new RateLimitFilter(rateLimiter, metrics, objectMapper), BasicAuthenticationFilter.class)
 				.sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS);
 	}
 
 	@Override
 	public void configure(AuthenticationManagerBuilder auth) throws Exception {
-		auth.userDetailsService(customerService).passwordEncoder(bCryptPasswordEncoder);
+		auth.userDetailsService(customerService).passwordEncoder(passwordEncoder);
 	}
 }
\ No newline at end of file
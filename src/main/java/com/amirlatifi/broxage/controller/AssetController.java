@@ -1,9 +1,9 @@
 package com.amirlatifi.broxage.controller;
 
-import com.amirlatifi.broxage.model.Asset;
-import com.amirlatifi.broxage.model.Customer;
+import com.amirlatifi.broxage.asset.AssetRegistry;
+import com.amirlatifi.broxage.idempotency.IdempotencyStore;
+import com.amirlatifi.broxage.model.AssetView;
 import com.amirlatifi.broxage.service.AssetService;
-import com.amirlatifi.broxage.service.CustomerService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -21,22 +21,33 @@ public class AssetController {
 	private AssetService assetService;
 
 	@Autowired
-	private CustomerService customerService;
+	private AssetRegistry assetRegistry;
+
+	@Autowired
+	private IdempotencyStore idempotencyStore;
 
 	@GetMapping
-	public ResponseEntity<List<Asset>> listAssets(Authentication authentication,
-												  @RequestParam(required = false) Long customerId) {
+	public ResponseEntity<List<AssetView>> listAssets(Authentication authentication,
+													  @RequestParam(required = false) Long customerId) {
 		Long effectiveCustomerId = getEffectiveCustomerId(authentication, customerId);
-		List<Asset> assets = assetService.getAssetsByCustomerId(effectiveCustomerId);
+		List<AssetView> assets = assetService.getAssetsByCustomerId(effectiveCustomerId);
 		return ResponseEntity.ok(assets);
 	}
 
+	/**
+	 * Deposits and withdrawals sent again with the same {@value IdempotencyStore#HEADER} are applied only once.
+	 */
 	@PostMapping("/deposit")
 	public ResponseEntity<Void> depositMoney(Authentication authentication,
 											 @RequestParam(required = false) Long customerId,
-											 @RequestParam BigDecimal amount) {
+											 @RequestParam BigDecimal amount,
+											 @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
 		Long effectiveCustomerId = getEffectiveCustomerId(authentication, customerId);
-		assetService.updateAssetUsableSize(effectiveCustomerId, "TRY", amount);
+		String fingerprint = IdempotencyStore.fingerprint(amount);
+		idempotencyStore.call(effectiveCustomerId, "deposit", idempotencyKey, fingerprint, Void.class, () -> {
+			assetService.updateAssetUsableSize(effectiveCustomerId, assetRegistry.quote().getSymbol(), amount);
+			return null;
+		});
 		return ResponseEntity.ok().build();
 	}
 
@@ -44,9 +55,14 @@ public class AssetController {
 	public ResponseEntity<Void> withdrawMoney(Authentication authentication,
 											  @RequestParam(required = false) Long customerId,
 											  @RequestParam BigDecimal amount,
-											  @RequestParam String iban) {
+											  @RequestParam String iban,
+											  @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
 		Long effectiveCustomerId = getEffectiveCustomerId(authentication, customerId);
-		assetService.updateAssetUsableSize(effectiveCustomerId, "TRY", amount.negate());
+		String fingerprint = IdempotencyStore.fingerprint(amount, iban);
+		idempotencyStore.call(effectiveCustomerId, "withdraw", idempotencyKey, fingerprint, Void.class, () -> {
+			assetService.withdraw(effectiveCustomerId, assetRegistry.quote().getSymbol(), amount);
+			return null;
+		});
 		return ResponseEntity.ok().build();
 	}
 
@@ -59,12 +75,12 @@ public class AssetController {
 			}
 			return providedCustomerId;
 		} else {
-			String username = authentication.getName();
-			Customer customer = customerService.findByUsername(username);
-			if (providedCustomerId != null && !providedCustomerId.equals(customer.getId())) {
+			// The authenticated principal is named after the customer id (see CustomerPrincipal)
+			Long customerId = Long.valueOf(authentication.getName());
+			if (providedCustomerId != null && !providedCustomerId.equals(customerId)) {
 				throw new IllegalArgumentException("Customers can only access their own assets");
 			}
-			return customer.getId();
+			return customerId;
 		}
 	}
 }
\ No newline at end of file
@@ -1,8 +1,12 @@
 package com.amirlatifi.broxage.controller;
 
-import com.amirlatifi.broxage.model.Customer;
+import com.amirlatifi.broxage.security.JwtTokenService;
+import com.amirlatifi.broxage.security.TokenResponse;
+import com.amirlatifi.broxage.security.TokenRevocations;
+import com.amirlatifi.broxage.service.CustomerProfile;
 import com.amirlatifi.broxage.service.CustomerService;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 @RestController
@@ -10,36 +14,58 @@ import org.springframework.web.bind.annotation.*;
 public class CustomerController {
 
 	private final CustomerService customerService;
+	private final JwtTokenService tokenService;
+	private final TokenRevocations revocations;
 
-	public CustomerController(CustomerService customerService) {
+	public CustomerController(CustomerService customerService, JwtTokenService tokenService,
+							  TokenRevocations revocations) {
 		this.customerService = customerService;
+		this.tokenService = tokenService;
+		this.revocations = revocations;
 	}
 
 	@PostMapping("/register")
-	public ResponseEntity<Customer> registerCustomer(@RequestParam String username,
+	public ResponseEntity<CustomerProfile> registerCustomer(@RequestParam String username,
 													 @RequestParam String password,
 													 @RequestParam String iban) {
-		Customer customer = customerService.registerCustomer(username, password, iban);
+		CustomerProfile customer = customerService.registerCustomer(username, password, iban);
 		return ResponseEntity.ok(customer);
 	}
 
 	@PostMapping("/register/admin")
-	public ResponseEntity<Customer> registerAdmin(@RequestParam String username,
+	public ResponseEntity<CustomerProfile> registerAdmin(@RequestParam String username,
 												  @RequestParam String password,
 												  @RequestParam String iban) {
-		Customer admin = customerService.registerAdmin(username, password, iban);
+		CustomerProfile admin = customerService.registerAdmin(username, password, iban);
 		return ResponseEntity.ok(admin);
 	}
 
+	/**
+	 * Trades the refresh token handed out on login for a new access token, without checking the password again.
+	 */
+	@PostMapping("/token/refresh")
+	public ResponseEntity<TokenResponse> refreshToken(@RequestParam String refreshToken) {
+		return ResponseEntity.ok(tokenService.refresh(refreshToken));
+	}
+
+	/**
+	 * Signs the customer out everywhere: every access and refresh token issued to them so far is revoked.
+	 */
+	@PostMapping("/logout")
+	public ResponseEntity<Void> logout(Authentication authentication) {
+		revocations.revokeAll(Long.parseLong(authentication.getName()));
+		return ResponseEntity.noContent().build();
+	}
+
 	@GetMapping("/{id}")
-	public ResponseEntity<Customer> getCustomerById(@PathVariable Long id) {
-		Customer customer = customerService.findById(id);
+	public ResponseEntity<CustomerProfile> getCustomerById(@PathVariable Long id) {
+		CustomerProfile customer = customerService.findById(id);
 		return ResponseEntity.ok(customer);
 	}
 
 	@GetMapping("/username/{username}")
-	public ResponseEntity<Customer> getCustomerByUsername(@PathVariable String username) {
-		Customer customer = customerService.findByUsername(username);
+	public ResponseEntity<CustomerProfile> getCustomerByUsername(@PathVariable String username) {
+		CustomerProfile customer = customerService.findByUsername(username);
 		return ResponseEntity.ok(customer);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,49 @@
+package com.amirlatifi.broxage.controller;
+
+import com.amirlatifi.broxage.events.CustomerEventBus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Server-sent event stream of a customer's order and balance changes, so clients no longer have to poll
+ * {@code /api/orders} and {@code /api/assets} to notice fills and cancels. Each {@code order} event carries the
+ * order's new state and each {@code balance} event the change to one asset.
+ */
+@RestController
+@RequestMapping("/api/events")
+public class EventStreamController {
+
+	@Autowired
+	private CustomerEventBus eventBus;
+
+	@GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	public SseEmitter streamEvents(Authentication authentication,
+								   @RequestParam(required = false) Long customerId) {
+		return eventBus.subscribe(getEffectiveCustomerId(authentication, customerId));
+	}
+
+	private Long getEffectiveCustomerId(Authentication authentication, Long providedCustomerId) {
+		boolean isAdmin = authentication.getAuthorities().contains(new SimpleGrantedAuthority("ROLE_ADMIN"));
+
+		if (isAdmin) {
+			if (providedCustomerId == null) {
+				throw new IllegalArgumentException("Admin must provide a customer ID");
+			}
+			return providedCustomerId;
+		} else {
+			// The authenticated principal is named after the customer id (see CustomerPrincipal)
+			Long customerId = Long.valueOf(authentication.getName());
+			if (providedCustomerId != null && !providedCustomerId.equals(customerId)) {
+				throw new IllegalArgumentException("Customers can only access their own events");
+			}
+			return customerId;
+		}
+	}
+}
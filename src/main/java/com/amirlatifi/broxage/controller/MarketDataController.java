@@ -0,0 +1,40 @@
+package com.amirlatifi.broxage.controller;
+
+import com.amirlatifi.broxage.market.MarketDataService;
+import com.amirlatifi.broxage.market.OrderBookSnapshot;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Public market depth of each tradable asset: a snapshot of the best price levels of its book, and a
+ * server-sent event stream of {@code depth} events, one per price level change, to keep a snapshot current.
+ */
+@RestController
+@RequestMapping("/api/market")
+public class MarketDataController {
+
+	static final int MAX_DEPTH = 1000;
+
+	@Autowired
+	private MarketDataService marketDataService;
+
+	@GetMapping("/{assetName}/book")
+	public OrderBookSnapshot getBook(@PathVariable String assetName,
+									 @RequestParam(defaultValue = "10") int depth) {
+		if (depth < 1 || depth > MAX_DEPTH) {
+			throw new IllegalStateException("Depth must be between 1 and " + MAX_DEPTH);
+		}
+		return marketDataService.getBook(assetName, depth);
+	}
+
+	@GetMapping(value = "/{assetName}/depth", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	public SseEmitter streamDepth(@PathVariable String assetName) {
+		return marketDataService.subscribe(assetName);
+	}
+}
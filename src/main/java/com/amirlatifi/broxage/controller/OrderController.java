@@ -1,10 +1,24 @@
 package com.amirlatifi.broxage.controller;
 
-import com.amirlatifi.broxage.model.Order;
+import com.amirlatifi.broxage.idempotency.IdempotencyStore;
+import com.amirlatifi.broxage.metrics.BrokerMetrics;
 import com.amirlatifi.broxage.model.OrderSide;
-import com.amirlatifi.broxage.model.Customer;
+import com.amirlatifi.broxage.model.OrderStatus;
+import com.amirlatifi.broxage.model.OrderView;
+import com.amirlatifi.broxage.ratelimit.Budget;
+import com.amirlatifi.broxage.ratelimit.RateLimitExceededException;
+import com.amirlatifi.broxage.ratelimit.RateLimiter;
+import com.amirlatifi.broxage.security.CustomerPrincipal;
+import com.amirlatifi.broxage.service.OrderCursor;
+import com.amirlatifi.broxage.service.OrderPipeline;
+import com.amirlatifi.broxage.service.OrderQuery;
+import com.amirlatifi.broxage.service.OrderRequest;
+import com.amirlatifi.broxage.service.OrderResult;
 import com.amirlatifi.broxage.service.OrderService;
-import com.amirlatifi.broxage.service.CustomerService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
@@ -12,49 +26,179 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
+/**
+ * Order commands are executed on the {@link com.amirlatifi.broxage.sequencer.OrderSequencer OrderSequencer}, so
+ * their handlers return its future and complete asynchronously: the request thread goes back to the pool while
+ * the command waits in its shard's queue, and the number of commands in flight is bounded by the connection
+ * limit and the queue capacity instead of the request thread pool.
+ */
 @RestController
 @RequestMapping("/api/orders")
 public class OrderController {
 
+	static final String NDJSON = "application/x-ndjson";
+	static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+	static final int MAX_PAGE_SIZE = 1000;
+	static final int MAX_BATCH_SIZE = 10000;
+
 	@Autowired
 	private OrderService orderService;
 
 	@Autowired
-	private CustomerService customerService;
+	private OrderPipeline orderPipeline;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private IdempotencyStore idempotencyStore;
+
+	@Autowired
+	private RateLimiter rateLimiter;
 
+	@Autowired
+	private BrokerMetrics metrics;
+
+	/**
+	 * Places an order. A retry sent with the same {@value IdempotencyStore#HEADER} gets the original response
+	 * back, the order as it was when placed, instead of placing another one.
+	 */
 	@PostMapping
-	public ResponseEntity<Order> createOrder(Authentication authentication,
-											 @RequestParam(required = false) Long customerId,
-											 @RequestParam String assetName,
-											 @RequestParam OrderSide side,
-											 @RequestParam BigDecimal size,
-											 @RequestParam BigDecimal price) {
+	public CompletableFuture<ResponseEntity<OrderView>> createOrder(Authentication authentication,
+																	@RequestParam(required = false) Long customerId,
+																	@RequestParam String assetName,
+																	@RequestParam OrderSide side,
+																	@RequestParam BigDecimal size,
+																	@RequestParam BigDecimal price,
+																	@RequestHeader(value = IdempotencyStore.HEADER, required = false)
+																	String idempotencyKey) {
+		Long effectiveCustomerId = getEffectiveCustomerId(authentication, customerId);
+		return idempotencyStore.execute(effectiveCustomerId, "order", idempotencyKey,
+						IdempotencyStore.fingerprint(assetName, side, size, price), OrderView.class,
+						() -> orderPipeline.createOrder(effectiveCustomerId, assetName, side, size, price)
+								.thenApply(OrderView::of))
+				.thenApply(ResponseEntity::ok);
+	}
+
+	/**
+	 * Places up to {@value #MAX_BATCH_SIZE} orders in one call and returns a result per order, in request
+	 * order: the order's id, status and filled size if it was placed, otherwise why it was rejected. The batch
+	 * draws a token per order from the order-create rate budget, and is refused whole if that many are not left;
+	 * a batch larger than the burst costs a full bucket.
+	 */
+	@PostMapping("/batch")
+	public CompletableFuture<ResponseEntity<List<OrderResult>>> createOrders(Authentication authentication,
+																			 @RequestParam(required = false) Long customerId,
+																			 @RequestBody List<OrderRequest> orders) {
 		Long effectiveCustomerId = getEffectiveCustomerId(authentication, customerId);
-		Order order = orderService.createOrder(effectiveCustomerId, assetName, side, size, price);
-		return ResponseEntity.ok(order);
+		if (orders.size() > MAX_BATCH_SIZE) {
+			throw new IllegalStateException("A batch can hold at most " + MAX_BATCH_SIZE + " orders");
+		}
+		chargeOrders(authentication, orders.size());
+		return orderPipeline.createOrders(effectiveCustomerId, orders).thenApply(ResponseEntity::ok);
 	}
 
+	/**
+	 * Returns one page of order history. When the page is full, the {@value #NEXT_CURSOR_HEADER} header holds
+	 * the cursor to pass back for the next one.
+	 */
 	@GetMapping
-	public ResponseEntity<List<Order>> listOrders(Authentication authentication,
-												  @RequestParam(required = false) Long customerId,
-												  @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
-												  @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
+	public ResponseEntity<List<OrderView>> listOrders(Authentication authentication,
+													  @RequestParam(required = false) Long customerId,
+													  @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+													  @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+													  @RequestParam(required = false) OrderStatus status,
+													  @RequestParam(required = false) OrderSide side,
+													  @RequestParam(required = false) String assetName,
+													  @RequestParam(required = false) String cursor,
+													  @RequestParam(defaultValue = "100") int limit) {
 		Long effectiveCustomerId = getEffectiveCustomerId(authentication, customerId);
-		List<Order> orders = orderService.listOrders(effectiveCustomerId, startDate, endDate);
-		return ResponseEntity.ok(orders);
+		OrderQuery query = new OrderQuery(effectiveCustomerId, startDate, endDate, status, side, assetName);
+		int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+		List<OrderView> orders = orderService.listOrders(query, cursor == null ? null : OrderCursor.decode(cursor), pageSize);
+		ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+		if (orders.size() == pageSize) {
+			response.header(NEXT_CURSOR_HEADER, OrderCursor.after(orders.get(orders.size() - 1)).encode());
+		}
+		return response.body(orders);
+	}
+
+	/**
+	 * Streams the whole order history as newline-delimited JSON, one order per line, written as the rows come
+	 * off the database cursor.
+	 */
+	@GetMapping(produces = NDJSON)
+	public void streamOrders(Authentication authentication,
+							 @RequestParam(required = false) Long customerId,
+							 @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+							 @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+							 @RequestParam(required = false) OrderStatus status,
+							 @RequestParam(required = false) OrderSide side,
+							 @RequestParam(required = false) String assetName,
+							 HttpServletResponse response) throws IOException {
+		Long effectiveCustomerId = getEffectiveCustomerId(authentication, customerId);
+		OrderQuery query = new OrderQuery(effectiveCustomerId, startDate, endDate, status, side, assetName);
+		response.setContentType(NDJSON);
+		ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+		try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+			generator.setRootValueSeparator(null);
+			orderService.streamOrders(query, order -> {
+				try {
+					writer.writeValue(generator, order);
+					generator.writeRaw('\n');
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		}
 	}
 
 	@DeleteMapping("/{orderId}")
-	public ResponseEntity<Void> cancelOrder(Authentication authentication,
-											@PathVariable Long orderId,
-											@RequestParam(required = false) Long customerId) {
+	public CompletableFuture<ResponseEntity<Void>> cancelOrder(Authentication authentication,
+															   @PathVariable Long orderId,
+															   @RequestParam(required = false) Long customerId) {
+		Long effectiveCustomerId = getEffectiveCustomerId(authentication, customerId);
+		return orderPipeline.cancelOrder(effectiveCustomerId, orderId)
+				.thenApply(ignored -> ResponseEntity.ok().<Void>build());
+	}
+
+	/**
+	 * Cancels all of the customer's pending orders, optionally only those for one asset and one side.
+	 *
+	 * @return the number of orders canceled
+	 */
+	@DeleteMapping
+	public CompletableFuture<ResponseEntity<Integer>> cancelOrders(Authentication authentication,
+																   @RequestParam(required = false) Long customerId,
+																   @RequestParam(required = false) String assetName,
+																   @RequestParam(required = false) OrderSide side) {
 		Long effectiveCustomerId = getEffectiveCustomerId(authentication, customerId);
-		orderService.cancelOrder(effectiveCustomerId, orderId);
-		return ResponseEntity.ok().build();
+		return orderPipeline.cancelAll(effectiveCustomerId, assetName, side).thenApply(ResponseEntity::ok);
+	}
+
+	/**
+	 * Charges the authenticated customer's order-create budget for a batch; single orders are charged by the
+	 * {@link com.amirlatifi.broxage.ratelimit.RateLimitFilter RateLimitFilter} before their request is read.
+	 */
+	private void chargeOrders(Authentication authentication, int orders) {
+		if (!(authentication.getPrincipal() instanceof CustomerPrincipal)) {
+			return;
+		}
+		CustomerPrincipal principal = (CustomerPrincipal) authentication.getPrincipal();
+		long wait = rateLimiter.tryAcquire(principal.getCustomerId(), principal.getRole(), Budget.ORDER_CREATE,
+				Math.max(1, orders));
+		if (wait > 0) {
+			metrics.requestThrottled(Budget.ORDER_CREATE);
+			throw new RateLimitExceededException(wait);
+		}
 	}
 
 	private Long getEffectiveCustomerId(Authentication authentication, Long providedCustomerId) {
@@ -66,12 +210,12 @@ public class OrderController {
 			}
 			return providedCustomerId;
 		} else {
-			String username = authentication.getName();
-			Customer customer = customerService.findByUsername(username);
-			if (providedCustomerId != null && !providedCustomerId.equals(customer.getId())) {
+			// The authenticated principal is named after the customer id (see CustomerPrincipal)
+			Long customerId = Long.valueOf(authentication.getName());
+			if (providedCustomerId != null && !providedCustomerId.equals(customerId)) {
 				throw new IllegalArgumentException("Customers can only access their own orders");
 			}
-			return customer.getId();
+			return customerId;
 		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,31 @@
+package com.amirlatifi.broxage.events;
+
+import java.math.BigDecimal;
+
+/**
+ * A change to one of a customer's balances, as amounts added to (or, when negative, taken from) the size and
+ * the usable size of the asset.
+ */
+public class BalanceUpdate {
+	private final String assetName;
+	private final BigDecimal sizeDelta;
+	private final BigDecimal usableSizeDelta;
+
+	public BalanceUpdate(String assetName, BigDecimal sizeDelta, BigDecimal usableSizeDelta) {
+		this.assetName = assetName;
+		this.sizeDelta = sizeDelta;
+		this.usableSizeDelta = usableSizeDelta;
+	}
+
+	public String getAssetName() {
+		return assetName;
+	}
+
+	public BigDecimal getSizeDelta() {
+		return sizeDelta;
+	}
+
+	public BigDecimal getUsableSizeDelta() {
+		return usableSizeDelta;
+	}
+}
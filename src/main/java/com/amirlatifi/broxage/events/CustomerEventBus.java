@@ -0,0 +1,82 @@
+package com.amirlatifi.broxage.events;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Pushes order and balance changes to the server-sent event streams customers have open, through an
+ * {@link EventFanOut} keyed by customer id, so publishing never blocks and subscribers that fall behind or stop
+ * reading are dropped.
+ * <p>
+ * Events published inside a transaction are held back until it commits and discarded if it rolls back, so
+ * subscribers never see a change that did not happen.
+ */
+@Component
+public class CustomerEventBus implements DisposableBean {
+
+	public static final String ORDER = "order";
+	public static final String BALANCE = "balance";
+
+	private final EventFanOut<Long> fanOut;
+
+	public CustomerEventBus(@Value("${events.buffer-size:256}") int bufferSize,
+							@Value("${events.timeout-ms:1800000}") long timeoutMs,
+							@Value("${events.dispatch-threads:4}") int dispatchThreads,
+							@Value("${events.write-timeout-ms:5000}") long writeTimeoutMs) {
+		this.fanOut = new EventFanOut<>("event", bufferSize, timeoutMs, dispatchThreads, writeTimeoutMs);
+	}
+
+	public SseEmitter subscribe(Long customerId) {
+		return fanOut.subscribe(customerId);
+	}
+
+	void subscribe(Long customerId, SseEmitter emitter) {
+		fanOut.subscribe(customerId, emitter);
+	}
+
+	/**
+	 * Lets callers skip building an event nobody would receive.
+	 */
+	public boolean hasSubscribers(Long customerId) {
+		return fanOut.hasSubscribers(customerId);
+	}
+
+	/**
+	 * @param name {@link #ORDER} or {@link #BALANCE}; the event's data is sent as JSON
+	 */
+	public void publish(Long customerId, String name, Object data) {
+		if (!hasSubscribers(customerId)) {
+			return;
+		}
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					fanOut.publish(customerId, name, data);
+				}
+			});
+		} else {
+			fanOut.publish(customerId, name, data);
+		}
+	}
+
+	/**
+	 * The number of subscribers dropped so far for not keeping up.
+	 */
+	public long getDroppedCount() {
+		return fanOut.getDroppedCount();
+	}
+
+	public int getSubscriberCount() {
+		return fanOut.getSubscriberCount();
+	}
+
+	@Override
+	public void destroy() throws InterruptedException {
+		fanOut.shutdown();
+	}
+}
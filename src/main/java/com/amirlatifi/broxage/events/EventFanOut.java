@@ -0,0 +1,257 @@
+package com.amirlatifi.broxage.events;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fans events out to the server-sent event streams subscribed to a key. Publishing never blocks: an event is
+ * only offered to each of the key's subscriptions, whose buffers are bounded, and a small pool of dispatch
+ * threads writes them out, each subscription being drained by at most one thread at a time. A subscriber whose
+ * buffer is full has fallen too far behind and is dropped; it can reconnect and reload what it missed.
+ * <p>
+ * Sends are blocking servlet writes, so a client that stays connected but stops reading would hold a dispatch
+ * thread for as long as the container lets the write hang. A watchdog drops a subscriber whose send has taken
+ * longer than the write timeout and adds a thread to the pool for as long as that send stays stuck, so stalled
+ * clients never take delivery away from the others.
+ */
+public class EventFanOut<K> {
+
+	private static final int MAX_EVENTS_PER_DRAIN = 64;
+	private static final long IDLE = 0;
+	private static final long STALLED = -1;
+
+	private final int bufferSize;
+	private final long timeoutMs;
+	private final long writeTimeoutNanos;
+	private final ThreadPoolExecutor dispatcher;
+	private final ScheduledExecutorService watchdog;
+	private final ConcurrentMap<K, List<Subscription<K>>> subscriptions = new ConcurrentHashMap<>();
+	private final Set<Subscription<K>> draining = ConcurrentHashMap.newKeySet();
+	private final AtomicLong dropped = new AtomicLong();
+
+	public EventFanOut(String name, int bufferSize, long timeoutMs, int dispatchThreads, long writeTimeoutMs) {
+		this.bufferSize = bufferSize;
+		this.timeoutMs = timeoutMs;
+		this.writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(writeTimeoutMs);
+		AtomicInteger threadCount = new AtomicInteger();
+		this.dispatcher = new ThreadPoolExecutor(dispatchThreads, dispatchThreads, 0L, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<>(),
+				runnable -> {
+					Thread thread = new Thread(runnable, name + "-dispatch-" + threadCount.getAndIncrement());
+					thread.setDaemon(true);
+					return thread;
+				});
+		this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, name + "-watchdog");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long period = Math.max(1, writeTimeoutMs / 4);
+		watchdog.scheduleWithFixedDelay(this::evictStalled, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Opens a stream of the key's events. It ends when the client disconnects, after the timeout, or when the
+	 * subscriber is dropped for being too slow.
+	 */
+	public SseEmitter subscribe(K key) {
+		SseEmitter emitter = new SseEmitter(timeoutMs);
+		subscribe(key, emitter);
+		return emitter;
+	}
+
+	void subscribe(K key, SseEmitter emitter) {
+		Subscription<K> subscription = new Subscription<>(key, emitter, bufferSize);
+		subscriptions.compute(key, (id, list) -> {
+			List<Subscription<K>> updated = list != null ? list : new CopyOnWriteArrayList<>();
+			updated.add(subscription);
+			return updated;
+		});
+		emitter.onCompletion(() -> unsubscribe(subscription));
+		emitter.onError(error -> unsubscribe(subscription));
+	}
+
+	/**
+	 * Lets callers skip building an event nobody would receive.
+	 */
+	public boolean hasSubscribers(K key) {
+		return subscriptions.containsKey(key);
+	}
+
+	/**
+	 * Queues the event for every subscriber of the key; its data is sent as JSON.
+	 */
+	public void publish(K key, String name, Object data) {
+		List<Subscription<K>> list = subscriptions.get(key);
+		if (list == null) {
+			return;
+		}
+		Event event = new Event(name, data);
+		for (Subscription<K> subscription : list) {
+			if (!subscription.buffer.offer(event)) {
+				evict(subscription);
+			}
+			schedule(subscription);
+		}
+	}
+
+	/**
+	 * The number of subscribers dropped so far for not keeping up.
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	public int getSubscriberCount() {
+		int count = 0;
+		for (List<Subscription<K>> list : subscriptions.values()) {
+			count += list.size();
+		}
+		return count;
+	}
+
+	public void shutdown() throws InterruptedException {
+		watchdog.shutdownNow();
+		dispatcher.shutdown();
+		dispatcher.awaitTermination(10, TimeUnit.SECONDS);
+	}
+
+	private void schedule(Subscription<K> subscription) {
+		if (subscription.scheduled.compareAndSet(false, true)) {
+			dispatcher.execute(() -> drain(subscription));
+		}
+	}
+
+	/**
+	 * Writes out a bounded number of buffered events, so one busy subscriber cannot hold a dispatch thread for
+	 * long, and reschedules itself if more arrived meanwhile. A dropped subscriber's stream is completed here,
+	 * by the one thread that may be sending on it, since completing waits for a send in progress.
+	 */
+	private void drain(Subscription<K> subscription) {
+		draining.add(subscription);
+		try {
+			for (int i = 0; i < MAX_EVENTS_PER_DRAIN && !subscription.evicted.get(); i++) {
+				Event event = subscription.buffer.poll();
+				if (event == null) {
+					break;
+				}
+				send(subscription, event);
+			}
+			if (subscription.evicted.get()) {
+				subscription.emitter.complete();
+				return;
+			}
+		} catch (IOException | IllegalStateException e) {
+			// The client went away or the stream was already completed
+			unsubscribe(subscription);
+			return;
+		} finally {
+			draining.remove(subscription);
+		}
+		subscription.scheduled.set(false);
+		if (subscription.evicted.get() || !subscription.buffer.isEmpty()) {
+			schedule(subscription);
+		}
+	}
+
+	private void send(Subscription<K> subscription, Event event) throws IOException {
+		long started = System.nanoTime();
+		// Nudged off the two markers, which a clock reading is otherwise free to hit
+		subscription.sendStarted.set(started == IDLE || started == STALLED ? started + 2 : started);
+		try {
+			subscription.emitter.send(SseEmitter.event().name(event.name).data(event.data,
+					MediaType.APPLICATION_JSON));
+		} finally {
+			if (subscription.sendStarted.getAndSet(IDLE) == STALLED) {
+				resizeDispatcher(-1);
+			}
+		}
+	}
+
+	/**
+	 * Drops every subscriber whose send has run past the write timeout, and stands in a new dispatch thread for
+	 * each thread stuck in such a send until the send returns.
+	 */
+	private void evictStalled() {
+		long now = System.nanoTime();
+		for (Subscription<K> subscription : draining) {
+			long started = subscription.sendStarted.get();
+			if (started != IDLE && started != STALLED && now - started > writeTimeoutNanos
+					&& subscription.sendStarted.compareAndSet(started, STALLED)) {
+				evict(subscription);
+				resizeDispatcher(1);
+			}
+		}
+	}
+
+	private synchronized void resizeDispatcher(int delta) {
+		int size = dispatcher.getCorePoolSize() + delta;
+		if (delta > 0) {
+			dispatcher.setMaximumPoolSize(size);
+			dispatcher.setCorePoolSize(size);
+		} else {
+			dispatcher.setCorePoolSize(size);
+			dispatcher.setMaximumPoolSize(size);
+		}
+	}
+
+	private void evict(Subscription<K> subscription) {
+		if (subscription.evicted.compareAndSet(false, true)) {
+			dropped.incrementAndGet();
+			unsubscribe(subscription);
+		}
+	}
+
+	private void unsubscribe(Subscription<K> subscription) {
+		subscriptions.computeIfPresent(subscription.key, (id, list) -> {
+			list.remove(subscription);
+			return list.isEmpty() ? null : list;
+		});
+		subscription.buffer.clear();
+	}
+
+	private static final class Event {
+		private final String name;
+		private final Object data;
+
+		private Event(String name, Object data) {
+			this.name = name;
+			this.data = data;
+		}
+	}
+
+	private static final class Subscription<K> {
+		private final K key;
+		private final SseEmitter emitter;
+		private final ArrayBlockingQueue<Event> buffer;
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+		/**
+		 * When the send in progress started, {@link #IDLE} between sends, or {@link #STALLED} once the watchdog
+		 * has taken it over.
+		 */
+		private final AtomicLong sendStarted = new AtomicLong(IDLE);
+		private final AtomicBoolean evicted = new AtomicBoolean();
+
+		private Subscription(K key, SseEmitter emitter, int bufferSize) {
+			this.key = key;
+			this.emitter = emitter;
+			this.buffer = new ArrayBlockingQueue<>(bufferSize);
+		}
+	}
+}
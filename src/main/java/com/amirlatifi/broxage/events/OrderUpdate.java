@@ -0,0 +1,59 @@
+package com.amirlatifi.broxage.events;
+
+import com.amirlatifi.broxage.model.Order;
+import com.amirlatifi.broxage.model.OrderSide;
+import com.amirlatifi.broxage.model.OrderStatus;
+
+import java.math.BigDecimal;
+
+/**
+ * An order's state after it was placed, filled or canceled. It is copied out of the entity when published, as
+ * the event is written out later on another thread.
+ */
+public class OrderUpdate {
+	private final Long orderId;
+	private final String assetName;
+	private final OrderSide side;
+	private final BigDecimal price;
+	private final OrderStatus status;
+	private final BigDecimal remainingSize;
+
+	public OrderUpdate(Long orderId, String assetName, OrderSide side, BigDecimal price, OrderStatus status,
+					   BigDecimal remainingSize) {
+		this.orderId = orderId;
+		this.assetName = assetName;
+		this.side = side;
+		this.price = price;
+		this.status = status;
+		this.remainingSize = remainingSize;
+	}
+
+	public static OrderUpdate of(Order order) {
+		return new OrderUpdate(order.getId(), order.getAssetName(), order.getOrderSide(), order.getPrice(),
+				order.getStatus(), order.getRemainingSize());
+	}
+
+	public Long getOrderId() {
+		return orderId;
+	}
+
+	public String getAssetName() {
+		return assetName;
+	}
+
+	public OrderSide getSide() {
+		return side;
+	}
+
+	public BigDecimal getPrice() {
+		return price;
+	}
+
+	public OrderStatus getStatus() {
+		return status;
+	}
+
+	public BigDecimal getRemainingSize() {
+		return remainingSize;
+	}
+}
@@ -2,7 +2,7 @@ package com.amirlatifi.broxage.exception;
 
 import java.util.Date;
 
-class ErrorDetails {
+public class ErrorDetails {
 	private final Date timestamp;
 	private final String message;
 	private final String details;
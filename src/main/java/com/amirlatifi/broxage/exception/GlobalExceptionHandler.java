@@ -1,12 +1,17 @@
 package com.amirlatifi.broxage.exception;
 
+import com.amirlatifi.broxage.ratelimit.RateLimitExceededException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.AuthenticationException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.context.request.WebRequest;
 
 import java.util.Date;
+import java.util.concurrent.RejectedExecutionException;
 
 @ControllerAdvice
 public class GlobalExceptionHandler {
@@ -23,6 +28,38 @@ public class GlobalExceptionHandler {
 		return new ResponseEntity<>(errorDetails, HttpStatus.BAD_REQUEST);
 	}
 
+	@ExceptionHandler(IllegalArgumentException.class)
+	public ResponseEntity<?> illegalArgumentException(IllegalArgumentException ex, WebRequest request) {
+		ErrorDetails errorDetails = new ErrorDetails(new Date(), ex.getMessage(), request.getDescription(false));
+		return new ResponseEntity<>(errorDetails, HttpStatus.BAD_REQUEST);
+	}
+
+	@ExceptionHandler(AccessDeniedException.class)
+	public ResponseEntity<?> accessDeniedException(AccessDeniedException ex, WebRequest request) {
+		ErrorDetails errorDetails = new ErrorDetails(new Date(), ex.getMessage(), request.getDescription(false));
+		return new ResponseEntity<>(errorDetails, HttpStatus.FORBIDDEN);
+	}
+
+	@ExceptionHandler(AuthenticationException.class)
+	public ResponseEntity<?> authenticationException(AuthenticationException ex, WebRequest request) {
+		ErrorDetails errorDetails = new ErrorDetails(new Date(), ex.getMessage(), request.getDescription(false));
+		return new ResponseEntity<>(errorDetails, HttpStatus.UNAUTHORIZED);
+	}
+
+	@ExceptionHandler(RateLimitExceededException.class)
+	public ResponseEntity<?> rateLimitExceededException(RateLimitExceededException ex, WebRequest request) {
+		ErrorDetails errorDetails = new ErrorDetails(new Date(), ex.getMessage(), request.getDescription(false));
+		return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+				.header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+				.body(errorDetails);
+	}
+
+	@ExceptionHandler(RejectedExecutionException.class)
+	public ResponseEntity<?> rejectedExecutionException(RejectedExecutionException ex, WebRequest request) {
+		ErrorDetails errorDetails = new ErrorDetails(new Date(), "Server is busy, retry later", request.getDescription(false));
+		return new ResponseEntity<>(errorDetails, HttpStatus.SERVICE_UNAVAILABLE);
+	}
+
 	@ExceptionHandler(Exception.class)
 	public ResponseEntity<?> globleExcpetionHandler(Exception ex, WebRequest request) {
 		ErrorDetails errorDetails = new ErrorDetails(new Date(), ex.getMessage(), request.getDescription(false));
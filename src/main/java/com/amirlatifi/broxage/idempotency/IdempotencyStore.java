@@ -0,0 +1,306 @@
+package com.amirlatifi.broxage.idempotency;
+
+import com.amirlatifi.broxage.model.IdempotencyRecord;
+import com.amirlatifi.broxage.repository.IdempotencyRecordRepository;
+import com.amirlatifi.broxage.util.Futures;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Executes a mutation at most once per {@value #HEADER}. The first request with a key runs; any other request
+ * with the same key, whether it arrives while the first is still running or later within the window
+ * ({@code idempotency.window-ms}), gets the first one's result instead. Keys are scoped by customer and kind of
+ * request, and a key reused with different parameters is refused. Only successful results are kept: a
+ * failed request changed nothing, so its key is released and a retry runs again.
+ * <p>
+ * Lookups go to a concurrent hash map, whose per-bin locking keeps requests with different keys from
+ * contending, and hold no lock while the request runs: duplicates wait on the first request's future. The map
+ * holds at most {@code idempotency.max-size} keys, evicting like the JWT cache when full. Results are also
+ * written behind to the {@link IdempotencyRecord} table, in batches, and reloaded on startup; the table is only
+ * read on a miss while some key still inside the window is known only to it, after an eviction or a partial
+ * reload.
+ */
+@Component
+public class IdempotencyStore {
+
+	public static final String HEADER = "Idempotency-Key";
+	static final int MAX_KEY_LENGTH = 128;
+
+	private static final Logger log = LoggerFactory.getLogger(IdempotencyStore.class);
+	private static final int BATCH_SIZE = 500;
+
+	private final IdempotencyRecordRepository repository;
+	private final ObjectMapper objectMapper;
+	private final TransactionTemplate transactionTemplate;
+	private final long windowMs;
+	private final int maxSize;
+	private final LongSupplier clock;
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+	private final Queue<Entry> unsaved = new ConcurrentLinkedQueue<>();
+	/**
+	 * Until when keys evicted from, or never loaded into, the map may still be replayed from the table.
+	 */
+	private volatile long storeOnlyUntil;
+
+	@Autowired
+	public IdempotencyStore(IdempotencyRecordRepository repository, ObjectMapper objectMapper,
+							PlatformTransactionManager transactionManager,
+							@Value("${idempotency.window-ms:86400000}") long windowMs,
+							@Value("${idempotency.max-size:100000}") int maxSize) {
+		this(repository, objectMapper, transactionManager, windowMs, maxSize, System::currentTimeMillis);
+	}
+
+	IdempotencyStore(IdempotencyRecordRepository repository, ObjectMapper objectMapper,
+					 PlatformTransactionManager transactionManager, long windowMs, int maxSize, LongSupplier clock) {
+		this.repository = repository;
+		this.objectMapper = objectMapper;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.windowMs = windowMs;
+		this.maxSize = maxSize;
+		this.clock = clock;
+	}
+
+	/**
+	 * Runs {@code action} unless a request with the same key already did, in which case its result is returned.
+	 * Without a key, {@code action} simply runs. The result is kept and replayed as it was when the first request
+	 * completed, and written to the table later, so it has to be an immutable value (a view, not an entity that
+	 * goes on changing) for a retry to get the response that was first sent.
+	 *
+	 * @param operation   the kind of request, e.g. {@code order}
+	 * @param fingerprint the request's parameters, as built by {@link #fingerprint}, compared when a key is reused
+	 * @param type        the result's type, to read a result reloaded from the table back
+	 * @throws IllegalStateException if the key is too long or was used for a different request
+	 */
+	public <T> CompletableFuture<T> execute(Long customerId, String operation, String key, String fingerprint,
+											Class<T> type, Supplier<CompletableFuture<T>> action) {
+		if (key == null) {
+			return action.get();
+		}
+		if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+			throw new IllegalStateException(HEADER + " must be 1 to " + MAX_KEY_LENGTH + " characters");
+		}
+		String id = customerId + ":" + operation + ":" + key;
+		long now = clock.getAsLong();
+		Entry entry = new Entry(id, fingerprint);
+		Entry existing;
+		while ((existing = entries.putIfAbsent(id, entry)) != null) {
+			if (existing.expiresAt > now) {
+				return replay(existing, fingerprint, type);
+			}
+			entries.remove(id, existing);
+		}
+		if (entries.size() > maxSize) {
+			evict(now);
+		}
+		if (now < storeOnlyUntil) {
+			IdempotencyRecord record = repository.findById(id).orElse(null);
+			if (record != null && record.getExpiresAt() > now) {
+				entry.expiresAt = record.getExpiresAt();
+				entry.result.complete(new StoredBody(record.getResponseBody()));
+				entry.fingerprint = record.getFingerprint();
+				return replay(entry, fingerprint, type);
+			}
+		}
+
+		CompletableFuture<T> result;
+		try {
+			result = action.get();
+		} catch (RuntimeException e) {
+			result = CompletableFuture.failedFuture(e);
+		}
+		return result.whenComplete((value, failure) -> {
+			if (failure != null) {
+				entries.remove(id, entry);
+				entry.result.completeExceptionally(failure);
+			} else {
+				entry.expiresAt = clock.getAsLong() + windowMs;
+				entry.result.complete(value);
+				unsaved.add(entry);
+			}
+		});
+	}
+
+	/**
+	 * {@link #execute} for a request that runs on the caller's thread.
+	 */
+	public <T> T call(Long customerId, String operation, String key, String fingerprint, Class<T> type,
+					  Supplier<T> action) {
+		return Futures.join(execute(customerId, operation, key, fingerprint, type,
+				() -> CompletableFuture.completedFuture(action.get())));
+	}
+
+	/**
+	 * Joins a request's parameters into a fingerprint. Amounts are written without trailing zeros, so
+	 * {@code 1} and {@code 1.0} make the same request.
+	 */
+	public static String fingerprint(Object... parameters) {
+		StringBuilder fingerprint = new StringBuilder();
+		for (Object parameter : parameters) {
+			if (fingerprint.length() > 0) {
+				fingerprint.append(' ');
+			}
+			fingerprint.append(parameter instanceof BigDecimal
+					? ((BigDecimal) parameter).stripTrailingZeros().toPlainString() : parameter);
+		}
+		return fingerprint.toString();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Writes the results kept since the last flush to the table, one transaction per batch.
+	 */
+	@Scheduled(fixedDelayString = "${idempotency.flush.interval-ms:200}")
+	@PreDestroy
+	public synchronized void flush() {
+		List<Entry> batch = new ArrayList<>();
+		while (true) {
+			Entry entry;
+			while (batch.size() < BATCH_SIZE && (entry = unsaved.poll()) != null) {
+				batch.add(entry);
+			}
+			if (batch.isEmpty()) {
+				return;
+			}
+			List<IdempotencyRecord> records = new ArrayList<>(batch.size());
+			for (Entry saved : batch) {
+				try {
+					records.add(new IdempotencyRecord(saved.id, saved.fingerprint, write(saved.result.getNow(null)),
+							saved.expiresAt));
+				} catch (UncheckedIOException e) {
+					// Retrying would not help; the key is still replayed from the map
+					log.warn("Failed to serialize the result for idempotency key {}", saved.id, e);
+				}
+			}
+			try {
+				transactionTemplate.execute(status -> repository.saveAll(records));
+			} catch (RuntimeException e) {
+				log.warn("Failed to save {} idempotency keys, will retry", batch.size(), e);
+				unsaved.addAll(batch);
+				return;
+			}
+			batch.clear();
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${idempotency.purge.interval-ms:60000}")
+	public void purgeExpired() {
+		long now = clock.getAsLong();
+		entries.values().removeIf(entry -> entry.expiresAt <= now);
+		repository.deleteExpired(now);
+	}
+
+	/**
+	 * Reloads the newest keys still inside the window, as many as the map holds.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void load() {
+		long now = clock.getAsLong();
+		List<IdempotencyRecord> records = repository.findByExpiresAtGreaterThanOrderByExpiresAtDesc(now,
+				PageRequest.of(0, maxSize + 1));
+		for (int i = 0; i < records.size(); i++) {
+			IdempotencyRecord record = records.get(i);
+			if (i == maxSize) {
+				storeOnlyUntil = Math.max(storeOnlyUntil, record.getExpiresAt());
+				break;
+			}
+			Entry entry = new Entry(record.getId(), record.getFingerprint());
+			entry.expiresAt = record.getExpiresAt();
+			entry.result.complete(new StoredBody(record.getResponseBody()));
+			entries.putIfAbsent(record.getId(), entry);
+		}
+	}
+
+	private <T> CompletableFuture<T> replay(Entry entry, String fingerprint, Class<T> type) {
+		if (!entry.fingerprint.equals(fingerprint)) {
+			throw new IllegalStateException(HEADER + " was already used for a different request");
+		}
+		return entry.result.thenApply(value -> value instanceof StoredBody
+				? read(((StoredBody) value).json, type) : type.cast(value));
+	}
+
+	/**
+	 * Drops expired keys first and, if that is not enough, an arbitrary tenth of the completed ones, which are
+	 * then replayed from the table until they expire. Keys still in flight are kept.
+	 */
+	private void evict(long now) {
+		entries.values().removeIf(entry -> entry.expiresAt <= now);
+		int excess = entries.size() - maxSize + Math.max(1, maxSize / 10);
+		long evictedUntil = storeOnlyUntil;
+		for (Iterator<Entry> it = entries.values().iterator(); excess > 0 && it.hasNext(); ) {
+			Entry entry = it.next();
+			if (entry.result.isDone()) {
+				evictedUntil = Math.max(evictedUntil, entry.expiresAt);
+				it.remove();
+				excess--;
+			}
+		}
+		storeOnlyUntil = evictedUntil;
+	}
+
+	private String write(Object value) {
+		try {
+			return objectMapper.writeValueAsString(value);
+		} catch (JsonProcessingException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private <T> T read(String json, Class<T> type) {
+		try {
+			return objectMapper.readValue(json, type);
+		} catch (JsonProcessingException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static final class Entry {
+		private final String id;
+		private final CompletableFuture<Object> result = new CompletableFuture<>();
+		private volatile String fingerprint;
+		private volatile long expiresAt = Long.MAX_VALUE;
+
+		Entry(String id, String fingerprint) {
+			this.id = id;
+			this.fingerprint = fingerprint;
+		}
+	}
+
+	/**
+	 * A result reloaded from the table, read back into the caller's type on replay.
+	 */
+	private static final class StoredBody {
+		private final String json;
+
+		StoredBody(String json) {
+			this.json = json;
+		}
+	}
+}
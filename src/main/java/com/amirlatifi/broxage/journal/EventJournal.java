@@ -0,0 +1,505 @@
+package com.amirlatifi.broxage.journal;
+
+import com.amirlatifi.broxage.model.Order;
+import com.amirlatifi.broxage.model.OrderSide;
+import com.amirlatifi.broxage.model.OrderStatus;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of balance changes and, in event-sourced mode, order lifecycle events. The log is a series
+ * of fixed-size, memory-mapped segment files named after the first sequence number they hold; each record is
+ * written as {@code [length][crc32][type][seq][payload]} so a torn write at the tail is detected and cut off
+ * when the journal is opened.
+ * <p>
+ * {@link #sync} implements group commit: the first caller to arrive forces everything appended so far to
+ * disk, and callers whose records were covered by that force return without issuing their own.
+ * <p>
+ * In the default {@code jpa} persistence mode the database is the system of record and the journal is
+ * emptied once the {@code LedgerFlusher} has written everything to it. In {@code event-sourced} mode the
+ * journal is the system of record: it only shrinks when the {@link Snapshotter} has captured everything in
+ * the oldest segments. An empty path disables the journal altogether.
+ */
+@Component
+public class EventJournal implements DisposableBean {
+
+	public static final String JPA = "jpa";
+	public static final String EVENT_SOURCED = "event-sourced";
+
+	static final byte BALANCE = 1;
+	static final byte ORDER_PLACED = 2;
+	static final byte ORDER_FILLED = 3;
+	static final byte ORDER_CANCELED = 4;
+
+	private static final int HEADER_LENGTH = 8;
+	private static final int MAX_RECORD_LENGTH = 64 * 1024;
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".log";
+
+	private final Path directory;
+	private final boolean eventSourced;
+	private final boolean fsync;
+	private final int segmentSize;
+	private final Object syncLock = new Object();
+	private final ByteBuffer record = ByteBuffer.allocate(MAX_RECORD_LENGTH);
+	private final CRC32 crc = new CRC32();
+	private final NavigableMap<Long, Path> segments = new TreeMap<>();
+	private final Map<ByteBuffer, String> assetNames = new HashMap<>();
+
+	private MappedByteBuffer current;
+	private long lastSeq;
+	private volatile long durableSeq;
+
+	public EventJournal(@Value("${journal.path:}") String path,
+						@Value("${persistence.mode:" + JPA + "}") String mode,
+						@Value("${journal.fsync:true}") boolean fsync,
+						@Value("${journal.segment-size:67108864}") int segmentSize) throws IOException {
+		if (!JPA.equals(mode) && !EVENT_SOURCED.equals(mode)) {
+			throw new IllegalArgumentException("Unknown persistence mode: " + mode);
+		}
+		if (segmentSize < MAX_RECORD_LENGTH) {
+			throw new IllegalArgumentException("Journal segments must hold at least " + MAX_RECORD_LENGTH + " bytes");
+		}
+		this.eventSourced = EVENT_SOURCED.equals(mode);
+		this.fsync = fsync;
+		this.segmentSize = segmentSize;
+		if (path.isEmpty()) {
+			if (eventSourced) {
+				throw new IllegalArgumentException("Event-sourced persistence needs a journal path");
+			}
+			this.directory = null;
+			return;
+		}
+		this.directory = Paths.get(path);
+		Files.createDirectories(directory);
+		open();
+	}
+
+	public boolean isEnabled() {
+		return directory != null;
+	}
+
+	public boolean isEventSourced() {
+		return eventSourced;
+	}
+
+	Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Records a balance change, with deltas given as a count of units at {@code scale} decimal places.
+	 */
+	public synchronized long appendBalance(long customerId, String assetName, long sizeDelta, long usableDelta,
+										   int scale) {
+		ByteBuffer buffer = begin(BALANCE);
+		buffer.putLong(customerId);
+		putString(buffer, assetName);
+		putUnits(buffer, sizeDelta, scale);
+		putUnits(buffer, usableDelta, scale);
+		return commit();
+	}
+
+	public synchronized long appendOrderPlaced(Order order) {
+		ByteBuffer buffer = begin(ORDER_PLACED);
+		putOrder(buffer, order);
+		return commit();
+	}
+
+	public synchronized long appendOrderFilled(long orderId, BigDecimal size) {
+		ByteBuffer buffer = begin(ORDER_FILLED);
+		buffer.putLong(orderId);
+		putDecimal(buffer, size);
+		return commit();
+	}
+
+	public synchronized long appendOrderCanceled(long orderId) {
+		ByteBuffer buffer = begin(ORDER_CANCELED);
+		buffer.putLong(orderId);
+		return commit();
+	}
+
+	/**
+	 * Blocks until the record with the given sequence number is on disk.
+	 */
+	public void sync(long seq) {
+		if (directory == null || !fsync || durableSeq >= seq) {
+			return;
+		}
+		synchronized (syncLock) {
+			if (durableSeq >= seq) {
+				return;
+			}
+			long target;
+			MappedByteBuffer segment;
+			synchronized (this) {
+				target = lastSeq;
+				segment = current;
+			}
+			segment.force();
+			durableSeq = target;
+		}
+	}
+
+	public synchronized long lastSeq() {
+		return lastSeq;
+	}
+
+	/**
+	 * The sequence number the oldest record still in the journal follows; records up to it were truncated or
+	 * deleted and can no longer be replayed.
+	 */
+	public synchronized long baseSeq() {
+		return segments.isEmpty() ? lastSeq : segments.firstKey() - 1;
+	}
+
+	/**
+	 * Makes sure sequence numbers handed out from now on are greater than {@code seq}.
+	 */
+	public synchronized void advanceTo(long seq) {
+		lastSeq = Math.max(lastSeq, seq);
+	}
+
+	/**
+	 * Delivers every record with a sequence number greater than {@code afterSeq}, oldest first.
+	 */
+	public synchronized void replay(long afterSeq, JournalListener listener) {
+		if (directory == null) {
+			return;
+		}
+		List<Map.Entry<Long, Path>> files = new ArrayList<>(segments.entrySet());
+		for (int i = 0; i < files.size(); i++) {
+			boolean last = i == files.size() - 1;
+			if (!last && files.get(i + 1).getKey() <= afterSeq + 1) {
+				continue;
+			}
+			ByteBuffer buffer = last ? current.duplicate().flip() : map(files.get(i).getValue(), FileChannel.MapMode.READ_ONLY);
+			while (buffer.hasRemaining()) {
+				int length = validRecordLength(buffer);
+				if (length == 0) {
+					break;
+				}
+				if (length < 0) {
+					throw new IllegalStateException("Journal segment " + files.get(i).getValue() + " is corrupt");
+				}
+				ByteBuffer body = buffer.slice().limit(HEADER_LENGTH + length).position(HEADER_LENGTH);
+				buffer.position(buffer.position() + HEADER_LENGTH + length);
+				dispatch(body, afterSeq, listener);
+			}
+		}
+	}
+
+	/**
+	 * Empties the journal if nothing was appended after {@code seq}. Only used in {@code jpa} mode, once every
+	 * change up to {@code seq} is safely in the database.
+	 */
+	public synchronized boolean truncateIfUnchanged(long seq) {
+		if (directory == null || eventSourced || lastSeq != seq) {
+			return false;
+		}
+		if (segments.size() > 1 || current.position() > 0) {
+			deleteSegments(Long.MAX_VALUE);
+			startSegment(seq + 1);
+		}
+		return true;
+	}
+
+	/**
+	 * Deletes every segment whose records all have sequence numbers up to {@code seq}, typically because a
+	 * snapshot taken at {@code seq} already covers them. The segment being written is always kept.
+	 */
+	public synchronized void deleteSegmentsThrough(long seq) {
+		if (directory == null) {
+			return;
+		}
+		Long firstKept = segments.floorKey(seq + 1);
+		if (firstKept != null) {
+			deleteSegments(firstKept);
+		}
+	}
+
+	@Override
+	public synchronized void destroy() {
+		if (current != null && fsync) {
+			current.force();
+		}
+	}
+
+	private void open() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			files.forEach(file -> {
+				String name = file.getFileName().toString();
+				if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+					segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+							name.length() - SEGMENT_SUFFIX.length())), file);
+				}
+			});
+		}
+		if (segments.isEmpty()) {
+			startSegment(1);
+			return;
+		}
+		Map.Entry<Long, Path> newest = segments.lastEntry();
+		current = map(newest.getValue(), FileChannel.MapMode.READ_WRITE);
+		lastSeq = newest.getKey() - 1;
+		while (current.hasRemaining()) {
+			int length = validRecordLength(current);
+			if (length <= 0) {
+				break;
+			}
+			lastSeq = current.getLong(current.position() + HEADER_LENGTH + 1);
+			current.position(current.position() + HEADER_LENGTH + length);
+		}
+		wipeTornTail();
+		durableSeq = lastSeq;
+	}
+
+	/**
+	 * Zeroes whatever follows the last intact record, so a torn record is never mistaken for data once
+	 * appends overwrite part of it.
+	 */
+	private void wipeTornTail() {
+		for (int i = current.position(); i < current.limit(); i++) {
+			if (current.get(i) != 0) {
+				for (int j = i; j < current.limit(); j++) {
+					current.put(j, (byte) 0);
+				}
+				return;
+			}
+		}
+	}
+
+	private ByteBuffer begin(byte type) {
+		record.clear();
+		record.position(HEADER_LENGTH);
+		record.put(type);
+		record.putLong(0);
+		return record;
+	}
+
+	private long commit() {
+		long seq = ++lastSeq;
+		if (directory == null) {
+			return seq;
+		}
+		int length = record.position() - HEADER_LENGTH;
+		record.putLong(HEADER_LENGTH + 1, seq);
+		crc.reset();
+		crc.update(record.array(), HEADER_LENGTH, length);
+		record.putInt(0, length);
+		record.putInt(4, (int) crc.getValue());
+		record.flip();
+		if (current.remaining() < record.remaining()) {
+			if (fsync) {
+				current.force();
+			}
+			startSegment(seq);
+		}
+		current.put(record);
+		return seq;
+	}
+
+	/**
+	 * Returns the length of the record at the buffer's position, 0 at the end of the data, or -1 if the record
+	 * is torn or fails its checksum. Leaves the position unchanged.
+	 */
+	private int validRecordLength(ByteBuffer buffer) {
+		int position = buffer.position();
+		if (buffer.remaining() < HEADER_LENGTH) {
+			return 0;
+		}
+		int length = buffer.getInt(position);
+		if (length == 0) {
+			return 0;
+		}
+		if (length < 0 || length > MAX_RECORD_LENGTH || length > buffer.remaining() - HEADER_LENGTH) {
+			return -1;
+		}
+		crc.reset();
+		crc.update(buffer.duplicate().position(position + HEADER_LENGTH).limit(position + HEADER_LENGTH + length));
+		return (int) crc.getValue() == buffer.getInt(position + 4) ? length : -1;
+	}
+
+	private void dispatch(ByteBuffer body, long afterSeq, JournalListener listener) {
+		byte type = body.get();
+		long seq = body.getLong();
+		if (seq <= afterSeq) {
+			return;
+		}
+		switch (type) {
+			case BALANCE:
+				listener.onBalance(seq, body.getLong(), getAssetName(body), getDecimal(body), getDecimal(body), false);
+				break;
+			case ORDER_PLACED:
+				listener.onOrderPlaced(seq, getOrder(body));
+				break;
+			case ORDER_FILLED:
+				listener.onOrderFilled(seq, body.getLong(), getDecimal(body));
+				break;
+			case ORDER_CANCELED:
+				listener.onOrderCanceled(seq, body.getLong());
+				break;
+			default:
+				throw new IllegalStateException("Unknown journal record type " + type + " at seq " + seq);
+		}
+	}
+
+	private void startSegment(long firstSeq) {
+		Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSeq, SEGMENT_SUFFIX));
+		current = map(file, FileChannel.MapMode.READ_WRITE);
+		segments.put(firstSeq, file);
+	}
+
+	private void deleteSegments(long before) {
+		while (!segments.isEmpty() && segments.firstKey() < before) {
+			delete(segments.pollFirstEntry().getValue());
+		}
+	}
+
+	private void delete(Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to delete journal segment " + file, e);
+		}
+	}
+
+	private MappedByteBuffer map(Path file, FileChannel.MapMode mode) {
+		try (FileChannel channel = mode == FileChannel.MapMode.READ_ONLY
+				? FileChannel.open(file, StandardOpenOption.READ)
+				: FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long size = mode == FileChannel.MapMode.READ_ONLY ? channel.size() : segmentSize;
+			return channel.map(mode, 0, size);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to map journal segment " + file, e);
+		}
+	}
+
+	static void putOrder(ByteBuffer buffer, Order order) {
+		buffer.putLong(order.getId());
+		buffer.putLong(order.getCustomerId());
+		putString(buffer, order.getAssetName());
+		buffer.put((byte) order.getOrderSide().ordinal());
+		putDecimal(buffer, order.getSize());
+		putDecimal(buffer, order.getPrice());
+		LocalDateTime createDate = order.getCreateDate() == null ? LocalDateTime.now() : order.getCreateDate();
+		buffer.putLong(createDate.toEpochSecond(ZoneOffset.UTC));
+		buffer.putInt(createDate.getNano());
+	}
+
+	static Order getOrder(ByteBuffer buffer) {
+		Order order = new Order();
+		order.setId(buffer.getLong());
+		order.setCustomerId(buffer.getLong());
+		order.setAssetName(getString(buffer));
+		order.setOrderSide(OrderSide.values()[buffer.get()]);
+		order.setSize(getDecimal(buffer));
+		order.setPrice(getDecimal(buffer));
+		order.setCreateDate(LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC));
+		order.setStatus(OrderStatus.PENDING);
+		return order;
+	}
+
+	/**
+	 * Writes the UTF-8 bytes of {@code value} after their length. Asset names are ASCII, so they are copied char by
+	 * char instead of being encoded into a new array for every record.
+	 */
+	static void putString(ByteBuffer buffer, String value) {
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			if (value.charAt(i) >= 0x80) {
+				byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+				buffer.putShort((short) bytes.length);
+				buffer.put(bytes);
+				return;
+			}
+		}
+		buffer.putShort((short) length);
+		for (int i = 0; i < length; i++) {
+			buffer.put((byte) value.charAt(i));
+		}
+	}
+
+	/**
+	 * Reads a string written by {@link #putString}, reusing the instance decoded last time the same bytes were
+	 * seen. Asset names repeat in almost every record, so replay would otherwise spend much of its time
+	 * decoding them.
+	 */
+	private String getAssetName(ByteBuffer buffer) {
+		int length = buffer.getShort();
+		ByteBuffer bytes = buffer.slice().limit(length);
+		String name = assetNames.get(bytes);
+		if (name == null) {
+			name = StandardCharsets.UTF_8.decode(bytes.duplicate()).toString();
+			assetNames.put(ByteBuffer.wrap(name.getBytes(StandardCharsets.UTF_8)), name);
+		}
+		buffer.position(buffer.position() + length);
+		return name;
+	}
+
+	static String getString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes the scale followed by the unscaled value, as a plain long when it fits in one.
+	 */
+	static void putDecimal(ByteBuffer buffer, BigDecimal value) {
+		BigInteger unscaled = value.unscaledValue();
+		buffer.putInt(value.scale());
+		if (unscaled.bitLength() < Long.SIZE) {
+			buffer.put((byte) 0);
+			buffer.putLong(unscaled.longValue());
+		} else {
+			byte[] bytes = unscaled.toByteArray();
+			buffer.put((byte) bytes.length);
+			buffer.put(bytes);
+		}
+	}
+
+	/**
+	 * Writes a unit count in the {@link #putDecimal} format.
+	 */
+	static void putUnits(ByteBuffer buffer, long units, int scale) {
+		buffer.putInt(scale);
+		buffer.put((byte) 0);
+		buffer.putLong(units);
+	}
+
+	static BigDecimal getDecimal(ByteBuffer buffer) {
+		int scale = buffer.getInt();
+		int length = buffer.get() & 0xFF;
+		if (length == 0) {
+			return BigDecimal.valueOf(buffer.getLong(), scale);
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new BigDecimal(new BigInteger(bytes), scale);
+	}
+}
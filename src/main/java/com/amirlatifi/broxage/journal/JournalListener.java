@@ -0,0 +1,31 @@
+package com.amirlatifi.broxage.journal;
+
+import com.amirlatifi.broxage.model.Order;
+
+import java.math.BigDecimal;
+
+/**
+ * Receives events read back from the {@link EventJournal} or a {@link Snapshot}. Events carry the sequence
+ * number they were journaled at so that listeners can skip events their state already includes.
+ */
+public interface JournalListener {
+
+	/**
+	 * @param absolute true when the values are a snapshot of the account rather than a change to it
+	 */
+	default void onBalance(long seq, long customerId, String assetName, BigDecimal size, BigDecimal usableSize,
+						   boolean absolute) {
+	}
+
+	/**
+	 * @param order the order as placed, or its full state when restored from a snapshot
+	 */
+	default void onOrderPlaced(long seq, Order order) {
+	}
+
+	default void onOrderFilled(long seq, long orderId, BigDecimal size) {
+	}
+
+	default void onOrderCanceled(long seq, long orderId) {
+	}
+}
@@ -0,0 +1,94 @@
+package com.amirlatifi.broxage.journal;
+
+import com.amirlatifi.broxage.ledger.BalanceLedger;
+import com.amirlatifi.broxage.model.Order;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.math.BigDecimal;
+
+/**
+ * Rebuilds in-memory state on startup: the ledger is loaded from the {@code Asset} table, then the latest
+ * {@link Snapshot} (event-sourced mode only) and every journal record after it are replayed in a single pass
+ * into the ledger and the {@link OrderEventLog}. A journal that starts after what the database and snapshot
+ * cover is refused rather than replayed over the gap.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class JournalRecovery {
+
+	private static final Logger log = LoggerFactory.getLogger(JournalRecovery.class);
+
+	private final EventJournal journal;
+	private final SnapshotStore snapshotStore;
+	private final BalanceLedger balanceLedger;
+	private final OrderEventLog orderEventLog;
+
+	public JournalRecovery(EventJournal journal, SnapshotStore snapshotStore, BalanceLedger balanceLedger,
+						   OrderEventLog orderEventLog) {
+		this.journal = journal;
+		this.snapshotStore = snapshotStore;
+		this.balanceLedger = balanceLedger;
+		this.orderEventLog = orderEventLog;
+	}
+
+	@PostConstruct
+	public void recover() {
+		long started = System.nanoTime();
+		long persistedSeq = balanceLedger.load();
+		journal.advanceTo(persistedSeq);
+
+		long afterSeq = 0;
+		Snapshot snapshot = snapshotStore.latest();
+		long coveredSeq = Math.max(persistedSeq, snapshot == null ? 0 : snapshot.getSeq());
+		if (journal.isEnabled() && journal.baseSeq() > coveredSeq) {
+			// Balance records are deltas, so replaying them without the changes before them invents balances
+			throw new IllegalStateException("Journal " + journal.getDirectory() + " starts after seq "
+					+ journal.baseSeq() + ", but the database and snapshots only cover up to seq " + coveredSeq
+					+ "; it belongs to a database that was lost or replaced");
+		}
+		if (snapshot != null) {
+			snapshot.replay(balanceLedger);
+			snapshot.replay(orderEventLog);
+			orderEventLog.restoreLastOrderId(snapshot.getLastOrderId());
+			afterSeq = snapshot.getSeq();
+			journal.advanceTo(afterSeq);
+		}
+
+		long[] replayed = new long[1];
+		journal.replay(afterSeq, new JournalListener() {
+			@Override
+			public void onBalance(long seq, long customerId, String assetName, BigDecimal size,
+								  BigDecimal usableSize, boolean absolute) {
+				replayed[0]++;
+				balanceLedger.onBalance(seq, customerId, assetName, size, usableSize, absolute);
+			}
+
+			@Override
+			public void onOrderPlaced(long seq, Order order) {
+				replayed[0]++;
+				orderEventLog.onOrderPlaced(seq, order);
+			}
+
+			@Override
+			public void onOrderFilled(long seq, long orderId, BigDecimal size) {
+				replayed[0]++;
+				orderEventLog.onOrderFilled(seq, orderId, size);
+			}
+
+			@Override
+			public void onOrderCanceled(long seq, long orderId) {
+				replayed[0]++;
+				orderEventLog.onOrderCanceled(seq, orderId);
+			}
+		});
+		orderEventLog.recovered();
+
+		log.info("Recovered from {} and {} journal events in {} ms",
+				snapshot == null ? "no snapshot" : "snapshot at seq " + snapshot.getSeq(), replayed[0],
+				(System.nanoTime() - started) / 1_000_000);
+	}
+}
@@ -0,0 +1,236 @@
+package com.amirlatifi.broxage.journal;
+
+import com.amirlatifi.broxage.model.Order;
+import com.amirlatifi.broxage.model.OrderStatus;
+import com.amirlatifi.broxage.repository.OrderRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Journals order lifecycle events in event-sourced mode and keeps the state of every open order in memory so
+ * that it can be snapshotted. Inside a transaction the events are appended just before it commits, so a
+ * command that fails part-way leaves nothing in the journal. In {@code jpa} mode every method is a no-op.
+ * <p>
+ * During recovery it rebuilds the open orders from the snapshot and the journal tail, then writes them, and
+ * the orders closed in the tail, back into the {@code orders} table under their original ids.
+ */
+@Component
+public class OrderEventLog implements JournalListener {
+
+	private final EventJournal journal;
+	private final OrderRepository orderRepository;
+	private final boolean enabled;
+
+	private final Map<Long, TrackedOrder> open = new ConcurrentHashMap<>();
+	private final List<Order> recoveredClosed = new ArrayList<>();
+	private final AtomicLong lastOrderId = new AtomicLong();
+
+	public OrderEventLog(EventJournal journal, OrderRepository orderRepository) {
+		this.journal = journal;
+		this.orderRepository = orderRepository;
+		this.enabled = journal.isEventSourced();
+	}
+
+	public void placed(Order order) {
+		if (enabled) {
+			Order placed = copy(order);
+			append(() -> {
+				TrackedOrder tracked = new TrackedOrder(placed);
+				lastOrderId.accumulateAndGet(placed.getId(), Math::max);
+				synchronized (tracked) {
+					// Visible before it is journaled, so a concurrent snapshot waits for the sequence number.
+					open.put(placed.getId(), tracked);
+					tracked.seq = journal.appendOrderPlaced(placed);
+					return tracked.seq;
+				}
+			});
+		}
+	}
+
+	public void filled(Long orderId, BigDecimal size) {
+		if (enabled) {
+			append(() -> update(orderId, tracked -> {
+				tracked.seq = journal.appendOrderFilled(orderId, size);
+				fill(tracked.order, size);
+			}));
+		}
+	}
+
+	public void canceled(Long orderId) {
+		if (enabled) {
+			append(() -> update(orderId, tracked -> {
+				tracked.seq = journal.appendOrderCanceled(orderId);
+				tracked.order.setStatus(OrderStatus.CANCELED);
+			}));
+		}
+	}
+
+	/**
+	 * Journals the cancellation of several orders with a single sync.
+	 */
+	public void canceled(List<Long> orderIds) {
+		if (enabled) {
+			append(() -> {
+				long seq = 0;
+				for (Long orderId : orderIds) {
+					seq = update(orderId, tracked -> {
+						tracked.seq = journal.appendOrderCanceled(orderId);
+						tracked.order.setStatus(OrderStatus.CANCELED);
+					});
+				}
+				return seq;
+			});
+		}
+	}
+
+	/**
+	 * Copies the open orders for a {@link Snapshot}, each with the sequence number of its last event.
+	 */
+	public List<Snapshot.OrderState> snapshot() {
+		List<Snapshot.OrderState> orders = new ArrayList<>();
+		for (TrackedOrder tracked : open.values()) {
+			synchronized (tracked) {
+				if (tracked.order.getStatus() == OrderStatus.PENDING) {
+					orders.add(new Snapshot.OrderState(tracked.seq, copy(tracked.order)));
+				}
+			}
+		}
+		return orders;
+	}
+
+	public long lastOrderId() {
+		return lastOrderId.get();
+	}
+
+	void restoreLastOrderId(long orderId) {
+		lastOrderId.accumulateAndGet(orderId, Math::max);
+	}
+
+	@Override
+	public void onOrderPlaced(long seq, Order order) {
+		if (!enabled) {
+			return;
+		}
+		TrackedOrder existing = open.get(order.getId());
+		if (existing == null || seq > existing.seq) {
+			TrackedOrder tracked = new TrackedOrder(order);
+			tracked.seq = seq;
+			open.put(order.getId(), tracked);
+			lastOrderId.accumulateAndGet(order.getId(), Math::max);
+		}
+	}
+
+	@Override
+	public void onOrderFilled(long seq, long orderId, BigDecimal size) {
+		TrackedOrder tracked = enabled ? open.get(orderId) : null;
+		if (tracked != null && seq > tracked.seq) {
+			tracked.seq = seq;
+			fill(tracked.order, size);
+			closeIfDone(tracked);
+		}
+	}
+
+	@Override
+	public void onOrderCanceled(long seq, long orderId) {
+		TrackedOrder tracked = enabled ? open.get(orderId) : null;
+		if (tracked != null && seq > tracked.seq) {
+			tracked.seq = seq;
+			tracked.order.setStatus(OrderStatus.CANCELED);
+			closeIfDone(tracked);
+		}
+	}
+
+	/**
+	 * Writes the recovered orders to the {@code orders} table and moves its id sequence past every order id
+	 * handed out before the restart. Orders closed before the snapshot are not part of the recovered state.
+	 */
+	void recovered() {
+		if (!enabled || lastOrderId.get() == 0) {
+			return;
+		}
+		List<Order> orders = new ArrayList<>(recoveredClosed);
+		for (TrackedOrder tracked : open.values()) {
+			orders.add(tracked.order);
+		}
+		orderRepository.restore(orders);
+		recoveredClosed.clear();
+		orderRepository.advanceIdsPast(lastOrderId.get());
+	}
+
+	private long update(Long orderId, Consumer<TrackedOrder> change) {
+		TrackedOrder tracked = open.get(orderId);
+		if (tracked == null) {
+			throw new IllegalStateException("Order " + orderId + " is not open");
+		}
+		synchronized (tracked) {
+			change.accept(tracked);
+			if (tracked.order.getStatus() != OrderStatus.PENDING) {
+				open.remove(orderId);
+			}
+			return tracked.seq;
+		}
+	}
+
+	private void closeIfDone(TrackedOrder tracked) {
+		if (tracked.order.getStatus() != OrderStatus.PENDING) {
+			open.remove(tracked.order.getId());
+			recoveredClosed.add(tracked.order);
+		}
+	}
+
+	/**
+	 * Appends right away outside a transaction, otherwise just before the transaction commits.
+	 */
+	private void append(LongSupplier event) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			journal.sync(event.getAsLong());
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void beforeCommit(boolean readOnly) {
+				journal.sync(event.getAsLong());
+			}
+		});
+	}
+
+	private static void fill(Order order, BigDecimal size) {
+		order.setFilledSize(order.getFilledSize().add(size));
+		if (order.getRemainingSize().signum() <= 0) {
+			order.setStatus(OrderStatus.MATCHED);
+		}
+	}
+
+	private static Order copy(Order order) {
+		Order copy = new Order();
+		copy.setId(order.getId());
+		copy.setCustomerId(order.getCustomerId());
+		copy.setAssetName(order.getAssetName());
+		copy.setOrderSide(order.getOrderSide());
+		copy.setSize(order.getSize());
+		copy.setPrice(order.getPrice());
+		copy.setFilledSize(order.getFilledSize());
+		copy.setStatus(order.getStatus());
+		copy.setCreateDate(order.getCreateDate());
+		return copy;
+	}
+
+	private static final class TrackedOrder {
+		private final Order order;
+		private long seq;
+
+		TrackedOrder(Order order) {
+			this.order = order;
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package com.amirlatifi.broxage.journal;
+
+import com.amirlatifi.broxage.model.Asset;
+import com.amirlatifi.broxage.model.Order;
+
+import java.util.List;
+
+/**
+ * Ledger accounts and open orders captured while the system was running. Nothing is paused while a snapshot
+ * is taken, so each account and order carries the sequence number of the last event it includes; replaying
+ * the journal after {@link #getSeq()} and skipping events an entity has already seen gives the exact state.
+ */
+public final class Snapshot {
+
+	private final long seq;
+	private final List<Asset> accounts;
+	private final List<OrderState> orders;
+	private final long lastOrderId;
+
+	public Snapshot(long seq, List<Asset> accounts, List<OrderState> orders, long lastOrderId) {
+		this.seq = seq;
+		this.accounts = accounts;
+		this.orders = orders;
+		this.lastOrderId = lastOrderId;
+	}
+
+	/**
+	 * Every event up to this sequence number is included in the snapshot.
+	 */
+	public long getSeq() {
+		return seq;
+	}
+
+	public List<Asset> getAccounts() {
+		return accounts;
+	}
+
+	public List<OrderState> getOrders() {
+		return orders;
+	}
+
+	/**
+	 * The highest order id handed out before the snapshot, including orders that have since been closed.
+	 */
+	public long getLastOrderId() {
+		return lastOrderId;
+	}
+
+	public void replay(JournalListener listener) {
+		for (Asset account : accounts) {
+			listener.onBalance(account.getLedgerSeq(), account.getCustomerId(), account.getAssetName(),
+					account.getSize(), account.getUsableSize(), true);
+		}
+		for (OrderState order : orders) {
+			listener.onOrderPlaced(order.getSeq(), order.getOrder());
+		}
+	}
+
+	public static final class OrderState {
+		private final long seq;
+		private final Order order;
+
+		public OrderState(long seq, Order order) {
+			this.seq = seq;
+			this.order = order;
+		}
+
+		public long getSeq() {
+			return seq;
+		}
+
+		public Order getOrder() {
+			return order;
+		}
+	}
+}
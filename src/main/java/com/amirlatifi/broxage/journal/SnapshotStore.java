@@ -0,0 +1,228 @@
+package com.amirlatifi.broxage.journal;
+
+import com.amirlatifi.broxage.model.Asset;
+import com.amirlatifi.broxage.model.Order;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes {@link Snapshot} files next to the {@link EventJournal} segments. A snapshot is written to a
+ * temporary file, forced to disk and then renamed into place, and ends with a CRC of its contents, so a
+ * snapshot interrupted by a crash is never loaded. The two newest snapshots are kept; if the newest one turns
+ * out to be unreadable the previous one is used instead, which is why journal segments are only deleted up
+ * to the older of the two.
+ */
+@Component
+public class SnapshotStore {
+
+	private static final Logger log = LoggerFactory.getLogger(SnapshotStore.class);
+
+	private static final int MAGIC = 0x42585331;
+	private static final int BUFFER_SIZE = 1024 * 1024;
+	private static final int MAX_ENTRY_LENGTH = 64 * 1024;
+	private static final int RETAINED = 2;
+	private static final String PREFIX = "snapshot-";
+	private static final String SUFFIX = ".bin";
+
+	private final Path directory;
+
+	public SnapshotStore(EventJournal journal) {
+		this.directory = journal.isEventSourced() ? journal.getDirectory() : null;
+	}
+
+	public boolean isEnabled() {
+		return directory != null;
+	}
+
+	/**
+	 * Writes the snapshot and removes those no longer retained.
+	 *
+	 * @return the sequence number covered by the oldest retained snapshot; journal segments up to it are no
+	 * longer needed for recovery
+	 */
+	public long write(Snapshot snapshot) {
+		Path file = directory.resolve(String.format("%s%020d%s", PREFIX, snapshot.getSeq(), SUFFIX));
+		Path temporary = directory.resolve(file.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			Writer writer = new Writer(channel);
+			ByteBuffer buffer = writer.reserve();
+			buffer.putInt(MAGIC);
+			buffer.putLong(snapshot.getSeq());
+			buffer.putLong(snapshot.getLastOrderId());
+			buffer.putInt(snapshot.getAccounts().size());
+			for (Asset account : snapshot.getAccounts()) {
+				buffer = writer.reserve();
+				buffer.putLong(account.getLedgerSeq());
+				buffer.putLong(account.getCustomerId());
+				EventJournal.putString(buffer, account.getAssetName());
+				EventJournal.putDecimal(buffer, account.getSize());
+				EventJournal.putDecimal(buffer, account.getUsableSize());
+			}
+			buffer = writer.reserve();
+			buffer.putInt(snapshot.getOrders().size());
+			for (Snapshot.OrderState order : snapshot.getOrders()) {
+				buffer = writer.reserve();
+				buffer.putLong(order.getSeq());
+				EventJournal.putOrder(buffer, order.getOrder());
+				EventJournal.putDecimal(buffer, order.getOrder().getFilledSize());
+			}
+			writer.finish();
+			channel.force(true);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to write snapshot " + file, e);
+		}
+		try {
+			Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+			List<Path> snapshots = list();
+			for (Path old : snapshots.subList(Math.min(RETAINED, snapshots.size()), snapshots.size())) {
+				Files.deleteIfExists(old);
+			}
+			return seqOf(snapshots.get(Math.min(RETAINED, snapshots.size()) - 1));
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to install snapshot " + file, e);
+		}
+	}
+
+	/**
+	 * Loads the newest readable snapshot, or returns null if there is none.
+	 */
+	public Snapshot latest() {
+		if (directory == null) {
+			return null;
+		}
+		for (Path file : list()) {
+			try {
+				Snapshot snapshot = read(file);
+				if (snapshot != null) {
+					return snapshot;
+				}
+				log.warn("Ignoring snapshot {}: checksum mismatch", file);
+			} catch (IOException | RuntimeException e) {
+				log.warn("Ignoring unreadable snapshot {}", file, e);
+			}
+		}
+		return null;
+	}
+
+	private Snapshot read(Path file) throws IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (buffer.limit() < Integer.BYTES) {
+			return null;
+		}
+		CRC32 crc = new CRC32();
+		crc.update(buffer.duplicate().limit(buffer.limit() - Integer.BYTES));
+		if ((int) crc.getValue() != buffer.getInt(buffer.limit() - Integer.BYTES)) {
+			return null;
+		}
+		try {
+			if (buffer.getInt() != MAGIC) {
+				return null;
+			}
+			long seq = buffer.getLong();
+			long lastOrderId = buffer.getLong();
+			int accountCount = buffer.getInt();
+			List<Asset> accounts = new ArrayList<>(accountCount);
+			for (int i = 0; i < accountCount; i++) {
+				Asset account = new Asset();
+				account.setLedgerSeq(buffer.getLong());
+				account.setCustomerId(buffer.getLong());
+				account.setAssetName(EventJournal.getString(buffer));
+				account.setSize(EventJournal.getDecimal(buffer));
+				account.setUsableSize(EventJournal.getDecimal(buffer));
+				accounts.add(account);
+			}
+			int orderCount = buffer.getInt();
+			List<Snapshot.OrderState> orders = new ArrayList<>(orderCount);
+			for (int i = 0; i < orderCount; i++) {
+				long orderSeq = buffer.getLong();
+				Order order = EventJournal.getOrder(buffer);
+				order.setFilledSize(EventJournal.getDecimal(buffer));
+				orders.add(new Snapshot.OrderState(orderSeq, order));
+			}
+			return new Snapshot(seq, accounts, orders, lastOrderId);
+		} catch (BufferUnderflowException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Snapshot files, newest first.
+	 */
+	private List<Path> list() {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(file -> {
+				String name = file.getFileName().toString();
+				return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+			}).sorted(Comparator.comparing(SnapshotStore::seqOf).reversed()).collect(Collectors.toList());
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to list snapshots in " + directory, e);
+		}
+	}
+
+	private static long seqOf(Path file) {
+		String name = file.getFileName().toString();
+		return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+	}
+
+	/**
+	 * Buffers entries and writes them out in large chunks, keeping a running CRC of everything written.
+	 */
+	private static final class Writer {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		private final CRC32 crc = new CRC32();
+
+		Writer(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		/**
+		 * Returns the buffer with room for at least one more entry.
+		 */
+		ByteBuffer reserve() throws IOException {
+			if (buffer.remaining() < MAX_ENTRY_LENGTH) {
+				drain();
+			}
+			return buffer;
+		}
+
+		void finish() throws IOException {
+			drain();
+			buffer.putInt((int) crc.getValue());
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+
+		private void drain() throws IOException {
+			buffer.flip();
+			crc.update(buffer.duplicate());
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package com.amirlatifi.broxage.journal;
+
+import com.amirlatifi.broxage.ledger.BalanceLedger;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+
+/**
+ * In event-sourced mode, periodically snapshots the ledger and the open orders so that recovery only has to
+ * replay the journal written since, and deletes the journal segments no retained snapshot needs any more.
+ * A final snapshot is taken on shutdown.
+ */
+@Component
+public class Snapshotter {
+
+	private final EventJournal journal;
+	private final SnapshotStore snapshotStore;
+	private final BalanceLedger balanceLedger;
+	private final OrderEventLog orderEventLog;
+
+	private long lastSnapshotSeq;
+
+	public Snapshotter(EventJournal journal, SnapshotStore snapshotStore, BalanceLedger balanceLedger,
+					   OrderEventLog orderEventLog) {
+		this.journal = journal;
+		this.snapshotStore = snapshotStore;
+		this.balanceLedger = balanceLedger;
+		this.orderEventLog = orderEventLog;
+	}
+
+	@Scheduled(fixedDelayString = "${journal.snapshot.interval-ms:60000}")
+	@PreDestroy
+	public synchronized void snapshot() {
+		if (!snapshotStore.isEnabled()) {
+			return;
+		}
+		long seq = journal.lastSeq();
+		if (seq == lastSnapshotSeq) {
+			return;
+		}
+		Snapshot snapshot = new Snapshot(seq, balanceLedger.snapshot(), orderEventLog.snapshot(),
+				orderEventLog.lastOrderId());
+		journal.deleteSegmentsThrough(snapshotStore.write(snapshot));
+		lastSnapshotSeq = seq;
+	}
+}
@@ -0,0 +1,335 @@
+package com.amirlatifi.broxage.ledger;
+
+import com.amirlatifi.broxage.amount.FixedPoint;
+import com.amirlatifi.broxage.asset.AssetDefinition;
+import com.amirlatifi.broxage.asset.AssetRegistry;
+import com.amirlatifi.broxage.journal.EventJournal;
+import com.amirlatifi.broxage.journal.JournalListener;
+import com.amirlatifi.broxage.model.Asset;
+import com.amirlatifi.broxage.model.AssetView;
+import com.amirlatifi.broxage.repository.AssetRepository;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Authoritative in-memory balances for every customer and asset. Accounts are found by customer id and then
+ * by the asset's id in the {@link AssetRegistry}, which indexes an array. Balances are held as {@code long}
+ * counts of units at the asset's scale and changes are given the same way, so applying one allocates nothing;
+ * they are converted to {@code BigDecimal} for the table. Balances of assets that are not registered are
+ * refused, including on load.
+ * <p>
+ * Every change is applied under the account's monitor, appended to the {@link EventJournal} and synced
+ * before the caller returns; the {@code Asset} table is only a write-behind copy kept up to date by the
+ * {@link LedgerFlusher}. On startup the {@code JournalRecovery} loads the table and replays the latest
+ * snapshot and journal records newer than each row's {@code ledgerSeq} on top of it.
+ */
+@Component
+public class BalanceLedger implements JournalListener {
+
+	private final AssetRepository assetRepository;
+	private final EventJournal journal;
+	private final AssetRegistry assetRegistry;
+
+	private final ConcurrentMap<Long, CustomerAccounts> customers = new ConcurrentHashMap<>();
+	private final Set<Account> dirty = ConcurrentHashMap.newKeySet();
+
+	public BalanceLedger(AssetRepository assetRepository, EventJournal journal, AssetRegistry assetRegistry) {
+		this.assetRepository = assetRepository;
+		this.journal = journal;
+		this.assetRegistry = assetRegistry;
+	}
+
+	/**
+	 * Loads the accounts last flushed to the {@code Asset} table.
+	 *
+	 * @return the highest sequence number any flushed account includes
+	 */
+	public long load() {
+		long persistedSeq = 0;
+		for (Asset asset : assetRepository.findAll()) {
+			Account account = account(asset.getCustomerId(), asset.getAssetName());
+			synchronized (account) {
+				account.rowId = asset.getId();
+				account.size = FixedPoint.toUnits(asset.getSize(), account.scale);
+				account.usable = FixedPoint.toUnits(asset.getUsableSize(), account.scale);
+				account.seq = asset.getLedgerSeq() == null ? 0 : asset.getLedgerSeq();
+				account.exists = true;
+			}
+			persistedSeq = Math.max(persistedSeq, account.seq);
+		}
+		return persistedSeq;
+	}
+
+	@Override
+	public void onBalance(long seq, long customerId, String assetName, BigDecimal size, BigDecimal usableSize,
+						  boolean absolute) {
+		Account account = account(customerId, assetName);
+		synchronized (account) {
+			if (seq <= account.seq) {
+				return;
+			}
+			long sizeUnits = FixedPoint.toUnits(size, account.scale);
+			long usableUnits = FixedPoint.toUnits(usableSize, account.scale);
+			account.size = absolute ? sizeUnits : FixedPoint.add(account.size, sizeUnits);
+			account.usable = absolute ? usableUnits : FixedPoint.add(account.usable, usableUnits);
+			account.seq = seq;
+			account.exists = true;
+			markDirty(account);
+		}
+	}
+
+	/**
+	 * Applies a change, in units of the asset, to an account, creating it if needed.
+	 *
+	 * @param requireUsable when true the change is refused if it would leave the usable size negative
+	 * @return false if the change was refused; nothing is recorded in that case
+	 * @throws IllegalStateException if the change would overflow the account
+	 */
+	public boolean apply(Long customerId, String assetName, long sizeDelta, long usableDelta,
+						 boolean requireUsable) {
+		Account account = account(customerId, assetName);
+		long seq;
+		synchronized (account) {
+			long usable = FixedPoint.add(account.usable, usableDelta);
+			if (requireUsable && usable < 0) {
+				return false;
+			}
+			long size = FixedPoint.add(account.size, sizeDelta);
+			markDirty(account);
+			seq = journal.appendBalance(customerId, assetName, sizeDelta, usableDelta, account.scale);
+			account.size = size;
+			account.usable = usable;
+			account.seq = seq;
+			account.exists = true;
+		}
+		journal.sync(seq);
+		return true;
+	}
+
+	/**
+	 * Reserves, in order, each of {@code amounts} (in units of the asset) that still fits in the usable size,
+	 * skipping those that do not. The total is taken out of the account in a single change, so a batch costs one
+	 * journal record.
+	 *
+	 * @return for each amount, whether it was reserved
+	 */
+	public boolean[] reserveEach(Long customerId, String assetName, long[] amounts) {
+		Account account = account(customerId, assetName);
+		boolean[] reserved = new boolean[amounts.length];
+		long seq;
+		synchronized (account) {
+			long remaining = account.usable;
+			for (int i = 0; i < amounts.length; i++) {
+				long left = remaining - amounts[i];
+				if (left >= 0) {
+					reserved[i] = true;
+					remaining = left;
+				}
+			}
+			long usableDelta = remaining - account.usable;
+			if (usableDelta == 0) {
+				return reserved;
+			}
+			markDirty(account);
+			seq = journal.appendBalance(customerId, assetName, 0, usableDelta, account.scale);
+			account.usable = remaining;
+			account.seq = seq;
+			account.exists = true;
+		}
+		journal.sync(seq);
+		return reserved;
+	}
+
+	public BigDecimal getUsableSize(Long customerId, String assetName) {
+		Account account = find(customerId, assetName);
+		if (account == null) {
+			return BigDecimal.ZERO;
+		}
+		synchronized (account) {
+			return FixedPoint.toDecimal(account.usable, account.scale);
+		}
+	}
+
+	public List<AssetView> getAssets(Long customerId) {
+		CustomerAccounts accounts = customers.get(customerId);
+		if (accounts == null) {
+			return Collections.emptyList();
+		}
+		List<AssetView> assets = new ArrayList<>();
+		for (Account account : accounts.all()) {
+			synchronized (account) {
+				if (account.exists) {
+					assets.add(account.toView());
+				}
+			}
+		}
+		return assets;
+	}
+
+	/**
+	 * Copies every account, each with the sequence number of the last change it includes.
+	 */
+	public List<Asset> snapshot() {
+		List<Asset> assets = new ArrayList<>();
+		for (CustomerAccounts accounts : customers.values()) {
+			for (Account account : accounts.all()) {
+				synchronized (account) {
+					if (account.exists) {
+						assets.add(account.toAsset());
+					}
+				}
+			}
+		}
+		return assets;
+	}
+
+	/**
+	 * Removes up to {@code max} accounts from the dirty set and returns their current state for flushing.
+	 */
+	List<Asset> drainDirty(int max) {
+		List<Asset> batch = new ArrayList<>();
+		Iterator<Account> iterator = dirty.iterator();
+		while (batch.size() < max && iterator.hasNext()) {
+			Account account = iterator.next();
+			iterator.remove();
+			synchronized (account) {
+				account.queued = false;
+				batch.add(account.toAsset());
+			}
+		}
+		return batch;
+	}
+
+	/**
+	 * Records the row ids assigned to accounts flushed for the first time.
+	 */
+	void flushed(List<Asset> saved) {
+		for (Asset asset : saved) {
+			Account account = find(asset.getCustomerId(), asset.getAssetName());
+			synchronized (account) {
+				account.rowId = asset.getId();
+			}
+		}
+	}
+
+	void markDirty(List<Asset> failed) {
+		for (Asset asset : failed) {
+			Account account = find(asset.getCustomerId(), asset.getAssetName());
+			synchronized (account) {
+				markDirty(account);
+			}
+		}
+	}
+
+	boolean isClean() {
+		return dirty.isEmpty();
+	}
+
+	/**
+	 * Queues the account for the next flush unless it already is. Callers hold the account's monitor.
+	 */
+	private void markDirty(Account account) {
+		if (!account.queued) {
+			account.queued = true;
+			dirty.add(account);
+		}
+	}
+
+	private Account find(Long customerId, String assetName) {
+		CustomerAccounts accounts = customers.get(customerId);
+		AssetDefinition asset = assetRegistry.find(assetName);
+		return accounts == null || asset == null ? null : accounts.get(asset.getId());
+	}
+
+	private Account account(Long customerId, String assetName) {
+		AssetDefinition asset = assetRegistry.get(assetName);
+		CustomerAccounts accounts = customers.get(customerId);
+		if (accounts == null) {
+			// CustomerAccounts::new captures this ledger, so it is only created when the customer is new
+			accounts = customers.computeIfAbsent(customerId, CustomerAccounts::new);
+		}
+		return accounts.getOrCreate(asset);
+	}
+
+	/**
+	 * One customer's accounts, indexed directly by asset id.
+	 */
+	private final class CustomerAccounts {
+		private final long customerId;
+		private final Account[] accounts = new Account[assetRegistry.size()];
+
+		CustomerAccounts(Long customerId) {
+			this.customerId = customerId;
+		}
+
+		Account get(int assetId) {
+			return accounts[assetId];
+		}
+
+		Account getOrCreate(AssetDefinition asset) {
+			int assetId = asset.getId();
+			Account account = get(assetId);
+			if (account != null) {
+				return account;
+			}
+			synchronized (this) {
+				if (accounts[assetId] == null) {
+					accounts[assetId] = new Account(customerId, asset);
+				}
+				return accounts[assetId];
+			}
+		}
+
+		List<Account> all() {
+			List<Account> all = new ArrayList<>();
+			for (Account account : accounts) {
+				if (account != null) {
+					all.add(account);
+				}
+			}
+			return all;
+		}
+	}
+
+	private final class Account {
+		private final long customerId;
+		private final AssetDefinition asset;
+		private final int scale;
+		private Long rowId;
+		private long size;
+		private long usable;
+		private long seq;
+		private boolean exists;
+		private boolean queued;
+
+		Account(long customerId, AssetDefinition asset) {
+			this.customerId = customerId;
+			this.asset = asset;
+			this.scale = asset.getScale();
+		}
+
+		Asset toAsset() {
+			Asset asset = new Asset();
+			asset.setId(rowId);
+			asset.setCustomerId(customerId);
+			asset.setAssetName(this.asset.getSymbol());
+			asset.setSize(FixedPoint.toDecimal(size, scale));
+			asset.setUsableSize(FixedPoint.toDecimal(usable, scale));
+			asset.setLedgerSeq(seq);
+			return asset;
+		}
+
+		AssetView toView() {
+			return new AssetView(rowId, customerId, asset.getSymbol(), FixedPoint.toDecimal(size, scale),
+					FixedPoint.toDecimal(usable, scale));
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package com.amirlatifi.broxage.ledger;
+
+import com.amirlatifi.broxage.journal.EventJournal;
+import com.amirlatifi.broxage.model.Asset;
+import com.amirlatifi.broxage.repository.AssetRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+
+/**
+ * Copies changed {@link BalanceLedger} accounts to the {@code Asset} table in batches, one transaction per
+ * batch. In {@code jpa} persistence mode, once everything journaled before a flush has been written, the
+ * journal is emptied.
+ */
+@Component
+public class LedgerFlusher {
+
+	private static final Logger log = LoggerFactory.getLogger(LedgerFlusher.class);
+
+	private final BalanceLedger balanceLedger;
+	private final EventJournal journal;
+	private final AssetRepository assetRepository;
+	private final TransactionTemplate transactionTemplate;
+	private final int batchSize;
+
+	public LedgerFlusher(BalanceLedger balanceLedger, EventJournal journal, AssetRepository assetRepository,
+						 PlatformTransactionManager transactionManager,
+						 @Value("${ledger.flush.batch-size:500}") int batchSize) {
+		this.balanceLedger = balanceLedger;
+		this.journal = journal;
+		this.assetRepository = assetRepository;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.batchSize = batchSize;
+	}
+
+	@Scheduled(fixedDelayString = "${ledger.flush.interval-ms:200}")
+	@PreDestroy
+	public synchronized void flush() {
+		long journaledSeq = journal.lastSeq();
+		List<Asset> batch;
+		while (!(batch = balanceLedger.drainDirty(batchSize)).isEmpty()) {
+			try {
+				List<Asset> toSave = batch;
+				List<Asset> saved = transactionTemplate.execute(status -> assetRepository.saveAll(toSave));
+				balanceLedger.flushed(saved);
+			} catch (RuntimeException e) {
+				log.warn("Failed to flush {} ledger accounts, will retry", batch.size(), e);
+				balanceLedger.markDirty(batch);
+				return;
+			}
+		}
+		if (balanceLedger.isClean()) {
+			journal.truncateIfUnchanged(journaledSeq);
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package com.amirlatifi.broxage.market;
+
+import java.math.BigDecimal;
+
+/**
+ * The pending orders at one price on one side of a book: their total remaining size and how many there are.
+ */
+public class DepthLevel {
+	private final BigDecimal price;
+	private final BigDecimal size;
+	private final int orders;
+
+	public DepthLevel(BigDecimal price, BigDecimal size, int orders) {
+		this.price = price;
+		this.size = size;
+		this.orders = orders;
+	}
+
+	public BigDecimal getPrice() {
+		return price;
+	}
+
+	public BigDecimal getSize() {
+		return size;
+	}
+
+	public int getOrders() {
+		return orders;
+	}
+}
@@ -0,0 +1,52 @@
+package com.amirlatifi.broxage.market;
+
+import com.amirlatifi.broxage.model.OrderSide;
+
+import java.math.BigDecimal;
+
+/**
+ * The new state of one price level after an order rested, traded or was canceled there. A size of zero means
+ * the level is gone.
+ */
+public class DepthUpdate {
+	private final String assetName;
+	private final long sequence;
+	private final OrderSide side;
+	private final BigDecimal price;
+	private final BigDecimal size;
+	private final int orders;
+
+	public DepthUpdate(String assetName, long sequence, OrderSide side, BigDecimal price, BigDecimal size,
+					   int orders) {
+		this.assetName = assetName;
+		this.sequence = sequence;
+		this.side = side;
+		this.price = price;
+		this.size = size;
+		this.orders = orders;
+	}
+
+	public String getAssetName() {
+		return assetName;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public OrderSide getSide() {
+		return side;
+	}
+
+	public BigDecimal getPrice() {
+		return price;
+	}
+
+	public BigDecimal getSize() {
+		return size;
+	}
+
+	public int getOrders() {
+		return orders;
+	}
+}
@@ -0,0 +1,55 @@
+package com.amirlatifi.broxage.market;
+
+import com.amirlatifi.broxage.amount.FixedPoint;
+import com.amirlatifi.broxage.asset.AssetDefinition;
+import com.amirlatifi.broxage.asset.AssetRegistry;
+import com.amirlatifi.broxage.events.EventFanOut;
+import com.amirlatifi.broxage.matching.DepthListener;
+import com.amirlatifi.broxage.model.OrderSide;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Streams every price level change of an asset's book to the subscribers of that asset as a {@code depth}
+ * event. Changes are published straight from the matching thread, in the order the book made them, and only
+ * when the asset has subscribers.
+ */
+@Component
+public class MarketDataFeed implements DepthListener, DisposableBean {
+
+	public static final String DEPTH = "depth";
+
+	private final AssetRegistry assetRegistry;
+	private final EventFanOut<String> fanOut;
+
+	public MarketDataFeed(AssetRegistry assetRegistry,
+						  @Value("${market.depth-feed.buffer-size:1024}") int bufferSize,
+						  @Value("${market.depth-feed.timeout-ms:1800000}") long timeoutMs,
+						  @Value("${market.depth-feed.dispatch-threads:2}") int dispatchThreads,
+						  @Value("${market.depth-feed.write-timeout-ms:5000}") long writeTimeoutMs) {
+		this.assetRegistry = assetRegistry;
+		this.fanOut = new EventFanOut<>("depth", bufferSize, timeoutMs, dispatchThreads, writeTimeoutMs);
+	}
+
+	@Override
+	public void levelChanged(String assetName, long sequence, OrderSide side, long price, long size, int orders) {
+		if (!fanOut.hasSubscribers(assetName)) {
+			return;
+		}
+		AssetDefinition asset = assetRegistry.get(assetName);
+		fanOut.publish(assetName, DEPTH, new DepthUpdate(assetName, sequence, side,
+				FixedPoint.toDecimal(price, assetRegistry.priceScale()), FixedPoint.toDecimal(size, asset.getScale()),
+				orders));
+	}
+
+	SseEmitter subscribe(String assetName) {
+		return fanOut.subscribe(assetName);
+	}
+
+	@Override
+	public void destroy() throws InterruptedException {
+		fanOut.shutdown();
+	}
+}
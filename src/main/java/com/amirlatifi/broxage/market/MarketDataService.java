@@ -0,0 +1,61 @@
+package com.amirlatifi.broxage.market;
+
+import com.amirlatifi.broxage.amount.FixedPoint;
+import com.amirlatifi.broxage.asset.AssetDefinition;
+import com.amirlatifi.broxage.asset.AssetRegistry;
+import com.amirlatifi.broxage.matching.BookDepth;
+import com.amirlatifi.broxage.matching.MatchingEngine;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Market depth read off the in-memory order books, which keep per-level totals up to date as orders change,
+ * so a snapshot costs time proportional to its depth rather than to the number of pending orders.
+ */
+@Service
+public class MarketDataService {
+
+	private final MatchingEngine matchingEngine;
+	private final AssetRegistry assetRegistry;
+	private final MarketDataFeed marketDataFeed;
+
+	public MarketDataService(MatchingEngine matchingEngine, AssetRegistry assetRegistry,
+							 MarketDataFeed marketDataFeed) {
+		this.matchingEngine = matchingEngine;
+		this.assetRegistry = assetRegistry;
+		this.marketDataFeed = marketDataFeed;
+	}
+
+	/**
+	 * @throws IllegalStateException if the asset is not tradable
+	 */
+	public OrderBookSnapshot getBook(String assetName, int depth) {
+		AssetDefinition asset = assetRegistry.tradable(assetName);
+		BookDepth book = matchingEngine.depth(assetName, depth);
+		return new OrderBookSnapshot(assetName, book.getSequence(), levels(asset, book.getBids()),
+				levels(asset, book.getAsks()));
+	}
+
+	/**
+	 * Opens a stream of the asset's depth changes. Subscribe first and then take a {@link #getBook snapshot},
+	 * skipping updates whose sequence number it already includes.
+	 *
+	 * @throws IllegalStateException if the asset is not tradable
+	 */
+	public SseEmitter subscribe(String assetName) {
+		assetRegistry.tradable(assetName);
+		return marketDataFeed.subscribe(assetName);
+	}
+
+	private List<DepthLevel> levels(AssetDefinition asset, List<BookDepth.Level> levels) {
+		List<DepthLevel> converted = new ArrayList<>(levels.size());
+		for (BookDepth.Level level : levels) {
+			converted.add(new DepthLevel(FixedPoint.toDecimal(level.getPrice(), assetRegistry.priceScale()),
+					FixedPoint.toDecimal(level.getSize(), asset.getScale()), level.getOrders()));
+		}
+		return converted;
+	}
+}
@@ -0,0 +1,37 @@
+package com.amirlatifi.broxage.market;
+
+import java.util.List;
+
+/**
+ * The best price levels of an asset's book, bids highest first and asks lowest first. Applying the
+ * {@link DepthUpdate}s with a higher sequence number on top of it keeps it current.
+ */
+public class OrderBookSnapshot {
+	private final String assetName;
+	private final long sequence;
+	private final List<DepthLevel> bids;
+	private final List<DepthLevel> asks;
+
+	public OrderBookSnapshot(String assetName, long sequence, List<DepthLevel> bids, List<DepthLevel> asks) {
+		this.assetName = assetName;
+		this.sequence = sequence;
+		this.bids = bids;
+		this.asks = asks;
+	}
+
+	public String getAssetName() {
+		return assetName;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public List<DepthLevel> getBids() {
+		return bids;
+	}
+
+	public List<DepthLevel> getAsks() {
+		return asks;
+	}
+}
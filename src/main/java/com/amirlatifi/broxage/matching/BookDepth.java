@@ -0,0 +1,55 @@
+package com.amirlatifi.broxage.matching;
+
+import java.util.List;
+
+/**
+ * The best price levels on each side of a book, bids highest first and asks lowest first, as of the change
+ * numbered {@code sequence}. Prices are in price units and sizes in units of the asset.
+ */
+public class BookDepth {
+	private final long sequence;
+	private final List<Level> bids;
+	private final List<Level> asks;
+
+	public BookDepth(long sequence, List<Level> bids, List<Level> asks) {
+		this.sequence = sequence;
+		this.bids = bids;
+		this.asks = asks;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public List<Level> getBids() {
+		return bids;
+	}
+
+	public List<Level> getAsks() {
+		return asks;
+	}
+
+	public static class Level {
+		private final long price;
+		private final long size;
+		private final int orders;
+
+		public Level(long price, long size, int orders) {
+			this.price = price;
+			this.size = size;
+			this.orders = orders;
+		}
+
+		public long getPrice() {
+			return price;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public int getOrders() {
+			return orders;
+		}
+	}
+}
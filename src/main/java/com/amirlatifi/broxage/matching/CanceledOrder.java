@@ -0,0 +1,37 @@
+package com.amirlatifi.broxage.matching;
+
+import com.amirlatifi.broxage.model.OrderSide;
+
+/**
+ * An order taken off its book by a bulk cancel, with the size that was still resting, in units of the asset,
+ * and its price in price units.
+ */
+public class CanceledOrder {
+	private final Long orderId;
+	private final OrderSide side;
+	private final long price;
+	private final long remainingSize;
+
+	public CanceledOrder(Long orderId, OrderSide side, long price, long remainingSize) {
+		this.orderId = orderId;
+		this.side = side;
+		this.price = price;
+		this.remainingSize = remainingSize;
+	}
+
+	public Long getOrderId() {
+		return orderId;
+	}
+
+	public OrderSide getSide() {
+		return side;
+	}
+
+	public long getPrice() {
+		return price;
+	}
+
+	public long getRemainingSize() {
+		return remainingSize;
+	}
+}
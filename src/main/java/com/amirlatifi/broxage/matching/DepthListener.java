@@ -0,0 +1,18 @@
+package com.amirlatifi.broxage.matching;
+
+import com.amirlatifi.broxage.model.OrderSide;
+
+/**
+ * Told about every change to the aggregate size of a price level, while the book is still locked, so it must
+ * not block. Prices are in price units and sizes in units of the asset; a level that emptied has size 0.
+ */
+public interface DepthListener {
+
+	DepthListener NONE = (assetName, sequence, side, price, size, orders) -> {
+	};
+
+	/**
+	 * @param sequence increases by one with every change to the asset's book
+	 */
+	void levelChanged(String assetName, long sequence, OrderSide side, long price, long size, int orders);
+}
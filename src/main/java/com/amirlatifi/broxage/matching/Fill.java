@@ -0,0 +1,43 @@
+package com.amirlatifi.broxage.matching;
+
+/**
+ * One trade against a resting order. The price is in price units and the size in units of the asset.
+ */
+public class Fill {
+	private final Long makerOrderId;
+	private final Long makerCustomerId;
+	private final long makerPrice;
+	private final long size;
+	private final boolean makerFilled;
+
+	public Fill(Long makerOrderId, Long makerCustomerId, long makerPrice, long size, boolean makerFilled) {
+		this.makerOrderId = makerOrderId;
+		this.makerCustomerId = makerCustomerId;
+		this.makerPrice = makerPrice;
+		this.size = size;
+		this.makerFilled = makerFilled;
+	}
+
+	public Long getMakerOrderId() {
+		return makerOrderId;
+	}
+
+	public Long getMakerCustomerId() {
+		return makerCustomerId;
+	}
+
+	/**
+	 * Trades always execute at the resting (maker) order's limit price.
+	 */
+	public long getPrice() {
+		return makerPrice;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public boolean isMakerFilled() {
+		return makerFilled;
+	}
+}
@@ -0,0 +1,125 @@
+package com.amirlatifi.broxage.matching;
+
+import com.amirlatifi.broxage.amount.FixedPoint;
+import com.amirlatifi.broxage.asset.AssetDefinition;
+import com.amirlatifi.broxage.asset.AssetRegistry;
+import com.amirlatifi.broxage.model.Order;
+import com.amirlatifi.broxage.model.OrderSide;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Holds one in-memory {@link OrderBook} per tradable asset, indexed by its id in the {@link AssetRegistry}.
+ * Matching never touches the database; callers are responsible for persisting the resulting order state and
+ * settling balances from the returned fills. Orders are converted to units of their asset and of price on the
+ * way in.
+ */
+@Component
+public class MatchingEngine {
+
+	private final AssetRegistry assetRegistry;
+	private final OrderBook[] books;
+
+	public MatchingEngine(AssetRegistry assetRegistry, DepthListener depthListener) {
+		this.assetRegistry = assetRegistry;
+		this.books = new OrderBook[assetRegistry.size()];
+		for (int id = 0; id < books.length; id++) {
+			AssetDefinition asset = assetRegistry.get(id);
+			if (!asset.isQuote()) {
+				books[id] = new OrderBook(asset.getSymbol(), depthListener);
+			}
+		}
+	}
+
+	/**
+	 * Matches a newly created order against the opposite side of its book and rests whatever is left.
+	 */
+	public List<Fill> match(Order order) {
+		AssetDefinition asset = assetRegistry.tradable(order.getAssetName());
+		return match(order, asset, assetRegistry.priceToUnits(order.getPrice()),
+				FixedPoint.toUnits(order.getRemainingSize(), asset.getScale()));
+	}
+
+	/**
+	 * Same as {@link #match(Order)}, for a caller that already has the order's price and remaining size in units.
+	 */
+	public List<Fill> match(Order order, AssetDefinition asset, long price, long size) {
+		return books[asset.getId()].match(order.getId(), order.getCustomerId(), order.getOrderSide(), price, size);
+	}
+
+	/**
+	 * Undoes the {@link #match} of the order that returned {@code fills}, e.g. when the transaction settling
+	 * them rolls back.
+	 */
+	public void unmatch(Order order, List<Fill> fills) {
+		books[assetRegistry.tradable(order.getAssetName()).getId()].unmatch(order.getId(), order.getOrderSide(), fills);
+	}
+
+	/**
+	 * Puts an already persisted pending order back on its book without matching, e.g. on startup.
+	 */
+	public void restore(Order order) {
+		AssetDefinition asset = assetRegistry.tradable(order.getAssetName());
+		books[asset.getId()].add(order.getId(), order.getCustomerId(), order.getOrderSide(),
+				assetRegistry.priceToUnits(order.getPrice()), FixedPoint.toUnits(order.getRemainingSize(), asset.getScale()));
+	}
+
+	/**
+	 * Puts orders taken off the book by {@link #cancelAll} back on it without matching.
+	 */
+	public void restore(Long customerId, String assetName, List<CanceledOrder> orders) {
+		OrderBook book = books[assetRegistry.tradable(assetName).getId()];
+		for (CanceledOrder order : orders) {
+			book.add(order.getOrderId(), customerId, order.getSide(), order.getPrice(), order.getRemainingSize());
+		}
+	}
+
+	/**
+	 * @return false if the order was not resting on its book, e.g. because it has been filled or canceled
+	 */
+	public boolean cancel(Order order) {
+		OrderBook book = book(order.getAssetName());
+		return book != null && book.remove(order.getId());
+	}
+
+	/**
+	 * Takes all of a customer's resting orders for one asset, optionally only one side, off the book.
+	 */
+	public List<CanceledOrder> cancelAll(Long customerId, String assetName, OrderSide side) {
+		OrderBook book = book(assetName);
+		return book == null ? Collections.emptyList() : book.removeAll(customerId, side);
+	}
+
+	/**
+	 * The best {@code levels} price levels on each side of the asset's book.
+	 *
+	 * @throws IllegalStateException if the asset is not tradable
+	 */
+	public BookDepth depth(String assetName, int levels) {
+		return books[assetRegistry.tradable(assetName).getId()].depth(levels);
+	}
+
+	/**
+	 * The number of orders resting on the asset's book.
+	 *
+	 * @throws IllegalStateException if the asset is not tradable
+	 */
+	public int pendingOrders(String assetName) {
+		return books[assetRegistry.tradable(assetName).getId()].size();
+	}
+
+	boolean isResting(Order order) {
+		OrderBook book = book(order.getAssetName());
+		return book != null && book.contains(order.getId());
+	}
+
+	/**
+	 * @return the asset's book, or null if it is not a tradable asset
+	 */
+	private OrderBook book(String assetName) {
+		AssetDefinition asset = assetRegistry.find(assetName);
+		return asset == null ? null : books[asset.getId()];
+	}
+}
@@ -0,0 +1,255 @@
+package com.amirlatifi.broxage.matching;
+
+import com.amirlatifi.broxage.model.OrderSide;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Price-time priority limit order book for a single asset. Bids are kept best (highest) price first,
+ * asks best (lowest) price first, and each price level is a FIFO queue of resting orders. Prices and sizes
+ * are counts of units at the price and asset scales, so matching does no decimal arithmetic.
+ * <p>
+ * Each level also keeps the total size and number of its orders, updated as orders rest, trade and are
+ * canceled, so market depth is read off the first levels without summing orders, and every change to a level
+ * is numbered and reported to the {@link DepthListener}.
+ */
+class OrderBook {
+
+	private final String assetName;
+	private final DepthListener depthListener;
+	private final TreeMap<Long, PriceLevel> bids = new TreeMap<>(Comparator.reverseOrder());
+	private final TreeMap<Long, PriceLevel> asks = new TreeMap<>();
+	private final Map<Long, RestingOrder> index = new HashMap<>();
+	private long sequence;
+
+	OrderBook(String assetName, DepthListener depthListener) {
+		this.assetName = assetName;
+		this.depthListener = depthListener;
+	}
+
+	String getAssetName() {
+		return assetName;
+	}
+
+	synchronized List<Fill> match(Long orderId, Long customerId, OrderSide side, long price, long size) {
+		OrderSide makerSide = side == OrderSide.BUY ? OrderSide.SELL : OrderSide.BUY;
+		TreeMap<Long, PriceLevel> opposite = side == OrderSide.BUY ? asks : bids;
+		long remaining = size;
+		List<Fill> fills = Collections.emptyList();
+
+		while (remaining > 0 && !opposite.isEmpty()) {
+			Map.Entry<Long, PriceLevel> best = opposite.firstEntry();
+			long bestPrice = best.getKey();
+			if (side == OrderSide.BUY ? bestPrice > price : bestPrice < price) {
+				break;
+			}
+			PriceLevel level = best.getValue();
+			RestingOrder maker = level.peek();
+			long traded = Math.min(remaining, maker.remaining);
+			maker.remaining -= traded;
+			level.size -= traded;
+			remaining -= traded;
+
+			boolean makerFilled = maker.remaining == 0;
+			if (makerFilled) {
+				level.poll();
+				index.remove(maker.orderId);
+				if (level.isEmpty()) {
+					opposite.remove(best.getKey());
+				}
+			}
+			levelChanged(makerSide, bestPrice, level);
+			if (fills.isEmpty()) {
+				fills = new ArrayList<>();
+			}
+			fills.add(new Fill(maker.orderId, maker.customerId, bestPrice, traded, makerFilled));
+		}
+
+		if (remaining > 0) {
+			rest(orderId, customerId, side, price, remaining);
+		}
+		return fills;
+	}
+
+	synchronized void add(Long orderId, Long customerId, OrderSide side, long price, long remaining) {
+		rest(orderId, customerId, side, price, remaining);
+	}
+
+	synchronized boolean remove(Long orderId) {
+		RestingOrder order = index.remove(orderId);
+		if (order == null) {
+			return false;
+		}
+		TreeMap<Long, PriceLevel> side = order.side == OrderSide.BUY ? bids : asks;
+		PriceLevel level = side.get(order.price);
+		level.cancel(order);
+		if (level.isEmpty()) {
+			side.remove(order.price);
+		}
+		levelChanged(order.side, order.price, level);
+		return true;
+	}
+
+	/**
+	 * Reverts the {@link #match} of an order that returned {@code fills}: takes what rested of the order off the
+	 * book and gives each maker back what it traded, putting fully filled makers back at the head of their level
+	 * where they were. This restores the book exactly as long as nothing else changed it in between.
+	 */
+	synchronized void unmatch(Long orderId, OrderSide side, List<Fill> fills) {
+		remove(orderId);
+		OrderSide makerSide = side == OrderSide.BUY ? OrderSide.SELL : OrderSide.BUY;
+		TreeMap<Long, PriceLevel> opposite = side == OrderSide.BUY ? asks : bids;
+		for (int i = fills.size() - 1; i >= 0; i--) {
+			Fill fill = fills.get(i);
+			RestingOrder maker = index.get(fill.getMakerOrderId());
+			PriceLevel level = opposite.computeIfAbsent(fill.getPrice(), p -> new PriceLevel());
+			if (maker != null) {
+				maker.remaining += fill.getSize();
+				level.size += fill.getSize();
+			} else {
+				maker = new RestingOrder(fill.getMakerOrderId(), fill.getMakerCustomerId(), makerSide,
+						fill.getPrice(), fill.getSize());
+				level.addFirst(maker);
+				index.put(maker.orderId, maker);
+			}
+			levelChanged(makerSide, fill.getPrice(), level);
+		}
+	}
+
+	/**
+	 * Removes every resting order of the customer, or only those on {@code side} if it is not null, in one pass
+	 * over the book.
+	 */
+	synchronized List<CanceledOrder> removeAll(Long customerId, OrderSide side) {
+		List<CanceledOrder> removed = new ArrayList<>();
+		Iterator<RestingOrder> iterator = index.values().iterator();
+		while (iterator.hasNext()) {
+			RestingOrder order = iterator.next();
+			if (!order.customerId.equals(customerId) || (side != null && order.side != side)) {
+				continue;
+			}
+			iterator.remove();
+			TreeMap<Long, PriceLevel> levels = order.side == OrderSide.BUY ? bids : asks;
+			PriceLevel level = levels.get(order.price);
+			level.cancel(order);
+			if (level.isEmpty()) {
+				levels.remove(order.price);
+			}
+			levelChanged(order.side, order.price, level);
+			removed.add(new CanceledOrder(order.orderId, order.side, order.price, order.remaining));
+		}
+		return removed;
+	}
+
+	synchronized boolean contains(Long orderId) {
+		return index.containsKey(orderId);
+	}
+
+	synchronized int size() {
+		return index.size();
+	}
+
+	/**
+	 * The best {@code levels} price levels of each side; the cost depends only on {@code levels}.
+	 */
+	synchronized BookDepth depth(int levels) {
+		return new BookDepth(sequence, depth(bids, levels), depth(asks, levels));
+	}
+
+	private static List<BookDepth.Level> depth(TreeMap<Long, PriceLevel> side, int levels) {
+		List<BookDepth.Level> depth = new ArrayList<>(Math.min(levels, side.size()));
+		for (Map.Entry<Long, PriceLevel> entry : side.entrySet()) {
+			if (depth.size() == levels) {
+				break;
+			}
+			PriceLevel level = entry.getValue();
+			depth.add(new BookDepth.Level(entry.getKey(), level.size, level.liveOrders));
+		}
+		return depth;
+	}
+
+	private void rest(Long orderId, Long customerId, OrderSide side, long price, long remaining) {
+		RestingOrder order = new RestingOrder(orderId, customerId, side, price, remaining);
+		TreeMap<Long, PriceLevel> levels = side == OrderSide.BUY ? bids : asks;
+		PriceLevel level = levels.computeIfAbsent(price, p -> new PriceLevel());
+		level.add(order);
+		index.put(orderId, order);
+		levelChanged(side, price, level);
+	}
+
+	private void levelChanged(OrderSide side, long price, PriceLevel level) {
+		depthListener.levelChanged(assetName, ++sequence, side, price, level.size, level.liveOrders);
+	}
+
+	private static final class RestingOrder {
+		private final Long orderId;
+		private final Long customerId;
+		private final OrderSide side;
+		private final long price;
+		private long remaining;
+		private boolean canceled;
+
+		private RestingOrder(Long orderId, Long customerId, OrderSide side, long price, long remaining) {
+			this.orderId = orderId;
+			this.customerId = customerId;
+			this.side = side;
+			this.price = price;
+			this.remaining = remaining;
+		}
+	}
+
+	/**
+	 * FIFO queue of orders at one price. Cancels only flag the entry so they stay O(1); flagged entries are
+	 * skipped the next time they reach the head of the queue. The size is the total left on the live orders.
+	 */
+	private static final class PriceLevel {
+		private final ArrayDeque<RestingOrder> queue = new ArrayDeque<>();
+		private int liveOrders;
+		private long size;
+
+		void add(RestingOrder order) {
+			queue.addLast(order);
+			liveOrders++;
+			size += order.remaining;
+		}
+
+		void addFirst(RestingOrder order) {
+			queue.addFirst(order);
+			liveOrders++;
+			size += order.remaining;
+		}
+
+		RestingOrder peek() {
+			RestingOrder head = queue.peekFirst();
+			while (head != null && head.canceled) {
+				queue.pollFirst();
+				head = queue.peekFirst();
+			}
+			return head;
+		}
+
+		void poll() {
+			peek();
+			queue.pollFirst();
+			liveOrders--;
+		}
+
+		void cancel(RestingOrder order) {
+			order.canceled = true;
+			liveOrders--;
+			size -= order.remaining;
+		}
+
+		boolean isEmpty() {
+			return liveOrders == 0;
+		}
+	}
+}
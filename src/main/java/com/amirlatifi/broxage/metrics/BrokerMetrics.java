@@ -0,0 +1,95 @@
+package com.amirlatifi.broxage.metrics;
+
+import com.amirlatifi.broxage.ratelimit.Budget;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency timers of the order, balance and authentication paths and counters of rejected orders, throttled
+ * requests and customer cache lookups. Every meter
+ * is registered once up front, so recording costs no lookup or allocation; callers take
+ * {@link System#nanoTime()} when they start and pass it in when they are done.
+ * <p>
+ * The meters are plain timers and counters; percentile histograms, and the range they cover, are switched on
+ * for everything under {@code broxage.} by the {@code management.metrics.distribution} properties.
+ */
+@Component
+public class BrokerMetrics {
+
+	private final Timer orderCreate;
+	private final Timer orderCancel;
+	private final Timer balanceUpdate;
+	private final Timer tokenVerifyCached;
+	private final Timer tokenVerifyParsed;
+	private final Timer loginSuccess;
+	private final Timer loginFailure;
+	private final Map<RejectionReason, Counter> rejections = new EnumMap<>(RejectionReason.class);
+	private final Map<Budget, Counter> throttled = new EnumMap<>(Budget.class);
+	private final Counter customerCacheHit;
+	private final Counter customerCacheMiss;
+
+	public BrokerMetrics(MeterRegistry registry) {
+		this.orderCreate = registry.timer("broxage.order.create");
+		this.orderCancel = registry.timer("broxage.order.cancel");
+		this.balanceUpdate = registry.timer("broxage.asset.update");
+		this.tokenVerifyCached = registry.timer("broxage.auth.token.verify", "cached", "true");
+		this.tokenVerifyParsed = registry.timer("broxage.auth.token.verify", "cached", "false");
+		this.loginSuccess = registry.timer("broxage.auth.login", "outcome", "success");
+		this.loginFailure = registry.timer("broxage.auth.login", "outcome", "failure");
+		for (RejectionReason reason : RejectionReason.values()) {
+			rejections.put(reason, registry.counter("broxage.order.rejected", "reason",
+					reason.name().toLowerCase(Locale.ROOT)));
+		}
+		for (Budget budget : Budget.values()) {
+			throttled.put(budget, registry.counter("broxage.ratelimit.throttled", "budget", budget.getKey()));
+		}
+		this.customerCacheHit = registry.counter("broxage.customer.cache", "result", "hit");
+		this.customerCacheMiss = registry.counter("broxage.customer.cache", "result", "miss");
+	}
+
+	public void orderCreated(long startNanos) {
+		record(orderCreate, startNanos);
+	}
+
+	public void orderCanceled(long startNanos) {
+		record(orderCancel, startNanos);
+	}
+
+	public void balanceUpdated(long startNanos) {
+		record(balanceUpdate, startNanos);
+	}
+
+	/**
+	 * @param cached whether the token was found in the cache of verified tokens rather than parsed
+	 */
+	public void tokenVerified(long startNanos, boolean cached) {
+		record(cached ? tokenVerifyCached : tokenVerifyParsed, startNanos);
+	}
+
+	public void loginAttempted(long startNanos, boolean success) {
+		record(success ? loginSuccess : loginFailure, startNanos);
+	}
+
+	public void orderRejected(RejectionReason reason) {
+		rejections.get(reason).increment();
+	}
+
+	public void customerCacheLookup(boolean hit) {
+		(hit ? customerCacheHit : customerCacheMiss).increment();
+	}
+
+	public void requestThrottled(Budget budget) {
+		throttled.get(budget).increment();
+	}
+
+	private static void record(Timer timer, long startNanos) {
+		timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+	}
+}
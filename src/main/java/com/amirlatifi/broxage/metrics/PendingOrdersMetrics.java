@@ -0,0 +1,39 @@
+package com.amirlatifi.broxage.metrics;
+
+import com.amirlatifi.broxage.asset.AssetDefinition;
+import com.amirlatifi.broxage.asset.AssetRegistry;
+import com.amirlatifi.broxage.matching.MatchingEngine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Gauges of the number of orders resting on each tradable asset's book, read off the matching engine when
+ * the metrics are scraped.
+ */
+@Component
+public class PendingOrdersMetrics implements MeterBinder {
+
+	private final MatchingEngine matchingEngine;
+	private final AssetRegistry assetRegistry;
+
+	public PendingOrdersMetrics(MatchingEngine matchingEngine, AssetRegistry assetRegistry) {
+		this.matchingEngine = matchingEngine;
+		this.assetRegistry = assetRegistry;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		for (int id = 0; id < assetRegistry.size(); id++) {
+			AssetDefinition asset = assetRegistry.get(id);
+			if (asset.isQuote()) {
+				continue;
+			}
+			String symbol = asset.getSymbol();
+			Gauge.builder("broxage.order.pending", matchingEngine, engine -> engine.pendingOrders(symbol))
+					.tag("asset", symbol)
+					.register(registry);
+		}
+	}
+}
@@ -0,0 +1,15 @@
+package com.amirlatifi.broxage.metrics;
+
+/**
+ * Why an order request was turned down, as counted by {@link BrokerMetrics#orderRejected}.
+ */
+public enum RejectionReason {
+	/** The usable balance does not cover the reservation. */
+	INSUFFICIENT_BALANCE,
+	/** Only pending orders can be canceled. */
+	NOT_PENDING,
+	/** The order belongs to another customer. */
+	WRONG_OWNER,
+	/** The asset is not tradable, or the size or price is not a whole number of lots or ticks. */
+	INVALID
+}
@@ -1,22 +1,36 @@
 package com.amirlatifi.broxage.model;
 
+import com.amirlatifi.broxage.amount.FixedPoint;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
 import java.math.BigDecimal;
 
 @Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_asset_customer_asset", columnNames = {"customerId", "assetName"}))
 public class Asset {
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "asset_seq")
+	@SequenceGenerator(name = "asset_seq", sequenceName = "asset_seq", allocationSize = 50)
 	private Long id;
 
 	private Long customerId;
 	private String assetName;
+	@Column(precision = 19, scale = FixedPoint.MAX_SCALE)
 	private BigDecimal size;
+	@Column(precision = 19, scale = FixedPoint.MAX_SCALE)
 	private BigDecimal usableSize;
 
+	@JsonIgnore
+	private Long ledgerSeq;
+
 	public Long getId() {
 		return id;
 	}
@@ -56,4 +70,12 @@ public class Asset {
 	public void setUsableSize(BigDecimal usableSize) {
 		this.usableSize = usableSize;
 	}
+
+	public Long getLedgerSeq() {
+		return ledgerSeq;
+	}
+
+	public void setLedgerSeq(Long ledgerSeq) {
+		this.ledgerSeq = ledgerSeq;
+	}
 }
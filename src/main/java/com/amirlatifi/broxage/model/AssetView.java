@@ -0,0 +1,43 @@
+package com.amirlatifi.broxage.model;
+
+import java.math.BigDecimal;
+
+/**
+ * A balance as the API returns it: an immutable copy of an account of the {@code BalanceLedger}, without the
+ * ledger's bookkeeping, so a balance read no longer builds an {@link Asset} entity.
+ */
+public final class AssetView {
+	private final Long id;
+	private final Long customerId;
+	private final String assetName;
+	private final BigDecimal size;
+	private final BigDecimal usableSize;
+
+	public AssetView(Long id, Long customerId, String assetName, BigDecimal size, BigDecimal usableSize) {
+		this.id = id;
+		this.customerId = customerId;
+		this.assetName = assetName;
+		this.size = size;
+		this.usableSize = usableSize;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public Long getCustomerId() {
+		return customerId;
+	}
+
+	public String getAssetName() {
+		return assetName;
+	}
+
+	public BigDecimal getSize() {
+		return size;
+	}
+
+	public BigDecimal getUsableSize() {
+		return usableSize;
+	}
+}
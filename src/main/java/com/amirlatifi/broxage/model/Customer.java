@@ -11,7 +11,8 @@ import java.util.Collections;
 @Entity
 public class Customer implements UserDetails {
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "customer_seq")
+	@SequenceGenerator(name = "customer_seq", sequenceName = "customer_seq", allocationSize = 50)
 	private Long id;
 
 	@Column(unique = true)
@@ -58,7 +59,7 @@ public class Customer implements UserDetails {
 
 	@Override
 	public Collection<? extends GrantedAuthority> getAuthorities() {
-		return Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER"));
+		return Collections.singletonList(new SimpleGrantedAuthority(role.getAuthority()));
 	}
 
 	@Override
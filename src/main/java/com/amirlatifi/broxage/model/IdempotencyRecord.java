@@ -0,0 +1,97 @@
+package com.amirlatifi.broxage.model;
+
+import org.springframework.data.domain.Persistable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Lob;
+import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
+import javax.persistence.Table;
+import javax.persistence.Transient;
+
+/**
+ * The response to a request sent with an {@code Idempotency-Key}, kept so that a retry of the request within
+ * the idempotency window gets the same response instead of being executed again. Records are only ever
+ * inserted, so the id is assigned and saving one does not look it up first.
+ */
+@Entity
+@Table(indexes = @Index(name = "idx_idempotency_expires_at", columnList = "expiresAt"))
+public class IdempotencyRecord implements Persistable<String> {
+	/**
+	 * The customer id, the kind of request and the client's key.
+	 */
+	@Id
+	@Column(length = 200)
+	private String id;
+
+	/**
+	 * Identifies the request's parameters, so a key reused for a different request is refused.
+	 */
+	@Column(length = 500)
+	private String fingerprint;
+
+	@Lob
+	private String responseBody;
+
+	private long expiresAt;
+
+	@Transient
+	private boolean persisted;
+
+	public IdempotencyRecord() {
+	}
+
+	public IdempotencyRecord(String id, String fingerprint, String responseBody, long expiresAt) {
+		this.id = id;
+		this.fingerprint = fingerprint;
+		this.responseBody = responseBody;
+		this.expiresAt = expiresAt;
+	}
+
+	@Override
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	public void setFingerprint(String fingerprint) {
+		this.fingerprint = fingerprint;
+	}
+
+	public String getResponseBody() {
+		return responseBody;
+	}
+
+	public void setResponseBody(String responseBody) {
+		this.responseBody = responseBody;
+	}
+
+	public long getExpiresAt() {
+		return expiresAt;
+	}
+
+	public void setExpiresAt(long expiresAt) {
+		this.expiresAt = expiresAt;
+	}
+
+	@Override
+	public boolean isNew() {
+		return !persisted;
+	}
+
+	@PostLoad
+	@PostPersist
+	void markPersisted() {
+		persisted = true;
+	}
+}
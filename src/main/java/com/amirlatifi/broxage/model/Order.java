@@ -1,14 +1,21 @@
 package com.amirlatifi.broxage.model;
 
+import com.amirlatifi.broxage.amount.FixedPoint;
+
 import javax.persistence.*;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+		// Order history is read per customer in (createDate, id) order, see OrderRepository.HISTORY
+		@Index(name = "idx_orders_customer_create_date", columnList = "customerId, createDate, id"),
+		@Index(name = "idx_orders_customer_status", columnList = "customerId, status")
+})
 public class Order {
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_seq")
+	@SequenceGenerator(name = "order_seq", sequenceName = "order_seq", allocationSize = 50)
 	private Long id;
 
 	private Long customerId;
@@ -17,8 +24,12 @@ public class Order {
 	@Enumerated(EnumType.STRING)
 	private OrderSide orderSide;
 
+	@Column(precision = 19, scale = FixedPoint.MAX_SCALE)
 	private BigDecimal size;
+	@Column(precision = 19, scale = FixedPoint.MAX_SCALE)
 	private BigDecimal price;
+	@Column(precision = 19, scale = FixedPoint.MAX_SCALE)
+	private BigDecimal filledSize = BigDecimal.ZERO;
 
 	@Enumerated(EnumType.STRING)
 	private OrderStatus status;
@@ -73,6 +84,18 @@ public class Order {
 		this.price = price;
 	}
 
+	public BigDecimal getFilledSize() {
+		return filledSize;
+	}
+
+	public void setFilledSize(BigDecimal filledSize) {
+		this.filledSize = filledSize;
+	}
+
+	public BigDecimal getRemainingSize() {
+		return filledSize == null ? size : size.subtract(filledSize);
+	}
+
 	public OrderStatus getStatus() {
 		return status;
 	}
@@ -0,0 +1,87 @@
+package com.amirlatifi.broxage.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * An order as the API returns it: an immutable copy of the {@link Order} columns. Order history is read straight
+ * into these by a constructor projection (see {@code OrderRepository.HISTORY}), so listing and streaming orders
+ * loads no entities into the persistence context: nothing to dirty-check, flush or detach. Serializes to the
+ * same JSON as the entity, and reads back from it, as a response replayed for an idempotency key is.
+ */
+public final class OrderView {
+	private final Long id;
+	private final Long customerId;
+	private final String assetName;
+	private final OrderSide orderSide;
+	private final BigDecimal size;
+	private final BigDecimal price;
+	private final BigDecimal filledSize;
+	private final OrderStatus status;
+	private final LocalDateTime createDate;
+
+	@JsonCreator
+	public OrderView(@JsonProperty("id") Long id, @JsonProperty("customerId") Long customerId,
+					 @JsonProperty("assetName") String assetName, @JsonProperty("orderSide") OrderSide orderSide,
+					 @JsonProperty("size") BigDecimal size, @JsonProperty("price") BigDecimal price,
+					 @JsonProperty("filledSize") BigDecimal filledSize, @JsonProperty("status") OrderStatus status,
+					 @JsonProperty("createDate") LocalDateTime createDate) {
+		this.id = id;
+		this.customerId = customerId;
+		this.assetName = assetName;
+		this.orderSide = orderSide;
+		this.size = size;
+		this.price = price;
+		this.filledSize = filledSize;
+		this.status = status;
+		this.createDate = createDate;
+	}
+
+	public static OrderView of(Order order) {
+		return new OrderView(order.getId(), order.getCustomerId(), order.getAssetName(), order.getOrderSide(),
+				order.getSize(), order.getPrice(), order.getFilledSize(), order.getStatus(), order.getCreateDate());
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public Long getCustomerId() {
+		return customerId;
+	}
+
+	public String getAssetName() {
+		return assetName;
+	}
+
+	public OrderSide getOrderSide() {
+		return orderSide;
+	}
+
+	public BigDecimal getSize() {
+		return size;
+	}
+
+	public BigDecimal getPrice() {
+		return price;
+	}
+
+	public BigDecimal getFilledSize() {
+		return filledSize;
+	}
+
+	public BigDecimal getRemainingSize() {
+		return filledSize == null || size == null ? size : size.subtract(filledSize);
+	}
+
+	public OrderStatus getStatus() {
+		return status;
+	}
+
+	public LocalDateTime getCreateDate() {
+		return createDate;
+	}
+}
@@ -1,5 +1,12 @@
 package com.amirlatifi.broxage.model;
 
 public enum Role {
-	CUSTOMER, ADMIN
+	CUSTOMER, ADMIN;
+
+	/**
+	 * The Spring Security authority granted to this role, e.g. {@code ROLE_ADMIN}.
+	 */
+	public String getAuthority() {
+		return "ROLE_" + name();
+	}
 }
@@ -0,0 +1,35 @@
+package com.amirlatifi.broxage.model;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * The time before which every token issued to a customer is revoked, e.g. because the customer signed out
+ * everywhere.
+ */
+@Entity
+public class TokenRevocation {
+	@Id
+	private Long customerId;
+
+	/**
+	 * Epoch milliseconds; tokens issued before are rejected.
+	 */
+	private long revokedBefore;
+
+	public TokenRevocation() {
+	}
+
+	public TokenRevocation(Long customerId, long revokedBefore) {
+		this.customerId = customerId;
+		this.revokedBefore = revokedBefore;
+	}
+
+	public Long getCustomerId() {
+		return customerId;
+	}
+
+	public long getRevokedBefore() {
+		return revokedBefore;
+	}
+}
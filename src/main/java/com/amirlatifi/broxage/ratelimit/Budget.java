@@ -0,0 +1,58 @@
+package com.amirlatifi.broxage.ratelimit;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * The kinds of request a customer has a separate rate budget for, so a client polling its orders cannot
+ * starve its own cancels.
+ */
+public enum Budget {
+	ORDER_CREATE("order-create", 50, 100),
+	ORDER_CANCEL("order-cancel", 50, 100),
+	READ("read", 20, 40);
+
+	private final String key;
+	private final double defaultPerSecond;
+	private final int defaultBurst;
+
+	Budget(String key, double defaultPerSecond, int defaultBurst) {
+		this.key = key;
+		this.defaultPerSecond = defaultPerSecond;
+		this.defaultBurst = defaultBurst;
+	}
+
+	/**
+	 * The name of the budget in the {@code rate-limit.<role>.<budget>} properties.
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	double getDefaultPerSecond() {
+		return defaultPerSecond;
+	}
+
+	int getDefaultBurst() {
+		return defaultBurst;
+	}
+
+	/**
+	 * @return the budget the request draws from, or null if it is not limited
+	 */
+	public static Budget of(HttpServletRequest request) {
+		String path = request.getRequestURI().substring(request.getContextPath().length());
+		String method = request.getMethod();
+		if (path.startsWith("/api/orders")) {
+			switch (method) {
+				case "POST":
+					// A batch is charged a token per order once its body has been read, see OrderController
+					return path.equals("/api/orders/batch") ? null : ORDER_CREATE;
+				case "DELETE":
+					return ORDER_CANCEL;
+				default:
+					break;
+			}
+		}
+		return "GET".equals(method) && path.startsWith("/api/") ? READ : null;
+	}
+}
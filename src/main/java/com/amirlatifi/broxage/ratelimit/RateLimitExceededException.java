@@ -0,0 +1,33 @@
+package com.amirlatifi.broxage.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thrown when a request is over its customer's rate budget but could only be charged once its body had been
+ * read, such as a batch of orders. Answered like the {@link RateLimitFilter} answers, with
+ * {@code 429 Too Many Requests} and a {@code Retry-After}.
+ */
+public class RateLimitExceededException extends RuntimeException {
+
+	private final long retryAfterSeconds;
+
+	/**
+	 * @param waitNanos the wait returned by {@link RateLimiter#tryAcquire}
+	 */
+	public RateLimitExceededException(long waitNanos) {
+		super("Too many requests, retry in " + retryAfterSeconds(waitNanos) + "s");
+		this.retryAfterSeconds = retryAfterSeconds(waitNanos);
+	}
+
+	public long getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+
+	/**
+	 * @return the wait rounded up to whole seconds, at least 1, as {@code Retry-After} takes it
+	 */
+	static long retryAfterSeconds(long waitNanos) {
+		long second = TimeUnit.SECONDS.toNanos(1);
+		return Math.max(1, (waitNanos + second - 1) / second);
+	}
+}
@@ -0,0 +1,65 @@
+package com.amirlatifi.broxage.ratelimit;
+
+import com.amirlatifi.broxage.exception.ErrorDetails;
+import com.amirlatifi.broxage.metrics.BrokerMetrics;
+import com.amirlatifi.broxage.security.CustomerPrincipal;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Applies the {@link RateLimiter} to authenticated requests, right after the token has been verified and
+ * before anything else is done for them. A request over its customer's budget is answered with
+ * {@code 429 Too Many Requests} and a {@code Retry-After} of whole seconds.
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+
+	private final RateLimiter rateLimiter;
+	private final BrokerMetrics metrics;
+	private final ObjectMapper objectMapper;
+
+	public RateLimitFilter(RateLimiter rateLimiter, BrokerMetrics metrics, ObjectMapper objectMapper) {
+		this.rateLimiter = rateLimiter;
+		this.metrics = metrics;
+		this.objectMapper = objectMapper;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest req,
+									HttpServletResponse res,
+									FilterChain chain) throws IOException, ServletException {
+		Budget budget = Budget.of(req);
+		Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+		if (budget == null || authentication == null
+				|| !(authentication.getPrincipal() instanceof CustomerPrincipal)) {
+			chain.doFilter(req, res);
+			return;
+		}
+		CustomerPrincipal principal = (CustomerPrincipal) authentication.getPrincipal();
+		long wait = rateLimiter.tryAcquire(principal.getCustomerId(), principal.getRole(), budget);
+		if (wait == 0) {
+			chain.doFilter(req, res);
+			return;
+		}
+
+		metrics.requestThrottled(budget);
+		long retryAfter = RateLimitExceededException.retryAfterSeconds(wait);
+		res.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+		res.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+		res.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		res.setCharacterEncoding("UTF-8");
+		objectMapper.writeValue(res.getWriter(), new ErrorDetails(new Date(),
+				"Too many requests, retry in " + retryAfter + "s", "uri=" + req.getRequestURI()));
+	}
+}
@@ -0,0 +1,144 @@
+package com.amirlatifi.broxage.ratelimit;
+
+import com.amirlatifi.broxage.model.Role;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.PropertyResolver;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * A token bucket per customer and {@link Budget}, refilled at {@code rate-limit.<role>.<budget>.per-second}
+ * and holding at most {@code rate-limit.<role>.<budget>.burst} tokens; a rate of 0 lifts the limit.
+ * <p>
+ * Each bucket is a single {@code long}, the time at which it would be full again (the generic cell rate
+ * algorithm), so taking a token is one read and one compare-and-set with no lock and no allocation, and a
+ * denied request learns exactly how long to wait. A customer's buckets are created on their first limited
+ * request and dropped once they have refilled completely, which loses nothing.
+ */
+@Component
+public class RateLimiter {
+
+	private static final Budget[] BUDGETS = Budget.values();
+
+	private final Limit[][] limits;
+	private final LongSupplier nanoClock;
+	private final ConcurrentMap<Long, AtomicLongArray> buckets = new ConcurrentHashMap<>();
+
+	@Autowired
+	public RateLimiter(Environment environment) {
+		this(environment, System::nanoTime);
+	}
+
+	RateLimiter(PropertyResolver properties, LongSupplier nanoClock) {
+		this.nanoClock = nanoClock;
+		Role[] roles = Role.values();
+		this.limits = new Limit[roles.length][BUDGETS.length];
+		for (Role role : roles) {
+			for (Budget budget : BUDGETS) {
+				String prefix = "rate-limit." + role.name().toLowerCase(Locale.ROOT) + "." + budget.getKey();
+				limits[role.ordinal()][budget.ordinal()] = new Limit(
+						properties.getProperty(prefix + ".per-second", Double.class, budget.getDefaultPerSecond()),
+						properties.getProperty(prefix + ".burst", Integer.class, budget.getDefaultBurst()));
+			}
+		}
+	}
+
+	/**
+	 * Takes a token from the customer's bucket for {@code budget}.
+	 *
+	 * @return 0 if the request may go ahead, otherwise the nanoseconds until a token will be available
+	 */
+	public long tryAcquire(long customerId, Role role, Budget budget) {
+		return tryAcquire(customerId, role, budget, 1);
+	}
+
+	/**
+	 * Takes {@code permits} tokens at once from the customer's bucket for {@code budget}, or none if it does not
+	 * hold that many, as for a batch of orders charged a token each. A charge larger than the bucket can hold is
+	 * capped at the burst, so it goes ahead once the bucket is full and empties it.
+	 *
+	 * @return 0 if the request may go ahead, otherwise the nanoseconds until enough tokens will be available
+	 */
+	public long tryAcquire(long customerId, Role role, Budget budget, int permits) {
+		Limit limit = limits[role.ordinal()][budget.ordinal()];
+		if (limit.interval == 0) {
+			return 0;
+		}
+		AtomicLongArray bucket = buckets.get(customerId);
+		if (bucket == null) {
+			bucket = buckets.computeIfAbsent(customerId, id -> newBucket());
+		}
+		long cost = limit.interval * Math.min(permits, limit.burst);
+		int slot = budget.ordinal();
+		long now = nanoClock.getAsLong();
+		while (true) {
+			long fullAt = bucket.get(slot);
+			long start = Math.max(fullAt, now);
+			long wait = start + cost - limit.interval - now - limit.tolerance;
+			if (wait > 0) {
+				return wait;
+			}
+			if (bucket.compareAndSet(slot, fullAt, start + cost)) {
+				return 0;
+			}
+		}
+	}
+
+	/**
+	 * Drops the buckets of customers whose every budget has refilled.
+	 */
+	@Scheduled(fixedDelayString = "${rate-limit.purge.interval-ms:60000}")
+	public void purgeIdle() {
+		long now = nanoClock.getAsLong();
+		buckets.values().removeIf(bucket -> {
+			for (int i = 0; i < bucket.length(); i++) {
+				if (bucket.get(i) > now) {
+					return false;
+				}
+			}
+			return true;
+		});
+	}
+
+	int size() {
+		return buckets.size();
+	}
+
+	private static AtomicLongArray newBucket() {
+		AtomicLongArray bucket = new AtomicLongArray(BUDGETS.length);
+		// nanoTime may be negative, so start from a time every clock reading is past
+		for (int i = 0; i < BUDGETS.length; i++) {
+			bucket.set(i, Long.MIN_VALUE);
+		}
+		return bucket;
+	}
+
+	private static final class Limit {
+		/**
+		 * Nanoseconds per token, or 0 if unlimited.
+		 */
+		private final long interval;
+		/**
+		 * How far ahead of now a bucket's full time may run, i.e. the burst beyond the first token.
+		 */
+		private final long tolerance;
+		/**
+		 * The most tokens the bucket holds.
+		 */
+		private final int burst;
+
+		Limit(double perSecond, int burst) {
+			this.interval = perSecond > 0 ? Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / perSecond)) : 0;
+			this.burst = Math.max(1, burst);
+			this.tolerance = interval * (this.burst - 1);
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package com.amirlatifi.broxage.repository;
+
+import com.amirlatifi.broxage.model.IdempotencyRecord;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+	List<IdempotencyRecord> findByExpiresAtGreaterThanOrderByExpiresAtDesc(long now, Pageable pageable);
+
+	@Transactional
+	@Modifying
+	@Query("delete from IdempotencyRecord r where r.expiresAt <= :now")
+	int deleteExpired(@Param("now") long now);
+}
@@ -1,15 +1,78 @@
 package com.amirlatifi.broxage.repository;
 
 import com.amirlatifi.broxage.model.Order;
+import com.amirlatifi.broxage.model.OrderSide;
+import com.amirlatifi.broxage.model.OrderStatus;
+import com.amirlatifi.broxage.model.OrderView;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
-public interface OrderRepository extends JpaRepository<Order, Long> {
-	List<Order> findByCustomerIdAndCreateDateBetween(Long customerId, LocalDateTime startDate, LocalDateTime endDate);
+public interface OrderRepository extends JpaRepository<Order, Long>, OrderRestoreRepository {
+	/**
+	 * Order history is read as {@link OrderView}s, built by the query from the selected columns rather than
+	 * loaded as managed entities.
+	 */
+	String HISTORY = "select new com.amirlatifi.broxage.model.OrderView(o.id, o.customerId, o.assetName,"
+			+ " o.orderSide, o.size, o.price, o.filledSize, o.status, o.createDate)"
+			+ " from Order o where o.customerId = :customerId"
+			+ " and o.createDate between :startDate and :endDate"
+			+ " and (:status is null or o.status = :status)"
+			+ " and (:side is null or o.orderSide = :side)"
+			+ " and (:assetName is null or o.assetName = :assetName)";
 
-	List<Order> findByCustomerId(Long customerId);
+	List<Order> findByStatusOrderByIdAsc(OrderStatus status);
+
+	@Query("select distinct o.assetName from Order o where o.customerId = :customerId and o.status = :status")
+	List<String> findAssetNamesByCustomerIdAndStatus(@Param("customerId") Long customerId,
+													 @Param("status") OrderStatus status);
+
+	/**
+	 * Marks the given orders, those of them still pending, as canceled in a single statement. Callers bound the
+	 * number of ids, as each is a bind parameter.
+	 *
+	 * @return the number of orders canceled
+	 */
+	@Modifying
+	@Query("update Order o set o.status = com.amirlatifi.broxage.model.OrderStatus.CANCELED"
+			+ " where o.id in :ids and o.status = com.amirlatifi.broxage.model.OrderStatus.PENDING")
+	int cancelPending(@Param("ids") Collection<Long> ids);
+
+	/**
+	 * One page of order history, in {@code (createDate, id)} order, starting right after the given position.
+	 */
+	@Query(HISTORY + " and o.createDate >= :afterDate and (o.createDate > :afterDate or o.id > :afterId)"
+			+ " order by o.createDate, o.id")
+	List<OrderView> findHistoryPage(@Param("customerId") Long customerId,
+									@Param("startDate") LocalDateTime startDate,
+									@Param("endDate") LocalDateTime endDate,
+									@Param("status") OrderStatus status,
+									@Param("side") OrderSide side,
+									@Param("assetName") String assetName,
+									@Param("afterDate") LocalDateTime afterDate,
+									@Param("afterId") Long afterId,
+									Pageable pageable);
+
+	/**
+	 * The whole order history read through a JDBC cursor; must be consumed inside a transaction and closed.
+	 */
+	@Query(HISTORY + " order by o.createDate, o.id")
+	@QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+	Stream<OrderView> streamHistory(@Param("customerId") Long customerId,
+									@Param("startDate") LocalDateTime startDate,
+									@Param("endDate") LocalDateTime endDate,
+									@Param("status") OrderStatus status,
+									@Param("side") OrderSide side,
+									@Param("assetName") String assetName);
 }
@@ -0,0 +1,22 @@
+package com.amirlatifi.broxage.repository;
+
+import com.amirlatifi.broxage.model.Order;
+
+import java.util.Collection;
+
+/**
+ * Writes orders rebuilt from the event journal back into the {@code orders} table, for event-sourced recovery.
+ */
+public interface OrderRestoreRepository {
+
+	/**
+	 * Saves the orders under the ids they already have, inserting those that are missing and overwriting the
+	 * others.
+	 */
+	void restore(Collection<Order> orders);
+
+	/**
+	 * Moves the order id sequence past {@code orderId}, so no id handed out before the restart is reused.
+	 */
+	void advanceIdsPast(long orderId);
+}
@@ -0,0 +1,64 @@
+package com.amirlatifi.broxage.repository;
+
+import com.amirlatifi.broxage.model.Order;
+import org.hibernate.ReplicationMode;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.Collection;
+
+/**
+ * Goes through the entity mapping and the configured dialect rather than SQL of its own, so recovery works on
+ * whichever database the orders live in.
+ */
+public class OrderRestoreRepositoryImpl implements OrderRestoreRepository {
+
+	/**
+	 * The sequence {@link Order} ids are drawn from.
+	 */
+	private static final String ID_SEQUENCE = "order_seq";
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Value("${spring.jpa.properties.hibernate.jdbc.batch_size:100}")
+	private int batchSize = 100;
+
+	/**
+	 * Replicates each order, which keeps its id where a save would draw a new one, and clears the session
+	 * after every JDBC batch so a large recovery does not hold every order in it.
+	 */
+	@Override
+	@Transactional
+	public void restore(Collection<Order> orders) {
+		Session session = entityManager.unwrap(Session.class);
+		int pending = 0;
+		for (Order order : orders) {
+			session.replicate(order, ReplicationMode.OVERWRITE);
+			if (++pending == batchSize) {
+				session.flush();
+				session.clear();
+				pending = 0;
+			}
+		}
+	}
+
+	/**
+	 * Draws values from the sequence until one is past {@code orderId}; there is no portable way to restart a
+	 * sequence, and with ids allocated in blocks each draw moves it a whole block.
+	 */
+	@Override
+	@Transactional
+	public void advanceIdsPast(long orderId) {
+		String nextValue = entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+				.getJdbcServices().getDialect().getSequenceNextValString(ID_SEQUENCE);
+		long value;
+		do {
+			value = ((Number) entityManager.createNativeQuery(nextValue).getSingleResult()).longValue();
+		} while (value <= orderId);
+	}
+}
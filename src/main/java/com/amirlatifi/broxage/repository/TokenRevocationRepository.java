@@ -0,0 +1,9 @@
+package com.amirlatifi.broxage.repository;
+
+import com.amirlatifi.broxage.model.TokenRevocation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface TokenRevocationRepository extends JpaRepository<TokenRevocation, Long> {
+}
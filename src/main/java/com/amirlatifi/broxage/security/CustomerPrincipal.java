@@ -0,0 +1,70 @@
+package com.amirlatifi.broxage.security;
+
+import com.amirlatifi.broxage.model.Role;
+import org.springframework.security.core.AuthenticatedPrincipal;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The authenticated customer behind a request, built from the claims of its token. Its name is the customer
+ * id, so controllers can take the id straight from {@code Authentication.getName()} without looking the
+ * customer up, and its authorities follow the customer's {@link Role}. It also remembers when its token was
+ * issued, to check it against {@link TokenRevocations}.
+ */
+public final class CustomerPrincipal implements AuthenticatedPrincipal, Serializable {
+
+	private final long customerId;
+	private final String username;
+	private final Role role;
+	private final long issuedAt;
+	private final List<GrantedAuthority> authorities;
+
+	public CustomerPrincipal(long customerId, String username, Role role) {
+		this(customerId, username, role, 0);
+	}
+
+	/**
+	 * @param issuedAt when the token was issued, in epoch milliseconds
+	 */
+	public CustomerPrincipal(long customerId, String username, Role role, long issuedAt) {
+		this.customerId = customerId;
+		this.username = username;
+		this.role = role;
+		this.issuedAt = issuedAt;
+		this.authorities = Collections.singletonList(new SimpleGrantedAuthority(role.getAuthority()));
+	}
+
+	public long getCustomerId() {
+		return customerId;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public Role getRole() {
+		return role;
+	}
+
+	public long getIssuedAt() {
+		return issuedAt;
+	}
+
+	public List<GrantedAuthority> getAuthorities() {
+		return authorities;
+	}
+
+	@Override
+	public String getName() {
+		return String.valueOf(customerId);
+	}
+
+	@Override
+	public String toString() {
+		return username + " (" + customerId + ", " + role + ")";
+	}
+}
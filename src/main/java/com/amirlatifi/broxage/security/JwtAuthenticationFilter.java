@@ -1,9 +1,12 @@
 package com.amirlatifi.broxage.security;
 
+import com.amirlatifi.broxage.metrics.BrokerMetrics;
 import com.amirlatifi.broxage.model.Customer;
+import com.amirlatifi.broxage.service.CustomerService;
+import com.amirlatifi.broxage.service.CustomerUserDetails;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
@@ -16,16 +19,29 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
+/**
+ * Logs a customer in from a JSON body of username and password and answers with a {@link TokenResponse}. The
+ * password check runs on the password hashing pool; when that is saturated the login is answered with
+ * {@code 503} and a {@code Retry-After}, rather than waiting. A password hashed at a lower cost than the
+ * current one is rehashed once it has been checked.
+ */
 public class JwtAuthenticationFilter extends UsernamePasswordAuthenticationFilter {
 
 	private AuthenticationManager authenticationManager;
+	private final CustomerService customerService;
+	private final JwtTokenService tokenService;
+	private final ObjectMapper objectMapper;
+	private final BrokerMetrics metrics;
 
-	public JwtAuthenticationFilter(AuthenticationManager authenticationManager) {
+	public JwtAuthenticationFilter(AuthenticationManager authenticationManager, CustomerService customerService,
+								   JwtTokenService tokenService, ObjectMapper objectMapper, BrokerMetrics metrics) {
 		this.authenticationManager = authenticationManager;
+		this.customerService = customerService;
+		this.tokenService = tokenService;
+		this.objectMapper = objectMapper;
+		this.metrics = metrics;
 		setFilterProcessesUrl("/api/customers/login");
 	}
 
@@ -33,15 +49,29 @@ public class JwtAuthenticationFilter extends UsernamePasswordAuthenticationFilte
 	public Authentication attemptAuthentication(HttpServletRequest req,
 												HttpServletResponse res) throws AuthenticationException {
 		try {
-			Customer creds = new ObjectMapper()
-					.readValue(req.getInputStream(), Customer.class);
+			Customer creds = objectMapper.readValue(req.getInputStream(), Customer.class);
 
-			return authenticationManager.authenticate(
-					new UsernamePasswordAuthenticationToken(
-							creds.getUsername(),
-							creds.getPassword(),
-							new ArrayList<>())
-			);
+			// Timed around the customer lookup and BCrypt check only, not reading the request
+			long start = System.nanoTime();
+			boolean success = false;
+			try {
+				Authentication authentication = authenticationManager.authenticate(
+						new UsernamePasswordAuthenticationToken(
+								creds.getUsername(),
+								creds.getPassword(),
+								new ArrayList<>())
+				);
+				success = true;
+				customerService.upgradePassword((CustomerUserDetails) authentication.getPrincipal(), creds.getPassword());
+				return authentication;
+			} catch (RejectedExecutionException e) {
+				res.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+				res.setHeader(HttpHeaders.RETRY_AFTER, "1");
+				// No authentication and a response written: the filter stops here
+				return null;
+			} finally {
+				metrics.loginAttempted(start, success);
+			}
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
@@ -52,20 +82,11 @@ public class JwtAuthenticationFilter extends UsernamePasswordAuthenticationFilte
 											HttpServletResponse res,
 											FilterChain chain,
 											Authentication auth) throws IOException, ServletException {
-		String token = Jwts.builder()
-				.setSubject(((Customer) auth.getPrincipal()).getUsername())
-				.setExpiration(new Date(System.currentTimeMillis() + 864_000_000))
-				.signWith(SignatureAlgorithm.HS512, "SecretKeyToGenJWTs".getBytes())
-				.compact();
-
-		res.addHeader("Authorization", "Bearer " + token);
-
-		// Add token to response body
-		Map<String, String> tokenMap = new HashMap<>();
-		tokenMap.put("token", token);
+		TokenResponse tokens = tokenService.issue(((CustomerUserDetails) auth.getPrincipal()).getProfile());
 
+		res.addHeader("Authorization", "Bearer " + tokens.getToken());
 		res.setContentType("application/json");
 		res.setCharacterEncoding("UTF-8");
-		res.getWriter().write(new ObjectMapper().writeValueAsString(tokenMap));
+		objectMapper.writeValue(res.getWriter(), tokens);
 	}
-}
\ No newline at end of file
+}
@@ -1,6 +1,16 @@
 package com.amirlatifi.broxage.security;
 
+import com.amirlatifi.broxage.exception.ErrorDetails;
+import com.amirlatifi.broxage.metrics.BrokerMetrics;
+import com.amirlatifi.broxage.model.Role;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
 import io.jsonwebtoken.Jwts;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -11,12 +21,27 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Date;
 
 public class JwtAuthorizationFilter extends BasicAuthenticationFilter {
 
-	public JwtAuthorizationFilter(AuthenticationManager authManager) {
+	static final String CUSTOMER_ID_CLAIM = "customerId";
+	static final String ROLE_CLAIM = "role";
+
+	private final JwtTokenCache tokenCache;
+	private final JwtKeys keys;
+	private final TokenRevocations revocations;
+	private final BrokerMetrics metrics;
+	private final ObjectMapper objectMapper;
+
+	public JwtAuthorizationFilter(AuthenticationManager authManager, JwtTokenCache tokenCache, JwtKeys keys,
+								  TokenRevocations revocations, BrokerMetrics metrics, ObjectMapper objectMapper) {
 		super(authManager);
+		this.tokenCache = tokenCache;
+		this.keys = keys;
+		this.revocations = revocations;
+		this.metrics = metrics;
+		this.objectMapper = objectMapper;
 	}
 
 	@Override
@@ -30,26 +55,96 @@ public class JwtAuthorizationFilter extends BasicAuthenticationFilter {
 			return;
 		}
 
-		UsernamePasswordAuthenticationToken authentication = getAuthentication(req);
+		UsernamePasswordAuthenticationToken authentication;
+		try {
+			authentication = getAuthentication(header.substring("Bearer ".length()));
+		} catch (UnusableTokenException e) {
+			rejectInvalidToken(req, res, e.getMessage());
+			return;
+		} catch (JwtException | IllegalArgumentException e) {
+			rejectInvalidToken(req, res, e instanceof ExpiredJwtException ? "Token has expired" : "Invalid token");
+			return;
+		}
 
 		SecurityContextHolder.getContext().setAuthentication(authentication);
 		chain.doFilter(req, res);
 	}
 
-	private UsernamePasswordAuthenticationToken getAuthentication(HttpServletRequest request) {
-		String token = request.getHeader("Authorization");
-		if (token != null) {
-			String user = Jwts.parser()
-					.setSigningKey("SecretKeyToGenJWTs".getBytes())
-					.parseClaimsJws(token.replace("Bearer ", ""))
-					.getBody()
-					.getSubject();
-
-			if (user != null) {
-				return new UsernamePasswordAuthenticationToken(user, null, new ArrayList<>());
+	/**
+	 * Answers a token that is malformed, expired, signed with an unknown key, revoked or not an access token
+	 * with 401 and the {@code invalid_token} error of RFC 6750, so clients know to log in or refresh rather than
+	 * retry.
+	 */
+	private void rejectInvalidToken(HttpServletRequest req, HttpServletResponse res, String message) throws IOException {
+		res.setStatus(HttpStatus.UNAUTHORIZED.value());
+		res.setHeader(HttpHeaders.WWW_AUTHENTICATE, "Bearer error=\"invalid_token\"");
+		res.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		res.setCharacterEncoding("UTF-8");
+		objectMapper.writeValue(res.getWriter(), new ErrorDetails(new Date(), message, "uri=" + req.getRequestURI()));
+	}
+
+	/**
+	 * @throws UnusableTokenException if the token is genuine but has been revoked or cannot be used as an access
+	 *                                token
+	 * @throws JwtException           if the token is malformed, expired or not signed with a known key
+	 */
+	private UsernamePasswordAuthenticationToken getAuthentication(String token) {
+		long start = System.nanoTime();
+		CustomerPrincipal principal = tokenCache.get(token);
+		if (principal != null) {
+			metrics.tokenVerified(start, true);
+		} else {
+			try {
+				principal = parse(token);
+			} finally {
+				metrics.tokenVerified(start, false);
 			}
-			return null;
 		}
-		return null;
+		// Checked on every request, as the cache keeps a token until it expires
+		if (revocations.isRevoked(principal.getCustomerId(), principal.getIssuedAt())) {
+			throw new UnusableTokenException("Token has been revoked");
+		}
+		return new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
+	}
+
+	/**
+	 * Verifies the token's signature and reads its principal, remembering it in the cache until the token
+	 * expires.
+	 *
+	 * @throws UnusableTokenException if the token is a refresh token or lacks the claims
+	 * @throws JwtException           if the token is malformed, expired or not signed with a known key
+	 */
+	private CustomerPrincipal parse(String token) {
+		Claims claims = Jwts.parser()
+				.setSigningKeyResolver(keys.getResolver())
+				.parseClaimsJws(token)
+				.getBody();
+		// A refresh token is only good for getting an access token
+		if (JwtTokenService.REFRESH.equals(claims.get(JwtTokenService.TOKEN_TYPE_CLAIM, String.class))) {
+			throw new UnusableTokenException("Refresh tokens cannot be used as access tokens");
+		}
+		String user = claims.getSubject();
+		Number customerId = claims.get(CUSTOMER_ID_CLAIM, Number.class);
+		String role = claims.get(ROLE_CLAIM, String.class);
+		// Tokens issued before the claims were added have to be renewed by logging in again
+		if (user == null || customerId == null || role == null) {
+			throw new UnusableTokenException("Token has to be renewed by logging in again");
+		}
+		CustomerPrincipal principal = new CustomerPrincipal(customerId.longValue(), user, Role.valueOf(role),
+				JwtTokenService.issuedAt(claims));
+		if (claims.getExpiration() != null) {
+			tokenCache.put(token, principal, claims.getExpiration().getTime());
+		}
+		return principal;
+	}
+
+	/**
+	 * A correctly signed, unexpired token that still does not authenticate the request; its message is shown to
+	 * the client.
+	 */
+	private static final class UnusableTokenException extends RuntimeException {
+		private UnusableTokenException(String message) {
+			super(message);
+		}
 	}
 }
@@ -0,0 +1,70 @@
+package com.amirlatifi.broxage.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.SignatureException;
+import io.jsonwebtoken.SigningKeyResolver;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The HS512 keys tokens are signed with, by key id. New tokens are signed with {@code jwt.secret} and carry
+ * {@code jwt.key-id} in their {@code kid} header; tokens are verified with the key their {@code kid} names,
+ * which may also be one of the retired keys under {@code jwt.retired-keys.<kid>}. To rotate, retire the
+ * current key under its id and configure a new one: tokens already issued stay valid until they expire.
+ */
+@Component
+public class JwtKeys {
+
+	private final String currentKeyId;
+	private final byte[] currentKey;
+	private final Map<String, byte[]> keys = new HashMap<>();
+	private final SigningKeyResolver resolver = new SigningKeyResolverAdapter() {
+		@Override
+		public byte[] resolveSigningKeyBytes(JwsHeader header, Claims claims) {
+			byte[] key = header.getKeyId() == null ? null : keys.get(header.getKeyId());
+			if (key == null) {
+				throw new SignatureException("Unknown signing key " + header.getKeyId());
+			}
+			return key;
+		}
+	};
+
+	@Autowired
+	public JwtKeys(Environment environment) {
+		this(environment.getProperty("jwt.key-id", "1"), environment.getRequiredProperty("jwt.secret"),
+				Binder.get(environment).bind("jwt.retired-keys", Bindable.mapOf(String.class, String.class))
+						.orElse(Collections.emptyMap()));
+	}
+
+	JwtKeys(String currentKeyId, String currentSecret, Map<String, String> retiredSecrets) {
+		this.currentKeyId = currentKeyId;
+		this.currentKey = currentSecret.getBytes(StandardCharsets.UTF_8);
+		retiredSecrets.forEach((keyId, secret) -> keys.put(keyId, secret.getBytes(StandardCharsets.UTF_8)));
+		keys.put(currentKeyId, currentKey);
+	}
+
+	public String getCurrentKeyId() {
+		return currentKeyId;
+	}
+
+	public byte[] getCurrentKey() {
+		return currentKey;
+	}
+
+	/**
+	 * Picks the verification key by the token's {@code kid}, refusing tokens without one or with an unknown one.
+	 */
+	public SigningKeyResolver getResolver() {
+		return resolver;
+	}
+}
@@ -0,0 +1,105 @@
+package com.amirlatifi.broxage.security;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers the principal of every token that passed signature verification, so a repeat request costs a
+ * hash lookup instead of an HS512 verify and claims parse. Entries are keyed by the SHA-256 of the token,
+ * so the tokens themselves are not kept in memory, and are dropped once the token's {@code exp} has passed.
+ * <p>
+ * The cache holds at most {@code jwt.cache.max-size} tokens. When it is full, expired entries are purged
+ * first and, if that is not enough, an arbitrary tenth of the remaining ones is evicted; evicted tokens are
+ * simply verified again on their next use. A size of 0 disables caching.
+ */
+@Component
+public class JwtTokenCache {
+
+	private final int maxSize;
+	private final LongSupplier clock;
+	private final Map<ByteBuffer, Entry> entries = new ConcurrentHashMap<>();
+
+	@Autowired
+	public JwtTokenCache(@Value("${jwt.cache.max-size:100000}") int maxSize) {
+		this(maxSize, System::currentTimeMillis);
+	}
+
+	JwtTokenCache(int maxSize, LongSupplier clock) {
+		this.maxSize = maxSize;
+		this.clock = clock;
+	}
+
+	/**
+	 * Returns the principal of a previously verified token, or null if the token is unknown or has expired.
+	 */
+	public CustomerPrincipal get(String token) {
+		if (maxSize == 0) {
+			return null;
+		}
+		ByteBuffer key = hash(token);
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.expiresAt <= clock.getAsLong()) {
+			entries.remove(key, entry);
+			return null;
+		}
+		return entry.principal;
+	}
+
+	/**
+	 * Caches the principal of a verified token until {@code expiresAt}, in epoch milliseconds.
+	 */
+	public void put(String token, CustomerPrincipal principal, long expiresAt) {
+		if (maxSize == 0 || expiresAt <= clock.getAsLong()) {
+			return;
+		}
+		if (entries.size() >= maxSize) {
+			evict();
+		}
+		entries.put(hash(token), new Entry(principal, expiresAt));
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	private void evict() {
+		long now = clock.getAsLong();
+		entries.values().removeIf(entry -> entry.expiresAt <= now);
+		int excess = entries.size() - maxSize + Math.max(1, maxSize / 10);
+		for (Iterator<ByteBuffer> keys = entries.keySet().iterator(); excess > 0 && keys.hasNext(); excess--) {
+			keys.next();
+			keys.remove();
+		}
+	}
+
+	private static ByteBuffer hash(String token) {
+		try {
+			return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static final class Entry {
+		private final CustomerPrincipal principal;
+		private final long expiresAt;
+
+		Entry(CustomerPrincipal principal, long expiresAt) {
+			this.principal = principal;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
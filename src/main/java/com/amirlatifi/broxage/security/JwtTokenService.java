@@ -0,0 +1,107 @@
+package com.amirlatifi.broxage.security;
+
+import com.amirlatifi.broxage.service.CustomerProfile;
+import com.amirlatifi.broxage.service.CustomerService;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+
+/**
+ * Issues the tokens handed out on login: a short-lived access token carrying the customer's id and role,
+ * valid for {@code jwt.expiration}, and a refresh token valid for {@code jwt.refresh-expiration}. Trading a
+ * refresh token for a new access token costs a signature check and a customer lookup instead of a BCrypt
+ * hash, so access tokens can expire within minutes without sending clients back to the login.
+ * <p>
+ * Tokens are signed with the current key of {@link JwtKeys} and are rejected once the customer has
+ * {@link TokenRevocations revoked} them.
+ */
+@Component
+public class JwtTokenService {
+
+	static final String TOKEN_TYPE_CLAIM = "token_type";
+	static final String REFRESH = "refresh";
+
+	private final CustomerService customerService;
+	private final JwtKeys keys;
+	private final TokenRevocations revocations;
+	private final long expirationMs;
+	private final long refreshExpirationMs;
+
+	public JwtTokenService(CustomerService customerService, JwtKeys keys, TokenRevocations revocations,
+						   @Value("${jwt.expiration:900000}") long expirationMs,
+						   @Value("${jwt.refresh-expiration:2592000000}") long refreshExpirationMs) {
+		this.customerService = customerService;
+		this.keys = keys;
+		this.revocations = revocations;
+		this.expirationMs = expirationMs;
+		this.refreshExpirationMs = refreshExpirationMs;
+	}
+
+	public TokenResponse issue(CustomerProfile customer) {
+		long issuedAt = revocations.issueTime(customer.getId());
+		return new TokenResponse(accessToken(customer, issuedAt), refreshToken(customer, issuedAt));
+	}
+
+	/**
+	 * Issues a new access token for the customer a refresh token was issued to, with the customer's current
+	 * role. The refresh token itself stays valid until it expires or is revoked.
+	 *
+	 * @throws BadCredentialsException if the token is not a valid refresh token
+	 */
+	public TokenResponse refresh(String refreshToken) {
+		Claims claims;
+		try {
+			claims = Jwts.parser()
+					.setSigningKeyResolver(keys.getResolver())
+					.parseClaimsJws(refreshToken)
+					.getBody();
+		} catch (JwtException | IllegalArgumentException e) {
+			throw new BadCredentialsException("Invalid refresh token");
+		}
+		Number customerId = claims.get(JwtAuthorizationFilter.CUSTOMER_ID_CLAIM, Number.class);
+		if (!REFRESH.equals(claims.get(TOKEN_TYPE_CLAIM, String.class)) || customerId == null
+				|| revocations.isRevoked(customerId.longValue(), issuedAt(claims))) {
+			throw new BadCredentialsException("Invalid refresh token");
+		}
+		CustomerProfile customer = customerService.findById(customerId.longValue());
+		return new TokenResponse(accessToken(customer, revocations.issueTime(customer.getId())), refreshToken);
+	}
+
+	/**
+	 * @return the token's {@code iat} in epoch milliseconds, 0 if it has none
+	 */
+	static long issuedAt(Claims claims) {
+		return claims.getIssuedAt() == null ? 0 : claims.getIssuedAt().getTime();
+	}
+
+	private String accessToken(CustomerProfile customer, long issuedAt) {
+		return Jwts.builder()
+				.setHeaderParam(JwsHeader.KEY_ID, keys.getCurrentKeyId())
+				.setSubject(customer.getUsername())
+				.claim(JwtAuthorizationFilter.CUSTOMER_ID_CLAIM, customer.getId())
+				.claim(JwtAuthorizationFilter.ROLE_CLAIM, customer.getRole().name())
+				.setIssuedAt(new Date(issuedAt))
+				.setExpiration(new Date(issuedAt + expirationMs))
+				.signWith(SignatureAlgorithm.HS512, keys.getCurrentKey())
+				.compact();
+	}
+
+	private String refreshToken(CustomerProfile customer, long issuedAt) {
+		return Jwts.builder()
+				.setHeaderParam(JwsHeader.KEY_ID, keys.getCurrentKeyId())
+				.setSubject(customer.getUsername())
+				.claim(JwtAuthorizationFilter.CUSTOMER_ID_CLAIM, customer.getId())
+				.claim(TOKEN_TYPE_CLAIM, REFRESH)
+				.setIssuedAt(new Date(issuedAt))
+				.setExpiration(new Date(issuedAt + refreshExpirationMs))
+				.signWith(SignatureAlgorithm.HS512, keys.getCurrentKey())
+				.compact();
+	}
+}
@@ -0,0 +1,66 @@
+package com.amirlatifi.broxage.security;
+
+import com.amirlatifi.broxage.util.Futures;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the hashing of a delegate encoder, BCrypt, on a small pool of its own, so a burst of logins can only
+ * ever keep that many cores busy and the rest stay free for order traffic. The calling thread waits for the
+ * result. Hashes beyond the pool's bounded queue are refused with a {@link RejectedExecutionException} rather
+ * than queued behind a minute of work.
+ */
+public class PooledPasswordEncoder implements PasswordEncoder, DisposableBean {
+
+	private final PasswordEncoder delegate;
+	private final ThreadPoolExecutor executor;
+
+	public PooledPasswordEncoder(PasswordEncoder delegate, int threads, int queueCapacity) {
+		this.delegate = delegate;
+		AtomicInteger threadCount = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueCapacity),
+				runnable -> {
+					Thread thread = new Thread(runnable, "password-hashing-" + threadCount.getAndIncrement());
+					thread.setDaemon(true);
+					return thread;
+				},
+				new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	@Override
+	public String encode(CharSequence rawPassword) {
+		return Futures.join(CompletableFuture.supplyAsync(() -> delegate.encode(rawPassword), executor));
+	}
+
+	@Override
+	public boolean matches(CharSequence rawPassword, String encodedPassword) {
+		return Futures.join(CompletableFuture.supplyAsync(
+				() -> delegate.matches(rawPassword, encodedPassword), executor));
+	}
+
+	/**
+	 * Whether the hash was made at a lower cost than the delegate's, and should be replaced on the next login.
+	 */
+	@Override
+	public boolean upgradeEncoding(String encodedPassword) {
+		return delegate.upgradeEncoding(encodedPassword);
+	}
+
+	public ThreadPoolExecutor getExecutor() {
+		return executor;
+	}
+
+	@Override
+	public void destroy() throws InterruptedException {
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+	}
+}
@@ -0,0 +1,23 @@
+package com.amirlatifi.broxage.security;
+
+/**
+ * The body of a login or token refresh: an access token for the {@code Authorization} header and the refresh
+ * token to get the next one with.
+ */
+public class TokenResponse {
+	private final String token;
+	private final String refreshToken;
+
+	public TokenResponse(String token, String refreshToken) {
+		this.token = token;
+		this.refreshToken = refreshToken;
+	}
+
+	public String getToken() {
+		return token;
+	}
+
+	public String getRefreshToken() {
+		return refreshToken;
+	}
+}
@@ -0,0 +1,71 @@
+package com.amirlatifi.broxage.security;
+
+import com.amirlatifi.broxage.model.TokenRevocation;
+import com.amirlatifi.broxage.repository.TokenRevocationRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Revokes tokens by when they were issued: each customer who ever revoked their tokens has one timestamp,
+ * and any token of theirs issued before it is rejected. Checking a token is a single hash lookup, and the
+ * map holds one entry per such customer however many tokens they had. Revocations are written to the
+ * {@link TokenRevocation} table and read back on startup.
+ * <p>
+ * A token's issue time has whole seconds, so a revocation takes effect at the start of the next second, and
+ * tokens issued until then are dated to it.
+ */
+@Component
+public class TokenRevocations {
+
+	private final TokenRevocationRepository repository;
+	private final LongSupplier clock;
+	private final ConcurrentMap<Long, Long> revokedBefore = new ConcurrentHashMap<>();
+
+	@Autowired
+	public TokenRevocations(TokenRevocationRepository repository) {
+		this(repository, System::currentTimeMillis);
+	}
+
+	TokenRevocations(TokenRevocationRepository repository, LongSupplier clock) {
+		this.repository = repository;
+		this.clock = clock;
+	}
+
+	@PostConstruct
+	public void load() {
+		for (TokenRevocation revocation : repository.findAll()) {
+			revokedBefore.merge(revocation.getCustomerId(), revocation.getRevokedBefore(), Math::max);
+		}
+	}
+
+	/**
+	 * @param issuedAt the token's {@code iat} in epoch milliseconds, 0 if it has none
+	 */
+	public boolean isRevoked(long customerId, long issuedAt) {
+		Long before = revokedBefore.get(customerId);
+		return before != null && issuedAt < before;
+	}
+
+	/**
+	 * Revokes every token issued to the customer so far.
+	 */
+	public void revokeAll(long customerId) {
+		long before = (clock.getAsLong() / 1000 + 1) * 1000;
+		long revoked = revokedBefore.merge(customerId, before, Math::max);
+		repository.save(new TokenRevocation(customerId, revoked));
+	}
+
+	/**
+	 * The issue time for a new token of the customer: now, or the end of a revocation still in progress.
+	 */
+	public long issueTime(long customerId) {
+		long now = clock.getAsLong();
+		Long before = revokedBefore.get(customerId);
+		return before != null && before > now ? before : now;
+	}
+}
@@ -0,0 +1,59 @@
+package com.amirlatifi.broxage.sequencer;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Routes commands to a fixed set of single-threaded shards by routing key (the asset name for order
+ * commands). Every command for one key runs on the same thread in submission order, so the state it owns
+ * (e.g. an order book) has a single writer. Each shard's queue is bounded; when it is full, submission fails
+ * fast with a {@link RejectedExecutionException} instead of letting work pile up.
+ */
+@Component
+public class OrderSequencer implements DisposableBean {
+
+	private final ThreadPoolExecutor[] shards;
+
+	public OrderSequencer(@Value("${order.sequencer.shards:0}") int shardCount,
+						  @Value("${order.sequencer.queue-capacity:4096}") int queueCapacity) {
+		int count = shardCount > 0 ? shardCount : Runtime.getRuntime().availableProcessors();
+		this.shards = new ThreadPoolExecutor[count];
+		for (int i = 0; i < count; i++) {
+			String threadName = "order-shard-" + i;
+			shards[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<>(queueCapacity),
+					runnable -> {
+						Thread thread = new Thread(runnable, threadName);
+						thread.setDaemon(true);
+						return thread;
+					},
+					new ThreadPoolExecutor.AbortPolicy());
+		}
+	}
+
+	public <T> CompletableFuture<T> submit(String routingKey, Supplier<T> command) {
+		return CompletableFuture.supplyAsync(command, shards[shardOf(routingKey)]);
+	}
+
+	public int shardOf(String routingKey) {
+		return (routingKey.hashCode() & 0x7fffffff) % shards.length;
+	}
+
+	@Override
+	public void destroy() throws InterruptedException {
+		for (ThreadPoolExecutor shard : shards) {
+			shard.shutdown();
+		}
+		for (ThreadPoolExecutor shard : shards) {
+			shard.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+}
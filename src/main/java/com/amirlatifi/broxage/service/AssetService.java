@@ -1,42 +1,180 @@
 package com.amirlatifi.broxage.service;
 
-import com.amirlatifi.broxage.model.Asset;
-import com.amirlatifi.broxage.repository.AssetRepository;
-import org.springframework.beans.factory.annotation.Autowired;
+import com.amirlatifi.broxage.asset.AssetRegistry;
+import com.amirlatifi.broxage.events.BalanceUpdate;
+import com.amirlatifi.broxage.events.CustomerEventBus;
+import com.amirlatifi.broxage.ledger.BalanceLedger;
+import com.amirlatifi.broxage.metrics.BrokerMetrics;
+import com.amirlatifi.broxage.model.AssetView;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
 import java.util.List;
 
+/**
+ * Balance operations on top of the {@link BalanceLedger}. The ledger is the source of truth and is not part
+ * of the caller's database transaction, so every change made inside one is undone again if it rolls back.
+ * <p>
+ * Amounts come either as {@code BigDecimal}, as received from clients, or as {@code long} counts of units at
+ * the asset's scale (see {@link AssetRegistry}), which is how the order path works with them. Every change is
+ * also published to the customer's event streams.
+ */
 @Service
 public class AssetService {
 
-	@Autowired
-	private AssetRepository assetRepository;
+	private final BalanceLedger balanceLedger;
+	private final AssetRegistry assetRegistry;
+	private final CustomerEventBus eventBus;
+	private final BrokerMetrics metrics;
 
-	public List<Asset> getAssetsByCustomerId(Long customerId) {
-		return assetRepository.findByCustomerId(customerId);
+	public AssetService(BalanceLedger balanceLedger, AssetRegistry assetRegistry, CustomerEventBus eventBus,
+						BrokerMetrics metrics) {
+		this.balanceLedger = balanceLedger;
+		this.assetRegistry = assetRegistry;
+		this.eventBus = eventBus;
+		this.metrics = metrics;
 	}
 
-	@Transactional
+	public List<AssetView> getAssetsByCustomerId(Long customerId) {
+		return balanceLedger.getAssets(customerId);
+	}
+
+	/**
+	 * Adds {@code amount} to both the size and the usable size of the asset, creating it if needed.
+	 *
+	 * @throws IllegalArgumentException if {@code amount} is not positive
+	 */
 	public void updateAssetUsableSize(Long customerId, String assetName, BigDecimal amount) {
-		Asset asset = assetRepository.findByCustomerIdAndAssetName(customerId, assetName);
-		if (asset == null) {
-			asset = new Asset();
-			asset.setCustomerId(customerId);
-			asset.setAssetName(assetName);
-			asset.setSize(amount);
-			asset.setUsableSize(amount);
-		} else {
-			asset.setSize(asset.getSize().add(amount));
-			asset.setUsableSize(asset.getUsableSize().add(amount));
+		updateAssetUsableSize(customerId, assetName, assetRegistry.toUnits(assetName, requirePositive(amount)));
+	}
+
+	public void updateAssetUsableSize(Long customerId, String assetName, long amount) {
+		requireNonNegative(amount);
+		long start = System.nanoTime();
+		try {
+			apply(customerId, assetName, amount, amount, false);
+		} finally {
+			metrics.balanceUpdated(start);
+		}
+	}
+
+	/**
+	 * Removes {@code amount} from both the size and the usable size of the asset.
+	 *
+	 * @throws IllegalStateException if the usable size is smaller than {@code amount}
+	 * @throws IllegalArgumentException if {@code amount} is not positive
+	 */
+	public void withdraw(Long customerId, String assetName, BigDecimal amount) {
+		withdraw(customerId, assetName, assetRegistry.toUnits(assetName, requirePositive(amount)));
+	}
+
+	public void withdraw(Long customerId, String assetName, long amount) {
+		requireNonNegative(amount);
+		if (!apply(customerId, assetName, -amount, -amount, true)) {
+			throw new IllegalStateException("Insufficient " + assetName + " balance");
+		}
+	}
+
+	/**
+	 * Atomically moves {@code amount} out of the usable size, leaving the size untouched.
+	 *
+	 * @return false, without changing anything, if the usable size is smaller than {@code amount}
+	 * @throws IllegalArgumentException if {@code amount} is not positive
+	 */
+	public boolean reserve(Long customerId, String assetName, BigDecimal amount) {
+		return reserve(customerId, assetName, assetRegistry.toUnits(assetName, requirePositive(amount)));
+	}
+
+	public boolean reserve(Long customerId, String assetName, long amount) {
+		requireNonNegative(amount);
+		return apply(customerId, assetName, 0, -amount, true);
+	}
+
+	/**
+	 * Reserves, in order, each of {@code amounts} that still fits in the usable size, as one balance change.
+	 *
+	 * @return for each amount, whether it was reserved
+	 */
+	public boolean[] reserveEach(Long customerId, String assetName, long[] amounts) {
+		for (long amount : amounts) {
+			requireNonNegative(amount);
+		}
+		boolean[] reserved = balanceLedger.reserveEach(customerId, assetName, amounts);
+		long total = 0;
+		for (int i = 0; i < reserved.length; i++) {
+			if (reserved[i]) {
+				total += amounts[i];
+			}
+		}
+		if (total != 0) {
+			undoOnRollback(customerId, assetName, 0, -total);
+			publish(customerId, assetName, 0, -total);
 		}
-		assetRepository.save(asset);
+		return reserved;
 	}
 
-	public boolean hasEnoughUsableAsset(Long customerId, String assetName, BigDecimal amount) {
-		Asset asset = assetRepository.findByCustomerIdAndAssetName(customerId, assetName);
-		return asset != null && asset.getUsableSize().compareTo(amount) >= 0;
+	/**
+	 * Returns a previously {@link #reserve reserved} amount to the usable size.
+	 */
+	public void release(Long customerId, String assetName, long amount) {
+		requireNonNegative(amount);
+		apply(customerId, assetName, 0, amount, false);
+	}
+
+	/**
+	 * Removes a previously {@link #reserve reserved} amount from the size once it has actually been spent.
+	 */
+	public void consumeReserved(Long customerId, String assetName, long amount) {
+		requireNonNegative(amount);
+		apply(customerId, assetName, -amount, 0, false);
+	}
+
+	/**
+	 * Amounts coming from a request must be positive. Amounts in units are computed by the order flow, where a
+	 * notional can round down to zero, so there only a negative amount, which would move the balance the wrong way,
+	 * is rejected.
+	 */
+	private static BigDecimal requirePositive(BigDecimal amount) {
+		if (amount.signum() <= 0) {
+			throw new IllegalArgumentException("Amount must be positive");
+		}
+		return amount;
+	}
+
+	private static void requireNonNegative(long amount) {
+		if (amount < 0) {
+			throw new IllegalArgumentException("Amount must not be negative");
+		}
+	}
+
+	private boolean apply(Long customerId, String assetName, long sizeDelta, long usableDelta, boolean requireUsable) {
+		if (!balanceLedger.apply(customerId, assetName, sizeDelta, usableDelta, requireUsable)) {
+			return false;
+		}
+		undoOnRollback(customerId, assetName, sizeDelta, usableDelta);
+		publish(customerId, assetName, sizeDelta, usableDelta);
+		return true;
+	}
+
+	private void publish(Long customerId, String assetName, long sizeDelta, long usableDelta) {
+		if (eventBus.hasSubscribers(customerId)) {
+			eventBus.publish(customerId, CustomerEventBus.BALANCE, new BalanceUpdate(assetName,
+					assetRegistry.toDecimal(assetName, sizeDelta), assetRegistry.toDecimal(assetName, usableDelta)));
+		}
+	}
+
+	private void undoOnRollback(Long customerId, String assetName, long sizeDelta, long usableDelta) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCompletion(int status) {
+					if (status == STATUS_ROLLED_BACK) {
+						balanceLedger.apply(customerId, assetName, -sizeDelta, -usableDelta, false);
+					}
+				}
+			});
+		}
 	}
-}
\ No newline at end of file
+}
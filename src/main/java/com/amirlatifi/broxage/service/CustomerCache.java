@@ -0,0 +1,119 @@
+package com.amirlatifi.broxage.service;
+
+import com.amirlatifi.broxage.metrics.BrokerMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Customers recently looked up, by id and by username, so steady-state logins, token refreshes and customer
+ * reads do not touch the database. Entries are {@link CustomerUserDetails}, immutable copies of the entity.
+ * <p>
+ * An entry lives for {@code customer.cache.ttl-ms}, which bounds how stale a customer changed by another
+ * instance can be; changes made here invalidate it at once. The cache holds at most
+ * {@code customer.cache.max-size} customers, evicting like the JWT cache when full. Customers not found are
+ * not cached, so a new registration is visible immediately. A size of 0 disables caching.
+ */
+@Component
+public class CustomerCache {
+
+	private final int maxSize;
+	private final long ttlMs;
+	private final BrokerMetrics metrics;
+	private final LongSupplier clock;
+	private final ConcurrentMap<Long, Entry> byId = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Entry> byUsername = new ConcurrentHashMap<>();
+
+	@Autowired
+	public CustomerCache(@Value("${customer.cache.max-size:10000}") int maxSize,
+						 @Value("${customer.cache.ttl-ms:60000}") long ttlMs,
+						 BrokerMetrics metrics) {
+		this(maxSize, ttlMs, metrics, System::currentTimeMillis);
+	}
+
+	CustomerCache(int maxSize, long ttlMs, BrokerMetrics metrics, LongSupplier clock) {
+		this.maxSize = maxSize;
+		this.ttlMs = ttlMs;
+		this.metrics = metrics;
+		this.clock = clock;
+	}
+
+	/**
+	 * @return the cached customer, or null on a miss
+	 */
+	public CustomerUserDetails get(Long id) {
+		return lookup(byId, id);
+	}
+
+	/**
+	 * @return the cached customer, or null on a miss
+	 */
+	public CustomerUserDetails get(String username) {
+		return lookup(byUsername, username);
+	}
+
+	public void put(CustomerUserDetails customer) {
+		if (maxSize == 0) {
+			return;
+		}
+		if (byId.size() >= maxSize) {
+			evict();
+		}
+		Entry entry = new Entry(customer, clock.getAsLong() + ttlMs);
+		byId.put(customer.getProfile().getId(), entry);
+		byUsername.put(customer.getUsername(), entry);
+	}
+
+	public void invalidate(Long id, String username) {
+		if (id != null) {
+			byId.remove(id);
+		}
+		if (username != null) {
+			byUsername.remove(username);
+		}
+	}
+
+	public int size() {
+		return byId.size();
+	}
+
+	private <K> CustomerUserDetails lookup(ConcurrentMap<K, Entry> index, K key) {
+		if (maxSize == 0) {
+			return null;
+		}
+		Entry entry = index.get(key);
+		if (entry != null && entry.expiresAt <= clock.getAsLong()) {
+			index.remove(key, entry);
+			entry = null;
+		}
+		metrics.customerCacheLookup(entry != null);
+		return entry == null ? null : entry.customer;
+	}
+
+	private void evict() {
+		long now = clock.getAsLong();
+		byId.values().removeIf(entry -> entry.expiresAt <= now);
+		byUsername.values().removeIf(entry -> entry.expiresAt <= now);
+		int excess = byId.size() - maxSize + Math.max(1, maxSize / 10);
+		for (Iterator<Entry> it = byId.values().iterator(); excess > 0 && it.hasNext(); excess--) {
+			Entry entry = it.next();
+			it.remove();
+			byUsername.remove(entry.customer.getUsername(), entry);
+		}
+	}
+
+	private static final class Entry {
+		private final CustomerUserDetails customer;
+		private final long expiresAt;
+
+		Entry(CustomerUserDetails customer, long expiresAt) {
+			this.customer = customer;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package com.amirlatifi.broxage.service;
+
+import com.amirlatifi.broxage.model.Customer;
+import com.amirlatifi.broxage.model.Role;
+
+/**
+ * What the API shows of a customer: everything but the password hash. Immutable, so it is safe to cache and
+ * to share between requests.
+ */
+public final class CustomerProfile {
+	private final Long id;
+	private final String username;
+	private final String iban;
+	private final Role role;
+
+	public CustomerProfile(Long id, String username, String iban, Role role) {
+		this.id = id;
+		this.username = username;
+		this.iban = iban;
+		this.role = role;
+	}
+
+	public static CustomerProfile of(Customer customer) {
+		return new CustomerProfile(customer.getId(), customer.getUsername(), customer.getIban(), customer.getRole());
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public String getIban() {
+		return iban;
+	}
+
+	public Role getRole() {
+		return role;
+	}
+}
@@ -3,60 +3,106 @@ package com.amirlatifi.broxage.service;
 import com.amirlatifi.broxage.model.Customer;
 import com.amirlatifi.broxage.model.Role;
 import com.amirlatifi.broxage.repository.CustomerRepository;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Registers customers and looks them up, through the {@link CustomerCache}. Lookups return immutable copies,
+ * a {@link CustomerProfile} to callers and a {@link CustomerUserDetails} to the login, never the entity.
+ */
 @Service
 public class CustomerService implements UserDetailsService {
 
 	private final CustomerRepository customerRepository;
 
-	private final BCryptPasswordEncoder bCryptPasswordEncoder;
+	private final PasswordEncoder passwordEncoder;
+
+	private final CustomerCache cache;
 
-	public CustomerService(CustomerRepository customerRepository, BCryptPasswordEncoder bCryptPasswordEncoder) {
+	public CustomerService(CustomerRepository customerRepository, PasswordEncoder passwordEncoder,
+						   CustomerCache cache) {
 		this.customerRepository = customerRepository;
-		this.bCryptPasswordEncoder = bCryptPasswordEncoder;
+		this.passwordEncoder = passwordEncoder;
+		this.cache = cache;
 	}
 
 	@Transactional
-	public Customer registerCustomer(String username, String password, String iban) {
+	public CustomerProfile registerCustomer(String username, String password, String iban) {
 		return createUser(username, password, iban, Role.CUSTOMER);
 	}
 
 	@Transactional
-	public Customer registerAdmin(String username, String password, String iban) {
+	public CustomerProfile registerAdmin(String username, String password, String iban) {
 		return createUser(username, password, iban, Role.ADMIN);
 	}
 
-	private Customer createUser(String username, String password, String iban, Role role) {
+	private CustomerProfile createUser(String username, String password, String iban, Role role) {
 		if (customerRepository.findByUsername(username).isPresent()) {
 			throw new IllegalStateException("Username already exists");
 		}
 		Customer customer = new Customer();
 		customer.setUsername(username);
-		customer.setPassword(bCryptPasswordEncoder.encode(password));
+		customer.setPassword(passwordEncoder.encode(password));
 		customer.setIban(iban);
 		customer.setRole(role);
-		return customerRepository.save(customer);
+		Customer saved = customerRepository.save(customer);
+		cache.invalidate(saved.getId(), saved.getUsername());
+		return CustomerProfile.of(saved);
 	}
 
 	@Override
-	public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-		return customerRepository.findByUsername(username)
-				.orElseThrow(() -> new UsernameNotFoundException("User not found with username: " + username));
+	public CustomerUserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+		CustomerUserDetails customer = cache.get(username);
+		if (customer == null) {
+			customer = customerRepository.findByUsername(username)
+					.map(CustomerUserDetails::of)
+					.orElseThrow(() -> new UsernameNotFoundException("User not found with username: " + username));
+			cache.put(customer);
+		}
+		return customer;
 	}
 
-	public Customer findByUsername(String username) {
-		return customerRepository.findByUsername(username)
-				.orElseThrow(() -> new UsernameNotFoundException("User not found with username: " + username));
+	/**
+	 * Rehashes a customer's password at the current cost if it was hashed at a lower one, called on login
+	 * once the password has been checked. When hashing is saturated the upgrade is skipped rather than failing
+	 * the login, and the next login tries again.
+	 */
+	@Transactional
+	public void upgradePassword(CustomerUserDetails customer, String rawPassword) {
+		if (!passwordEncoder.upgradeEncoding(customer.getPassword())) {
+			return;
+		}
+		String hash;
+		try {
+			hash = passwordEncoder.encode(rawPassword);
+		} catch (RejectedExecutionException e) {
+			return;
+		}
+		CustomerProfile profile = customer.getProfile();
+		customerRepository.findById(profile.getId()).ifPresent(entity -> {
+			entity.setPassword(hash);
+			customerRepository.save(entity);
+		});
+		cache.invalidate(profile.getId(), profile.getUsername());
+	}
+
+	public CustomerProfile findByUsername(String username) {
+		return loadUserByUsername(username).getProfile();
 	}
 
-	public Customer findById(Long id) {
-		return customerRepository.findById(id)
-				.orElseThrow(() -> new UsernameNotFoundException("User not found with id: " + id));
+	public CustomerProfile findById(Long id) {
+		CustomerUserDetails customer = cache.get(id);
+		if (customer == null) {
+			customer = customerRepository.findById(id)
+					.map(CustomerUserDetails::of)
+					.orElseThrow(() -> new UsernameNotFoundException("User not found with id: " + id));
+			cache.put(customer);
+		}
+		return customer.getProfile();
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,68 @@
+package com.amirlatifi.broxage.service;
+
+import com.amirlatifi.broxage.model.Customer;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A customer as the login sees it: the {@link CustomerProfile} and the password hash to check against. An
+ * immutable copy of the entity, so it can be cached, and never returned to controllers.
+ */
+public final class CustomerUserDetails implements UserDetails {
+	private final CustomerProfile profile;
+	private final String password;
+	private final List<GrantedAuthority> authorities;
+
+	public CustomerUserDetails(CustomerProfile profile, String password) {
+		this.profile = profile;
+		this.password = password;
+		this.authorities = Collections.singletonList(new SimpleGrantedAuthority(profile.getRole().getAuthority()));
+	}
+
+	public static CustomerUserDetails of(Customer customer) {
+		return new CustomerUserDetails(CustomerProfile.of(customer), customer.getPassword());
+	}
+
+	public CustomerProfile getProfile() {
+		return profile;
+	}
+
+	@Override
+	public String getUsername() {
+		return profile.getUsername();
+	}
+
+	@Override
+	public String getPassword() {
+		return password;
+	}
+
+	@Override
+	public List<GrantedAuthority> getAuthorities() {
+		return authorities;
+	}
+
+	@Override
+	public boolean isAccountNonExpired() {
+		return true;
+	}
+
+	@Override
+	public boolean isAccountNonLocked() {
+		return true;
+	}
+
+	@Override
+	public boolean isCredentialsNonExpired() {
+		return true;
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return true;
+	}
+}
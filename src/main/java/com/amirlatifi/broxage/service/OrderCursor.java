@@ -0,0 +1,52 @@
+package com.amirlatifi.broxage.service;
+
+import com.amirlatifi.broxage.model.OrderView;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position in a customer's order history, which is ordered by {@code (createDate, id)}. The next page starts
+ * right after the last order of the previous one, so paging costs the same however deep it goes and orders
+ * created meanwhile neither shift nor repeat rows. Clients get it as an opaque token.
+ */
+public final class OrderCursor {
+
+	private final LocalDateTime createDate;
+	private final long id;
+
+	public OrderCursor(LocalDateTime createDate, long id) {
+		this.createDate = createDate;
+		this.id = id;
+	}
+
+	public static OrderCursor after(OrderView order) {
+		return new OrderCursor(order.getCreateDate(), order.getId());
+	}
+
+	public LocalDateTime getCreateDate() {
+		return createDate;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public String encode() {
+		return Base64.getUrlEncoder().withoutPadding()
+				.encodeToString((createDate + "|" + id).getBytes(StandardCharsets.UTF_8));
+	}
+
+	public static OrderCursor decode(String token) {
+		try {
+			String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+			int separator = value.indexOf('|');
+			return new OrderCursor(LocalDateTime.parse(value.substring(0, separator)),
+					Long.parseLong(value.substring(separator + 1)));
+		} catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+			throw new IllegalStateException("Invalid cursor: " + token);
+		}
+	}
+}
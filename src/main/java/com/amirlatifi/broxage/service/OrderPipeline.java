@@ -0,0 +1,114 @@
+package com.amirlatifi.broxage.service;
+
+import com.amirlatifi.broxage.model.Order;
+import com.amirlatifi.broxage.model.OrderSide;
+import com.amirlatifi.broxage.sequencer.OrderSequencer;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Entry point for order commands. Commands are handed to the {@link OrderSequencer} shard that owns the
+ * order's asset and executed there through the transactional {@link OrderService}, so all creates and
+ * cancels for one asset are applied one at a time by the same thread.
+ */
+@Service
+public class OrderPipeline {
+
+	private final OrderService orderService;
+	private final OrderSequencer orderSequencer;
+
+	public OrderPipeline(OrderService orderService, OrderSequencer orderSequencer) {
+		this.orderService = orderService;
+		this.orderSequencer = orderSequencer;
+	}
+
+	public CompletableFuture<Order> createOrder(Long customerId, String assetName, OrderSide side,
+												BigDecimal size, BigDecimal price) {
+		return orderSequencer.submit(assetName,
+				() -> orderService.createOrder(customerId, assetName, side, size, price));
+	}
+
+	/**
+	 * Places a batch of orders. Balances are reserved for the whole batch up front, then the accepted orders
+	 * are split by asset and each group is placed by one command on its asset's shard. If a group cannot be
+	 * placed, its reservations are returned and its orders are reported as rejected.
+	 *
+	 * @return one result per request, in request order
+	 */
+	public CompletableFuture<List<OrderResult>> createOrders(Long customerId, List<OrderRequest> requests) {
+		OrderResult[] results = new OrderResult[requests.size()];
+		Order[] orders = orderService.reserveAll(customerId, requests, results);
+		Map<String, List<Integer>> byAsset = new LinkedHashMap<>();
+		for (int i = 0; i < orders.length; i++) {
+			if (orders[i] != null) {
+				byAsset.computeIfAbsent(orders[i].getAssetName(), asset -> new ArrayList<>()).add(i);
+			}
+		}
+		List<CompletableFuture<Void>> groups = new ArrayList<>(byAsset.size());
+		for (Map.Entry<String, List<Integer>> entry : byAsset.entrySet()) {
+			List<Order> group = new ArrayList<>(entry.getValue().size());
+			for (int i : entry.getValue()) {
+				group.add(orders[i]);
+			}
+			CompletableFuture<List<Order>> placed;
+			try {
+				placed = orderSequencer.submit(entry.getKey(), () -> orderService.placeAll(group));
+			} catch (RejectedExecutionException e) {
+				placed = CompletableFuture.failedFuture(e);
+			}
+			groups.add(placed.handle((ignored, failure) -> {
+				if (failure != null) {
+					orderService.releaseReservations(group);
+				}
+				for (int i : entry.getValue()) {
+					results[i] = failure == null ? OrderResult.accepted(orders[i]) : OrderResult.rejected(reason(failure));
+				}
+				return null;
+			}));
+		}
+		return CompletableFuture.allOf(groups.toArray(new CompletableFuture[0]))
+				.thenApply(ignored -> Arrays.asList(results));
+	}
+
+	public CompletableFuture<Void> cancelOrder(Long customerId, Long orderId) {
+		Order order = orderService.getOrderById(customerId, orderId);
+		return orderSequencer.submit(order.getAssetName(), () -> {
+			orderService.cancelOrder(customerId, orderId);
+			return null;
+		});
+	}
+
+	/**
+	 * Cancels a customer's pending orders, for one asset if {@code assetName} is not null and otherwise for every
+	 * asset they have pending orders for, with one command per asset on that asset's shard.
+	 *
+	 * @return the number of orders canceled
+	 */
+	public CompletableFuture<Integer> cancelAll(Long customerId, String assetName, OrderSide side) {
+		List<String> assetNames = assetName != null
+				? Collections.singletonList(assetName) : orderService.getPendingAssetNames(customerId);
+		CompletableFuture<Integer> canceled = CompletableFuture.completedFuture(0);
+		for (String asset : assetNames) {
+			CompletableFuture<Integer> forAsset = orderSequencer.submit(asset,
+					() -> orderService.cancelAll(customerId, asset, side));
+			canceled = canceled.thenCombine(forAsset, Integer::sum);
+		}
+		return canceled;
+	}
+
+	private static String reason(Throwable failure) {
+		Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+				? failure.getCause() : failure;
+		return cause instanceof RejectedExecutionException ? "Order queue is full, retry later" : cause.getMessage();
+	}
+}
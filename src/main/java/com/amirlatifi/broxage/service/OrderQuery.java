@@ -0,0 +1,54 @@
+package com.amirlatifi.broxage.service;
+
+import com.amirlatifi.broxage.model.OrderSide;
+import com.amirlatifi.broxage.model.OrderStatus;
+
+import java.time.LocalDateTime;
+
+/**
+ * Selects a customer's orders created in a date range, optionally narrowed to one status, side and asset;
+ * a null filter matches every order.
+ */
+public final class OrderQuery {
+
+	private final Long customerId;
+	private final LocalDateTime startDate;
+	private final LocalDateTime endDate;
+	private final OrderStatus status;
+	private final OrderSide side;
+	private final String assetName;
+
+	public OrderQuery(Long customerId, LocalDateTime startDate, LocalDateTime endDate,
+					  OrderStatus status, OrderSide side, String assetName) {
+		this.customerId = customerId;
+		this.startDate = startDate;
+		this.endDate = endDate;
+		this.status = status;
+		this.side = side;
+		this.assetName = assetName;
+	}
+
+	public Long getCustomerId() {
+		return customerId;
+	}
+
+	public LocalDateTime getStartDate() {
+		return startDate;
+	}
+
+	public LocalDateTime getEndDate() {
+		return endDate;
+	}
+
+	public OrderStatus getStatus() {
+		return status;
+	}
+
+	public OrderSide getSide() {
+		return side;
+	}
+
+	public String getAssetName() {
+		return assetName;
+	}
+}
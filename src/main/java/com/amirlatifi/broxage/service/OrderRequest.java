@@ -0,0 +1,58 @@
+package com.amirlatifi.broxage.service;
+
+import com.amirlatifi.broxage.model.OrderSide;
+
+import java.math.BigDecimal;
+
+/**
+ * One order of a batch submitted to {@code POST /api/orders/batch}.
+ */
+public class OrderRequest {
+
+	private String assetName;
+	private OrderSide side;
+	private BigDecimal size;
+	private BigDecimal price;
+
+	public OrderRequest() {
+	}
+
+	public OrderRequest(String assetName, OrderSide side, BigDecimal size, BigDecimal price) {
+		this.assetName = assetName;
+		this.side = side;
+		this.size = size;
+		this.price = price;
+	}
+
+	public String getAssetName() {
+		return assetName;
+	}
+
+	public void setAssetName(String assetName) {
+		this.assetName = assetName;
+	}
+
+	public OrderSide getSide() {
+		return side;
+	}
+
+	public void setSide(OrderSide side) {
+		this.side = side;
+	}
+
+	public BigDecimal getSize() {
+		return size;
+	}
+
+	public void setSize(BigDecimal size) {
+		this.size = size;
+	}
+
+	public BigDecimal getPrice() {
+		return price;
+	}
+
+	public void setPrice(BigDecimal price) {
+		this.price = price;
+	}
+}
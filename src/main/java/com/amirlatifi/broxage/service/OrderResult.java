@@ -0,0 +1,51 @@
+package com.amirlatifi.broxage.service;
+
+import com.amirlatifi.broxage.model.Order;
+import com.amirlatifi.broxage.model.OrderStatus;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.math.BigDecimal;
+
+/**
+ * Outcome of one order of a batch: the placed order's id, status and filled size, or the reason it was
+ * rejected. Only the fields that apply are serialized.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class OrderResult {
+
+	private final Long id;
+	private final OrderStatus status;
+	private final BigDecimal filledSize;
+	private final String error;
+
+	private OrderResult(Long id, OrderStatus status, BigDecimal filledSize, String error) {
+		this.id = id;
+		this.status = status;
+		this.filledSize = filledSize;
+		this.error = error;
+	}
+
+	public static OrderResult accepted(Order order) {
+		return new OrderResult(order.getId(), order.getStatus(), order.getFilledSize(), null);
+	}
+
+	public static OrderResult rejected(String error) {
+		return new OrderResult(null, null, null, error);
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public OrderStatus getStatus() {
+		return status;
+	}
+
+	public BigDecimal getFilledSize() {
+		return filledSize;
+	}
+
+	public String getError() {
+		return error;
+	}
+}
@@ -1,16 +1,40 @@
 package com.amirlatifi.broxage.service;
 
+import com.amirlatifi.broxage.amount.FixedPoint;
+import com.amirlatifi.broxage.asset.AssetDefinition;
+import com.amirlatifi.broxage.asset.AssetRegistry;
+import com.amirlatifi.broxage.events.CustomerEventBus;
+import com.amirlatifi.broxage.events.OrderUpdate;
+import com.amirlatifi.broxage.journal.OrderEventLog;
+import com.amirlatifi.broxage.matching.CanceledOrder;
+import com.amirlatifi.broxage.matching.Fill;
+import com.amirlatifi.broxage.matching.MatchingEngine;
+import com.amirlatifi.broxage.metrics.BrokerMetrics;
+import com.amirlatifi.broxage.metrics.RejectionReason;
 import com.amirlatifi.broxage.model.Order;
 import com.amirlatifi.broxage.model.OrderSide;
 import com.amirlatifi.broxage.model.OrderStatus;
+import com.amirlatifi.broxage.model.OrderView;
 import com.amirlatifi.broxage.repository.OrderRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 public class OrderService {
@@ -21,58 +45,474 @@ public class OrderService {
 	@Autowired
 	private AssetService assetService;
 
+	@Autowired
+	private MatchingEngine matchingEngine;
+
+	@Autowired
+	private OrderEventLog orderEventLog;
+
+	@Autowired
+	private AssetRegistry assetRegistry;
+
+	@Autowired
+	private CustomerEventBus eventBus;
+
+	@Autowired
+	private BrokerMetrics metrics;
+
+	/**
+	 * Ids per cancel-all update statement, the JDBC batch size, so a market maker's whole book does not become
+	 * one statement with a parameter per order.
+	 */
+	@Value("${spring.jpa.properties.hibernate.jdbc.batch_size:100}")
+	private int cancelBatchSize = 100;
+
+	/**
+	 * Reserves the balance the order may need, saves it and matches it. Size and price are converted to units
+	 * once here; an order whose size or price is not positive, for an asset that is not tradable, or whose size
+	 * or price is not a whole number of lots or ticks, is refused before anything changes.
+	 */
 	@Transactional
 	public Order createOrder(Long customerId, String assetName, OrderSide side, BigDecimal size, BigDecimal price) {
-		if (side == OrderSide.BUY) {
-			BigDecimal totalCost = size.multiply(price);
-			if (!assetService.hasEnoughUsableAsset(customerId, "TRY", totalCost)) {
-				throw new IllegalStateException("Insufficient TRY balance");
+		long start = System.nanoTime();
+		try {
+			return doCreateOrder(customerId, assetName, side, size, price);
+		} finally {
+			metrics.orderCreated(start);
+		}
+	}
+
+	private Order doCreateOrder(Long customerId, String assetName, OrderSide side, BigDecimal size, BigDecimal price) {
+		String invalid = validate(assetName, side, size, price);
+		if (invalid != null) {
+			metrics.orderRejected(RejectionReason.INVALID);
+			throw new IllegalStateException(invalid);
+		}
+		AssetDefinition asset;
+		long sizeUnits;
+		long priceUnits;
+		try {
+			asset = assetRegistry.tradable(assetName);
+			sizeUnits = assetRegistry.sizeToUnits(asset, size);
+			priceUnits = assetRegistry.priceToUnits(asset, price);
+		} catch (IllegalStateException e) {
+			metrics.orderRejected(RejectionReason.INVALID);
+			throw e;
+		}
+		String reservedAsset = reservedAsset(side, asset);
+		if (!assetService.reserve(customerId, reservedAsset, reservedAmount(side, asset, sizeUnits, priceUnits))) {
+			metrics.orderRejected(RejectionReason.INSUFFICIENT_BALANCE);
+			throw new IllegalStateException("Insufficient " + reservedAsset + " balance");
+		}
+
+		Order order = newOrder(customerId, assetName, side, size, price);
+
+		Order saved = orderRepository.save(order);
+		orderEventLog.placed(saved);
+
+		List<Fill> fills = matchingEngine.match(saved, asset, priceUnits, sizeUnits);
+		unmatchOnRollback(saved, fills);
+		if (fills.isEmpty()) {
+			publish(saved);
+			return saved;
+		}
+		for (Fill fill : fills) {
+			settle(saved, asset, priceUnits, fill);
+		}
+		Order matched = orderRepository.save(saved);
+		publish(matched);
+		return matched;
+	}
+
+	/**
+	 * Validates a batch of orders and reserves their balances in aggregate, with one reservation per asset that
+	 * takes the orders in request order for as long as the usable balance covers them. The reason each rejected
+	 * order was turned down is stored in {@code results}; the orders themselves are placed by {@link #placeAll}.
+	 *
+	 * @return the orders to place, at the index of their request, or null where the request was rejected
+	 */
+	public Order[] reserveAll(Long customerId, List<OrderRequest> requests, OrderResult[] results) {
+		Order[] orders = new Order[requests.size()];
+		long[] amountByRequest = new long[requests.size()];
+		Map<String, List<Integer>> byReservedAsset = new LinkedHashMap<>();
+		for (int i = 0; i < requests.size(); i++) {
+			OrderRequest request = requests.get(i);
+			String invalid = validate(request);
+			String reservedAsset = null;
+			if (invalid == null) {
+				try {
+					AssetDefinition asset = assetRegistry.tradable(request.getAssetName());
+					amountByRequest[i] = reservedAmount(request.getSide(), asset,
+							assetRegistry.sizeToUnits(asset, request.getSize()),
+							assetRegistry.priceToUnits(asset, request.getPrice()));
+					reservedAsset = reservedAsset(request.getSide(), asset);
+				} catch (IllegalStateException e) {
+					invalid = e.getMessage();
+				}
 			}
-			assetService.updateAssetUsableSize(customerId, "TRY", totalCost.negate());
-		} else {
-			if (!assetService.hasEnoughUsableAsset(customerId, assetName, size)) {
-				throw new IllegalStateException("Insufficient " + assetName + " balance");
+			if (invalid != null) {
+				metrics.orderRejected(RejectionReason.INVALID);
+				results[i] = OrderResult.rejected(invalid);
+			} else {
+				byReservedAsset.computeIfAbsent(reservedAsset, asset -> new ArrayList<>()).add(i);
 			}
-			assetService.updateAssetUsableSize(customerId, assetName, size.negate());
 		}
+		for (Map.Entry<String, List<Integer>> entry : byReservedAsset.entrySet()) {
+			long[] amounts = new long[entry.getValue().size()];
+			for (int j = 0; j < amounts.length; j++) {
+				amounts[j] = amountByRequest[entry.getValue().get(j)];
+			}
+			boolean[] reserved = assetService.reserveEach(customerId, entry.getKey(), amounts);
+			for (int j = 0; j < reserved.length; j++) {
+				int i = entry.getValue().get(j);
+				if (reserved[j]) {
+					OrderRequest request = requests.get(i);
+					orders[i] = newOrder(customerId, request.getAssetName(), request.getSide(), request.getSize(),
+							request.getPrice());
+				} else {
+					metrics.orderRejected(RejectionReason.INSUFFICIENT_BALANCE);
+					results[i] = OrderResult.rejected("Insufficient " + entry.getKey() + " balance");
+				}
+			}
+		}
+		return orders;
+	}
 
-		Order order = new Order();
-		order.setCustomerId(customerId);
-		order.setAssetName(assetName);
-		order.setOrderSide(side);
-		order.setSize(size);
-		order.setPrice(price);
-		order.setStatus(OrderStatus.PENDING);
-		order.setCreateDate(LocalDateTime.now());
+	/**
+	 * Places orders whose balances were already reserved by {@link #reserveAll}. The orders are persisted
+	 * together, so their ids come from the sequence without a round trip each and the inserts go out in JDBC
+	 * batches when the transaction commits, and are then matched one by one in the given order.
+	 */
+	@Transactional
+	public List<Order> placeAll(List<Order> orders) {
+		orderRepository.saveAll(orders);
+		for (Order order : orders) {
+			orderEventLog.placed(order);
+			List<Fill> fills = matchingEngine.match(order);
+			unmatchOnRollback(order, fills);
+			if (!fills.isEmpty()) {
+				AssetDefinition asset = assetRegistry.get(order.getAssetName());
+				for (Fill fill : fills) {
+					settle(order, asset, assetRegistry.priceToUnits(order.getPrice()), fill);
+				}
+			}
+			publish(order);
+		}
+		return orders;
+	}
 
-		return orderRepository.save(order);
+	/**
+	 * Returns the balances reserved by {@link #reserveAll} for orders that could not be placed after all.
+	 */
+	public void releaseReservations(List<Order> orders) {
+		Map<String, Long> reserved = new LinkedHashMap<>();
+		for (Order order : orders) {
+			reserved.merge(reservedAsset(order), reservedAmount(order, order.getSize()), FixedPoint::add);
+		}
+		Long customerId = orders.get(0).getCustomerId();
+		reserved.forEach((assetName, amount) -> assetService.release(customerId, assetName, amount));
 	}
 
-	public List<Order> listOrders(Long customerId, LocalDateTime startDate, LocalDateTime endDate) {
-		return orderRepository.findByCustomerIdAndCreateDateBetween(customerId, startDate, endDate);
+	/**
+	 * Returns up to {@code limit} orders matching the query, in {@code (createDate, id)} order, starting right
+	 * after {@code after}, or from the beginning of the range if it is null.
+	 */
+	public List<OrderView> listOrders(OrderQuery query, OrderCursor after, int limit) {
+		LocalDateTime afterDate = after == null ? query.getStartDate() : after.getCreateDate();
+		long afterId = after == null ? 0 : after.getId();
+		return orderRepository.findHistoryPage(query.getCustomerId(), query.getStartDate(), query.getEndDate(),
+				query.getStatus(), query.getSide(), query.getAssetName(), afterDate, afterId, PageRequest.of(0, limit));
 	}
 
-	@Transactional
-	public void cancelOrder(Long customerId, Long orderId) {
+	/**
+	 * Hands every order matching the query to {@code sink} as it is read off the database cursor. The orders are
+	 * projections, not entities, so the persistence context stays empty and memory use does not grow with the
+	 * size of the range.
+	 */
+	@Transactional(readOnly = true)
+	public void streamOrders(OrderQuery query, Consumer<OrderView> sink) {
+		try (Stream<OrderView> orders = orderRepository.streamHistory(query.getCustomerId(), query.getStartDate(),
+				query.getEndDate(), query.getStatus(), query.getSide(), query.getAssetName())) {
+			orders.forEach(sink);
+		}
+	}
+
+	public Order getOrderById(Long customerId, Long orderId) {
 		Order order = orderRepository.findById(orderId)
 				.orElseThrow(() -> new IllegalArgumentException("Order not found"));
 
 		if (!order.getCustomerId().equals(customerId)) {
-			throw new IllegalArgumentException("Cannot cancel order: order does not belong to the customer");
+			metrics.orderRejected(RejectionReason.WRONG_OWNER);
+			throw new AccessDeniedException("Order does not belong to the customer");
+		}
+		return order;
+	}
+
+	@Transactional
+	public void cancelOrder(Long customerId, Long orderId) {
+		long start = System.nanoTime();
+		try {
+			doCancelOrder(customerId, orderId);
+		} finally {
+			metrics.orderCanceled(start);
 		}
+	}
+
+	private void doCancelOrder(Long customerId, Long orderId) {
+		Order order = getOrderById(customerId, orderId);
 
 		if (order.getStatus() != OrderStatus.PENDING) {
+			metrics.orderRejected(RejectionReason.NOT_PENDING);
 			throw new IllegalStateException("Only pending orders can be canceled");
 		}
 
+		if (!matchingEngine.cancel(order)) {
+			metrics.orderRejected(RejectionReason.NOT_PENDING);
+			throw new IllegalStateException("Order has already been filled or canceled");
+		}
+		restoreOnRollback(order);
 		order.setStatus(OrderStatus.CANCELED);
 		orderRepository.save(order);
+		orderEventLog.canceled(order.getId());
+		publish(order);
+
+		assetService.release(order.getCustomerId(), reservedAsset(order), reservedAmount(order,
+				order.getRemainingSize()));
+	}
+
+	/**
+	 * Cancels all of a customer's pending orders for one asset, or only those on {@code side} if it is not null.
+	 * The orders are taken off the book in one pass, and exactly those are canceled with one update statement per
+	 * {@code cancelBatchSize} ids and have their reserved balances returned, with at most one release per asset.
+	 *
+	 * @return the number of orders canceled
+	 * @throws IllegalStateException if an order taken off the book is no longer pending in the database
+	 */
+	@Transactional
+	public int cancelAll(Long customerId, String assetName, OrderSide side) {
+		List<CanceledOrder> canceled = matchingEngine.cancelAll(customerId, assetName, side);
+		if (canceled.isEmpty()) {
+			return 0;
+		}
+		restoreOnRollback(customerId, assetName, canceled);
+		List<Long> orderIds = new ArrayList<>(canceled.size());
+		for (CanceledOrder order : canceled) {
+			orderIds.add(order.getOrderId());
+		}
+		int updated = 0;
+		for (int from = 0; from < orderIds.size(); from += cancelBatchSize) {
+			updated += orderRepository.cancelPending(orderIds.subList(from,
+					Math.min(from + cancelBatchSize, orderIds.size())));
+		}
+		if (updated != orderIds.size()) {
+			throw new IllegalStateException("Orders on the " + assetName + " book are no longer pending");
+		}
+		AssetDefinition asset = assetRegistry.get(assetName);
+		long quote = 0;
+		long base = 0;
+		for (CanceledOrder order : canceled) {
+			if (order.getSide() == OrderSide.BUY) {
+				quote = FixedPoint.add(quote, assetRegistry.notional(asset, order.getRemainingSize(), order.getPrice()));
+			} else {
+				base = FixedPoint.add(base, order.getRemainingSize());
+			}
+		}
+		orderEventLog.canceled(orderIds);
+		if (eventBus.hasSubscribers(customerId)) {
+			for (CanceledOrder order : canceled) {
+				eventBus.publish(customerId, CustomerEventBus.ORDER, new OrderUpdate(order.getOrderId(), assetName,
+						order.getSide(), FixedPoint.toDecimal(order.getPrice(), assetRegistry.priceScale()),
+						OrderStatus.CANCELED, FixedPoint.toDecimal(order.getRemainingSize(), asset.getScale())));
+			}
+		}
+		if (quote > 0) {
+			assetService.release(customerId, asset.getQuoteCurrency(), quote);
+		}
+		if (base > 0) {
+			assetService.release(customerId, assetName, base);
+		}
+		return canceled.size();
+	}
+
+	/**
+	 * Names of the assets the customer has pending orders for.
+	 */
+	public List<String> getPendingAssetNames(Long customerId) {
+		return orderRepository.findAssetNamesByCustomerIdAndStatus(customerId, OrderStatus.PENDING);
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void restoreOrderBooks() {
+		for (Order order : orderRepository.findByStatusOrderByIdAsc(OrderStatus.PENDING)) {
+			matchingEngine.restore(order);
+		}
+	}
 
-		if (order.getOrderSide() == OrderSide.BUY) {
-			BigDecimal totalCost = order.getSize().multiply(order.getPrice());
-			assetService.updateAssetUsableSize(order.getCustomerId(), "TRY", totalCost);
+	/**
+	 * Both sides reserved their balance when their order was created: the buyer's quote currency at their own
+	 * limit price and the seller's asset. Settlement spends what was traded out of those reservations, releases
+	 * the price improvement a buyer gets when trading below their limit, and credits what each side receives.
+	 * All of it is done in units; only the fill size recorded on the orders is converted back.
+	 */
+	private void settle(Order taker, AssetDefinition asset, long takerPrice, Fill fill) {
+		String assetName = asset.getSymbol();
+		String quote = asset.getQuoteCurrency();
+		Long buyerId;
+		Long sellerId;
+		long buyerLimit;
+		if (taker.getOrderSide() == OrderSide.BUY) {
+			buyerId = taker.getCustomerId();
+			sellerId = fill.getMakerCustomerId();
+			buyerLimit = takerPrice;
 		} else {
-			assetService.updateAssetUsableSize(order.getCustomerId(), order.getAssetName(), order.getSize());
+			buyerId = fill.getMakerCustomerId();
+			sellerId = taker.getCustomerId();
+			buyerLimit = fill.getPrice();
+		}
+		long notional = assetRegistry.notional(asset, fill.getSize(), fill.getPrice());
+
+		assetService.consumeReserved(buyerId, quote, notional);
+		if (buyerLimit > fill.getPrice()) {
+			assetService.release(buyerId, quote, assetRegistry.notional(asset, fill.getSize(),
+					buyerLimit - fill.getPrice()));
+		}
+		assetService.updateAssetUsableSize(buyerId, assetName, fill.getSize());
+
+		assetService.consumeReserved(sellerId, assetName, fill.getSize());
+		assetService.updateAssetUsableSize(sellerId, quote, notional);
+
+		BigDecimal size = FixedPoint.toDecimal(fill.getSize(), asset.getScale());
+		Order maker = orderRepository.findById(fill.getMakerOrderId())
+				.orElseThrow(() -> new IllegalStateException("Resting order not found: " + fill.getMakerOrderId()));
+		applyFill(maker, size);
+		orderRepository.save(maker);
+		orderEventLog.filled(maker.getId(), size);
+		publish(maker);
+		applyFill(taker, size);
+		orderEventLog.filled(taker.getId(), size);
+	}
+
+	/**
+	 * The book is changed as soon as an order is matched, while the orders and balances that record the fills are
+	 * only committed with the transaction; if it rolls back, the match is undone so the book agrees with them again.
+	 */
+	private void unmatchOnRollback(Order order, List<Fill> fills) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCompletion(int status) {
+					if (status == STATUS_ROLLED_BACK) {
+						matchingEngine.unmatch(order, fills);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Puts a canceled order back on the book if the transaction canceling it rolls back. It goes to the back of
+	 * its price level, as if it had just been placed.
+	 */
+	private void restoreOnRollback(Order order) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCompletion(int status) {
+					if (status == STATUS_ROLLED_BACK) {
+						matchingEngine.restore(order);
+					}
+				}
+			});
+		}
+	}
+
+	private void restoreOnRollback(Long customerId, String assetName, List<CanceledOrder> canceled) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCompletion(int status) {
+					if (status == STATUS_ROLLED_BACK) {
+						matchingEngine.restore(customerId, assetName, canceled);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Sends the order's new state to its owner's event streams, if they have any open.
+	 */
+	private void publish(Order order) {
+		if (eventBus.hasSubscribers(order.getCustomerId())) {
+			eventBus.publish(order.getCustomerId(), CustomerEventBus.ORDER, OrderUpdate.of(order));
+		}
+	}
+
+	private static String validate(OrderRequest request) {
+		return validate(request.getAssetName(), request.getSide(), request.getSize(), request.getPrice());
+	}
+
+	/**
+	 * @return why the order cannot be placed, or null if it is well formed; lots and ticks are checked when
+	 * converting to units
+	 */
+	private static String validate(String assetName, OrderSide side, BigDecimal size, BigDecimal price) {
+		if (assetName == null || assetName.isEmpty()) {
+			return "Asset name is required";
+		}
+		if (side == null) {
+			return "Side is required";
+		}
+		if (size == null || size.signum() <= 0) {
+			return "Size must be positive";
+		}
+		if (price == null || price.signum() <= 0) {
+			return "Price must be positive";
+		}
+		return null;
+	}
+
+	/**
+	 * A buy reserves the quote currency it may spend, a sell the asset it offers.
+	 */
+	private static String reservedAsset(OrderSide side, AssetDefinition asset) {
+		return side == OrderSide.BUY ? asset.getQuoteCurrency() : asset.getSymbol();
+	}
+
+	private String reservedAsset(Order order) {
+		return reservedAsset(order.getOrderSide(), assetRegistry.get(order.getAssetName()));
+	}
+
+	/**
+	 * In units of the {@link #reservedAsset reserved asset}: the notional at the limit price for a buy.
+	 */
+	private long reservedAmount(OrderSide side, AssetDefinition asset, long size, long price) {
+		return side == OrderSide.BUY ? assetRegistry.notional(asset, size, price) : size;
+	}
+
+	private long reservedAmount(Order order, BigDecimal size) {
+		AssetDefinition asset = assetRegistry.get(order.getAssetName());
+		return reservedAmount(order.getOrderSide(), asset, FixedPoint.toUnits(size, asset.getScale()),
+				assetRegistry.priceToUnits(order.getPrice()));
+	}
+
+	private static Order newOrder(Long customerId, String assetName, OrderSide side, BigDecimal size,
+								  BigDecimal price) {
+		Order order = new Order();
+		order.setCustomerId(customerId);
+		order.setAssetName(assetName);
+		order.setOrderSide(side);
+		order.setSize(size);
+		order.setPrice(price);
+		order.setStatus(OrderStatus.PENDING);
+		order.setCreateDate(LocalDateTime.now());
+		return order;
+	}
+
+	private static void applyFill(Order order, BigDecimal size) {
+		order.setFilledSize(order.getFilledSize().add(size));
+		if (order.getRemainingSize().signum() == 0) {
+			order.setStatus(OrderStatus.MATCHED);
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,25 @@
+package com.amirlatifi.broxage.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+public final class Futures {
+
+	private Futures() {
+	}
+
+	/**
+	 * Blocks for a future's result, rethrowing the task's own runtime exception rather than the
+	 * {@link CompletionException} wrapper so that callers see the same errors as a direct call.
+	 */
+	public static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package com.amirlatifi.broxage.amount;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FixedPointTest {
+
+	@Test
+	void toUnits_withinScale_isExact() {
+		assertEquals(150_000_000L, FixedPoint.toUnits(new BigDecimal("1.5"), 8));
+		assertEquals(-1L, FixedPoint.toUnits(new BigDecimal("-0.01"), 2));
+		assertEquals(150_000_000L, FixedPoint.toUnits(new BigDecimal("1.500000000000"), 8));
+		assertEquals(Long.MAX_VALUE, FixedPoint.toUnits(new BigDecimal("92233720368.54775807"), 8));
+		assertEquals(0, new BigDecimal("1.5").compareTo(FixedPoint.toDecimal(150_000_000L, 8)));
+	}
+
+	@Test
+	void toUnits_tooManyDecimalPlaces_throwsException() {
+		assertThrows(IllegalStateException.class, () -> FixedPoint.toUnits(new BigDecimal("0.001"), 2));
+	}
+
+	@Test
+	void toUnits_tooLarge_throwsException() {
+		assertThrows(IllegalStateException.class, () -> FixedPoint.toUnits(new BigDecimal("100000000000"), 8));
+		assertThrows(IllegalStateException.class, () -> FixedPoint.toUnits(new BigDecimal("92233720368.54775808"), 8));
+	}
+
+	@Test
+	void addAndSubtract_overflow_throwsException() {
+		assertEquals(Long.MAX_VALUE, FixedPoint.add(Long.MAX_VALUE - 1, 1));
+		assertThrows(IllegalStateException.class, () -> FixedPoint.add(Long.MAX_VALUE, 1));
+		assertThrows(IllegalStateException.class, () -> FixedPoint.subtract(Long.MIN_VALUE, 1));
+	}
+
+	@Test
+	void multiply_shiftsProductToResultScale() {
+		// 0.5 at scale 6 times 49000.25 at scale 2 is 24500.125 at scale 8
+		assertEquals(2_450_012_500_000L, FixedPoint.multiply(500_000L, 4_900_025L, 0));
+		// 2 at scale 0 times 1.5 at scale 2 is 3 at scale 8
+		assertEquals(300_000_000L, FixedPoint.multiply(2L, 150L, 6));
+		assertThrows(IllegalStateException.class, () -> FixedPoint.multiply(Long.MAX_VALUE / 2, 3L, 0));
+	}
+}
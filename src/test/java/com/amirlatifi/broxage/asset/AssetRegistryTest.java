@@ -0,0 +1,72 @@
+package com.amirlatifi.broxage.asset;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AssetRegistryTest {
+
+	@Test
+	void registry_assignsIdsInOrderStartingWithTheQuoteCurrency() {
+		AssetRegistry registry = new AssetRegistry(new MockEnvironment()
+				.withProperty("asset.quote", "USD")
+				.withProperty("asset.symbols", "BTC, ETH"));
+
+		assertEquals(3, registry.size());
+		assertEquals("USD", registry.quote().getSymbol());
+		assertTrue(registry.quote().isQuote());
+		assertEquals(1, registry.get("BTC").getId());
+		assertEquals("ETH", registry.get(2).getSymbol());
+		assertEquals("USD", registry.get("ETH").getQuoteCurrency());
+		assertNull(registry.find("DOGE"));
+		assertThrows(IllegalStateException.class, () -> registry.get("DOGE"));
+		assertThrows(IllegalStateException.class, () -> registry.tradable("USD"));
+	}
+
+	@Test
+	void registry_defaultsTickAndLotToTheSmallestUnit() {
+		AssetRegistry registry = new AssetRegistry(new MockEnvironment().withProperty("asset.symbols", "BTC"));
+		AssetDefinition btc = registry.get("BTC");
+
+		assertEquals(6, btc.getScale());
+		assertEquals(1, btc.getTickSize());
+		assertEquals(1, btc.getLotSize());
+		assertEquals(1_500_000, registry.sizeToUnits(btc, new BigDecimal("1.5")));
+		assertEquals(12_345, registry.priceToUnits(btc, new BigDecimal("123.45")));
+	}
+
+	@Test
+	void sizeAndPrice_offLotOrTick_areRejected() {
+		AssetRegistry registry = new AssetRegistry(new MockEnvironment()
+				.withProperty("asset.symbols", "BTC")
+				.withProperty("asset.BTC.tick-size", "0.05")
+				.withProperty("asset.BTC.lot-size", "0.001"));
+		AssetDefinition btc = registry.get("BTC");
+
+		assertEquals(10_005, registry.priceToUnits(btc, new BigDecimal("100.05")));
+		assertThrows(IllegalStateException.class, () -> registry.priceToUnits(btc, new BigDecimal("100.01")));
+		assertEquals(2_000, registry.sizeToUnits(btc, new BigDecimal("0.002")));
+		assertThrows(IllegalStateException.class, () -> registry.sizeToUnits(btc, new BigDecimal("0.0025")));
+	}
+
+	@Test
+	void registry_scaleTooLargeForTheQuote_isRefused() {
+		MockEnvironment environment = new MockEnvironment()
+				.withProperty("asset.symbols", "BTC")
+				.withProperty("asset.BTC.scale", "7");
+
+		assertThrows(IllegalStateException.class, () -> new AssetRegistry(environment));
+	}
+
+	@Test
+	void notional_isExactInQuoteUnits() {
+		AssetRegistry registry = new AssetRegistry(new MockEnvironment().withProperty("asset.symbols", "BTC"));
+		AssetDefinition btc = registry.get("BTC");
+
+		// 0.5 BTC at 49000.25 TRY is 24500.125 TRY
+		assertEquals(2_450_012_500_000L, registry.notional(btc, 500_000, 4_900_025));
+	}
+}
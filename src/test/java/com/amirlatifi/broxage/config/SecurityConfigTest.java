@@ -0,0 +1,48 @@
+package com.amirlatifi.broxage.config;
+
+import com.amirlatifi.broxage.model.Role;
+import com.amirlatifi.broxage.security.JwtTokenService;
+import com.amirlatifi.broxage.service.CustomerProfile;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureMetrics
+class SecurityConfigTest {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private JwtTokenService tokenService;
+
+	@Test
+	void healthIsOpen() throws Exception {
+		mockMvc.perform(get("/actuator/health"))
+				.andExpect(status().isOk());
+	}
+
+	@Test
+	void prometheusNeedsAnAdminToken() throws Exception {
+		mockMvc.perform(get("/actuator/prometheus"))
+				.andExpect(status().isForbidden());
+		mockMvc.perform(get("/actuator/prometheus")
+						.header("Authorization", "Bearer " + token(Role.CUSTOMER)))
+				.andExpect(status().isForbidden());
+		mockMvc.perform(get("/actuator/prometheus")
+						.header("Authorization", "Bearer " + token(Role.ADMIN)))
+				.andExpect(status().isOk());
+	}
+
+	private String token(Role role) {
+		return tokenService.issue(new CustomerProfile(1L, "scraper", "TR1", role)).getToken();
+	}
+}
@@ -1,17 +1,27 @@
 package com.amirlatifi.broxage.controller;
 
-import com.amirlatifi.broxage.model.Asset;
+import com.amirlatifi.broxage.asset.AssetRegistry;
+import com.amirlatifi.broxage.exception.GlobalExceptionHandler;
+import com.amirlatifi.broxage.idempotency.IdempotencyStore;
+import com.amirlatifi.broxage.model.AssetView;
+import com.amirlatifi.broxage.repository.IdempotencyRecordRepository;
 import com.amirlatifi.broxage.service.AssetService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.springframework.http.MediaType;
+import org.springframework.mock.env.MockEnvironment;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.math.BigDecimal;
 import java.util.Arrays;
@@ -19,6 +29,13 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
@@ -32,6 +49,13 @@ class AssetControllerTest {
 	@Mock
 	private AssetService assetService;
 
+	@Spy
+	private AssetRegistry assetRegistry = new AssetRegistry(new MockEnvironment());
+
+	@Spy
+	private IdempotencyStore idempotencyStore = new IdempotencyStore(mock(IdempotencyRecordRepository.class),
+			new ObjectMapper(), mock(PlatformTransactionManager.class), 60_000, 100);
+
 	@InjectMocks
 	private AssetController assetController;
 
@@ -41,7 +65,9 @@ class AssetControllerTest {
 	@BeforeEach
 	void setUp() {
 		MockitoAnnotations.openMocks(this);
-		mockMvc = MockMvcBuilders.standaloneSetup(assetController).build();
+		mockMvc = MockMvcBuilders.standaloneSetup(assetController)
+				.setControllerAdvice(new GlobalExceptionHandler())
+				.build();
 
 		customerAuth = createAuthentication("1", Collections.singletonList(new SimpleGrantedAuthority("ROLE_CUSTOMER")));
 		adminAuth = createAuthentication("2", Collections.singletonList(new SimpleGrantedAuthority("ROLE_ADMIN")));
@@ -87,7 +113,7 @@ class AssetControllerTest {
 
 	@Test
 	void listAssets_customerSuccess() throws Exception {
-		List<Asset> assets = Arrays.asList(
+		List<AssetView> assets = Arrays.asList(
 				createSampleAsset(1L, "BTC", BigDecimal.ONE),
 				createSampleAsset(1L, "ETH", BigDecimal.TEN)
 		);
@@ -108,7 +134,7 @@ class AssetControllerTest {
 
 	@Test
 	void listAssets_adminSuccess() throws Exception {
-		List<Asset> assets = Arrays.asList(
+		List<AssetView> assets = Arrays.asList(
 				createSampleAsset(3L, "BTC", BigDecimal.ONE),
 				createSampleAsset(3L, "ETH", BigDecimal.TEN)
 		);
@@ -140,6 +166,22 @@ class AssetControllerTest {
 				.andExpect(status().isOk());
 	}
 
+	@Test
+	void depositMoney_retriedWithSameIdempotencyKey_depositsOnce() throws Exception {
+		for (int i = 0; i < 2; i++) {
+			mockMvc.perform(post("/api/assets/deposit")
+							.with(request -> {
+								request.setUserPrincipal(customerAuth);
+								return request;
+							})
+							.header(IdempotencyStore.HEADER, "deposit-1")
+							.param("amount", "1000"))
+					.andExpect(status().isOk());
+		}
+
+		verify(assetService, times(1)).updateAssetUsableSize(1L, "TRY", new BigDecimal("1000"));
+	}
+
 	@Test
 	void depositMoney_adminSuccess() throws Exception {
 		mockMvc.perform(post("/api/assets/deposit")
@@ -180,12 +222,25 @@ class AssetControllerTest {
 				.andExpect(status().isOk());
 	}
 
-	private Asset createSampleAsset(Long customerId, String assetName, BigDecimal amount) {
-		Asset asset = new Asset();
-		asset.setCustomerId(customerId);
-		asset.setAssetName(assetName);
-		asset.setSize(amount);
-		asset.setUsableSize(amount);
-		return asset;
+	@ParameterizedTest
+	@ValueSource(strings = {"/api/assets/deposit", "/api/assets/withdraw"})
+	void nonPositiveAmount_isBadRequest(String path) throws Exception {
+		IllegalArgumentException rejected = new IllegalArgumentException("Amount must be positive");
+		doThrow(rejected).when(assetService).updateAssetUsableSize(anyLong(), anyString(), any(BigDecimal.class));
+		doThrow(rejected).when(assetService).withdraw(anyLong(), anyString(), any(BigDecimal.class));
+
+		mockMvc.perform(post(path)
+						.with(request -> {
+							request.setUserPrincipal(customerAuth);
+							return request;
+						})
+						.param("amount", "-500")
+						.param("iban", "DE89370400440532013000"))
+				.andExpect(status().isBadRequest())
+				.andExpect(jsonPath("$.message").value("Amount must be positive"));
+	}
+
+	private AssetView createSampleAsset(Long customerId, String assetName, BigDecimal amount) {
+		return new AssetView(null, customerId, assetName, amount, amount);
 	}
 }
\ No newline at end of file
@@ -1,7 +1,10 @@
 package com.amirlatifi.broxage.controller;
 
-import com.amirlatifi.broxage.model.Customer;
 import com.amirlatifi.broxage.model.Role;
+import com.amirlatifi.broxage.security.JwtTokenService;
+import com.amirlatifi.broxage.security.TokenResponse;
+import com.amirlatifi.broxage.security.TokenRevocations;
+import com.amirlatifi.broxage.service.CustomerProfile;
 import com.amirlatifi.broxage.service.CustomerService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -9,10 +12,12 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.http.MediaType;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
@@ -26,6 +31,12 @@ class CustomerControllerTest {
 	@Mock
 	private CustomerService customerService;
 
+	@Mock
+	private JwtTokenService tokenService;
+
+	@Mock
+	private TokenRevocations revocations;
+
 	@InjectMocks
 	private CustomerController customerController;
 
@@ -37,11 +48,7 @@ class CustomerControllerTest {
 
 	@Test
 	void registerCustomer_success() throws Exception {
-		Customer customer = new Customer();
-		customer.setId(1L);
-		customer.setUsername("testuser");
-		customer.setIban("DE89370400440532013000");
-		customer.setRole(Role.CUSTOMER);
+		CustomerProfile customer = new CustomerProfile(1L, "testuser", "DE89370400440532013000", Role.CUSTOMER);
 
 		when(customerService.registerCustomer(anyString(), anyString(), anyString())).thenReturn(customer);
 
@@ -54,16 +61,13 @@ class CustomerControllerTest {
 				.andExpect(jsonPath("$.id").value(1))
 				.andExpect(jsonPath("$.username").value("testuser"))
 				.andExpect(jsonPath("$.iban").value("DE89370400440532013000"))
-				.andExpect(jsonPath("$.role").value("CUSTOMER"));
+				.andExpect(jsonPath("$.role").value("CUSTOMER"))
+				.andExpect(jsonPath("$.password").doesNotExist());
 	}
 
 	@Test
 	void registerAdmin_success() throws Exception {
-		Customer admin = new Customer();
-		admin.setId(2L);
-		admin.setUsername("adminuser");
-		admin.setIban("DE89370400440532013001");
-		admin.setRole(Role.ADMIN);
+		CustomerProfile admin = new CustomerProfile(2L, "adminuser", "DE89370400440532013001", Role.ADMIN);
 
 		when(customerService.registerAdmin(anyString(), anyString(), anyString())).thenReturn(admin);
 
@@ -79,13 +83,29 @@ class CustomerControllerTest {
 				.andExpect(jsonPath("$.role").value("ADMIN"));
 	}
 
+	@Test
+	void refreshToken_success() throws Exception {
+		when(tokenService.refresh("refresh-token")).thenReturn(new TokenResponse("access-token", "refresh-token"));
+
+		mockMvc.perform(post("/api/customers/token/refresh")
+						.param("refreshToken", "refresh-token"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.token").value("access-token"))
+				.andExpect(jsonPath("$.refreshToken").value("refresh-token"));
+	}
+
+	@Test
+	void logout_revokesCustomersTokens() throws Exception {
+		mockMvc.perform(post("/api/customers/logout")
+						.principal(new UsernamePasswordAuthenticationToken("7", null)))
+				.andExpect(status().isNoContent());
+
+		verify(revocations).revokeAll(7L);
+	}
+
 	@Test
 	void getCustomerById_success() throws Exception {
-		Customer customer = new Customer();
-		customer.setId(1L);
-		customer.setUsername("testuser");
-		customer.setIban("DE89370400440532013000");
-		customer.setRole(Role.CUSTOMER);
+		CustomerProfile customer = new CustomerProfile(1L, "testuser", "DE89370400440532013000", Role.CUSTOMER);
 
 		when(customerService.findById(1L)).thenReturn(customer);
 
@@ -100,11 +120,7 @@ class CustomerControllerTest {
 
 	@Test
 	void getCustomerByUsername_success() throws Exception {
-		Customer customer = new Customer();
-		customer.setId(1L);
-		customer.setUsername("testuser");
-		customer.setIban("DE89370400440532013000");
-		customer.setRole(Role.CUSTOMER);
+		CustomerProfile customer = new CustomerProfile(1L, "testuser", "DE89370400440532013000", Role.CUSTOMER);
 
 		when(customerService.findByUsername("testuser")).thenReturn(customer);
 
@@ -0,0 +1,155 @@
+package com.amirlatifi.broxage.controller;
+
+import com.amirlatifi.broxage.idempotency.IdempotencyStore;
+import com.amirlatifi.broxage.model.Order;
+import com.amirlatifi.broxage.model.OrderSide;
+import com.amirlatifi.broxage.model.OrderStatus;
+import com.amirlatifi.broxage.repository.IdempotencyRecordRepository;
+import com.amirlatifi.broxage.sequencer.OrderSequencer;
+import com.amirlatifi.broxage.service.OrderPipeline;
+import com.amirlatifi.broxage.service.OrderService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Holds the order shard busy and fires tens of thousands of order requests at it through a real
+ * {@link OrderPipeline} and {@link OrderSequencer} from a handful of request threads, standing in for the
+ * Tomcat pool. Every request is still in flight when the last one is sent, which a handler blocking on the
+ * sequencer would cap at the number of threads.
+ */
+class OrderControllerLoadTest {
+
+	private static final int REQUESTS = 20_000;
+	private static final int REQUEST_THREADS = 8;
+
+	private final Authentication customerAuth = new UsernamePasswordAuthenticationToken("1", null,
+			Collections.singletonList(new SimpleGrantedAuthority("ROLE_CUSTOMER")));
+
+	private MockMvc mockMvc;
+
+	private OrderSequencer orderSequencer;
+
+	@Mock
+	private OrderService orderService;
+
+	@BeforeEach
+	void setUp() {
+		MockitoAnnotations.openMocks(this);
+		orderSequencer = new OrderSequencer(1, REQUESTS * 2);
+		OrderController orderController = new OrderController();
+		ReflectionTestUtils.setField(orderController, "orderPipeline", new OrderPipeline(orderService, orderSequencer));
+		ReflectionTestUtils.setField(orderController, "idempotencyStore", new IdempotencyStore(
+				mock(IdempotencyRecordRepository.class), new ObjectMapper(), mock(PlatformTransactionManager.class),
+				60_000, 100));
+		mockMvc = MockMvcBuilders.standaloneSetup(orderController).build();
+	}
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		orderSequencer.destroy();
+	}
+
+	@Test
+	void createOrder_tensOfThousandsInFlightOnAFewThreads() throws Exception {
+		when(orderService.createOrder(anyLong(), anyString(), any(OrderSide.class), any(BigDecimal.class),
+				any(BigDecimal.class))).thenAnswer(invocation -> {
+			Order order = new Order();
+			order.setId(1L);
+			order.setCustomerId(invocation.getArgument(0));
+			order.setAssetName(invocation.getArgument(1));
+			order.setOrderSide(invocation.getArgument(2));
+			order.setSize(invocation.getArgument(3));
+			order.setPrice(invocation.getArgument(4));
+			order.setStatus(OrderStatus.PENDING);
+			return order;
+		});
+		CountDownLatch release = new CountDownLatch(1);
+		CompletableFuture<Object> busy = orderSequencer.submit("BTC", () -> {
+			try {
+				return release.await(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		});
+
+		ExecutorService requestThreads = Executors.newFixedThreadPool(REQUEST_THREADS);
+		List<MvcResult> started = new ArrayList<>(REQUESTS);
+		try {
+			List<Future<List<MvcResult>>> sent = new ArrayList<>(REQUEST_THREADS);
+			for (int t = 0; t < REQUEST_THREADS; t++) {
+				sent.add(requestThreads.submit(() -> {
+					List<MvcResult> results = new ArrayList<>(REQUESTS / REQUEST_THREADS);
+					for (int i = 0; i < REQUESTS / REQUEST_THREADS; i++) {
+						results.add(mockMvc.perform(post("/api/orders")
+										.principal(customerAuth)
+										.param("assetName", "BTC")
+										.param("side", "BUY")
+										.param("size", "1")
+										.param("price", "100"))
+								.andReturn());
+					}
+					return results;
+				}));
+			}
+			for (Future<List<MvcResult>> future : sent) {
+				started.addAll(future.get(2, TimeUnit.MINUTES));
+			}
+		} finally {
+			requestThreads.shutdown();
+		}
+
+		assertEquals(REQUESTS, started.size());
+		assertFalse(busy.isDone());
+		for (MvcResult result : started) {
+			assertTrue(result.getRequest().isAsyncStarted());
+		}
+
+		release.countDown();
+		for (MvcResult result : started) {
+			ResponseEntity<?> response = (ResponseEntity<?>) result.getAsyncResult(TimeUnit.MINUTES.toMillis(1));
+			assertEquals(HttpStatus.OK, response.getStatusCode());
+		}
+		mockMvc.perform(asyncDispatch(started.get(0)))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.assetName").value("BTC"));
+	}
+}
@@ -1,19 +1,48 @@
 package com.amirlatifi.broxage.controller;
 
+import com.amirlatifi.broxage.exception.GlobalExceptionHandler;
+import com.amirlatifi.broxage.idempotency.IdempotencyStore;
+import com.amirlatifi.broxage.metrics.BrokerMetrics;
 import com.amirlatifi.broxage.model.Order;
 import com.amirlatifi.broxage.model.OrderSide;
 import com.amirlatifi.broxage.model.OrderStatus;
+import com.amirlatifi.broxage.model.OrderView;
+import com.amirlatifi.broxage.model.Role;
+import com.amirlatifi.broxage.ratelimit.RateLimiter;
+import com.amirlatifi.broxage.repository.IdempotencyRecordRepository;
+import com.amirlatifi.broxage.security.CustomerPrincipal;
+import com.amirlatifi.broxage.service.OrderCursor;
+import com.amirlatifi.broxage.service.OrderPipeline;
+import com.amirlatifi.broxage.service.OrderQuery;
+import com.amirlatifi.broxage.service.OrderResult;
 import com.amirlatifi.broxage.service.OrderService;
+import com.amirlatifi.broxage.asset.AssetRegistry;
+import com.amirlatifi.broxage.sequencer.OrderSequencer;
+import com.amirlatifi.broxage.service.AssetService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
 import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -21,11 +50,23 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 class OrderControllerTest {
@@ -35,6 +76,16 @@ class OrderControllerTest {
 	@Mock
 	private OrderService orderService;
 
+	@Mock
+	private OrderPipeline orderPipeline;
+
+	@Spy
+	private ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+	@Spy
+	private IdempotencyStore idempotencyStore = new IdempotencyStore(mock(IdempotencyRecordRepository.class),
+			objectMapper, mock(PlatformTransactionManager.class), 60_000, 100);
+
 	@InjectMocks
 	private OrderController orderController;
 
@@ -91,10 +142,10 @@ class OrderControllerTest {
 	@Test
 	void createOrder_customerSuccess() throws Exception {
 		Order order = createSampleOrder(1L, 1L);
-		when(orderService.createOrder(anyLong(), anyString(), any(OrderSide.class), any(BigDecimal.class), any(BigDecimal.class)))
-				.thenReturn(order);
+		when(orderPipeline.createOrder(anyLong(), anyString(), any(OrderSide.class), any(BigDecimal.class), any(BigDecimal.class)))
+				.thenReturn(CompletableFuture.completedFuture(order));
 
-		mockMvc.perform(post("/api/orders")
+		performAsync(post("/api/orders")
 						.with(request -> {
 							request.setUserPrincipal(customerAuth);
 							return request;
@@ -109,13 +160,63 @@ class OrderControllerTest {
 				.andExpect(jsonPath("$.customerId").value(1));
 	}
 
+	@Test
+	void createOrder_retriedWithSameIdempotencyKey_placesOnce() throws Exception {
+		Order order = createSampleOrder(1L, 1L);
+		when(orderPipeline.createOrder(anyLong(), anyString(), any(OrderSide.class), any(BigDecimal.class), any(BigDecimal.class)))
+				.thenReturn(CompletableFuture.completedFuture(order));
+
+		for (int i = 0; i < 2; i++) {
+			performAsync(post("/api/orders")
+							.with(request -> {
+								request.setUserPrincipal(customerAuth);
+								return request;
+							})
+							.header(IdempotencyStore.HEADER, "order-1")
+							.param("assetName", "BTC")
+							.param("side", "BUY")
+							.param("size", "1")
+							.param("price", "50000"))
+					.andExpect(status().isOk())
+					.andExpect(jsonPath("$.id").value(1));
+		}
+
+		verify(orderPipeline, times(1)).createOrder(1L, "BTC", OrderSide.BUY, new BigDecimal("1"), new BigDecimal("50000"));
+	}
+
+	@Test
+	void createOrder_retriedAfterTheOrderChanged_getsTheOriginalResponse() throws Exception {
+		Order order = createSampleOrder(1L, 1L);
+		when(orderPipeline.createOrder(anyLong(), anyString(), any(OrderSide.class), any(BigDecimal.class), any(BigDecimal.class)))
+				.thenReturn(CompletableFuture.completedFuture(order));
+
+		for (String size : new String[]{"1", "1.0"}) {
+			performAsync(post("/api/orders")
+							.with(request -> {
+								request.setUserPrincipal(customerAuth);
+								return request;
+							})
+							.header(IdempotencyStore.HEADER, "order-1")
+							.param("assetName", "BTC")
+							.param("side", "BUY")
+							.param("size", size)
+							.param("price", "50000"))
+					.andExpect(status().isOk())
+					.andExpect(jsonPath("$.status").value("PENDING"));
+			// Filled after the response went out; a retry still gets what was sent
+			order.setStatus(OrderStatus.MATCHED);
+		}
+
+		verify(orderPipeline, times(1)).createOrder(1L, "BTC", OrderSide.BUY, new BigDecimal("1"), new BigDecimal("50000"));
+	}
+
 	@Test
 	void createOrder_adminSuccess() throws Exception {
 		Order order = createSampleOrder(2L, 3L);
-		when(orderService.createOrder(anyLong(), anyString(), any(OrderSide.class), any(BigDecimal.class), any(BigDecimal.class)))
-				.thenReturn(order);
+		when(orderPipeline.createOrder(anyLong(), anyString(), any(OrderSide.class), any(BigDecimal.class), any(BigDecimal.class)))
+				.thenReturn(CompletableFuture.completedFuture(order));
 
-		mockMvc.perform(post("/api/orders")
+		performAsync(post("/api/orders")
 						.with(request -> {
 							request.setUserPrincipal(adminAuth);
 							return request;
@@ -131,10 +232,133 @@ class OrderControllerTest {
 				.andExpect(jsonPath("$.customerId").value(3));
 	}
 
+	@ParameterizedTest
+	@CsvSource({"0, 50000", "-10, 50000", "1, 0", "1, -50000"})
+	void createOrder_nonPositiveSizeOrPrice_isBadRequest(String size, String price) throws Exception {
+		AssetService assetService = mock(AssetService.class);
+		OrderService realService = new OrderService();
+		ReflectionTestUtils.setField(realService, "assetService", assetService);
+		ReflectionTestUtils.setField(realService, "assetRegistry", new AssetRegistry(new MockEnvironment()
+				.withProperty("asset.symbols", "BTC")
+				.withProperty("asset.BTC.lot-size", "5")));
+		ReflectionTestUtils.setField(realService, "metrics", new BrokerMetrics(new SimpleMeterRegistry()));
+		OrderSequencer sequencer = new OrderSequencer(1, 16);
+		try {
+			ReflectionTestUtils.setField(orderController, "orderPipeline", new OrderPipeline(realService, sequencer));
+			MockMvc validated = MockMvcBuilders.standaloneSetup(orderController)
+					.setControllerAdvice(new GlobalExceptionHandler()).build();
+
+			MvcResult started = validated.perform(post("/api/orders")
+							.with(request -> {
+								request.setUserPrincipal(customerAuth);
+								return request;
+							})
+							.param("assetName", "BTC")
+							.param("side", "BUY")
+							.param("size", size)
+							.param("price", price))
+					.andExpect(request().asyncStarted())
+					.andReturn();
+			validated.perform(asyncDispatch(started))
+					.andExpect(status().isBadRequest())
+					.andExpect(jsonPath("$.message").value(containsString("must be positive")));
+
+			verify(assetService, never()).reserve(anyLong(), anyString(), anyLong());
+		} finally {
+			sequencer.destroy();
+		}
+	}
+
+	@Test
+	void createOrders_returnsResultPerOrder() throws Exception {
+		Order placed = createSampleOrder(5L, 1L);
+		when(orderPipeline.createOrders(eq(1L), anyList())).thenReturn(CompletableFuture.completedFuture(
+				Arrays.asList(OrderResult.accepted(placed), OrderResult.rejected("Insufficient TRY balance"))));
+
+		performAsync(post("/api/orders/batch")
+						.with(request -> {
+							request.setUserPrincipal(customerAuth);
+							return request;
+						})
+						.content("[{\"assetName\":\"BTC\",\"side\":\"BUY\",\"size\":1,\"price\":50000},"
+								+ "{\"assetName\":\"BTC\",\"side\":\"BUY\",\"size\":9,\"price\":50000}]")
+						.contentType(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$[0].id").value(5))
+				.andExpect(jsonPath("$[0].status").value("PENDING"))
+				.andExpect(jsonPath("$[0].error").doesNotExist())
+				.andExpect(jsonPath("$[1].id").doesNotExist())
+				.andExpect(jsonPath("$[1].error").value("Insufficient TRY balance"));
+	}
+
+	@Test
+	void createOrders_batchOverRemainingBudget_gets429() throws Exception {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		ReflectionTestUtils.setField(orderController, "rateLimiter", new RateLimiter(new MockEnvironment()
+				.withProperty("rate-limit.customer.order-create.per-second", "1")
+				.withProperty("rate-limit.customer.order-create.burst", "3")));
+		ReflectionTestUtils.setField(orderController, "metrics", new BrokerMetrics(registry));
+		MockMvc limited = MockMvcBuilders.standaloneSetup(orderController)
+				.setControllerAdvice(new GlobalExceptionHandler()).build();
+		CustomerPrincipal principal = new CustomerPrincipal(1L, "trader", Role.CUSTOMER);
+		Authentication authentication =
+				new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
+		String twoOrders = "[{\"assetName\":\"BTC\",\"side\":\"BUY\",\"size\":1,\"price\":50000},"
+				+ "{\"assetName\":\"BTC\",\"side\":\"BUY\",\"size\":1,\"price\":50000}]";
+		when(orderPipeline.createOrders(eq(1L), anyList()))
+				.thenReturn(CompletableFuture.completedFuture(Collections.emptyList()));
+
+		limited.perform(post("/api/orders/batch")
+						.principal(authentication)
+						.content(twoOrders)
+						.contentType(MediaType.APPLICATION_JSON))
+				.andExpect(request().asyncStarted());
+		limited.perform(post("/api/orders/batch")
+						.principal(authentication)
+						.content(twoOrders)
+						.contentType(MediaType.APPLICATION_JSON))
+				.andExpect(status().isTooManyRequests())
+				.andExpect(header().string("Retry-After", "1"));
+
+		verify(orderPipeline, times(1)).createOrders(eq(1L), anyList());
+		assertEquals(1, registry.counter("broxage.ratelimit.throttled", "budget", "order-create").count());
+	}
+
+	@Test
+	void createOrders_batchLargerThanBurst_takesTheWholeBucket() throws Exception {
+		ReflectionTestUtils.setField(orderController, "rateLimiter", new RateLimiter(new MockEnvironment()
+				.withProperty("rate-limit.customer.order-create.per-second", "1")
+				.withProperty("rate-limit.customer.order-create.burst", "3")));
+		ReflectionTestUtils.setField(orderController, "metrics", new BrokerMetrics(new SimpleMeterRegistry()));
+		MockMvc limited = MockMvcBuilders.standaloneSetup(orderController)
+				.setControllerAdvice(new GlobalExceptionHandler()).build();
+		CustomerPrincipal principal = new CustomerPrincipal(1L, "trader", Role.CUSTOMER);
+		Authentication authentication =
+				new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
+		String order = "{\"assetName\":\"BTC\",\"side\":\"BUY\",\"size\":1,\"price\":50000}";
+		String fiveOrders = "[" + String.join(",", Collections.nCopies(5, order)) + "]";
+		when(orderPipeline.createOrders(eq(1L), anyList()))
+				.thenReturn(CompletableFuture.completedFuture(Collections.emptyList()));
+
+		limited.perform(post("/api/orders/batch")
+						.principal(authentication)
+						.content(fiveOrders)
+						.contentType(MediaType.APPLICATION_JSON))
+				.andExpect(request().asyncStarted());
+		limited.perform(post("/api/orders/batch")
+						.principal(authentication)
+						.content(fiveOrders)
+						.contentType(MediaType.APPLICATION_JSON))
+				.andExpect(status().isTooManyRequests())
+				.andExpect(header().string("Retry-After", "3"));
+
+		verify(orderPipeline, times(1)).createOrders(eq(1L), anyList());
+	}
+
 	@Test
 	void listOrders_customerSuccess() throws Exception {
-		List<Order> orders = Arrays.asList(createSampleOrder(1L, 1L), createSampleOrder(2L, 1L));
-		when(orderService.listOrders(anyLong(), any(LocalDateTime.class), any(LocalDateTime.class)))
+		List<OrderView> orders = Arrays.asList(sampleView(1L, 1L), sampleView(2L, 1L));
+		when(orderService.listOrders(any(OrderQuery.class), isNull(), anyInt()))
 				.thenReturn(orders);
 
 		mockMvc.perform(get("/api/orders")
@@ -154,8 +378,8 @@ class OrderControllerTest {
 
 	@Test
 	void listOrders_adminSuccess() throws Exception {
-		List<Order> orders = Arrays.asList(createSampleOrder(1L, 3L), createSampleOrder(2L, 3L));
-		when(orderService.listOrders(anyLong(), any(LocalDateTime.class), any(LocalDateTime.class)))
+		List<OrderView> orders = Arrays.asList(sampleView(1L, 3L), sampleView(2L, 3L));
+		when(orderService.listOrders(any(OrderQuery.class), isNull(), anyInt()))
 				.thenReturn(orders);
 
 		mockMvc.perform(get("/api/orders")
@@ -174,9 +398,90 @@ class OrderControllerTest {
 				.andExpect(jsonPath("$[1].customerId").value(3));
 	}
 
+	@Test
+	void listOrders_fullPageReturnsNextCursor() throws Exception {
+		OrderView last = sampleView(2L, 1L);
+		List<OrderView> orders = Arrays.asList(sampleView(1L, 1L), last);
+		when(orderService.listOrders(any(OrderQuery.class), isNull(), eq(2))).thenReturn(orders);
+
+		mockMvc.perform(get("/api/orders")
+						.with(request -> {
+							request.setUserPrincipal(customerAuth);
+							return request;
+						})
+						.param("startDate", "2023-01-01T00:00:00")
+						.param("endDate", "2023-12-31T23:59:59")
+						.param("status", "PENDING")
+						.param("side", "BUY")
+						.param("assetName", "BTC")
+						.param("limit", "2"))
+				.andExpect(status().isOk())
+				.andExpect(header().string(OrderController.NEXT_CURSOR_HEADER, OrderCursor.after(last).encode()));
+
+		ArgumentCaptor<OrderQuery> query = ArgumentCaptor.forClass(OrderQuery.class);
+		verify(orderService).listOrders(query.capture(), isNull(), eq(2));
+		assertEquals(1L, query.getValue().getCustomerId());
+		assertEquals(OrderStatus.PENDING, query.getValue().getStatus());
+		assertEquals(OrderSide.BUY, query.getValue().getSide());
+		assertEquals("BTC", query.getValue().getAssetName());
+	}
+
+	@Test
+	void listOrders_resumesFromCursor() throws Exception {
+		OrderCursor cursor = new OrderCursor(LocalDateTime.of(2023, 6, 1, 12, 0), 42L);
+		when(orderService.listOrders(any(OrderQuery.class), any(OrderCursor.class), eq(100)))
+				.thenReturn(Collections.singletonList(sampleView(43L, 1L)));
+
+		mockMvc.perform(get("/api/orders")
+						.with(request -> {
+							request.setUserPrincipal(customerAuth);
+							return request;
+						})
+						.param("startDate", "2023-01-01T00:00:00")
+						.param("endDate", "2023-12-31T23:59:59")
+						.param("cursor", cursor.encode()))
+				.andExpect(status().isOk())
+				.andExpect(header().doesNotExist(OrderController.NEXT_CURSOR_HEADER));
+
+		ArgumentCaptor<OrderCursor> after = ArgumentCaptor.forClass(OrderCursor.class);
+		verify(orderService).listOrders(any(OrderQuery.class), after.capture(), eq(100));
+		assertEquals(cursor.getCreateDate(), after.getValue().getCreateDate());
+		assertEquals(42L, after.getValue().getId());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void streamOrders_writesOneOrderPerLine() throws Exception {
+		doAnswer(invocation -> {
+			Consumer<OrderView> sink = invocation.getArgument(1);
+			sink.accept(sampleView(1L, 1L));
+			sink.accept(sampleView(2L, 1L));
+			return null;
+		}).when(orderService).streamOrders(any(OrderQuery.class), any(Consumer.class));
+
+		String body = mockMvc.perform(get("/api/orders")
+						.with(request -> {
+							request.setUserPrincipal(customerAuth);
+							return request;
+						})
+						.param("startDate", "2023-01-01T00:00:00")
+						.param("endDate", "2023-12-31T23:59:59")
+						.accept(OrderController.NDJSON))
+				.andExpect(status().isOk())
+				.andExpect(content().contentType(OrderController.NDJSON))
+				.andReturn().getResponse().getContentAsString();
+
+		String[] lines = body.split("\n");
+		assertEquals(2, lines.length);
+		assertEquals(1L, objectMapper.readValue(lines[0], Order.class).getId());
+		assertEquals(2L, objectMapper.readValue(lines[1], Order.class).getId());
+	}
+
 	@Test
 	void cancelOrder_customerSuccess() throws Exception {
-		mockMvc.perform(delete("/api/orders/1")
+		when(orderPipeline.cancelOrder(anyLong(), anyLong())).thenReturn(CompletableFuture.completedFuture(null));
+
+		performAsync(delete("/api/orders/1")
 						.with(request -> {
 							request.setUserPrincipal(customerAuth);
 							return request;
@@ -187,7 +492,9 @@ class OrderControllerTest {
 
 	@Test
 	void cancelOrder_adminSuccess() throws Exception {
-		mockMvc.perform(delete("/api/orders/1")
+		when(orderPipeline.cancelOrder(anyLong(), anyLong())).thenReturn(CompletableFuture.completedFuture(null));
+
+		performAsync(delete("/api/orders/1")
 						.with(request -> {
 							request.setUserPrincipal(adminAuth);
 							return request;
@@ -197,6 +504,30 @@ class OrderControllerTest {
 				.andExpect(status().isOk());
 	}
 
+	@Test
+	void cancelOrders_returnsNumberCanceled() throws Exception {
+		when(orderPipeline.cancelAll(1L, "BTC", OrderSide.BUY)).thenReturn(CompletableFuture.completedFuture(5));
+
+		performAsync(delete("/api/orders")
+						.with(request -> {
+							request.setUserPrincipal(customerAuth);
+							return request;
+						})
+						.param("assetName", "BTC")
+						.param("side", "BUY"))
+				.andExpect(status().isOk())
+				.andExpect(content().string("5"));
+	}
+
+	/**
+	 * Performs a request whose handler completes asynchronously and then its async dispatch, whose response
+	 * is the one the client gets.
+	 */
+	private ResultActions performAsync(RequestBuilder builder) throws Exception {
+		MvcResult started = mockMvc.perform(builder).andExpect(request().asyncStarted()).andReturn();
+		return mockMvc.perform(asyncDispatch(started));
+	}
+
 	private Order createSampleOrder(Long id, Long customerId) {
 		Order order = new Order();
 		order.setId(id);
@@ -209,4 +540,8 @@ class OrderControllerTest {
 		order.setCreateDate(LocalDateTime.now());
 		return order;
 	}
+
+	private OrderView sampleView(Long id, Long customerId) {
+		return OrderView.of(createSampleOrder(id, customerId));
+	}
 }
\ No newline at end of file
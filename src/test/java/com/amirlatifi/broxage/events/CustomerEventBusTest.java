@@ -0,0 +1,132 @@
+package com.amirlatifi.broxage.events;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CustomerEventBusTest {
+
+	private final CustomerEventBus eventBus = new CustomerEventBus(2, 0, 1, 60_000);
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		eventBus.destroy();
+	}
+
+	@Test
+	void publish_deliversOnlyToTheCustomersSubscribers() throws InterruptedException {
+		RecordingEmitter own = new RecordingEmitter(null);
+		RecordingEmitter other = new RecordingEmitter(null);
+		eventBus.subscribe(1L, own);
+		eventBus.subscribe(2L, other);
+
+		BalanceUpdate update = new BalanceUpdate("TRY", BigDecimal.TEN, BigDecimal.TEN);
+		eventBus.publish(1L, CustomerEventBus.BALANCE, update);
+
+		assertSame(update, own.sent.poll(5, TimeUnit.SECONDS));
+		assertNull(other.sent.poll(100, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	void publish_subscriberFallsBehind_isDropped() throws InterruptedException {
+		CountDownLatch unblock = new CountDownLatch(1);
+		RecordingEmitter slow = new RecordingEmitter(unblock);
+		eventBus.subscribe(1L, slow);
+
+		eventBus.publish(1L, CustomerEventBus.ORDER, "first");
+		assertEquals("first", slow.sent.poll(5, TimeUnit.SECONDS));
+		// The dispatch thread is now stuck writing the first event, so the buffer of two fills up
+		eventBus.publish(1L, CustomerEventBus.ORDER, "second");
+		eventBus.publish(1L, CustomerEventBus.ORDER, "third");
+		eventBus.publish(1L, CustomerEventBus.ORDER, "fourth");
+
+		assertEquals(1, eventBus.getDroppedCount());
+		assertFalse(eventBus.hasSubscribers(1L));
+		unblock.countDown();
+	}
+
+	@Test
+	void publish_subscriberStopsReading_isDroppedWithoutHoldingUpOthers() throws InterruptedException {
+		CustomerEventBus eventBus = new CustomerEventBus(16, 0, 1, 100);
+		CountDownLatch unblock = new CountDownLatch(1);
+		try {
+			RecordingEmitter stalled = new RecordingEmitter(unblock);
+			RecordingEmitter other = new RecordingEmitter(null);
+			eventBus.subscribe(1L, stalled);
+			eventBus.subscribe(2L, other);
+
+			eventBus.publish(1L, CustomerEventBus.ORDER, "stuck");
+			assertEquals("stuck", stalled.sent.poll(5, TimeUnit.SECONDS));
+			// The only dispatch thread is now blocked writing to the stalled subscriber
+			eventBus.publish(2L, CustomerEventBus.ORDER, "delivered");
+
+			assertEquals("delivered", other.sent.poll(5, TimeUnit.SECONDS));
+			assertEquals(1, eventBus.getDroppedCount());
+			assertFalse(eventBus.hasSubscribers(1L));
+			assertTrue(eventBus.hasSubscribers(2L));
+		} finally {
+			unblock.countDown();
+			eventBus.destroy();
+		}
+	}
+
+	@Test
+	void publish_insideTransaction_waitsForCommit() throws InterruptedException {
+		RecordingEmitter emitter = new RecordingEmitter(null);
+		eventBus.subscribe(1L, emitter);
+
+		TransactionSynchronizationManager.initSynchronization();
+		List<TransactionSynchronization> synchronizations;
+		try {
+			eventBus.publish(1L, CustomerEventBus.ORDER, "placed");
+			synchronizations = TransactionSynchronizationManager.getSynchronizations();
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+		assertNull(emitter.sent.poll(100, TimeUnit.MILLISECONDS));
+
+		synchronizations.forEach(TransactionSynchronization::afterCommit);
+		assertEquals("placed", emitter.sent.poll(5, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Records the data of each event sent and, if given a latch, then blocks on it like a client that stopped
+	 * reading.
+	 */
+	private static final class RecordingEmitter extends SseEmitter {
+		private final BlockingQueue<Object> sent = new LinkedBlockingQueue<>();
+		private final CountDownLatch unblock;
+
+		RecordingEmitter(CountDownLatch unblock) {
+			this.unblock = unblock;
+		}
+
+		@Override
+		public void send(SseEventBuilder builder) {
+			for (DataWithMediaType data : builder.build()) {
+				if (MediaType.APPLICATION_JSON.equals(data.getMediaType())) {
+					sent.add(data.getData());
+				}
+			}
+			if (unblock != null) {
+				try {
+					unblock.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,218 @@
+package com.amirlatifi.broxage.idempotency;
+
+import com.amirlatifi.broxage.model.IdempotencyRecord;
+import com.amirlatifi.broxage.model.Order;
+import com.amirlatifi.broxage.model.OrderSide;
+import com.amirlatifi.broxage.model.OrderStatus;
+import com.amirlatifi.broxage.model.OrderView;
+import com.amirlatifi.broxage.repository.IdempotencyRecordRepository;
+import com.amirlatifi.broxage.util.Futures;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IdempotencyStoreTest {
+
+	private static final long WINDOW_MS = 60_000;
+
+	private final AtomicLong now = new AtomicLong(1_000_000);
+	private final AtomicInteger runs = new AtomicInteger();
+
+	private IdempotencyRecordRepository repository;
+	private IdempotencyStore store;
+
+	@BeforeEach
+	void setUp() {
+		repository = mock(IdempotencyRecordRepository.class);
+		when(repository.findById(anyString())).thenReturn(Optional.empty());
+		store = new IdempotencyStore(repository, Jackson2ObjectMapperBuilder.json().build(), mock(PlatformTransactionManager.class),
+				WINDOW_MS, 4, now::get);
+	}
+
+	@Test
+	void execute_sameKey_runsOnceAndReplaysResult() {
+		Order first = place("key-1", "BTC BUY 1 100");
+		Order second = place("key-1", "BTC BUY 1 100");
+
+		assertEquals(1, runs.get());
+		assertSame(first, second);
+	}
+
+	@Test
+	void execute_withoutKey_alwaysRuns() {
+		place(null, "BTC BUY 1 100");
+		place(null, "BTC BUY 1 100");
+
+		assertEquals(2, runs.get());
+	}
+
+	@Test
+	void execute_keyScopedByCustomer() {
+		place("key-1", "BTC BUY 1 100");
+		Futures.join(store.execute(2L, "order", "key-1", "BTC BUY 1 100", Order.class, this::newOrder));
+
+		assertEquals(2, runs.get());
+	}
+
+	@Test
+	void execute_sameKeyDifferentRequest_throws() {
+		place("key-1", "BTC BUY 1 100");
+
+		IllegalStateException e = assertThrows(IllegalStateException.class, () -> place("key-1", "BTC BUY 2 100"));
+		assertEquals("Idempotency-Key was already used for a different request", e.getMessage());
+		assertEquals(1, runs.get());
+	}
+
+	@Test
+	void execute_tooLongKey_throws() {
+		String key = "k".repeat(IdempotencyStore.MAX_KEY_LENGTH + 1);
+
+		assertThrows(IllegalStateException.class, () -> place(key, "BTC BUY 1 100"));
+		assertEquals(0, runs.get());
+	}
+
+	@Test
+	void execute_failedRequest_releasesKey() {
+		assertThrows(IllegalStateException.class, () -> store.call(1L, "order", "key-1", "BTC BUY 1 100",
+				Order.class, () -> {
+					throw new IllegalStateException("Insufficient TRY balance");
+				}));
+
+		place("key-1", "BTC BUY 1 100");
+
+		assertEquals(1, runs.get());
+	}
+
+	@Test
+	void execute_duplicateWhileInFlight_sharesResult() {
+		CompletableFuture<Order> pending = new CompletableFuture<>();
+		CompletableFuture<Order> first = store.execute(1L, "order", "key-1", "BTC BUY 1 100", Order.class,
+				() -> pending);
+		CompletableFuture<Order> second = store.execute(1L, "order", "key-1", "BTC BUY 1 100", Order.class,
+				this::newOrder);
+
+		assertFalse(second.isDone());
+		Order order = new Order();
+		pending.complete(order);
+
+		assertSame(order, Futures.join(first));
+		assertSame(order, Futures.join(second));
+		assertEquals(0, runs.get());
+	}
+
+	@Test
+	void execute_afterWindow_runsAgain() {
+		place("key-1", "BTC BUY 1 100");
+		now.addAndGet(WINDOW_MS);
+
+		place("key-1", "BTC BUY 1 100");
+
+		assertEquals(2, runs.get());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void flush_savesCompletedKeys() {
+		place("key-1", "BTC BUY 1 100");
+		place("key-2", "BTC SELL 1 100");
+
+		store.flush();
+
+		ArgumentCaptor<List<IdempotencyRecord>> saved = ArgumentCaptor.forClass(List.class);
+		verify(repository).saveAll(saved.capture());
+		assertEquals(2, saved.getValue().size());
+		IdempotencyRecord record = saved.getValue().get(0);
+		assertTrue(record.getId().startsWith("1:order:key-"));
+		assertEquals(now.get() + WINDOW_MS, record.getExpiresAt());
+	}
+
+	@Test
+	void execute_evictedKeys_replayedFromTable() {
+		for (int i = 0; i < 6; i++) {
+			place("key-" + i, "BTC BUY 1 100");
+		}
+		assertTrue(store.size() < 6);
+		when(repository.findById(anyString())).thenAnswer(invocation -> Optional.of(new IdempotencyRecord(
+				invocation.getArgument(0), "BTC BUY 1 100", "{\"id\":77}", now.get() + WINDOW_MS)));
+
+		int fromTable = 0;
+		for (int i = 0; i < 6; i++) {
+			if (place("key-" + i, "BTC BUY 1 100").getId() == 77L) {
+				fromTable++;
+			}
+		}
+
+		assertEquals(6, runs.get());
+		assertTrue(fromTable > 0);
+	}
+
+	@Test
+	void execute_viewReloadedFromTable_isReadBack() {
+		for (int i = 0; i < 6; i++) {
+			placeView("key-" + i);
+		}
+		when(repository.findById(anyString())).thenAnswer(invocation -> Optional.of(new IdempotencyRecord(
+				invocation.getArgument(0), "BTC BUY 1 100", "{\"id\":77,\"status\":\"PENDING\",\"remainingSize\":1}",
+				now.get() + WINDOW_MS)));
+
+		int fromTable = 0;
+		for (int i = 0; i < 6; i++) {
+			OrderView view = placeView("key-" + i);
+			if (view.getId() != null) {
+				assertEquals(77L, view.getId());
+				assertEquals(OrderStatus.PENDING, view.getStatus());
+				fromTable++;
+			}
+		}
+		assertTrue(fromTable > 0);
+	}
+
+	@Test
+	void fingerprint_amountsCompareByValue() {
+		assertEquals("BTC BUY 1 100", IdempotencyStore.fingerprint("BTC", OrderSide.BUY, BigDecimal.ONE,
+				new BigDecimal("100")));
+		assertEquals("BTC BUY 1 100", IdempotencyStore.fingerprint("BTC", OrderSide.BUY, new BigDecimal("1.000"),
+				new BigDecimal("1E+2")));
+	}
+
+	@Test
+	void execute_beforeAnyEviction_doesNotReadTable() {
+		place("key-1", "BTC BUY 1 100");
+		place("key-2", "BTC BUY 1 100");
+
+		verify(repository, never()).findById(anyString());
+	}
+
+	private Order place(String key, String fingerprint) {
+		return Futures.join(store.execute(1L, "order", key, fingerprint, Order.class, this::newOrder));
+	}
+
+	private OrderView placeView(String key) {
+		return Futures.join(store.execute(1L, "order", key, "BTC BUY 1 100", OrderView.class,
+				() -> CompletableFuture.completedFuture(OrderView.of(new Order()))));
+	}
+
+	private CompletableFuture<Order> newOrder() {
+		Order order = new Order();
+		order.setId((long) runs.incrementAndGet());
+		order.setSize(BigDecimal.ONE);
+		order.setFilledSize(BigDecimal.ZERO);
+		return CompletableFuture.completedFuture(order);
+	}
+}
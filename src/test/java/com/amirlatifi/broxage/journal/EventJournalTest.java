@@ -0,0 +1,165 @@
+package com.amirlatifi.broxage.journal;
+
+import com.amirlatifi.broxage.model.Order;
+import com.amirlatifi.broxage.model.OrderSide;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventJournalTest {
+
+	private static final int SEGMENT_SIZE = 64 * 1024;
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void replay_afterReopen_returnsEveryRecordAcrossSegments() throws IOException {
+		EventJournal journal = journal(EventJournal.JPA);
+		for (int i = 0; i < 5000; i++) {
+			journal.appendBalance(i, "TRY", i, -100, 2);
+		}
+		journal.destroy();
+
+		EventJournal reopened = journal(EventJournal.JPA);
+		List<Long> seqs = new ArrayList<>();
+		reopened.replay(0, new JournalListener() {
+			@Override
+			public void onBalance(long seq, long customerId, String assetName, BigDecimal size,
+								  BigDecimal usableSize, boolean absolute) {
+				assertEquals(seq - 1, customerId);
+				assertEquals(BigDecimal.valueOf(customerId, 2), size);
+				seqs.add(seq);
+			}
+		});
+
+		assertTrue(segmentCount() > 1);
+		assertEquals(5000, seqs.size());
+		assertEquals(5000L, reopened.lastSeq());
+		assertEquals(5001L, reopened.appendOrderCanceled(1L));
+	}
+
+	@Test
+	void putString_writesUtf8ForAsciiAndOtherNames() {
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		EventJournal.putString(buffer, "BTC");
+		EventJournal.putString(buffer, "ÇAY");
+		buffer.flip();
+
+		assertEquals(3, buffer.getShort(0));
+		assertEquals("BTC", EventJournal.getString(buffer));
+		assertEquals("ÇAY", EventJournal.getString(buffer));
+		assertFalse(buffer.hasRemaining());
+	}
+
+	@Test
+	void replay_skipsRecordsUpToAfterSeq() throws IOException {
+		EventJournal journal = journal(EventJournal.EVENT_SOURCED);
+		journal.appendOrderPlaced(order(7L));
+		journal.appendOrderFilled(7L, new BigDecimal("0.5"));
+		journal.appendOrderCanceled(7L);
+
+		List<String> events = new ArrayList<>();
+		journal.replay(1, new JournalListener() {
+			@Override
+			public void onOrderPlaced(long seq, Order order) {
+				events.add("placed");
+			}
+
+			@Override
+			public void onOrderFilled(long seq, long orderId, BigDecimal size) {
+				events.add("filled " + orderId + " " + size);
+			}
+
+			@Override
+			public void onOrderCanceled(long seq, long orderId) {
+				events.add("canceled " + orderId);
+			}
+		});
+
+		assertEquals(List.of("filled 7 0.5", "canceled 7"), events);
+	}
+
+	@Test
+	void deleteSegmentsThrough_keepsSegmentsWithLaterRecords() throws IOException {
+		EventJournal journal = journal(EventJournal.EVENT_SOURCED);
+		for (int i = 0; i < 5000; i++) {
+			journal.appendBalance(1L, "TRY", 1, 1, 0);
+		}
+		long segmentsBefore = segmentCount();
+
+		journal.deleteSegmentsThrough(2500);
+
+		long[] replayed = new long[1];
+		journal.replay(2500, new JournalListener() {
+			@Override
+			public void onBalance(long seq, long customerId, String assetName, BigDecimal size,
+								  BigDecimal usableSize, boolean absolute) {
+				replayed[0]++;
+			}
+		});
+		assertTrue(segmentCount() < segmentsBefore);
+		assertEquals(2500, replayed[0]);
+	}
+
+	@Test
+	void truncateIfUnchanged_onlyInJpaMode() throws IOException {
+		EventJournal jpa = journal(EventJournal.JPA);
+		long seq = jpa.appendBalance(1L, "TRY", 1, 1, 0);
+		assertFalse(jpa.truncateIfUnchanged(seq - 1));
+		assertTrue(jpa.truncateIfUnchanged(seq));
+		jpa.destroy();
+		EventJournal reopened = journal(EventJournal.JPA);
+		assertEquals(0, countRecords(reopened));
+		assertEquals(seq, reopened.lastSeq());
+
+		EventJournal eventSourced = new EventJournal(tempDir.resolve("es").toString(), EventJournal.EVENT_SOURCED,
+				false, SEGMENT_SIZE);
+		assertFalse(eventSourced.truncateIfUnchanged(eventSourced.appendOrderCanceled(1L)));
+	}
+
+	private EventJournal journal(String mode) throws IOException {
+		return new EventJournal(tempDir.toString(), mode, false, SEGMENT_SIZE);
+	}
+
+	private long segmentCount() throws IOException {
+		try (Stream<Path> files = Files.list(tempDir)) {
+			return files.filter(Files::isRegularFile).count();
+		}
+	}
+
+	private static int countRecords(EventJournal journal) {
+		int[] count = new int[1];
+		journal.replay(0, new JournalListener() {
+			@Override
+			public void onBalance(long seq, long customerId, String assetName, BigDecimal size,
+								  BigDecimal usableSize, boolean absolute) {
+				count[0]++;
+			}
+		});
+		return count[0];
+	}
+
+	private static Order order(Long id) {
+		Order order = new Order();
+		order.setId(id);
+		order.setCustomerId(1L);
+		order.setAssetName("BTC");
+		order.setOrderSide(OrderSide.BUY);
+		order.setSize(BigDecimal.ONE);
+		order.setPrice(new BigDecimal("50000"));
+		order.setCreateDate(LocalDateTime.now());
+		return order;
+	}
+}
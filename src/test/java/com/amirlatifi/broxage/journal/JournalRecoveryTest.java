@@ -0,0 +1,168 @@
+package com.amirlatifi.broxage.journal;
+
+import com.amirlatifi.broxage.asset.AssetRegistry;
+import com.amirlatifi.broxage.ledger.BalanceLedger;
+import com.amirlatifi.broxage.model.Asset;
+import com.amirlatifi.broxage.model.AssetView;
+import com.amirlatifi.broxage.model.Order;
+import com.amirlatifi.broxage.model.OrderSide;
+import com.amirlatifi.broxage.model.OrderStatus;
+import com.amirlatifi.broxage.repository.AssetRepository;
+import com.amirlatifi.broxage.repository.OrderRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class JournalRecoveryTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Mock
+	private AssetRepository assetRepository;
+
+	@Mock
+	private OrderRepository orderRepository;
+
+	private EventJournal journal;
+	private final AssetRegistry scales = new AssetRegistry(new MockEnvironment().withProperty("asset.symbols", "BTC,ETH"));
+	private BalanceLedger balanceLedger;
+	private OrderEventLog orderEventLog;
+	private SnapshotStore snapshotStore;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		MockitoAnnotations.openMocks(this);
+		start();
+	}
+
+	@Test
+	void recover_eventSourced_restoresSnapshotAndJournalTail() throws IOException {
+		balanceLedger.apply(1L, "TRY", units("1000"), units("1000"), false);
+		orderEventLog.placed(order(1L));
+		orderEventLog.placed(order(2L));
+		orderEventLog.filled(1L, new BigDecimal("0.4"));
+		new Snapshotter(journal, snapshotStore, balanceLedger, orderEventLog).snapshot();
+
+		balanceLedger.apply(1L, "TRY", 0, units("-100"), true);
+		orderEventLog.filled(1L, new BigDecimal("0.6"));
+		orderEventLog.placed(order(3L));
+		journal.destroy();
+
+		start();
+
+		AssetView asset = balanceLedger.getAssets(1L).get(0);
+		assertEquals(0, new BigDecimal("1000").compareTo(asset.getSize()));
+		assertEquals(0, new BigDecimal("900").compareTo(asset.getUsableSize()));
+
+		@SuppressWarnings("unchecked")
+		ArgumentCaptor<Collection<Order>> rows = ArgumentCaptor.forClass(Collection.class);
+		verify(orderRepository).restore(rows.capture());
+		Map<Long, Order> orders = rows.getValue().stream().collect(Collectors.toMap(Order::getId, Function.identity()));
+		assertEquals(OrderStatus.MATCHED, orders.get(1L).getStatus());
+		assertEquals(OrderStatus.PENDING, orders.get(2L).getStatus());
+		assertEquals(OrderStatus.PENDING, orders.get(3L).getStatus());
+		assertEquals(2, orderEventLog.snapshot().size());
+		verify(orderRepository).advanceIdsPast(3);
+	}
+
+	@Test
+	void recover_eventSourced_ignoresEventsAlreadyInSnapshot() throws IOException {
+		orderEventLog.placed(order(1L));
+		orderEventLog.filled(1L, new BigDecimal("0.25"));
+		new Snapshotter(journal, snapshotStore, balanceLedger, orderEventLog).snapshot();
+		journal.destroy();
+
+		start();
+
+		Snapshot.OrderState restored = orderEventLog.snapshot().get(0);
+		assertEquals(0, new BigDecimal("0.25").compareTo(restored.getOrder().getFilledSize()));
+		assertEquals(2L, restored.getSeq());
+	}
+
+	@Test
+	void recover_jpa_replaysJournalOnTopOfFlushedRows() throws IOException {
+		start(EventJournal.JPA);
+		balanceLedger.apply(1L, "TRY", units("1000"), units("1000"), false);
+		journal.truncateIfUnchanged(1);
+		balanceLedger.apply(1L, "TRY", 0, units("-100"), true);
+		journal.destroy();
+		when(assetRepository.findAll()).thenReturn(List.of(row(units("1000"), 1)));
+
+		start(EventJournal.JPA);
+
+		AssetView asset = balanceLedger.getAssets(1L).get(0);
+		assertEquals(0, new BigDecimal("1000").compareTo(asset.getSize()));
+		assertEquals(0, new BigDecimal("900").compareTo(asset.getUsableSize()));
+	}
+
+	@Test
+	void recover_jpa_journalNewerThanDatabase_isRefused() throws IOException {
+		start(EventJournal.JPA);
+		balanceLedger.apply(1L, "TRY", units("1000"), units("1000"), false);
+		journal.truncateIfUnchanged(1);
+		balanceLedger.apply(1L, "TRY", 0, units("-100"), true);
+		journal.destroy();
+
+		IllegalStateException refused = assertThrows(IllegalStateException.class, () -> start(EventJournal.JPA));
+		assertTrue(refused.getMessage().contains("starts after seq 1"));
+	}
+
+	private void start() throws IOException {
+		start(EventJournal.EVENT_SOURCED);
+	}
+
+	private void start(String mode) throws IOException {
+		journal = new EventJournal(tempDir.toString(), mode, false, 1024 * 1024);
+		balanceLedger = new BalanceLedger(assetRepository, journal, scales);
+		orderEventLog = new OrderEventLog(journal, orderRepository);
+		snapshotStore = new SnapshotStore(journal);
+		new JournalRecovery(journal, snapshotStore, balanceLedger, orderEventLog).recover();
+	}
+
+	private Asset row(long units, long ledgerSeq) {
+		Asset asset = new Asset();
+		asset.setId(1L);
+		asset.setCustomerId(1L);
+		asset.setAssetName("TRY");
+		asset.setSize(scales.toDecimal("TRY", units));
+		asset.setUsableSize(scales.toDecimal("TRY", units));
+		asset.setLedgerSeq(ledgerSeq);
+		return asset;
+	}
+
+	private long units(String amount) {
+		return scales.toUnits("TRY", new BigDecimal(amount));
+	}
+
+	private static Order order(Long id) {
+		Order order = new Order();
+		order.setId(id);
+		order.setCustomerId(1L);
+		order.setAssetName("BTC");
+		order.setOrderSide(OrderSide.SELL);
+		order.setSize(BigDecimal.ONE);
+		order.setPrice(new BigDecimal("100"));
+		order.setStatus(OrderStatus.PENDING);
+		order.setCreateDate(LocalDateTime.now());
+		return order;
+	}
+}
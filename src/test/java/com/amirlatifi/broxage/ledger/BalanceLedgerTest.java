@@ -0,0 +1,166 @@
+package com.amirlatifi.broxage.ledger;
+
+import com.amirlatifi.broxage.asset.AssetRegistry;
+import com.amirlatifi.broxage.journal.EventJournal;
+import com.amirlatifi.broxage.journal.JournalRecovery;
+import com.amirlatifi.broxage.journal.OrderEventLog;
+import com.amirlatifi.broxage.journal.SnapshotStore;
+import com.amirlatifi.broxage.model.Asset;
+import com.amirlatifi.broxage.model.AssetView;
+import com.amirlatifi.broxage.repository.AssetRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+class BalanceLedgerTest {
+
+	private static final int SEGMENT_SIZE = 1024 * 1024;
+
+	@TempDir
+	Path tempDir;
+
+	@Mock
+	private AssetRepository assetRepository;
+
+	private final AssetRegistry scales = new AssetRegistry(new MockEnvironment().withProperty("asset.symbols", "BTC,ETH"));
+
+	@BeforeEach
+	void setUp() {
+		MockitoAnnotations.openMocks(this);
+	}
+
+	@Test
+	void recover_replaysJournalIntoEmptyTable() throws IOException {
+		EventJournal journal = journal();
+		BalanceLedger ledger = recover(journal);
+		ledger.apply(1L, "TRY", units("100"), units("100"), false);
+		ledger.apply(1L, "TRY", 0, units("-40"), true);
+		journal.destroy();
+
+		BalanceLedger recovered = recover(journal());
+
+		AssetView asset = recovered.getAssets(1L).get(0);
+		assertEquals(0, new BigDecimal("100").compareTo(asset.getSize()));
+		assertEquals(0, new BigDecimal("60").compareTo(asset.getUsableSize()));
+	}
+
+	@Test
+	void recover_skipsEntriesAlreadyFlushedToTable() throws IOException {
+		EventJournal journal = journal();
+		BalanceLedger ledger = recover(journal);
+		ledger.apply(1L, "TRY", units("100"), units("100"), false);
+		ledger.apply(1L, "TRY", units("50"), units("50"), false);
+		journal.destroy();
+
+		Asset flushedAfterFirstEntry = new Asset();
+		flushedAfterFirstEntry.setId(5L);
+		flushedAfterFirstEntry.setCustomerId(1L);
+		flushedAfterFirstEntry.setAssetName("TRY");
+		flushedAfterFirstEntry.setSize(new BigDecimal("100"));
+		flushedAfterFirstEntry.setUsableSize(new BigDecimal("100"));
+		flushedAfterFirstEntry.setLedgerSeq(1L);
+		when(assetRepository.findAll()).thenReturn(Collections.singletonList(flushedAfterFirstEntry));
+
+		BalanceLedger recovered = recover(journal());
+
+		AssetView asset = recovered.getAssets(1L).get(0);
+		assertEquals(5L, asset.getId());
+		assertEquals(0, new BigDecimal("150").compareTo(asset.getSize()));
+	}
+
+	@Test
+	void recover_tornTailEntry_isDiscarded() throws IOException {
+		EventJournal journal = journal();
+		BalanceLedger ledger = recover(journal);
+		ledger.apply(1L, "TRY", units("100"), units("100"), false);
+		ledger.apply(1L, "TRY", units("50"), units("50"), false);
+		journal.destroy();
+		tearLastRecord();
+
+		BalanceLedger recovered = recover(journal());
+
+		assertEquals(0, new BigDecimal("100").compareTo(recovered.getAssets(1L).get(0).getSize()));
+	}
+
+	@Test
+	void apply_requireUsable_refusesOverdraft() throws IOException {
+		BalanceLedger ledger = recover(new EventJournal("", EventJournal.JPA, false, SEGMENT_SIZE));
+		ledger.apply(1L, "TRY", units("10"), units("10"), false);
+
+		assertFalse(ledger.apply(1L, "TRY", 0, units("-11"), true));
+		assertEquals(0, BigDecimal.TEN.compareTo(ledger.getUsableSize(1L, "TRY")));
+	}
+
+	@Test
+	void reserveEach_reservesAmountsThatStillFitAsOneChange() throws IOException {
+		EventJournal journal = journal();
+		BalanceLedger ledger = recover(journal);
+		ledger.apply(1L, "TRY", units("10"), units("10"), false);
+		long seq = journal.lastSeq();
+
+		boolean[] reserved = ledger.reserveEach(1L, "TRY",
+				new long[]{units("4"), units("7"), units("5"), units("1")});
+
+		assertArrayEquals(new boolean[]{true, false, true, true}, reserved);
+		assertEquals(0, BigDecimal.ZERO.compareTo(ledger.getUsableSize(1L, "TRY")));
+		assertEquals(seq + 1, journal.lastSeq());
+	}
+
+	@Test
+	void drainDirty_returnsEachChangedAccountOnce() throws IOException {
+		BalanceLedger ledger = recover(new EventJournal("", EventJournal.JPA, false, SEGMENT_SIZE));
+		ledger.apply(1L, "TRY", units("10"), units("10"), false);
+		ledger.apply(1L, "TRY", units("1"), units("1"), false);
+		ledger.apply(2L, "BTC", 1, 1, false);
+
+		List<Asset> batch = ledger.drainDirty(10);
+
+		assertEquals(2, batch.size());
+		assertTrue(ledger.isClean());
+		assertTrue(ledger.drainDirty(10).isEmpty());
+	}
+
+	private EventJournal journal() throws IOException {
+		return new EventJournal(tempDir.toString(), EventJournal.JPA, true, SEGMENT_SIZE);
+	}
+
+	private BalanceLedger recover(EventJournal journal) {
+		BalanceLedger ledger = new BalanceLedger(assetRepository, journal, scales);
+		new JournalRecovery(journal, new SnapshotStore(journal), ledger, new OrderEventLog(journal, null)).recover();
+		return ledger;
+	}
+
+	private long units(String amount) {
+		return scales.toUnits("TRY", new BigDecimal(amount));
+	}
+
+	/**
+	 * Flips the last written byte of the journal, as if the final record had only partly reached the disk.
+	 */
+	private void tearLastRecord() throws IOException {
+		Path segment = Files.list(tempDir).findFirst().orElseThrow(AssertionError::new);
+		try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+			long position = file.length() - 1;
+			file.seek(position);
+			while (file.read() == 0) {
+				file.seek(--position);
+			}
+			file.seek(position);
+			file.write(0xFF);
+		}
+	}
+}
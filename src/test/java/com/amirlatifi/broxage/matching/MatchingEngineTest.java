@@ -0,0 +1,258 @@
+package com.amirlatifi.broxage.matching;
+
+import com.amirlatifi.broxage.asset.AssetRegistry;
+import com.amirlatifi.broxage.model.Order;
+import com.amirlatifi.broxage.model.OrderSide;
+import com.amirlatifi.broxage.model.OrderStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MatchingEngineTest {
+
+	private MatchingEngine matchingEngine;
+
+	@BeforeEach
+	void setUp() {
+		matchingEngine = new MatchingEngine(new AssetRegistry(new MockEnvironment().withProperty("asset.symbols", "BTC,ETH")),
+				DepthListener.NONE);
+	}
+
+	@Test
+	void match_noOppositeOrders_restsOrder() {
+		Order buy = createOrder(1L, OrderSide.BUY, "1", "100");
+
+		List<Fill> fills = matchingEngine.match(buy);
+
+		assertTrue(fills.isEmpty());
+		assertTrue(matchingEngine.isResting(buy));
+	}
+
+	@Test
+	void match_nonCrossingPrices_bothRest() {
+		Order sell = createOrder(1L, OrderSide.SELL, "1", "101");
+		Order buy = createOrder(2L, OrderSide.BUY, "1", "100");
+
+		matchingEngine.match(sell);
+		List<Fill> fills = matchingEngine.match(buy);
+
+		assertTrue(fills.isEmpty());
+		assertTrue(matchingEngine.isResting(sell));
+		assertTrue(matchingEngine.isResting(buy));
+	}
+
+	@Test
+	void match_bestPriceFirstThenTimePriority() {
+		Order earlyAt100 = createOrder(1L, OrderSide.SELL, "1", "100");
+		Order lateAt100 = createOrder(2L, OrderSide.SELL, "1", "100");
+		Order at99 = createOrder(3L, OrderSide.SELL, "1", "99");
+		matchingEngine.match(earlyAt100);
+		matchingEngine.match(lateAt100);
+		matchingEngine.match(at99);
+
+		List<Fill> fills = matchingEngine.match(createOrder(4L, OrderSide.BUY, "2", "100"));
+
+		assertEquals(2, fills.size());
+		assertEquals(3L, fills.get(0).getMakerOrderId());
+		assertEquals(9900, fills.get(0).getPrice());
+		assertEquals(1L, fills.get(1).getMakerOrderId());
+		assertTrue(matchingEngine.isResting(lateAt100));
+	}
+
+	@Test
+	void match_partialFill_restsRemainderOfTaker() {
+		Order sell = createOrder(1L, OrderSide.SELL, "1", "100");
+		matchingEngine.match(sell);
+		Order buy = createOrder(2L, OrderSide.BUY, "3", "100");
+
+		List<Fill> fills = matchingEngine.match(buy);
+
+		assertEquals(1, fills.size());
+		assertTrue(fills.get(0).isMakerFilled());
+		assertEquals(1_000_000, fills.get(0).getSize());
+		assertFalse(matchingEngine.isResting(sell));
+		assertTrue(matchingEngine.isResting(buy));
+	}
+
+	@Test
+	void match_partialFillOfMaker_keepsMakerResting() {
+		Order sell = createOrder(1L, OrderSide.SELL, "5", "100");
+		matchingEngine.match(sell);
+
+		List<Fill> fills = matchingEngine.match(createOrder(2L, OrderSide.BUY, "2", "100"));
+
+		assertEquals(1, fills.size());
+		assertFalse(fills.get(0).isMakerFilled());
+		assertTrue(matchingEngine.isResting(sell));
+	}
+
+	@Test
+	void unmatch_restoresMakersAndTakesTheTakerOffTheBook() {
+		Order first = createOrder(1L, OrderSide.SELL, "1", "100");
+		Order second = createOrder(2L, OrderSide.SELL, "1", "100");
+		Order partial = createOrder(3L, OrderSide.SELL, "3", "101");
+		matchingEngine.match(first);
+		matchingEngine.match(second);
+		matchingEngine.match(partial);
+		BookDepth before = matchingEngine.depth("BTC", 10);
+		Order buy = createOrder(4L, OrderSide.BUY, "4", "101");
+
+		List<Fill> fills = matchingEngine.match(buy);
+		assertEquals(3, fills.size());
+		assertFalse(matchingEngine.isResting(first));
+		assertFalse(fills.get(2).isMakerFilled());
+
+		matchingEngine.unmatch(buy, fills);
+
+		assertTrue(matchingEngine.isResting(first));
+		assertTrue(matchingEngine.isResting(second));
+		BookDepth after = matchingEngine.depth("BTC", 10);
+		assertTrue(after.getBids().isEmpty());
+		assertEquals(before.getAsks().size(), after.getAsks().size());
+		for (int i = 0; i < before.getAsks().size(); i++) {
+			assertEquals(before.getAsks().get(i).getPrice(), after.getAsks().get(i).getPrice());
+			assertEquals(before.getAsks().get(i).getSize(), after.getAsks().get(i).getSize());
+			assertEquals(before.getAsks().get(i).getOrders(), after.getAsks().get(i).getOrders());
+		}
+		List<Fill> again = matchingEngine.match(createOrder(5L, OrderSide.BUY, "1", "100"));
+		assertEquals(1L, again.get(0).getMakerOrderId());
+	}
+
+	@Test
+	void unmatch_takesWhatRestedOfTheTakerOffTheBook() {
+		Order sell = createOrder(1L, OrderSide.SELL, "1", "100");
+		matchingEngine.match(sell);
+		Order buy = createOrder(2L, OrderSide.BUY, "3", "100");
+
+		List<Fill> fills = matchingEngine.match(buy);
+		matchingEngine.unmatch(buy, fills);
+
+		assertFalse(matchingEngine.isResting(buy));
+		assertTrue(matchingEngine.isResting(sell));
+		assertTrue(matchingEngine.depth("BTC", 10).getBids().isEmpty());
+		assertEquals(1_000_000, matchingEngine.depth("BTC", 10).getAsks().get(0).getSize());
+	}
+
+	@Test
+	void cancel_removesOrderFromMatching() {
+		Order sell = createOrder(1L, OrderSide.SELL, "1", "100");
+		matchingEngine.match(sell);
+
+		assertTrue(matchingEngine.cancel(sell));
+		List<Fill> fills = matchingEngine.match(createOrder(2L, OrderSide.BUY, "1", "100"));
+
+		assertTrue(fills.isEmpty());
+		assertFalse(matchingEngine.cancel(sell));
+	}
+
+	@Test
+	void cancelAll_removesOnlyTheCustomersOrdersOnTheGivenSide() {
+		Order bid = createOrder(1L, OrderSide.BUY, "1", "99");
+		Order ask = createOrder(2L, OrderSide.SELL, "1", "101");
+		Order otherBid = createOrder(3L, OrderSide.BUY, "1", "99");
+		ask.setCustomerId(1L);
+		matchingEngine.match(bid);
+		matchingEngine.match(ask);
+		matchingEngine.match(otherBid);
+
+		List<CanceledOrder> canceled = matchingEngine.cancelAll(1L, "BTC", OrderSide.BUY);
+
+		assertEquals(1, canceled.size());
+		assertEquals(1L, canceled.get(0).getOrderId());
+		assertEquals(1_000_000, canceled.get(0).getRemainingSize());
+		assertFalse(matchingEngine.isResting(bid));
+		assertTrue(matchingEngine.isResting(ask));
+		assertTrue(matchingEngine.isResting(otherBid));
+		assertEquals(1, matchingEngine.cancelAll(1L, "BTC", null).size());
+		assertTrue(matchingEngine.cancelAll(1L, "ETH", null).isEmpty());
+	}
+
+	@Test
+	void restore_putsCanceledOrdersBackOnTheBook() {
+		Order bid = createOrder(1L, OrderSide.BUY, "1", "99");
+		matchingEngine.match(bid);
+		List<CanceledOrder> canceled = matchingEngine.cancelAll(1L, "BTC", null);
+
+		matchingEngine.restore(1L, "BTC", canceled);
+
+		assertTrue(matchingEngine.isResting(bid));
+		List<Fill> fills = matchingEngine.match(createOrder(2L, OrderSide.SELL, "1", "99"));
+		assertEquals(1L, fills.get(0).getMakerCustomerId());
+		assertEquals(1_000_000, fills.get(0).getSize());
+	}
+
+	@Test
+	void depth_aggregatesLevelsAsOrdersRestTradeAndCancel() {
+		Order firstAt100 = createOrder(1L, OrderSide.SELL, "1", "100");
+		Order secondAt100 = createOrder(2L, OrderSide.SELL, "2", "100");
+		Order at101 = createOrder(3L, OrderSide.SELL, "1", "101");
+		Order bid = createOrder(4L, OrderSide.BUY, "1", "99");
+		matchingEngine.match(firstAt100);
+		matchingEngine.match(secondAt100);
+		matchingEngine.match(at101);
+		matchingEngine.match(bid);
+
+		matchingEngine.match(createOrder(5L, OrderSide.BUY, "1.5", "100"));
+		matchingEngine.cancel(at101);
+
+		BookDepth depth = matchingEngine.depth("BTC", 10);
+		assertEquals(1, depth.getAsks().size());
+		assertEquals(10000, depth.getAsks().get(0).getPrice());
+		assertEquals(1_500_000, depth.getAsks().get(0).getSize());
+		assertEquals(1, depth.getAsks().get(0).getOrders());
+		assertEquals(1, depth.getBids().size());
+		assertEquals(9900, depth.getBids().get(0).getPrice());
+		assertEquals(1_000_000, depth.getBids().get(0).getSize());
+	}
+
+	@Test
+	void depth_returnsOnlyTheBestLevels() {
+		for (long id = 1; id <= 5; id++) {
+			matchingEngine.match(createOrder(id, OrderSide.BUY, "1", String.valueOf(90 + id)));
+		}
+
+		BookDepth depth = matchingEngine.depth("BTC", 2);
+
+		assertEquals(2, depth.getBids().size());
+		assertEquals(9500, depth.getBids().get(0).getPrice());
+		assertEquals(9400, depth.getBids().get(1).getPrice());
+		assertTrue(depth.getAsks().isEmpty());
+		assertEquals(5, depth.getSequence());
+		assertEquals(5, matchingEngine.pendingOrders("BTC"));
+	}
+
+	@Test
+	void depthListener_receivesEveryLevelChangeInSequence() {
+		List<String> changes = new ArrayList<>();
+		matchingEngine = new MatchingEngine(new AssetRegistry(new MockEnvironment().withProperty("asset.symbols", "BTC,ETH")),
+				(assetName, sequence, side, price, size, orders) ->
+						changes.add(assetName + " " + sequence + " " + side + " " + price + " " + size + " " + orders));
+		Order sell = createOrder(1L, OrderSide.SELL, "2", "100");
+		matchingEngine.match(sell);
+		matchingEngine.match(createOrder(2L, OrderSide.BUY, "1", "100"));
+		matchingEngine.cancel(sell);
+
+		assertEquals(List.of(
+				"BTC 1 SELL 10000 2000000 1",
+				"BTC 2 SELL 10000 1000000 1",
+				"BTC 3 SELL 10000 0 0"), changes);
+	}
+
+	private Order createOrder(Long id, OrderSide side, String size, String price) {
+		Order order = new Order();
+		order.setId(id);
+		order.setCustomerId(id);
+		order.setAssetName("BTC");
+		order.setOrderSide(side);
+		order.setSize(new BigDecimal(size));
+		order.setPrice(new BigDecimal(price));
+		order.setStatus(OrderStatus.PENDING);
+		return order;
+	}
+}
@@ -0,0 +1,60 @@
+package com.amirlatifi.broxage.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The views replaced the entities in API responses, so they must serialize to exactly the same JSON.
+ */
+class ViewSerializationTest {
+
+	private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+	@Test
+	void orderView_matchesEntity() throws Exception {
+		Order order = new Order();
+		order.setId(5L);
+		order.setCustomerId(42L);
+		order.setAssetName("BTC");
+		order.setOrderSide(OrderSide.SELL);
+		order.setSize(new BigDecimal("0.25"));
+		order.setPrice(new BigDecimal("1234567.89"));
+		order.setFilledSize(new BigDecimal("0.10"));
+		order.setStatus(OrderStatus.PENDING);
+		order.setCreateDate(LocalDateTime.of(2024, 1, 2, 3, 4, 5));
+
+		assertEquals(objectMapper.readTree(objectMapper.writeValueAsString(order)),
+				objectMapper.readTree(objectMapper.writeValueAsString(OrderView.of(order))));
+	}
+
+	@Test
+	void orderView_withNullFields_matchesEntity() throws Exception {
+		Order order = new Order();
+		order.setSize(BigDecimal.ONE);
+
+		assertEquals(objectMapper.readTree(objectMapper.writeValueAsString(order)),
+				objectMapper.readTree(objectMapper.writeValueAsString(OrderView.of(order))));
+	}
+
+	@Test
+	void assetView_matchesEntity() throws Exception {
+		Asset asset = new Asset();
+		asset.setId(3L);
+		asset.setCustomerId(42L);
+		asset.setAssetName("TRY");
+		asset.setSize(new BigDecimal("1500.25"));
+		asset.setUsableSize(new BigDecimal("1200.00"));
+		asset.setLedgerSeq(7L);
+
+		AssetView view = new AssetView(3L, 42L, "TRY", asset.getSize(), asset.getUsableSize());
+
+		assertEquals(objectMapper.readTree(objectMapper.writeValueAsString(asset)),
+				objectMapper.readTree(objectMapper.writeValueAsString(view)));
+	}
+}
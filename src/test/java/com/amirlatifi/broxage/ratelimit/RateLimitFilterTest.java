@@ -0,0 +1,95 @@
+package com.amirlatifi.broxage.ratelimit;
+
+import com.amirlatifi.broxage.metrics.BrokerMetrics;
+import com.amirlatifi.broxage.model.Role;
+import com.amirlatifi.broxage.security.CustomerPrincipal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitFilterTest {
+
+	private final AtomicLong clock = new AtomicLong();
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private RateLimitFilter filter;
+
+	@BeforeEach
+	void setUp() {
+		MockEnvironment environment = new MockEnvironment()
+				.withProperty("rate-limit.customer.order-create.per-second", "0.5")
+				.withProperty("rate-limit.customer.order-create.burst", "1");
+		filter = new RateLimitFilter(new RateLimiter(environment, clock::get), new BrokerMetrics(meterRegistry),
+				Jackson2ObjectMapperBuilder.json().build());
+	}
+
+	@AfterEach
+	void clearContext() {
+		SecurityContextHolder.clearContext();
+	}
+
+	@Test
+	void requestOverBudget_gets429WithRetryAfter() throws Exception {
+		authenticate(7L, Role.CUSTOMER);
+
+		assertEquals(200, send("POST", "/api/orders").getStatus());
+		MockHttpServletResponse throttled = send("POST", "/api/orders");
+
+		assertEquals(429, throttled.getStatus());
+		assertEquals("2", throttled.getHeader("Retry-After"));
+		assertTrue(throttled.getContentAsString().contains("Too many requests"));
+		assertEquals(1, meterRegistry.counter("broxage.ratelimit.throttled", "budget", "order-create").count());
+
+		clock.addAndGet(TimeUnit.SECONDS.toNanos(2));
+		assertEquals(200, send("POST", "/api/orders").getStatus());
+	}
+
+	@Test
+	void otherBudgetsAreUnaffected() throws Exception {
+		authenticate(7L, Role.CUSTOMER);
+		send("POST", "/api/orders");
+
+		assertEquals(200, send("DELETE", "/api/orders/1").getStatus());
+		assertEquals(200, send("GET", "/api/orders").getStatus());
+		assertEquals(200, send("POST", "/api/assets/deposit").getStatus());
+	}
+
+	@Test
+	void batchIsLeftToTheController() throws Exception {
+		authenticate(7L, Role.CUSTOMER);
+		send("POST", "/api/orders");
+
+		assertEquals(200, send("POST", "/api/orders/batch").getStatus());
+	}
+
+	@Test
+	void unauthenticatedRequestIsLeftToSecurity() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			assertEquals(200, send("POST", "/api/orders").getStatus());
+		}
+	}
+
+	private void authenticate(long customerId, Role role) {
+		CustomerPrincipal principal = new CustomerPrincipal(customerId, "trader", role);
+		SecurityContextHolder.getContext().setAuthentication(
+				new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+	}
+
+	private MockHttpServletResponse send(String method, String uri) throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(new MockHttpServletRequest(method, uri), response, new MockFilterChain());
+		return response;
+	}
+}
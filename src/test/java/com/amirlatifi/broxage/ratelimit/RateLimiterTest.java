@@ -0,0 +1,113 @@
+package com.amirlatifi.broxage.ratelimit;
+
+import com.amirlatifi.broxage.model.Role;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterTest {
+
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	// Negative on purpose, System.nanoTime() may be
+	private final AtomicLong clock = new AtomicLong(-5 * SECOND);
+	private RateLimiter rateLimiter;
+
+	@BeforeEach
+	void setUp() {
+		MockEnvironment environment = new MockEnvironment()
+				.withProperty("rate-limit.customer.order-create.per-second", "10")
+				.withProperty("rate-limit.customer.order-create.burst", "5")
+				.withProperty("rate-limit.admin.order-create.per-second", "0");
+		rateLimiter = new RateLimiter(environment, clock::get);
+	}
+
+	@Test
+	void tryAcquire_allowsBurstThenRejects() {
+		for (int i = 0; i < 5; i++) {
+			assertEquals(0, rateLimiter.tryAcquire(1L, Role.CUSTOMER, Budget.ORDER_CREATE));
+		}
+
+		assertEquals(SECOND / 10, rateLimiter.tryAcquire(1L, Role.CUSTOMER, Budget.ORDER_CREATE));
+	}
+
+	@Test
+	void tryAcquire_refillsAtRate() {
+		for (int i = 0; i < 5; i++) {
+			rateLimiter.tryAcquire(1L, Role.CUSTOMER, Budget.ORDER_CREATE);
+		}
+		clock.addAndGet(SECOND / 10);
+
+		assertEquals(0, rateLimiter.tryAcquire(1L, Role.CUSTOMER, Budget.ORDER_CREATE));
+		assertTrue(rateLimiter.tryAcquire(1L, Role.CUSTOMER, Budget.ORDER_CREATE) > 0);
+
+		clock.addAndGet(SECOND);
+		for (int i = 0; i < 5; i++) {
+			assertEquals(0, rateLimiter.tryAcquire(1L, Role.CUSTOMER, Budget.ORDER_CREATE));
+		}
+		assertTrue(rateLimiter.tryAcquire(1L, Role.CUSTOMER, Budget.ORDER_CREATE) > 0);
+	}
+
+	@Test
+	void tryAcquire_permits_takesAllOrNone() {
+		assertEquals(0, rateLimiter.tryAcquire(1L, Role.CUSTOMER, Budget.ORDER_CREATE, 3));
+
+		assertEquals(SECOND / 10, rateLimiter.tryAcquire(1L, Role.CUSTOMER, Budget.ORDER_CREATE, 3));
+		assertEquals(0, rateLimiter.tryAcquire(1L, Role.CUSTOMER, Budget.ORDER_CREATE, 2));
+		assertTrue(rateLimiter.tryAcquire(1L, Role.CUSTOMER, Budget.ORDER_CREATE) > 0);
+	}
+
+	@Test
+	void tryAcquire_morePermitsThanBurst_takesAFullBucket() {
+		assertEquals(0, rateLimiter.tryAcquire(1L, Role.CUSTOMER, Budget.ORDER_CREATE, 6));
+		assertTrue(rateLimiter.tryAcquire(1L, Role.CUSTOMER, Budget.ORDER_CREATE) > 0);
+
+		clock.addAndGet(SECOND / 10);
+		assertEquals(SECOND * 4 / 10, rateLimiter.tryAcquire(1L, Role.CUSTOMER, Budget.ORDER_CREATE, 6));
+		assertEquals(0, rateLimiter.tryAcquire(1L, Role.ADMIN, Budget.ORDER_CREATE, 10_000));
+	}
+
+	@Test
+	void tryAcquire_budgetsAndCustomersAreSeparate() {
+		for (int i = 0; i < 5; i++) {
+			rateLimiter.tryAcquire(1L, Role.CUSTOMER, Budget.ORDER_CREATE);
+		}
+
+		assertEquals(0, rateLimiter.tryAcquire(1L, Role.CUSTOMER, Budget.ORDER_CANCEL));
+		assertEquals(0, rateLimiter.tryAcquire(1L, Role.CUSTOMER, Budget.READ));
+		assertEquals(0, rateLimiter.tryAcquire(2L, Role.CUSTOMER, Budget.ORDER_CREATE));
+	}
+
+	@Test
+	void tryAcquire_zeroRateIsUnlimited() {
+		for (int i = 0; i < 10_000; i++) {
+			assertEquals(0, rateLimiter.tryAcquire(1L, Role.ADMIN, Budget.ORDER_CREATE));
+		}
+		assertEquals(0, rateLimiter.size());
+	}
+
+	@Test
+	void tryAcquire_unsetRoleUsesDefaults() {
+		for (int i = 0; i < Budget.READ.getDefaultBurst(); i++) {
+			assertEquals(0, rateLimiter.tryAcquire(1L, Role.ADMIN, Budget.READ));
+		}
+
+		assertTrue(rateLimiter.tryAcquire(1L, Role.ADMIN, Budget.READ) > 0);
+	}
+
+	@Test
+	void purgeIdle_dropsOnlyRefilledBuckets() {
+		rateLimiter.tryAcquire(1L, Role.CUSTOMER, Budget.ORDER_CREATE);
+		clock.addAndGet(SECOND);
+		rateLimiter.tryAcquire(2L, Role.CUSTOMER, Budget.ORDER_CREATE);
+
+		rateLimiter.purgeIdle();
+
+		assertEquals(1, rateLimiter.size());
+	}
+}
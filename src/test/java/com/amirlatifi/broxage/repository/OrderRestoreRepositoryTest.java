@@ -0,0 +1,59 @@
+package com.amirlatifi.broxage.repository;
+
+import com.amirlatifi.broxage.model.Order;
+import com.amirlatifi.broxage.model.OrderSide;
+import com.amirlatifi.broxage.model.OrderStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import(SimpleMeterRegistry.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OrderRestoreRepositoryTest {
+
+	@Autowired
+	private OrderRepository orderRepository;
+
+	@Test
+	void restore_keepsIdsAndOverwritesExistingRows() {
+		orderRepository.restore(Collections.singletonList(order(7L, OrderStatus.PENDING)));
+
+		orderRepository.restore(Arrays.asList(order(7L, OrderStatus.CANCELED), order(500L, OrderStatus.PENDING)));
+
+		assertEquals(OrderStatus.CANCELED, orderRepository.findById(7L).orElseThrow().getStatus());
+		assertEquals(OrderStatus.PENDING, orderRepository.findById(500L).orElseThrow().getStatus());
+	}
+
+	@Test
+	void advanceIdsPast_nextOrderGetsAHigherId() {
+		// Recovery runs before any order is saved, so no block of ids is held in memory yet
+		orderRepository.advanceIdsPast(1_000);
+
+		assertTrue(orderRepository.save(order(null, OrderStatus.PENDING)).getId() > 1_000);
+	}
+
+	private static Order order(Long id, OrderStatus status) {
+		Order order = new Order();
+		order.setId(id);
+		order.setCustomerId(1L);
+		order.setAssetName("BTC");
+		order.setOrderSide(OrderSide.BUY);
+		order.setSize(BigDecimal.ONE);
+		order.setPrice(new BigDecimal("100"));
+		order.setStatus(status);
+		order.setCreateDate(LocalDateTime.now());
+		return order;
+	}
+}
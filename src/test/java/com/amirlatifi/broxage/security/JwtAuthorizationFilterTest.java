@@ -0,0 +1,216 @@
+package com.amirlatifi.broxage.security;
+
+import com.amirlatifi.broxage.metrics.BrokerMetrics;
+import com.amirlatifi.broxage.model.Role;
+import com.amirlatifi.broxage.repository.TokenRevocationRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class JwtAuthorizationFilterTest {
+
+	private static final long NOW = System.currentTimeMillis();
+
+	private final AtomicLong clock = new AtomicLong(NOW);
+	private JwtTokenCache tokenCache;
+	private TokenRevocations revocations;
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private JwtAuthorizationFilter filter;
+
+	@BeforeEach
+	void setUp() {
+		tokenCache = new JwtTokenCache(2, clock::get);
+		revocations = new TokenRevocations(mock(TokenRevocationRepository.class), clock::get);
+		JwtKeys keys = new JwtKeys("2", "CurrentSecret", Collections.singletonMap("1", "SecretKeyToGenJWTs"));
+		filter = new JwtAuthorizationFilter(authentication -> authentication, tokenCache, keys, revocations,
+				new BrokerMetrics(meterRegistry), new ObjectMapper());
+	}
+
+	@AfterEach
+	void clearContext() {
+		SecurityContextHolder.clearContext();
+	}
+
+	@Test
+	void principalComesFromClaims() throws Exception {
+		Authentication authentication = authorize(token("trader", 7L, Role.CUSTOMER, NOW + 60_000));
+
+		assertEquals("7", authentication.getName());
+		CustomerPrincipal principal = (CustomerPrincipal) authentication.getPrincipal();
+		assertEquals(7L, principal.getCustomerId());
+		assertEquals("trader", principal.getUsername());
+		assertEquals(Role.CUSTOMER, principal.getRole());
+		assertTrue(authentication.getAuthorities().contains(new SimpleGrantedAuthority("ROLE_CUSTOMER")));
+	}
+
+	@Test
+	void adminGetsAdminAuthority() throws Exception {
+		Authentication authentication = authorize(token("root", 1L, Role.ADMIN, NOW + 60_000));
+
+		assertTrue(authentication.getAuthorities().contains(new SimpleGrantedAuthority("ROLE_ADMIN")));
+	}
+
+	@Test
+	void tokenWithoutClaimsIsRejected() throws Exception {
+		String token = Jwts.builder()
+				.setHeaderParam(JwsHeader.KEY_ID, "2")
+				.setSubject("trader")
+				.setExpiration(new Date(NOW + 60_000))
+				.signWith(SignatureAlgorithm.HS512, "CurrentSecret".getBytes())
+				.compact();
+
+		assertRejectedAsInvalid(token, "Token has to be renewed by logging in again");
+		assertEquals(0, tokenCache.size());
+	}
+
+	@Test
+	void repeatRequestIsServedFromCache() throws Exception {
+		String token = token("trader", 7L, Role.CUSTOMER, NOW + 60_000);
+
+		Authentication first = authorize(token);
+		Authentication second = authorize(token);
+
+		assertEquals(1, tokenCache.size());
+		assertSame(first.getPrincipal(), second.getPrincipal());
+		assertEquals(1, meterRegistry.timer("broxage.auth.token.verify", "cached", "false").count());
+		assertEquals(1, meterRegistry.timer("broxage.auth.token.verify", "cached", "true").count());
+	}
+
+	@Test
+	void tokenSignedWithRetiredKeyIsAccepted() throws Exception {
+		String token = Jwts.builder()
+				.setHeaderParam(JwsHeader.KEY_ID, "1")
+				.setSubject("trader")
+				.claim(JwtAuthorizationFilter.CUSTOMER_ID_CLAIM, 7L)
+				.claim(JwtAuthorizationFilter.ROLE_CLAIM, "CUSTOMER")
+				.setExpiration(new Date(NOW + 60_000))
+				.signWith(SignatureAlgorithm.HS512, "SecretKeyToGenJWTs".getBytes())
+				.compact();
+
+		assertEquals("7", authorize(token).getName());
+	}
+
+	@Test
+	void tokenWithoutKnownKeyIdIsRejected() throws Exception {
+		String token = Jwts.builder()
+				.setSubject("trader")
+				.claim(JwtAuthorizationFilter.CUSTOMER_ID_CLAIM, 7L)
+				.claim(JwtAuthorizationFilter.ROLE_CLAIM, "CUSTOMER")
+				.setExpiration(new Date(NOW + 60_000))
+				.signWith(SignatureAlgorithm.HS512, "CurrentSecret".getBytes())
+				.compact();
+
+		assertRejectedAsInvalid(token, "Invalid token");
+	}
+
+	@Test
+	void expiredTokenIsRejected() throws Exception {
+		assertRejectedAsInvalid(token("trader", 7L, Role.CUSTOMER, NOW - 1_000), "Token has expired");
+	}
+
+	@Test
+	void malformedTokenIsRejected() throws Exception {
+		assertRejectedAsInvalid("not-a-token", "Invalid token");
+	}
+
+	@Test
+	void revokedTokenIsRejectedEvenWhenCached() throws Exception {
+		String token = token("trader", 7L, Role.CUSTOMER, NOW + 60_000);
+		assertNotNull(authorize(token));
+		SecurityContextHolder.clearContext();
+
+		revocations.revokeAll(7L);
+
+		assertRejectedAsInvalid(token, "Token has been revoked");
+		assertEquals(1, tokenCache.size());
+	}
+
+	@Test
+	void refreshTokenIsRejectedAsAccessToken() throws Exception {
+		String token = Jwts.builder()
+				.setHeaderParam(JwsHeader.KEY_ID, "2")
+				.setSubject("trader")
+				.claim(JwtAuthorizationFilter.CUSTOMER_ID_CLAIM, 7L)
+				.claim(JwtAuthorizationFilter.ROLE_CLAIM, "CUSTOMER")
+				.claim(JwtTokenService.TOKEN_TYPE_CLAIM, JwtTokenService.REFRESH)
+				.setExpiration(new Date(NOW + 60_000))
+				.signWith(SignatureAlgorithm.HS512, "CurrentSecret".getBytes())
+				.compact();
+
+		assertRejectedAsInvalid(token, "Refresh tokens cannot be used as access tokens");
+	}
+
+	@Test
+	void cachedTokenIsDroppedAtExpiry() {
+		String token = token("trader", 7L, Role.CUSTOMER, NOW + 60_000);
+		tokenCache.put(token, new CustomerPrincipal(7L, "trader", Role.CUSTOMER), NOW + 60_000);
+
+		assertNotNull(tokenCache.get(token));
+		clock.set(NOW + 60_000);
+		assertNull(tokenCache.get(token));
+		assertEquals(0, tokenCache.size());
+	}
+
+	@Test
+	void cacheStaysBounded() {
+		CustomerPrincipal principal = new CustomerPrincipal(7L, "trader", Role.CUSTOMER);
+		for (int i = 0; i < 10; i++) {
+			tokenCache.put("token-" + i, principal, NOW + 60_000);
+		}
+
+		assertTrue(tokenCache.size() <= 2);
+		assertNotNull(tokenCache.get("token-9"));
+	}
+
+	private void assertRejectedAsInvalid(String token, String message) throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/orders");
+		request.addHeader("Authorization", "Bearer " + token);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		MockFilterChain chain = new MockFilterChain();
+
+		filter.doFilter(request, response, chain);
+
+		assertEquals(401, response.getStatus());
+		assertEquals("Bearer error=\"invalid_token\"", response.getHeader("WWW-Authenticate"));
+		assertTrue(response.getContentAsString().contains("\"message\":\"" + message + "\""));
+		assertNull(chain.getRequest());
+		assertNull(SecurityContextHolder.getContext().getAuthentication());
+	}
+
+	private Authentication authorize(String token) throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/orders");
+		request.addHeader("Authorization", "Bearer " + token);
+		filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+		return SecurityContextHolder.getContext().getAuthentication();
+	}
+
+	private static String token(String subject, long customerId, Role role, long expiresAt) {
+		return Jwts.builder()
+				.setHeaderParam(JwsHeader.KEY_ID, "2")
+				.setSubject(subject)
+				.claim(JwtAuthorizationFilter.CUSTOMER_ID_CLAIM, customerId)
+				.claim(JwtAuthorizationFilter.ROLE_CLAIM, role.name())
+				.setIssuedAt(new Date(NOW))
+				.setExpiration(new Date(expiresAt))
+				.signWith(SignatureAlgorithm.HS512, "CurrentSecret".getBytes())
+				.compact();
+	}
+}
@@ -0,0 +1,113 @@
+package com.amirlatifi.broxage.security;
+
+import com.amirlatifi.broxage.metrics.BrokerMetrics;
+import com.amirlatifi.broxage.model.Role;
+import com.amirlatifi.broxage.repository.TokenRevocationRepository;
+import com.amirlatifi.broxage.service.CustomerProfile;
+import com.amirlatifi.broxage.service.CustomerService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class JwtTokenServiceTest {
+
+	private final AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+	private CustomerService customerService;
+	private TokenRevocations revocations;
+	private JwtTokenService tokenService;
+	private JwtAuthorizationFilter filter;
+	private CustomerProfile customer;
+
+	@BeforeEach
+	void setUp() {
+		customerService = mock(CustomerService.class);
+		revocations = new TokenRevocations(mock(TokenRevocationRepository.class), clock::get);
+		JwtKeys keys = new JwtKeys("1", "SecretKeyToGenJWTs", Collections.emptyMap());
+		tokenService = new JwtTokenService(customerService, keys, revocations, 60_000, 600_000);
+		filter = new JwtAuthorizationFilter(authentication -> authentication, new JwtTokenCache(0), keys,
+				revocations, new BrokerMetrics(new SimpleMeterRegistry()), new ObjectMapper());
+		customer = new CustomerProfile(7L, "trader", "TR1", Role.CUSTOMER);
+	}
+
+	@AfterEach
+	void clearContext() {
+		SecurityContextHolder.clearContext();
+	}
+
+	@Test
+	void issuedAccessTokenAuthorizes() throws Exception {
+		TokenResponse tokens = tokenService.issue(customer);
+
+		Authentication authentication = authorize(tokens.getToken());
+
+		assertEquals("7", authentication.getName());
+	}
+
+	@Test
+	void refreshTokenDoesNotAuthorize() throws Exception {
+		TokenResponse tokens = tokenService.issue(customer);
+
+		assertNull(authorize(tokens.getRefreshToken()));
+	}
+
+	@Test
+	void refresh_issuesAccessTokenWithCurrentRole() throws Exception {
+		TokenResponse tokens = tokenService.issue(customer);
+		when(customerService.findById(7L)).thenReturn(new CustomerProfile(7L, "trader", "TR1", Role.ADMIN));
+
+		TokenResponse refreshed = tokenService.refresh(tokens.getRefreshToken());
+
+		assertEquals(tokens.getRefreshToken(), refreshed.getRefreshToken());
+		CustomerPrincipal principal = (CustomerPrincipal) authorize(refreshed.getToken()).getPrincipal();
+		assertEquals(Role.ADMIN, principal.getRole());
+	}
+
+	@Test
+	void refresh_withAccessToken_throws() {
+		TokenResponse tokens = tokenService.issue(customer);
+
+		assertThrows(BadCredentialsException.class, () -> tokenService.refresh(tokens.getToken()));
+	}
+
+	@Test
+	void revokeAll_rejectsEarlierTokensButNotLaterOnes() throws Exception {
+		TokenResponse before = tokenService.issue(customer);
+		when(customerService.findById(7L)).thenReturn(customer);
+
+		revocations.revokeAll(7L);
+		// Issued within the same second as the revocation
+		TokenResponse after = tokenService.issue(customer);
+
+		assertNull(authorize(before.getToken()));
+		assertThrows(BadCredentialsException.class, () -> tokenService.refresh(before.getRefreshToken()));
+		assertEquals("7", authorize(after.getToken()).getName());
+		assertNotNull(tokenService.refresh(after.getRefreshToken()).getToken());
+	}
+
+	@Test
+	void refresh_withGarbage_throws() {
+		assertThrows(BadCredentialsException.class, () -> tokenService.refresh("not-a-token"));
+	}
+
+	private Authentication authorize(String token) throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/orders");
+		request.addHeader("Authorization", "Bearer " + token);
+		filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+		return SecurityContextHolder.getContext().getAuthentication();
+	}
+}
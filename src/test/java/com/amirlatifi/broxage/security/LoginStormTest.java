@@ -0,0 +1,225 @@
+package com.amirlatifi.broxage.security;
+
+import com.amirlatifi.broxage.metrics.BrokerMetrics;
+import com.amirlatifi.broxage.model.Customer;
+import com.amirlatifi.broxage.model.Role;
+import com.amirlatifi.broxage.repository.CustomerRepository;
+import com.amirlatifi.broxage.repository.TokenRevocationRepository;
+import com.amirlatifi.broxage.service.CustomerCache;
+import com.amirlatifi.broxage.service.CustomerService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Hundreds of customers logging in at once, as after a deploy, through the real login filter, authentication
+ * provider and password hashing pool, with BCrypt at a low cost so the test stays quick.
+ */
+class LoginStormTest {
+
+	private static final int LOGINS = 300;
+	private static final int CLIENT_THREADS = 16;
+	private static final int HASHING_THREADS = 2;
+	private static final int QUEUE_CAPACITY = 8;
+
+	private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+	private final CountingEncoder hashing = new CountingEncoder(new BCryptPasswordEncoder(5));
+	private PooledPasswordEncoder passwordEncoder;
+	private JwtTokenService tokenService;
+	private JwtAuthenticationFilter filter;
+	private Customer customer;
+
+	@BeforeEach
+	void setUp() {
+		passwordEncoder = new PooledPasswordEncoder(hashing, HASHING_THREADS, QUEUE_CAPACITY);
+		customer = new Customer();
+		customer.setId(7L);
+		customer.setUsername("trader");
+		customer.setRole(Role.CUSTOMER);
+		// Hashed when the cost was lower; upgraded on the first login
+		customer.setPassword(new BCryptPasswordEncoder(4).encode("secret"));
+
+		CustomerRepository customerRepository = mock(CustomerRepository.class);
+		when(customerRepository.findByUsername("trader")).thenReturn(Optional.of(customer));
+		when(customerRepository.findById(7L)).thenReturn(Optional.of(customer));
+		when(customerRepository.save(any(Customer.class))).thenAnswer(invocation -> invocation.getArgument(0));
+		BrokerMetrics metrics = new BrokerMetrics(new SimpleMeterRegistry());
+		CustomerService customerService = new CustomerService(customerRepository, passwordEncoder,
+				new CustomerCache(100, 60_000, metrics));
+
+		DaoAuthenticationProvider provider = new DaoAuthenticationProvider();
+		provider.setUserDetailsService(customerService);
+		provider.setPasswordEncoder(passwordEncoder);
+		tokenService = new JwtTokenService(customerService,
+				new JwtKeys("1", "SecretKeyToGenJWTs", Collections.emptyMap()),
+				new TokenRevocations(mock(TokenRevocationRepository.class)), 60_000, 600_000);
+		filter = new JwtAuthenticationFilter(new ProviderManager(provider), customerService, tokenService, objectMapper,
+				metrics);
+	}
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		passwordEncoder.destroy();
+	}
+
+	@Test
+	void storm_hashesOnBoundedPoolAndShedsTheRest() throws Exception {
+		ExecutorService clients = Executors.newFixedThreadPool(CLIENT_THREADS);
+		List<Future<MockHttpServletResponse>> sent = new ArrayList<>(LOGINS);
+		try {
+			for (int i = 0; i < LOGINS; i++) {
+				sent.add(clients.submit(() -> login("secret")));
+			}
+			int ok = 0;
+			for (Future<MockHttpServletResponse> future : sent) {
+				MockHttpServletResponse response = future.get(2, TimeUnit.MINUTES);
+				if (response.getStatus() == 200) {
+					ok++;
+					assertNotNull(objectMapper.readTree(response.getContentAsString()).get("refreshToken"));
+				} else {
+					assertEquals(503, response.getStatus());
+					assertEquals("1", response.getHeader("Retry-After"));
+				}
+			}
+			assertTrue(ok > 0);
+		} finally {
+			clients.shutdown();
+		}
+
+		assertTrue(hashing.maxConcurrent.get() <= HASHING_THREADS);
+		assertTrue(customer.getPassword().startsWith("$2a$05$"));
+	}
+
+	@Test
+	void saturatedPool_refusesLoginImmediately() throws Exception {
+		// The first login also hashes the provider's dummy password, used against timing attacks
+		assertEquals(200, login("secret").getStatus());
+		CountDownLatch release = new CountDownLatch(1);
+		hashing.gate = release;
+		ExecutorService clients = Executors.newFixedThreadPool(HASHING_THREADS + QUEUE_CAPACITY);
+		try {
+			List<Future<MockHttpServletResponse>> waiting = new ArrayList<>();
+			for (int i = 0; i < HASHING_THREADS + QUEUE_CAPACITY; i++) {
+				waiting.add(clients.submit(() -> login("secret")));
+			}
+			while (passwordEncoder.getExecutor().getQueue().size() < QUEUE_CAPACITY) {
+				Thread.sleep(5);
+			}
+
+			assertEquals(503, login("secret").getStatus());
+
+			release.countDown();
+			for (Future<MockHttpServletResponse> future : waiting) {
+				assertEquals(200, future.get(1, TimeUnit.MINUTES).getStatus());
+			}
+		} finally {
+			clients.shutdown();
+		}
+	}
+
+	@Test
+	void wrongPassword_isUnauthorized() throws Exception {
+		assertEquals(401, login("wrong").getStatus());
+	}
+
+	@Test
+	void refresh_doesNotHash() throws Exception {
+		String refreshToken = objectMapper.readTree(login("secret").getContentAsString()).get("refreshToken").asText();
+		int hashes = hashing.calls.get();
+
+		for (int i = 0; i < LOGINS; i++) {
+			assertNotNull(tokenService.refresh(refreshToken).getToken());
+		}
+
+		assertEquals(hashes, hashing.calls.get());
+	}
+
+	private MockHttpServletResponse login(String password) throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/customers/login");
+		request.setServletPath("/api/customers/login");
+		request.setContentType("application/json");
+		request.setContent(("{\"username\":\"trader\",\"password\":\"" + password + "\"}").getBytes());
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(request, response, new MockFilterChain());
+		return response;
+	}
+
+	/**
+	 * Counts the hashes and how many ran at once, and can hold them until a gate opens.
+	 */
+	private static final class CountingEncoder implements PasswordEncoder {
+		private final PasswordEncoder delegate;
+		private final AtomicInteger calls = new AtomicInteger();
+		private final AtomicInteger running = new AtomicInteger();
+		private final AtomicInteger maxConcurrent = new AtomicInteger();
+		private volatile CountDownLatch gate;
+
+		CountingEncoder(PasswordEncoder delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public String encode(CharSequence rawPassword) {
+			enter();
+			try {
+				return delegate.encode(rawPassword);
+			} finally {
+				running.decrementAndGet();
+			}
+		}
+
+		@Override
+		public boolean matches(CharSequence rawPassword, String encodedPassword) {
+			enter();
+			try {
+				return delegate.matches(rawPassword, encodedPassword);
+			} finally {
+				running.decrementAndGet();
+			}
+		}
+
+		@Override
+		public boolean upgradeEncoding(String encodedPassword) {
+			return delegate.upgradeEncoding(encodedPassword);
+		}
+
+		private void enter() {
+			calls.incrementAndGet();
+			maxConcurrent.accumulateAndGet(running.incrementAndGet(), Math::max);
+			CountDownLatch latch = gate;
+			if (latch != null) {
+				try {
+					latch.await(1, TimeUnit.MINUTES);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package com.amirlatifi.broxage.sequencer;
+
+import com.amirlatifi.broxage.util.Futures;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderSequencerTest {
+
+	private OrderSequencer orderSequencer;
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		orderSequencer.destroy();
+	}
+
+	@Test
+	void submit_sameKey_runsInOrderOnOneThread() {
+		orderSequencer = new OrderSequencer(4, 1024);
+		List<Integer> executed = new ArrayList<>();
+		List<CompletableFuture<String>> futures = new ArrayList<>();
+
+		for (int i = 0; i < 500; i++) {
+			int sequence = i;
+			futures.add(orderSequencer.submit("BTC", () -> {
+				executed.add(sequence);
+				return Thread.currentThread().getName();
+			}));
+		}
+
+		String thread = Futures.join(futures.get(0));
+		for (int i = 0; i < 500; i++) {
+			assertEquals(thread, Futures.join(futures.get(i)));
+			assertEquals(i, executed.get(i));
+		}
+	}
+
+	@Test
+	void submit_fullQueue_rejects() throws InterruptedException {
+		orderSequencer = new OrderSequencer(1, 1);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		orderSequencer.submit("BTC", () -> {
+			started.countDown();
+			awaitQuietly(release);
+			return null;
+		});
+		started.await();
+		orderSequencer.submit("BTC", () -> null);
+
+		assertThrows(RejectedExecutionException.class, () -> orderSequencer.submit("BTC", () -> null));
+		release.countDown();
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package com.amirlatifi.broxage.service;
+
+import com.amirlatifi.broxage.asset.AssetRegistry;
+import com.amirlatifi.broxage.events.CustomerEventBus;
+import com.amirlatifi.broxage.journal.EventJournal;
+import com.amirlatifi.broxage.ledger.BalanceLedger;
+import com.amirlatifi.broxage.ledger.LedgerFlusher;
+import com.amirlatifi.broxage.metrics.BrokerMetrics;
+import com.amirlatifi.broxage.model.Asset;
+import com.amirlatifi.broxage.repository.AssetRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest
+@Import({AssetRegistry.class, AssetService.class, BalanceLedger.class, BrokerMetrics.class, CustomerEventBus.class,
+		EventJournal.class, LedgerFlusher.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class AssetServiceConcurrencyTest {
+
+	private static final int THREADS = 64;
+	private static final int ATTEMPTS_PER_THREAD = 20;
+
+	@Autowired
+	private AssetService assetService;
+
+	@Autowired
+	private AssetRepository assetRepository;
+
+	@Autowired
+	private AssetRegistry assetRegistry;
+
+	@Autowired
+	private LedgerFlusher ledgerFlusher;
+
+	@DynamicPropertySource
+	static void ledgerProperties(DynamicPropertyRegistry registry) throws IOException {
+		String journal = Files.createTempDirectory("journal").toString();
+		registry.add("journal.path", () -> journal);
+	}
+
+	@Test
+	void reserve_64ThreadsOneCustomer_neverOverdraws() throws Exception {
+		assetService.updateAssetUsableSize(1L, "TRY", new BigDecimal("1000"));
+
+		int accepted = hammer(i -> assetService.reserve(1L, "TRY", BigDecimal.TEN));
+		ledgerFlusher.flush();
+
+		Asset asset = assetRepository.findByCustomerIdAndAssetName(1L, "TRY");
+		assertEquals(100, accepted);
+		assertEquals(0, BigDecimal.ZERO.compareTo(asset.getUsableSize()));
+		assertEquals(0, new BigDecimal("1000").compareTo(asset.getSize()));
+	}
+
+	@Test
+	void reserveReleaseAndWithdraw_64ThreadsOneCustomer_keepBalancesConsistent() throws Exception {
+		assetService.updateAssetUsableSize(2L, "TRY", new BigDecimal("1000"));
+
+		long ten = assetRegistry.toUnits("TRY", BigDecimal.TEN);
+		int withdrawn = hammer(i -> {
+			if (i % 2 == 0) {
+				if (assetService.reserve(2L, "TRY", BigDecimal.TEN)) {
+					assetService.release(2L, "TRY", ten);
+				}
+				return false;
+			}
+			try {
+				assetService.withdraw(2L, "TRY", BigDecimal.TEN);
+				return true;
+			} catch (IllegalStateException e) {
+				return false;
+			}
+		});
+		ledgerFlusher.flush();
+
+		Asset asset = assetRepository.findByCustomerIdAndAssetName(2L, "TRY");
+		BigDecimal expected = new BigDecimal("1000").subtract(BigDecimal.TEN.multiply(BigDecimal.valueOf(withdrawn)));
+		assertEquals(0, expected.compareTo(asset.getUsableSize()));
+		assertEquals(0, expected.compareTo(asset.getSize()));
+		assertEquals(true, asset.getUsableSize().signum() >= 0);
+	}
+
+	private int hammer(IntPredicate attempt) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicInteger succeeded = new AtomicInteger();
+		List<Future<?>> futures = new ArrayList<>();
+		try {
+			for (int t = 0; t < THREADS; t++) {
+				int thread = t;
+				futures.add(pool.submit(() -> {
+					start.await();
+					for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+						if (attempt.test(thread * ATTEMPTS_PER_THREAD + i)) {
+							succeeded.incrementAndGet();
+						}
+					}
+					return null;
+				}));
+			}
+			start.countDown();
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			pool.shutdown();
+		}
+		return succeeded.get();
+	}
+}
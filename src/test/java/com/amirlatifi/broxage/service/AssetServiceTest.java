@@ -1,21 +1,28 @@
 package com.amirlatifi.broxage.service;
 
+import com.amirlatifi.broxage.asset.AssetRegistry;
+import com.amirlatifi.broxage.events.CustomerEventBus;
+import com.amirlatifi.broxage.journal.EventJournal;
+import com.amirlatifi.broxage.ledger.BalanceLedger;
+import com.amirlatifi.broxage.metrics.BrokerMetrics;
 import com.amirlatifi.broxage.model.Asset;
+import com.amirlatifi.broxage.model.AssetView;
 import com.amirlatifi.broxage.repository.AssetRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.mock.env.MockEnvironment;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.argThat;
-import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class AssetServiceTest {
@@ -23,111 +30,129 @@ class AssetServiceTest {
 	@Mock
 	private AssetRepository assetRepository;
 
-	@InjectMocks
+	@Mock
+	private CustomerEventBus eventBus;
+
+	private AssetRegistry scales;
+
 	private AssetService assetService;
 
 	@BeforeEach
-	void setUp() {
+	void setUp() throws IOException {
 		MockitoAnnotations.openMocks(this);
+		when(assetRepository.findAll()).thenReturn(Arrays.asList(
+				createAsset(1L, "BTC", BigDecimal.ONE),
+				createAsset(1L, "ETH", BigDecimal.TEN)
+		));
+		scales = new AssetRegistry(new MockEnvironment().withProperty("asset.symbols", "BTC,ETH"));
+		BalanceLedger balanceLedger = new BalanceLedger(assetRepository,
+				new EventJournal("", EventJournal.JPA, false, 1024 * 1024), scales);
+		balanceLedger.load();
+		assetService = new AssetService(balanceLedger, scales, eventBus, new BrokerMetrics(new SimpleMeterRegistry()));
 	}
 
 	@Test
 	void getAssetsByCustomerId_success() {
-		Long customerId = 1L;
-		List<Asset> expectedAssets = Arrays.asList(
-				createAsset(customerId, "BTC", BigDecimal.ONE),
-				createAsset(customerId, "ETH", BigDecimal.TEN)
-		);
-
-		when(assetRepository.findByCustomerId(customerId)).thenReturn(expectedAssets);
+		List<AssetView> assets = assetService.getAssetsByCustomerId(1L);
 
-		List<Asset> actualAssets = assetService.getAssetsByCustomerId(customerId);
+		assertEquals(2, assets.size());
+		assertEquals("BTC", assets.get(0).getAssetName());
+		assertEquals(0, BigDecimal.ONE.compareTo(assets.get(0).getSize()));
+		assertEquals("ETH", assets.get(1).getAssetName());
+		assertEquals(0, BigDecimal.TEN.compareTo(assets.get(1).getUsableSize()));
+	}
 
-		assertEquals(expectedAssets, actualAssets);
-		verify(assetRepository).findByCustomerId(customerId);
+	@Test
+	void getAssetsByCustomerId_unknownCustomer_returnsEmpty() {
+		assertTrue(assetService.getAssetsByCustomerId(2L).isEmpty());
 	}
 
 	@Test
 	void updateAssetUsableSize_existingAsset_success() {
-		Long customerId = 1L;
-		String assetName = "BTC";
-		BigDecimal initialAmount = BigDecimal.ONE;
 		BigDecimal updateAmount = BigDecimal.valueOf(0.5);
 
-		Asset existingAsset = createAsset(customerId, assetName, initialAmount);
-		when(assetRepository.findByCustomerIdAndAssetName(customerId, assetName)).thenReturn(existingAsset);
-		when(assetRepository.save(any(Asset.class))).thenAnswer(invocation -> invocation.getArgument(0));
-
-		assetService.updateAssetUsableSize(customerId, assetName, updateAmount);
+		assetService.updateAssetUsableSize(1L, "BTC", updateAmount);
 
-		verify(assetRepository).save(argThat(asset ->
-				asset.getCustomerId().equals(customerId) &&
-						asset.getAssetName().equals(assetName) &&
-						asset.getSize().equals(initialAmount.add(updateAmount)) &&
-						asset.getUsableSize().equals(initialAmount.add(updateAmount))
-		));
+		AssetView asset = findAsset(1L, "BTC");
+		assertEquals(0, BigDecimal.ONE.add(updateAmount).compareTo(asset.getSize()));
+		assertEquals(0, BigDecimal.ONE.add(updateAmount).compareTo(asset.getUsableSize()));
 	}
 
 	@Test
 	void updateAssetUsableSize_newAsset_success() {
-		Long customerId = 1L;
-		String assetName = "BTC";
-		BigDecimal amount = BigDecimal.ONE;
+		assetService.updateAssetUsableSize(2L, "TRY", BigDecimal.ONE);
 
-		when(assetRepository.findByCustomerIdAndAssetName(customerId, assetName)).thenReturn(null);
-		when(assetRepository.save(any(Asset.class))).thenAnswer(invocation -> invocation.getArgument(0));
+		AssetView asset = findAsset(2L, "TRY");
+		assertEquals(0, BigDecimal.ONE.compareTo(asset.getSize()));
+		assertEquals(0, BigDecimal.ONE.compareTo(asset.getUsableSize()));
+	}
 
-		assetService.updateAssetUsableSize(customerId, assetName, amount);
+	@Test
+	void reserve_sufficientBalance_onlyReducesUsableSize() {
+		assertTrue(assetService.reserve(1L, "ETH", BigDecimal.ONE));
 
-		verify(assetRepository).save(argThat(asset ->
-				asset.getCustomerId().equals(customerId) &&
-						asset.getAssetName().equals(assetName) &&
-						asset.getSize().equals(amount) &&
-						asset.getUsableSize().equals(amount)
-		));
+		AssetView asset = findAsset(1L, "ETH");
+		assertEquals(0, BigDecimal.TEN.compareTo(asset.getSize()));
+		assertEquals(0, BigDecimal.valueOf(9).compareTo(asset.getUsableSize()));
 	}
 
 	@Test
-	void hasEnoughUsableAsset_sufficientBalance_returnsTrue() {
-		Long customerId = 1L;
-		String assetName = "BTC";
-		BigDecimal balance = BigDecimal.TEN;
-		BigDecimal requiredAmount = BigDecimal.ONE;
+	void reserve_insufficientBalance_leavesBalanceUnchanged() {
+		assertFalse(assetService.reserve(1L, "BTC", BigDecimal.TEN));
 
-		Asset asset = createAsset(customerId, assetName, balance);
-		when(assetRepository.findByCustomerIdAndAssetName(customerId, assetName)).thenReturn(asset);
+		assertEquals(0, BigDecimal.ONE.compareTo(findAsset(1L, "BTC").getUsableSize()));
+	}
+
+	@Test
+	void releaseAndConsumeReserved_settleAReservation() {
+		assetService.reserve(1L, "ETH", BigDecimal.valueOf(4));
 
-		boolean result = assetService.hasEnoughUsableAsset(customerId, assetName, requiredAmount);
+		assetService.consumeReserved(1L, "ETH", scales.toUnits("ETH", BigDecimal.valueOf(3)));
+		assetService.release(1L, "ETH", scales.toUnits("ETH", BigDecimal.ONE));
 
-		assertTrue(result);
+		AssetView asset = findAsset(1L, "ETH");
+		assertEquals(0, BigDecimal.valueOf(7).compareTo(asset.getSize()));
+		assertEquals(0, BigDecimal.valueOf(7).compareTo(asset.getUsableSize()));
 	}
 
 	@Test
-	void hasEnoughUsableAsset_insufficientBalance_returnsFalse() {
-		Long customerId = 1L;
-		String assetName = "BTC";
-		BigDecimal balance = BigDecimal.ONE;
-		BigDecimal requiredAmount = BigDecimal.TEN;
+	void withdraw_insufficientBalance_throwsException() {
+		assertThrows(IllegalStateException.class, () -> assetService.withdraw(1L, "BTC", BigDecimal.TEN));
 
-		Asset asset = createAsset(customerId, assetName, balance);
-		when(assetRepository.findByCustomerIdAndAssetName(customerId, assetName)).thenReturn(asset);
+		assertEquals(0, BigDecimal.ONE.compareTo(findAsset(1L, "BTC").getSize()));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"0", "-1"})
+	void nonPositiveAmount_isRejectedWithoutChangingTheBalance(String amount) {
+		BigDecimal value = new BigDecimal(amount);
 
-		boolean result = assetService.hasEnoughUsableAsset(customerId, assetName, requiredAmount);
+		assertThrows(IllegalArgumentException.class, () -> assetService.updateAssetUsableSize(1L, "ETH", value));
+		assertThrows(IllegalArgumentException.class, () -> assetService.withdraw(1L, "ETH", value));
+		assertThrows(IllegalArgumentException.class, () -> assetService.reserve(1L, "ETH", value));
 
-		assertFalse(result);
+		AssetView asset = findAsset(1L, "ETH");
+		assertEquals(0, BigDecimal.TEN.compareTo(asset.getSize()));
+		assertEquals(0, BigDecimal.TEN.compareTo(asset.getUsableSize()));
 	}
 
 	@Test
-	void hasEnoughUsableAsset_assetNotFound_returnsFalse() {
-		Long customerId = 1L;
-		String assetName = "BTC";
-		BigDecimal requiredAmount = BigDecimal.ONE;
-
-		when(assetRepository.findByCustomerIdAndAssetName(customerId, assetName)).thenReturn(null);
-
-		boolean result = assetService.hasEnoughUsableAsset(customerId, assetName, requiredAmount);
+	void negativeUnits_areRejectedWithoutChangingTheBalance() {
+		assertThrows(IllegalArgumentException.class, () -> assetService.reserve(1L, "ETH", -1L));
+		assertThrows(IllegalArgumentException.class, () -> assetService.release(1L, "ETH", -1L));
+		assertThrows(IllegalArgumentException.class, () -> assetService.consumeReserved(1L, "ETH", -1L));
+		assertThrows(IllegalArgumentException.class, () -> assetService.reserveEach(1L, "ETH", new long[]{1, -1}));
+
+		AssetView asset = findAsset(1L, "ETH");
+		assertEquals(0, BigDecimal.TEN.compareTo(asset.getSize()));
+		assertEquals(0, BigDecimal.TEN.compareTo(asset.getUsableSize()));
+	}
 
-		assertFalse(result);
+	private AssetView findAsset(Long customerId, String assetName) {
+		return assetService.getAssetsByCustomerId(customerId).stream()
+				.filter(asset -> asset.getAssetName().equals(assetName))
+				.findFirst()
+				.orElseThrow(AssertionError::new);
 	}
 
 	private Asset createAsset(Long customerId, String assetName, BigDecimal amount) {
@@ -0,0 +1,77 @@
+package com.amirlatifi.broxage.service;
+
+import com.amirlatifi.broxage.metrics.BrokerMetrics;
+import com.amirlatifi.broxage.model.Role;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CustomerCacheTest {
+
+	private final AtomicLong clock = new AtomicLong(1_000);
+	private final BrokerMetrics metrics = new BrokerMetrics(new SimpleMeterRegistry());
+
+	@Test
+	void get_findsCustomerByIdAndUsername() {
+		CustomerCache cache = new CustomerCache(10, 60_000, metrics, clock::get);
+		CustomerUserDetails customer = customer(7L, "trader");
+
+		cache.put(customer);
+
+		assertSame(customer, cache.get(7L));
+		assertSame(customer, cache.get("trader"));
+		assertNull(cache.get(8L));
+	}
+
+	@Test
+	void get_afterTtl_misses() {
+		CustomerCache cache = new CustomerCache(10, 60_000, metrics, clock::get);
+		cache.put(customer(7L, "trader"));
+
+		clock.addAndGet(60_000);
+
+		assertNull(cache.get(7L));
+		assertNull(cache.get("trader"));
+	}
+
+	@Test
+	void invalidate_removesBothKeys() {
+		CustomerCache cache = new CustomerCache(10, 60_000, metrics, clock::get);
+		cache.put(customer(7L, "trader"));
+
+		cache.invalidate(7L, "trader");
+
+		assertNull(cache.get(7L));
+		assertNull(cache.get("trader"));
+	}
+
+	@Test
+	void put_whenFull_staysWithinMaxSize() {
+		CustomerCache cache = new CustomerCache(10, 60_000, metrics, clock::get);
+
+		for (long id = 0; id < 100; id++) {
+			cache.put(customer(id, "trader" + id));
+		}
+
+		assertTrue(cache.size() <= 10);
+		assertNotNull(cache.get(99L));
+		assertNotNull(cache.get("trader99"));
+	}
+
+	@Test
+	void maxSizeZero_cachesNothing() {
+		CustomerCache cache = new CustomerCache(0, 60_000, metrics, clock::get);
+
+		cache.put(customer(7L, "trader"));
+
+		assertNull(cache.get(7L));
+		assertEquals(0, cache.size());
+	}
+
+	private static CustomerUserDetails customer(Long id, String username) {
+		return new CustomerUserDetails(new CustomerProfile(id, username, "TR1", Role.CUSTOMER), "hash");
+	}
+}
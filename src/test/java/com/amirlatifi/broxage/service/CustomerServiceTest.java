@@ -1,17 +1,19 @@
 package com.amirlatifi.broxage.service;
 
+import com.amirlatifi.broxage.metrics.BrokerMetrics;
 import com.amirlatifi.broxage.model.Customer;
 import com.amirlatifi.broxage.model.Role;
 import com.amirlatifi.broxage.repository.CustomerRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 
 import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -23,14 +25,18 @@ class CustomerServiceTest {
 	private CustomerRepository customerRepository;
 
 	@Mock
-	private BCryptPasswordEncoder bCryptPasswordEncoder;
+	private PasswordEncoder passwordEncoder;
+
+	private SimpleMeterRegistry registry;
 
-	@InjectMocks
 	private CustomerService customerService;
 
 	@BeforeEach
 	void setUp() {
 		MockitoAnnotations.openMocks(this);
+		registry = new SimpleMeterRegistry();
+		customerService = new CustomerService(customerRepository, passwordEncoder,
+				new CustomerCache(100, 60_000, new BrokerMetrics(registry)));
 	}
 
 	@Test
@@ -40,18 +46,17 @@ class CustomerServiceTest {
 		String iban = "DE89370400440532013000";
 
 		when(customerRepository.findByUsername(username)).thenReturn(Optional.empty());
-		when(bCryptPasswordEncoder.encode(password)).thenReturn("encodedPassword");
+		when(passwordEncoder.encode(password)).thenReturn("encodedPassword");
 		when(customerRepository.save(any(Customer.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
-		Customer result = customerService.registerCustomer(username, password, iban);
+		CustomerProfile result = customerService.registerCustomer(username, password, iban);
 
 		assertNotNull(result);
 		assertEquals(username, result.getUsername());
-		assertEquals("encodedPassword", result.getPassword());
 		assertEquals(iban, result.getIban());
 		assertEquals(Role.CUSTOMER, result.getRole());
 
-		verify(customerRepository).save(any(Customer.class));
+		verify(customerRepository).save(argThat(customer -> "encodedPassword".equals(customer.getPassword())));
 	}
 
 	@Test
@@ -76,18 +81,69 @@ class CustomerServiceTest {
 		String iban = "DE89370400440532013000";
 
 		when(customerRepository.findByUsername(username)).thenReturn(Optional.empty());
-		when(bCryptPasswordEncoder.encode(password)).thenReturn("encodedPassword");
+		when(passwordEncoder.encode(password)).thenReturn("encodedPassword");
 		when(customerRepository.save(any(Customer.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
-		Customer result = customerService.registerAdmin(username, password, iban);
+		CustomerProfile result = customerService.registerAdmin(username, password, iban);
 
 		assertNotNull(result);
 		assertEquals(username, result.getUsername());
-		assertEquals("encodedPassword", result.getPassword());
 		assertEquals(iban, result.getIban());
 		assertEquals(Role.ADMIN, result.getRole());
 
-		verify(customerRepository).save(any(Customer.class));
+		verify(customerRepository).save(argThat(customer -> "encodedPassword".equals(customer.getPassword())));
+	}
+
+	@Test
+	void upgradePassword_lowerCost_savesNewHash() {
+		Customer customer = customer(7L, "testuser", "oldHash");
+
+		when(passwordEncoder.upgradeEncoding("oldHash")).thenReturn(true);
+		when(passwordEncoder.encode("password")).thenReturn("newHash");
+		when(customerRepository.findById(7L)).thenReturn(Optional.of(customer));
+
+		customerService.upgradePassword(CustomerUserDetails.of(customer), "password");
+
+		assertEquals("newHash", customer.getPassword());
+		verify(customerRepository).save(customer);
+	}
+
+	@Test
+	void upgradePassword_currentCost_doesNothing() {
+		Customer customer = customer(7L, "testuser", "hash");
+
+		customerService.upgradePassword(CustomerUserDetails.of(customer), "password");
+
+		verify(passwordEncoder, never()).encode(any());
+		verify(customerRepository, never()).save(any(Customer.class));
+	}
+
+	@Test
+	void upgradePassword_hashingSaturated_keepsOldHash() {
+		Customer customer = customer(7L, "testuser", "oldHash");
+
+		when(passwordEncoder.upgradeEncoding("oldHash")).thenReturn(true);
+		when(passwordEncoder.encode("password")).thenThrow(new RejectedExecutionException());
+
+		customerService.upgradePassword(CustomerUserDetails.of(customer), "password");
+
+		assertEquals("oldHash", customer.getPassword());
+		verify(customerRepository, never()).save(any(Customer.class));
+	}
+
+	@Test
+	void upgradePassword_evictsCachedHash() {
+		Customer customer = customer(7L, "testuser", "oldHash");
+
+		when(customerRepository.findByUsername("testuser")).thenReturn(Optional.of(customer));
+		when(customerRepository.findById(7L)).thenReturn(Optional.of(customer));
+		when(passwordEncoder.upgradeEncoding("oldHash")).thenReturn(true);
+		when(passwordEncoder.encode("password")).thenReturn("newHash");
+
+		customerService.upgradePassword(customerService.loadUserByUsername("testuser"), "password");
+
+		assertEquals("newHash", customerService.loadUserByUsername("testuser").getPassword());
+		verify(customerRepository, times(2)).findByUsername("testuser");
 	}
 
 	@Test
@@ -104,17 +160,31 @@ class CustomerServiceTest {
 	@Test
 	void findByUsername_success() {
 		String username = "testuser";
-		Customer customer = new Customer();
-		customer.setUsername(username);
+		Customer customer = customer(1L, username, "hash");
 
 		when(customerRepository.findByUsername(username)).thenReturn(Optional.of(customer));
 
-		Customer result = customerService.findByUsername(username);
+		CustomerProfile result = customerService.findByUsername(username);
 
 		assertNotNull(result);
 		assertEquals(username, result.getUsername());
 	}
 
+	@Test
+	void findByUsername_repeated_readsRepositoryOnce() {
+		when(customerRepository.findByUsername("testuser")).thenReturn(Optional.of(customer(1L, "testuser", "hash")));
+
+		customerService.findByUsername("testuser");
+		CustomerProfile result = customerService.findByUsername("testuser");
+		customerService.findById(1L);
+
+		assertEquals(1L, result.getId());
+		verify(customerRepository).findByUsername("testuser");
+		verify(customerRepository, never()).findById(any());
+		assertEquals(2.0, registry.get("broxage.customer.cache").tag("result", "hit").counter().count());
+		assertEquals(1.0, registry.get("broxage.customer.cache").tag("result", "miss").counter().count());
+	}
+
 	@Test
 	void findByUsername_userNotFound_throwsException() {
 		String username = "nonexistentuser";
@@ -129,12 +199,11 @@ class CustomerServiceTest {
 	@Test
 	void findById_success() {
 		Long id = 1L;
-		Customer customer = new Customer();
-		customer.setId(id);
+		Customer customer = customer(id, "testuser", "hash");
 
 		when(customerRepository.findById(id)).thenReturn(Optional.of(customer));
 
-		Customer result = customerService.findById(id);
+		CustomerProfile result = customerService.findById(id);
 
 		assertNotNull(result);
 		assertEquals(id, result.getId());
@@ -150,4 +219,23 @@ class CustomerServiceTest {
 				customerService.findById(id)
 		);
 	}
+
+	@Test
+	void findById_notFound_isNotCached() {
+		when(customerRepository.findById(1L)).thenReturn(Optional.empty());
+		assertThrows(UsernameNotFoundException.class, () -> customerService.findById(1L));
+
+		when(customerRepository.findById(1L)).thenReturn(Optional.of(customer(1L, "testuser", "hash")));
+
+		assertEquals("testuser", customerService.findById(1L).getUsername());
+	}
+
+	private static Customer customer(Long id, String username, String password) {
+		Customer customer = new Customer();
+		customer.setId(id);
+		customer.setUsername(username);
+		customer.setPassword(password);
+		customer.setRole(Role.CUSTOMER);
+		return customer;
+	}
 }
\ No newline at end of file
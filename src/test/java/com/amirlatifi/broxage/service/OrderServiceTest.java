@@ -1,24 +1,46 @@
 package com.amirlatifi.broxage.service;
 
+import com.amirlatifi.broxage.asset.AssetRegistry;
+import com.amirlatifi.broxage.events.CustomerEventBus;
+import com.amirlatifi.broxage.journal.OrderEventLog;
+import com.amirlatifi.broxage.matching.CanceledOrder;
+import com.amirlatifi.broxage.matching.Fill;
+import com.amirlatifi.broxage.matching.MatchingEngine;
+import com.amirlatifi.broxage.metrics.BrokerMetrics;
 import com.amirlatifi.broxage.model.Order;
 import com.amirlatifi.broxage.model.OrderSide;
 import com.amirlatifi.broxage.model.OrderStatus;
+import com.amirlatifi.broxage.model.OrderView;
 import com.amirlatifi.broxage.repository.OrderRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mock.env.MockEnvironment;
 import org.springframework.security.access.AccessDeniedException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -30,6 +52,27 @@ class OrderServiceTest {
 	@Mock
 	private AssetService assetService;
 
+	@Mock
+	private MatchingEngine matchingEngine;
+
+	@Mock
+	private OrderEventLog orderEventLog;
+
+
+	@Mock
+	private CustomerEventBus eventBus;
+
+	@Spy
+	private AssetRegistry assetRegistry = new AssetRegistry(new MockEnvironment()
+			.withProperty("asset.symbols", "BTC,ETH")
+			.withProperty("asset.ETH.tick-size", "0.5")
+			.withProperty("asset.ETH.lot-size", "0.1"));
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@Spy
+	private BrokerMetrics metrics = new BrokerMetrics(meterRegistry);
+
 	@InjectMocks
 	private OrderService orderService;
 
@@ -40,7 +83,7 @@ class OrderServiceTest {
 
 	@Test
 	void createOrder_buyOrder_success() {
-		when(assetService.hasEnoughUsableAsset(eq(1L), eq("TRY"), any(BigDecimal.class))).thenReturn(true);
+		when(assetService.reserve(eq(1L), eq("TRY"), anyLong())).thenReturn(true);
 		when(orderRepository.save(any(Order.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
 		Order order = orderService.createOrder(1L, "BTC", OrderSide.BUY, BigDecimal.ONE, BigDecimal.valueOf(50000));
@@ -53,12 +96,12 @@ class OrderServiceTest {
 		assertEquals(BigDecimal.valueOf(50000), order.getPrice());
 		assertEquals(OrderStatus.PENDING, order.getStatus());
 
-		verify(assetService).updateAssetUsableSize(eq(1L), eq("TRY"), any(BigDecimal.class));
+		verify(assetService).reserve(1L, "TRY", units("TRY", "50000"));
 	}
 
 	@Test
 	void createOrder_sellOrder_success() {
-		when(assetService.hasEnoughUsableAsset(eq(1L), eq("BTC"), any(BigDecimal.class))).thenReturn(true);
+		when(assetService.reserve(eq(1L), eq("BTC"), anyLong())).thenReturn(true);
 		when(orderRepository.save(any(Order.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
 		Order order = orderService.createOrder(1L, "BTC", OrderSide.SELL, BigDecimal.ONE, BigDecimal.valueOf(50000));
@@ -71,12 +114,23 @@ class OrderServiceTest {
 		assertEquals(BigDecimal.valueOf(50000), order.getPrice());
 		assertEquals(OrderStatus.PENDING, order.getStatus());
 
-		verify(assetService).updateAssetUsableSize(eq(1L), eq("BTC"), any(BigDecimal.class));
+		verify(assetService).reserve(1L, "BTC", units("BTC", "1"));
+	}
+
+	@ParameterizedTest
+	@CsvSource({"0, 50000", "-1, 50000", "-10, 50000", "1, 0", "1, -50000"})
+	void createOrder_nonPositiveSizeOrPrice_isRejectedBeforeReserving(String size, String price) {
+		assertThrows(IllegalStateException.class, () ->
+				orderService.createOrder(1L, "BTC", OrderSide.BUY, new BigDecimal(size), new BigDecimal(price)));
+
+		verify(assetService, never()).reserve(anyLong(), any(), anyLong());
+		verify(orderRepository, never()).save(any(Order.class));
+		assertEquals(1, meterRegistry.counter("broxage.order.rejected", "reason", "invalid").count());
 	}
 
 	@Test
 	void createOrder_insufficientFunds_throwsException() {
-		when(assetService.hasEnoughUsableAsset(eq(1L), eq("TRY"), any(BigDecimal.class))).thenReturn(false);
+		when(assetService.reserve(eq(1L), eq("TRY"), anyLong())).thenReturn(false);
 
 		assertThrows(IllegalStateException.class, () ->
 				orderService.createOrder(1L, "BTC", OrderSide.BUY, BigDecimal.ONE, BigDecimal.valueOf(50000))
@@ -84,38 +138,219 @@ class OrderServiceTest {
 
 		verify(assetService, never()).updateAssetUsableSize(any(), any(), any());
 		verify(orderRepository, never()).save(any());
+		assertEquals(1, rejections("insufficient_balance"));
+		assertEquals(1, meterRegistry.timer("broxage.order.create").count());
+	}
+
+	@Test
+	void createOrder_unknownOrQuoteAsset_rejectedBeforeReserving() {
+		IllegalStateException unknown = assertThrows(IllegalStateException.class, () ->
+				orderService.createOrder(1L, "DOGE", OrderSide.BUY, BigDecimal.ONE, BigDecimal.TEN));
+		assertEquals("Unknown asset: DOGE", unknown.getMessage());
+		assertThrows(IllegalStateException.class, () ->
+				orderService.createOrder(1L, "TRY", OrderSide.BUY, BigDecimal.ONE, BigDecimal.TEN));
+
+		verifyNoInteractions(assetService, orderRepository);
+	}
+
+	@Test
+	void createOrder_offTickPriceOrOffLotSize_rejectedBeforeReserving() {
+		IllegalStateException offTick = assertThrows(IllegalStateException.class, () ->
+				orderService.createOrder(1L, "ETH", OrderSide.BUY, BigDecimal.ONE, new BigDecimal("100.25")));
+		assertEquals("Price must be a multiple of the tick size 0.5", offTick.getMessage());
+		IllegalStateException offLot = assertThrows(IllegalStateException.class, () ->
+				orderService.createOrder(1L, "ETH", OrderSide.SELL, new BigDecimal("0.15"), BigDecimal.TEN));
+		assertEquals("Size must be a multiple of the lot size 0.1", offLot.getMessage());
+
+		verifyNoInteractions(assetService, orderRepository);
+		assertEquals(2, rejections("invalid"));
+	}
+
+	@Test
+	void createOrder_crossingBuy_settlesBothSidesAndMarksMatched() {
+		Order maker = new Order();
+		maker.setId(7L);
+		maker.setCustomerId(2L);
+		maker.setAssetName("BTC");
+		maker.setOrderSide(OrderSide.SELL);
+		maker.setSize(BigDecimal.ONE);
+		maker.setPrice(BigDecimal.valueOf(49000));
+		maker.setStatus(OrderStatus.PENDING);
+
+		when(assetService.reserve(eq(1L), eq("TRY"), anyLong())).thenReturn(true);
+		when(orderRepository.save(any(Order.class))).thenAnswer(invocation -> invocation.getArgument(0));
+		when(orderRepository.findById(7L)).thenReturn(Optional.of(maker));
+		Fill fill = new Fill(7L, 2L, price("49000"), units("BTC", "1"), true);
+		long limit = price("50000");
+		long size = units("BTC", "1");
+		when(matchingEngine.match(any(Order.class), any(), eq(limit), eq(size))).thenReturn(Collections.singletonList(fill));
+
+		Order order = orderService.createOrder(1L, "BTC", OrderSide.BUY, BigDecimal.ONE, BigDecimal.valueOf(50000));
+
+		assertEquals(OrderStatus.MATCHED, order.getStatus());
+		assertEquals(OrderStatus.MATCHED, maker.getStatus());
+		verify(assetService).consumeReserved(1L, "TRY", units("TRY", "49000"));
+		verify(assetService).release(1L, "TRY", units("TRY", "1000"));
+		verify(assetService).updateAssetUsableSize(1L, "BTC", units("BTC", "1"));
+		verify(assetService).consumeReserved(2L, "BTC", units("BTC", "1"));
+		verify(assetService).updateAssetUsableSize(2L, "TRY", units("TRY", "49000"));
+	}
+
+	@Test
+	void createOrder_settlementFails_unmatchesWhenTheTransactionRollsBack() {
+		when(assetService.reserve(eq(1L), eq("TRY"), anyLong())).thenReturn(true);
+		when(orderRepository.save(any(Order.class))).thenAnswer(invocation -> invocation.getArgument(0));
+		when(orderRepository.findById(7L)).thenReturn(Optional.empty());
+		List<Fill> fills = Collections.singletonList(new Fill(7L, 2L, price("49000"), units("BTC", "1"), true));
+		when(matchingEngine.match(any(Order.class), any(), anyLong(), anyLong())).thenReturn(fills);
+
+		TransactionSynchronizationManager.initSynchronization();
+		List<TransactionSynchronization> synchronizations;
+		try {
+			assertThrows(IllegalStateException.class, () ->
+					orderService.createOrder(1L, "BTC", OrderSide.BUY, BigDecimal.ONE, BigDecimal.valueOf(50000)));
+			synchronizations = TransactionSynchronizationManager.getSynchronizations();
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+		verify(matchingEngine, never()).unmatch(any(), any());
+
+		synchronizations.forEach(synchronization ->
+				synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+		verify(matchingEngine).unmatch(any(Order.class), eq(fills));
+	}
+
+	@Test
+	void reserveAll_reservesPerAssetAndRejectsWhatDoesNotFit() {
+		List<OrderRequest> requests = Arrays.asList(
+				new OrderRequest("BTC", OrderSide.BUY, BigDecimal.ONE, BigDecimal.valueOf(100)),
+				new OrderRequest("BTC", OrderSide.SELL, BigDecimal.ONE, BigDecimal.valueOf(100)),
+				new OrderRequest("ETH", OrderSide.BUY, BigDecimal.valueOf(2), BigDecimal.valueOf(50)),
+				new OrderRequest("ETH", OrderSide.BUY, BigDecimal.ZERO, BigDecimal.valueOf(50)));
+		when(assetService.reserveEach(1L, "TRY", new long[]{units("TRY", "100"), units("TRY", "100")}))
+				.thenReturn(new boolean[]{true, false});
+		when(assetService.reserveEach(1L, "BTC", new long[]{units("BTC", "1")}))
+				.thenReturn(new boolean[]{true});
+
+		OrderResult[] results = new OrderResult[requests.size()];
+		Order[] orders = orderService.reserveAll(1L, requests, results);
+
+		assertEquals(OrderSide.BUY, orders[0].getOrderSide());
+		assertEquals(OrderStatus.PENDING, orders[0].getStatus());
+		assertEquals(OrderSide.SELL, orders[1].getOrderSide());
+		assertNull(orders[2]);
+		assertEquals("Insufficient TRY balance", results[2].getError());
+		assertNull(orders[3]);
+		assertEquals("Size must be positive", results[3].getError());
+		assertNull(results[0]);
+		assertNull(results[1]);
+	}
+
+	@Test
+	void placeAll_savesOnceAndMatchesEachOrder() {
+		Order first = new Order();
+		first.setId(1L);
+		Order second = new Order();
+		second.setId(2L);
+		List<Order> orders = Arrays.asList(first, second);
+		when(matchingEngine.match(any(Order.class))).thenReturn(Collections.emptyList());
+
+		orderService.placeAll(orders);
+
+		verify(orderRepository).saveAll(orders);
+		verify(orderRepository, never()).save(any(Order.class));
+		verify(matchingEngine).match(first);
+		verify(matchingEngine).match(second);
+		verify(orderEventLog).placed(first);
+		verify(orderEventLog).placed(second);
+	}
+
+	@Test
+	void releaseReservations_releasesOneAmountPerAsset() {
+		Order buy = new Order();
+		buy.setCustomerId(1L);
+		buy.setAssetName("BTC");
+		buy.setOrderSide(OrderSide.BUY);
+		buy.setSize(BigDecimal.ONE);
+		buy.setPrice(BigDecimal.valueOf(100));
+		Order otherBuy = new Order();
+		otherBuy.setCustomerId(1L);
+		otherBuy.setAssetName("BTC");
+		otherBuy.setOrderSide(OrderSide.BUY);
+		otherBuy.setSize(BigDecimal.valueOf(2));
+		otherBuy.setPrice(BigDecimal.valueOf(100));
+
+		orderService.releaseReservations(Arrays.asList(buy, otherBuy));
+
+		verify(assetService).release(1L, "TRY", units("TRY", "300"));
 	}
 
 	@Test
 	void listOrders_success() {
 		LocalDateTime startDate = LocalDateTime.now().minusDays(1);
 		LocalDateTime endDate = LocalDateTime.now();
-		List<Order> expectedOrders = Arrays.asList(new Order(), new Order());
+		List<OrderView> expectedOrders = Arrays.asList(OrderView.of(new Order()), OrderView.of(new Order()));
+
+		when(orderRepository.findHistoryPage(1L, startDate, endDate, null, null, null, startDate, 0L, PageRequest.of(0, 50)))
+				.thenReturn(expectedOrders);
+
+		List<OrderView> actualOrders = orderService.listOrders(new OrderQuery(1L, startDate, endDate, null, null, null), null, 50);
+
+		assertEquals(expectedOrders, actualOrders);
+	}
+
+	@Test
+	void listOrders_resumesAfterCursor() {
+		LocalDateTime startDate = LocalDateTime.now().minusDays(1);
+		LocalDateTime endDate = LocalDateTime.now();
+		LocalDateTime lastSeen = startDate.plusHours(2);
+		List<OrderView> expectedOrders = Collections.singletonList(OrderView.of(new Order()));
 
-		when(orderRepository.findByCustomerIdAndCreateDateBetween(1L, startDate, endDate)).thenReturn(expectedOrders);
+		when(orderRepository.findHistoryPage(1L, startDate, endDate, OrderStatus.PENDING, OrderSide.SELL, "BTC",
+				lastSeen, 42L, PageRequest.of(0, 10))).thenReturn(expectedOrders);
 
-		List<Order> actualOrders = orderService.listOrders(1L, startDate, endDate);
+		OrderQuery query = new OrderQuery(1L, startDate, endDate, OrderStatus.PENDING, OrderSide.SELL, "BTC");
+		List<OrderView> actualOrders = orderService.listOrders(query, new OrderCursor(lastSeen, 42L), 10);
 
 		assertEquals(expectedOrders, actualOrders);
 	}
 
+	@Test
+	void streamOrders_handsOverEachOrder() {
+		LocalDateTime startDate = LocalDateTime.now().minusDays(1);
+		LocalDateTime endDate = LocalDateTime.now();
+		OrderView first = OrderView.of(new Order());
+		OrderView second = OrderView.of(new Order());
+
+		when(orderRepository.streamHistory(1L, startDate, endDate, null, OrderSide.BUY, null))
+				.thenReturn(Stream.of(first, second));
+
+		List<OrderView> streamed = new ArrayList<>();
+		orderService.streamOrders(new OrderQuery(1L, startDate, endDate, null, OrderSide.BUY, null), streamed::add);
+
+		assertEquals(Arrays.asList(first, second), streamed);
+	}
+
 	@Test
 	void cancelOrder_success() {
 		Order order = new Order();
 		order.setId(1L);
 		order.setCustomerId(1L);
 		order.setStatus(OrderStatus.PENDING);
+		order.setAssetName("BTC");
 		order.setOrderSide(OrderSide.BUY);
 		order.setSize(BigDecimal.ONE);
 		order.setPrice(BigDecimal.valueOf(50000));
 
 		when(orderRepository.findById(1L)).thenReturn(Optional.of(order));
+		when(matchingEngine.cancel(order)).thenReturn(true);
 
 		orderService.cancelOrder(1L, 1L);
 
 		assertEquals(OrderStatus.CANCELED, order.getStatus());
 		verify(orderRepository).save(order);
-		verify(assetService).updateAssetUsableSize(eq(1L), eq("TRY"), any(BigDecimal.class));
+		verify(matchingEngine).cancel(order);
+		verify(assetService).release(1L, "TRY", units("TRY", "50000"));
 	}
 
 	@Test
@@ -134,6 +369,7 @@ class OrderServiceTest {
 		when(orderRepository.findById(1L)).thenReturn(Optional.of(order));
 
 		assertThrows(AccessDeniedException.class, () -> orderService.cancelOrder(1L, 1L));
+		assertEquals(1, rejections("wrong_owner"));
 	}
 
 	@Test
@@ -146,6 +382,98 @@ class OrderServiceTest {
 		when(orderRepository.findById(1L)).thenReturn(Optional.of(order));
 
 		assertThrows(IllegalStateException.class, () -> orderService.cancelOrder(1L, 1L));
+		assertEquals(1, rejections("not_pending"));
+		assertEquals(1, meterRegistry.timer("broxage.order.cancel").count());
+	}
+
+	@Test
+	void cancelOrder_noLongerOnTheBook_isRejectedWithoutRelease() {
+		Order order = new Order();
+		order.setId(1L);
+		order.setCustomerId(1L);
+		order.setStatus(OrderStatus.PENDING);
+		order.setAssetName("BTC");
+		order.setOrderSide(OrderSide.BUY);
+		order.setSize(BigDecimal.ONE);
+		order.setPrice(BigDecimal.valueOf(50000));
+
+		when(orderRepository.findById(1L)).thenReturn(Optional.of(order));
+		when(matchingEngine.cancel(order)).thenReturn(false);
+
+		assertThrows(IllegalStateException.class, () -> orderService.cancelOrder(1L, 1L));
+
+		assertEquals(OrderStatus.PENDING, order.getStatus());
+		verify(orderRepository, never()).save(any(Order.class));
+		verifyNoInteractions(assetService);
+		assertEquals(1, rejections("not_pending"));
+	}
+
+	@Test
+	void cancelAll_releasesRemainingReservationsOncePerAsset() {
+		List<CanceledOrder> canceled = Arrays.asList(
+				new CanceledOrder(1L, OrderSide.BUY, price("100"), units("BTC", "2")),
+				new CanceledOrder(2L, OrderSide.BUY, price("50"), units("BTC", "1")),
+				new CanceledOrder(3L, OrderSide.SELL, price("120"), units("BTC", "0.5")));
+		when(matchingEngine.cancelAll(1L, "BTC", null)).thenReturn(canceled);
+		when(orderRepository.cancelPending(Arrays.asList(1L, 2L, 3L))).thenReturn(3);
+
+		assertEquals(3, orderService.cancelAll(1L, "BTC", null));
+
+		verify(orderRepository).cancelPending(Arrays.asList(1L, 2L, 3L));
+		verify(orderEventLog).canceled(Arrays.asList(1L, 2L, 3L));
+		verify(assetService).release(1L, "TRY", units("TRY", "250"));
+		verify(assetService).release(1L, "BTC", units("BTC", "0.5"));
+		verifyNoMoreInteractions(assetService);
+	}
+
+	@Test
+	void cancelAll_manyOrders_updatesInBatches() {
+		ReflectionTestUtils.setField(orderService, "cancelBatchSize", 2);
+		List<CanceledOrder> canceled = Arrays.asList(
+				new CanceledOrder(1L, OrderSide.SELL, price("100"), units("BTC", "1")),
+				new CanceledOrder(2L, OrderSide.SELL, price("100"), units("BTC", "1")),
+				new CanceledOrder(3L, OrderSide.SELL, price("100"), units("BTC", "1")));
+		when(matchingEngine.cancelAll(1L, "BTC", null)).thenReturn(canceled);
+		when(orderRepository.cancelPending(Arrays.asList(1L, 2L))).thenReturn(2);
+		when(orderRepository.cancelPending(Collections.singletonList(3L))).thenReturn(1);
+
+		assertEquals(3, orderService.cancelAll(1L, "BTC", null));
+
+		verify(orderRepository).cancelPending(Arrays.asList(1L, 2L));
+		verify(orderRepository).cancelPending(Collections.singletonList(3L));
+		verify(assetService).release(1L, "BTC", units("BTC", "3"));
+	}
+
+	@Test
+	void cancelAll_nothingPending_leavesBookAndBalancesAlone() {
+		when(matchingEngine.cancelAll(1L, "BTC", OrderSide.SELL)).thenReturn(Collections.emptyList());
+
+		assertEquals(0, orderService.cancelAll(1L, "BTC", OrderSide.SELL));
+
+		verifyNoInteractions(orderRepository, assetService);
+	}
+
+	@Test
+	void cancelAll_bookAndDatabaseDisagree_failsAndRestoresTheBookOnRollback() {
+		List<CanceledOrder> canceled = Arrays.asList(
+				new CanceledOrder(1L, OrderSide.BUY, price("100"), units("BTC", "2")),
+				new CanceledOrder(2L, OrderSide.SELL, price("120"), units("BTC", "1")));
+		when(matchingEngine.cancelAll(1L, "BTC", null)).thenReturn(canceled);
+		when(orderRepository.cancelPending(Arrays.asList(1L, 2L))).thenReturn(1);
+
+		TransactionSynchronizationManager.initSynchronization();
+		List<TransactionSynchronization> synchronizations;
+		try {
+			assertThrows(IllegalStateException.class, () -> orderService.cancelAll(1L, "BTC", null));
+			synchronizations = TransactionSynchronizationManager.getSynchronizations();
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+		verifyNoInteractions(assetService, orderEventLog);
+
+		synchronizations.forEach(synchronization ->
+				synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+		verify(matchingEngine).restore(1L, "BTC", canceled);
 	}
 
 	@Test
@@ -178,4 +506,16 @@ class OrderServiceTest {
 
 		assertThrows(AccessDeniedException.class, () -> orderService.getOrderById(1L, 1L));
 	}
-}
\ No newline at end of file
+
+	private long units(String assetName, String amount) {
+		return assetRegistry.toUnits(assetName, new BigDecimal(amount));
+	}
+
+	private long price(String price) {
+		return assetRegistry.priceToUnits(new BigDecimal(price));
+	}
+
+	private double rejections(String reason) {
+		return meterRegistry.counter("broxage.order.rejected", "reason", reason).count();
+	}
+}
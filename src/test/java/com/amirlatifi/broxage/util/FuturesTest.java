@@ -0,0 +1,25 @@
+package com.amirlatifi.broxage.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FuturesTest {
+
+	@Test
+	void join_unwrapsTaskException() {
+		CompletableFuture<Object> future = CompletableFuture.supplyAsync(() -> {
+			throw new IllegalStateException("Insufficient TRY balance");
+		});
+
+		IllegalStateException e = assertThrows(IllegalStateException.class, () -> Futures.join(future));
+		assertEquals("Insufficient TRY balance", e.getMessage());
+	}
+
+	@Test
+	void join_returnsResult() {
+		assertEquals("done", Futures.join(CompletableFuture.completedFuture("done")));
+	}
+}